@@ -24,12 +24,26 @@ public class PaymentServiceClient {
     @Value("${payment.service.endpoint:/api/payment/pay}")
     private String paymentEndpoint;
 
+    @Value("${payment.service.refund-endpoint:/api/payment/refund}")
+    private String refundEndpoint;
+
     /**
      * Process payment by calling external Payment Service
      * @param amount The amount to charge
      * @return Payment status (SUCCESS/FAILED)
      */
     public String processPayment(double amount) {
+        return processPayment(null, amount);
+    }
+
+    /**
+     * Process payment by calling external Payment Service, at most once per key
+     * @param idempotencyKey Identifies the charge across retries; the Payment Service answers
+     *                       a repeated key with the first outcome instead of charging again
+     * @param amount The amount to charge
+     * @return Payment status (SUCCESS/FAILED)
+     */
+    public String processPayment(String idempotencyKey, double amount) {
         try {
             // Prepare payment request
             Map<String, Object> paymentRequest = new HashMap<>();
@@ -41,6 +55,9 @@ public class PaymentServiceClient {
 
             HttpHeaders headers = new HttpHeaders();
             headers.add("Content-Type", "application/json");
+            if (idempotencyKey != null) {
+                headers.add("Idempotency-Key", idempotencyKey);
+            }
             
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(paymentRequest, headers);
 
@@ -65,4 +82,40 @@ public class PaymentServiceClient {
             return "FAILED";
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Refund a payment by calling external Payment Service, at most once per key
+     * @param idempotencyKey The key the payment was made under
+     * @param amount The amount to refund
+     * @return Refund status (SUCCESS/FAILED)
+     */
+    public String refundPayment(String idempotencyKey, double amount) {
+        try {
+            Map<String, Object> refundRequest = new HashMap<>();
+            refundRequest.put("amount", amount);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("Content-Type", "application/json");
+            headers.add("Idempotency-Key", idempotencyKey);
+
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(refundRequest, headers);
+
+            ResponseEntity<Map> response = restTemplate.exchange(
+                paymentServiceUrl + refundEndpoint,
+                HttpMethod.POST,
+                request,
+                Map.class
+            );
+
+            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+                return (String) response.getBody().get("status");
+            } else {
+                return "FAILED";
+            }
+
+        } catch (Exception e) {
+            System.err.println("Error calling Payment Service refund: " + e.getMessage());
+            return "FAILED";
+        }
+    }
+}
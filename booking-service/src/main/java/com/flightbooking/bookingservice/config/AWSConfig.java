@@ -9,8 +9,17 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+
+import java.net.URI;
 
 @Configuration
+@Profile("!in-memory")
 public class AWSConfig {
 
     @Value("${aws.access.key.id}")
@@ -58,4 +67,20 @@ public class AWSConfig {
         
         return new DynamoDBMapper(amazonDynamoDB(), config);
     }
-} 
\ No newline at end of file
+
+    @Bean
+    public DynamoDbAsyncClient dynamoDbAsyncClient() {
+        // Non-blocking v2 client for the read paths; requests are multiplexed over the
+        // SDK's event loop instead of pinning a request thread per call
+        DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKeyId, secretAccessKey)))
+                .region(Region.of(region));
+
+        if (dynamoDBEndpoint != null && !dynamoDBEndpoint.trim().isEmpty()) {
+            builder.endpointOverride(URI.create(dynamoDBEndpoint));
+        }
+
+        return builder.build();
+    }
+}
@@ -1,17 +1,34 @@
 package com.flightbooking.bookingservice.controller;
 
+import com.flightbooking.bookingservice.dto.BookingPage;
 import com.flightbooking.bookingservice.dto.BookingRequest;
 import com.flightbooking.bookingservice.dto.BookingResponse;
 import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.exception.BookingRejectedException;
+import com.flightbooking.bookingservice.exception.IdempotencyConflictException;
 import com.flightbooking.bookingservice.model.Booking;
 import com.flightbooking.bookingservice.model.Inventory;
 import com.flightbooking.bookingservice.repository.InventoryRepository;
+import com.flightbooking.bookingservice.repository.InventoryRetries;
+import com.flightbooking.bookingservice.service.AvailabilityCache;
+import com.flightbooking.bookingservice.service.BookingIdempotency;
 import com.flightbooking.bookingservice.service.BookingService;
+import com.flightbooking.bookingservice.service.BookingStatusNotifier;
+import com.flightbooking.bookingservice.service.PaymentExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/booking")
@@ -21,19 +38,52 @@ public class BookingController {
     @Autowired
     private BookingService bookingService;
 
+    @Autowired
+    private BookingIdempotency bookingIdempotency;
+
+    @Autowired
+    private AvailabilityCache availabilityCache;
+
     @Autowired
     private InventoryRepository inventoryRepository;
 
+    @Autowired
+    private PaymentExecutor paymentExecutor;
+
+    @Autowired
+    private InventoryRetries inventoryRetries;
+
+    @Autowired
+    private BookingStatusNotifier statusNotifier;
+
+    @Value("${booking.status.stream-timeout-ms:300000}")
+    private long statusStreamTimeoutMs = 300000;
+
     @PostMapping("/flight/book")
-    public ResponseEntity<BookingResponse> bookFlight(@RequestBody BookingRequest request) {
+    public ResponseEntity<BookingResponse> bookFlight(
+            @RequestBody BookingRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         System.err.println("=== CONTROLLER ENTRY ===");
         System.err.println("Received booking request: " + request);
         
         try {
             System.err.println("About to call bookingService.bookFlight()...");
-            BookingResponse response = bookingService.bookFlight(request);
+            // With a key, a retried request gets the first response instead of a second booking
+            BookingResponse response = idempotencyKey != null && !idempotencyKey.trim().isEmpty()
+                    ? bookingIdempotency.bookFlight(idempotencyKey.trim(), request)
+                    : bookingService.bookFlight(request);
             System.err.println("BookingService call completed successfully");
             return ResponseEntity.ok(response);
+        } catch (BookingRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new BookingResponse(null, BookingStatus.FAILED, e.getMessage(), 0.0));
+        } catch (IdempotencyConflictException e) {
+            ResponseEntity.BodyBuilder conflict = ResponseEntity.status(HttpStatus.CONFLICT);
+            if (e.isRetryable()) {
+                conflict.header(HttpHeaders.RETRY_AFTER, "1");
+            }
+            return conflict.body(new BookingResponse(null, BookingStatus.FAILED, e.getMessage(), 0.0));
         } catch (Exception e) {
             System.err.println("=== CONTROLLER EXCEPTION ===");
             System.err.println("Exception in controller: " + e.getClass().getName());
@@ -44,26 +94,151 @@ public class BookingController {
         }
     }
 
+    /**
+     * Books a group or agency order of up to {@code booking.bulk.max-size} requests at
+     * once, answering with one response per request in the same order. Requests that
+     * cannot be booked fail on their own without holding up the rest.
+     */
+    @PostMapping("/flight/book/bulk")
+    public ResponseEntity<List<BookingResponse>> bookFlights(@RequestBody List<BookingRequest> requests) {
+        try {
+            return ResponseEntity.ok(bookingService.bookFlights(requests));
+        } catch (BookingRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(List.of(new BookingResponse(null, BookingStatus.FAILED, e.getMessage(), 0.0)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(List.of(new BookingResponse(null, BookingStatus.FAILED, e.getMessage(), 0.0)));
+        }
+    }
+
+    @GetMapping("/payments/executor")
+    public ResponseEntity<Map<String, Object>> getPaymentExecutorStats() {
+        return ResponseEntity.ok(paymentExecutor.stats());
+    }
+
+    // Inventory write conflicts since startup, with the flight-dates that see the most
+    @GetMapping("/inventory/contention")
+    public ResponseEntity<Map<String, Object>> getInventoryContention(@RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(inventoryRetries.stats(limit));
+    }
+
     @GetMapping("/{bookingId}/status")
-    public ResponseEntity<BookingStatus> getBookingStatus(@PathVariable String bookingId) {
-        BookingStatus status = bookingService.getBookingStatus(bookingId);
-        if (status != null) {
-            return ResponseEntity.ok(status);
-        } else {
+    public CompletableFuture<ResponseEntity<BookingStatus>> getBookingStatus(@PathVariable String bookingId) {
+        return bookingService.getBookingStatus(bookingId).thenApply(status -> {
+            if (status != null) {
+                return ResponseEntity.ok(status);
+            } else {
+                return ResponseEntity.notFound().<BookingStatus>build();
+            }
+        });
+    }
+
+    // 409 with the booking's status when it is not confirmed
+    @PostMapping("/{bookingId}/cancel")
+    public ResponseEntity<BookingStatus> cancelBooking(@PathVariable String bookingId) {
+        BookingStatus status = bookingService.cancelBooking(bookingId);
+        if (status == null) {
             return ResponseEntity.notFound().build();
         }
+        return status == BookingStatus.CANCELLED
+                ? ResponseEntity.ok(status)
+                : ResponseEntity.status(HttpStatus.CONFLICT).body(status);
     }
 
-    @GetMapping("/{bookingId}")
-    public ResponseEntity<Booking> getBookingDetails(@PathVariable String bookingId) {
-        Booking booking = bookingService.getBookingDetails(bookingId);
-        if (booking != null) {
-            return ResponseEntity.ok(booking);
-        } else {
-            return ResponseEntity.notFound().build();
+    // Cancels every confirmed booking on a cancelled flight; safe to repeat after a failure
+    @PostMapping("/flights/{flightId}/{date}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelFlight(@PathVariable String flightId, @PathVariable String date) {
+        try {
+            return ResponseEntity.ok(Map.of("cancelled", bookingService.cancelFlight(flightId, date)));
+        } catch (Exception e) {
+            System.err.println("Error cancelling bookings on flight " + flightId + " for " + date + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(Map.of("error", String.valueOf(e.getMessage())));
         }
     }
 
+    /**
+     * Streams the booking's status as Server-Sent Events: the current status straight
+     * away and the final one when the booking settles, then the stream ends. Replaces
+     * polling the status endpoint, at one store read per booking.
+     */
+    @GetMapping(value = "/{bookingId}/status/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public CompletableFuture<ResponseEntity<SseEmitter>> streamBookingStatus(@PathVariable String bookingId) {
+        // Watch before reading, so a booking settling in between is not missed
+        CompletableFuture<BookingStatus> settled = statusNotifier.watch(bookingId);
+        return bookingService.getBookingStatus(bookingId).thenApply(status -> {
+            if (status == null) {
+                settled.cancel(false);
+                return ResponseEntity.notFound().<SseEmitter>build();
+            }
+
+            SseEmitter emitter = new SseEmitter(statusStreamTimeoutMs);
+            emitter.onTimeout(() -> settled.cancel(false));
+            emitter.onCompletion(() -> settled.cancel(false));
+            emitter.onError(error -> settled.cancel(false));
+            if (status != BookingStatus.PROCESSING) {
+                settled.cancel(false);
+                sendStatus(emitter, status);
+                emitter.complete();
+            } else {
+                sendStatus(emitter, status);
+                settled.thenAccept(finalStatus -> {
+                    sendStatus(emitter, finalStatus);
+                    emitter.complete();
+                });
+            }
+            return ResponseEntity.ok(emitter);
+        });
+    }
+
+    private static void sendStatus(SseEmitter emitter, BookingStatus status) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(status.name()));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; completing the emitter stops the watch
+            emitter.completeWithError(e);
+        }
+    }
+
+    @GetMapping("/{bookingId}")
+    public CompletableFuture<ResponseEntity<Booking>> getBookingDetails(@PathVariable String bookingId) {
+        return bookingService.getBookingDetails(bookingId).thenApply(booking -> {
+            if (booking != null) {
+                return ResponseEntity.ok(booking);
+            } else {
+                return ResponseEntity.notFound().<Booking>build();
+            }
+        });
+    }
+
+    @GetMapping("/user/{userId}")
+    public CompletableFuture<ResponseEntity<BookingPage>> getUserBookings(
+            @PathVariable String userId,
+            @RequestParam(required = false) BookingStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        return bookingService.getUserBookings(userId, status, cursor, limit)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof IllegalArgumentException) {
+                        return ResponseEntity.badRequest().<BookingPage>build();
+                    }
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                });
+    }
+
+    // Seats left per flight for display; booking checks the seats itself
+    @GetMapping("/availability")
+    public ResponseEntity<Map<String, Integer>> getSeatsLeft(
+            @RequestParam List<String> flightIds,
+            @RequestParam String date) {
+        return ResponseEntity.ok(availabilityCache.seatsLeft(flightIds, date));
+    }
+
     @GetMapping("/test/inventory")
     public ResponseEntity<String> testInventory() {
         System.err.println("=== TEST INVENTORY ENDPOINT ===");
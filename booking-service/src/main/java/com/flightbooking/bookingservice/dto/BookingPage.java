@@ -0,0 +1,37 @@
+package com.flightbooking.bookingservice.dto;
+
+import com.flightbooking.bookingservice.model.Booking;
+
+import java.util.List;
+
+public class BookingPage {
+    private List<Booking> bookings;
+    private String nextCursor;
+
+    public BookingPage() {}
+
+    public BookingPage(List<Booking> bookings, String nextCursor) {
+        this.bookings = bookings;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    // Getters and Setters
+    public List<Booking> getBookings() { return bookings; }
+    public void setBookings(List<Booking> bookings) { this.bookings = bookings; }
+
+    // Opaque; pass it back to read the next page. Null on the last page
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+    @Override
+    public String toString() {
+        return "BookingPage{" +
+                "bookings=" + (bookings != null ? bookings.size() : 0) +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,75 @@
+package com.flightbooking.bookingservice.dto;
+
+import com.flightbooking.bookingservice.enums.ReservationStatus;
+
+public class ReservationResult {
+    private String flightId;
+    private String date;
+    private ReservationStatus status;
+    private Integer seatsLeft;
+    private Long version;
+
+    public ReservationResult() {}
+
+    public ReservationResult(String flightId, String date, ReservationStatus status, Integer seatsLeft) {
+        this.flightId = flightId;
+        this.date = date;
+        this.status = status;
+        this.seatsLeft = seatsLeft;
+    }
+
+    public static ReservationResult reserved(String flightId, String date, Integer seatsLeft) {
+        return new ReservationResult(flightId, date, ReservationStatus.RESERVED, seatsLeft);
+    }
+
+    public static ReservationResult reserved(String flightId, String date, Integer seatsLeft, Long version) {
+        ReservationResult result = reserved(flightId, date, seatsLeft);
+        result.setVersion(version);
+        return result;
+    }
+
+    public static ReservationResult insufficientSeats(String flightId, String date) {
+        return new ReservationResult(flightId, date, ReservationStatus.INSUFFICIENT_SEATS, null);
+    }
+
+    public static ReservationResult notFound(String flightId, String date) {
+        return new ReservationResult(flightId, date, ReservationStatus.NOT_FOUND, null);
+    }
+
+    public static ReservationResult cancelled(String flightId, String date) {
+        return new ReservationResult(flightId, date, ReservationStatus.CANCELLED, null);
+    }
+
+    public boolean isReserved() {
+        return status == ReservationStatus.RESERVED;
+    }
+
+    // Getters and Setters
+    public String getFlightId() { return flightId; }
+    public void setFlightId(String flightId) { this.flightId = flightId; }
+
+    public String getDate() { return date; }
+    public void setDate(String date) { this.date = date; }
+
+    public ReservationStatus getStatus() { return status; }
+    public void setStatus(ReservationStatus status) { this.status = status; }
+
+    // Seats left after a successful reservation; null otherwise, or when the store does not report it
+    public Integer getSeatsLeft() { return seatsLeft; }
+    public void setSeatsLeft(Integer seatsLeft) { this.seatsLeft = seatsLeft; }
+
+    // Version of the inventory record that seatsLeft was read from; null when not reported
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
+    @Override
+    public String toString() {
+        return "ReservationResult{" +
+                "flightId='" + flightId + '\'' +
+                ", date='" + date + '\'' +
+                ", status=" + status +
+                ", seatsLeft=" + seatsLeft +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -3,7 +3,8 @@ package com.flightbooking.bookingservice.enums;
 public enum BookingStatus {
     PROCESSING("PROCESSING"),
     SUCCESS("SUCCESS"),
-    FAILED("FAILED");
+    FAILED("FAILED"),
+    CANCELLED("CANCELLED");
 
     private final String value;
 
@@ -0,0 +1,21 @@
+package com.flightbooking.bookingservice.enums;
+
+public enum IdempotencyState {
+    IN_PROGRESS("IN_PROGRESS"),
+    COMPLETED("COMPLETED");
+
+    private final String value;
+
+    IdempotencyState(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,24 @@
+package com.flightbooking.bookingservice.enums;
+
+public enum ReservationStatus {
+    RESERVED("RESERVED"),
+    INSUFFICIENT_SEATS("INSUFFICIENT_SEATS"),
+    NOT_FOUND("NOT_FOUND"),
+    // The leg had seats, but another leg of the same itinerary did not
+    CANCELLED("CANCELLED");
+
+    private final String value;
+
+    ReservationStatus(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
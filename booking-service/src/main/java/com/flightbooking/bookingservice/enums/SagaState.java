@@ -0,0 +1,74 @@
+package com.flightbooking.bookingservice.enums;
+
+/**
+ * Steps of a booking saga, saved on the booking as each one is reached:
+ * RESERVED → PAYMENT_PENDING → CONFIRMED, or from either of the first two through
+ * COMPENSATING → FAILED. A booking paid for after its seats were gone is refunded on the
+ * way out: PAYMENT_PENDING → COMPENSATING_PAYMENT → FAILED. A confirmed booking may later
+ * be cancelled: CONFIRMED → REFUND_PENDING → CANCELLED. A saga resumes from the last
+ * saved step.
+ */
+public enum SagaState {
+    // Seats held and the booking saved with its payment queued
+    RESERVED("RESERVED", BookingStatus.PROCESSING),
+    // Payment requested; the payment service answers repeats with the first outcome
+    PAYMENT_PENDING("PAYMENT_PENDING", BookingStatus.PROCESSING),
+    CONFIRMED("CONFIRMED", BookingStatus.SUCCESS),
+    // Handing the held seats back
+    COMPENSATING("COMPENSATING", BookingStatus.PROCESSING),
+    // Paid, but its seats could not be kept; the payment is refunded before it fails
+    COMPENSATING_PAYMENT("COMPENSATING_PAYMENT", BookingStatus.PROCESSING),
+    FAILED("FAILED", BookingStatus.FAILED),
+    // Cancelled with its seats returned; the payment is still to be refunded
+    REFUND_PENDING("REFUND_PENDING", BookingStatus.CANCELLED),
+    CANCELLED("CANCELLED", BookingStatus.CANCELLED);
+
+    private final String value;
+    private final BookingStatus bookingStatus;
+
+    SagaState(String value, BookingStatus bookingStatus) {
+        this.value = value;
+        this.bookingStatus = bookingStatus;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    // The status a booking at this step reports
+    public BookingStatus getBookingStatus() {
+        return bookingStatus;
+    }
+
+    public boolean isFinal() {
+        return this == CONFIRMED || this == FAILED || this == CANCELLED;
+    }
+
+    public boolean canMoveTo(SagaState next) {
+        switch (this) {
+            case RESERVED:
+                return next == PAYMENT_PENDING || next == COMPENSATING;
+            case PAYMENT_PENDING:
+                return next == CONFIRMED || next == COMPENSATING || next == COMPENSATING_PAYMENT;
+            case COMPENSATING:
+            case COMPENSATING_PAYMENT:
+                return next == FAILED;
+            case CONFIRMED:
+                return next == REFUND_PENDING;
+            case REFUND_PENDING:
+                return next == CANCELLED;
+            default:
+                return false;
+        }
+    }
+
+    /** The stored step; bookings saved before steps were recorded count as RESERVED. */
+    public static SagaState of(String value) {
+        return value != null ? valueOf(value) : RESERVED;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,22 @@
+package com.flightbooking.bookingservice.enums;
+
+public enum SeatHoldStatus {
+    HELD("HELD"),
+    CONFIRMED("CONFIRMED"),
+    RELEASED("RELEASED");
+
+    private final String value;
+
+    SeatHoldStatus(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
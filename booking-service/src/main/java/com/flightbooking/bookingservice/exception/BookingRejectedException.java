@@ -0,0 +1,16 @@
+package com.flightbooking.bookingservice.exception;
+
+/**
+ * Thrown when a booking is turned away because the service is at capacity. Nothing is
+ * left behind: the caller can retry the same request later.
+ */
+public class BookingRejectedException extends RuntimeException {
+
+    public BookingRejectedException(String message) {
+        super(message);
+    }
+
+    public BookingRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
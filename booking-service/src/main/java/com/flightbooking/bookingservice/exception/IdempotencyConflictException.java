@@ -0,0 +1,20 @@
+package com.flightbooking.bookingservice.exception;
+
+/**
+ * Thrown when an {@code Idempotency-Key} cannot be honoured: the request that first used it
+ * is still being processed, or the key was used before with a different request.
+ */
+public class IdempotencyConflictException extends RuntimeException {
+
+    private final boolean retryable;
+
+    public IdempotencyConflictException(String message, boolean retryable) {
+        super(message);
+        this.retryable = retryable;
+    }
+
+    /** Whether the same request may succeed later, once the first one has finished. */
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
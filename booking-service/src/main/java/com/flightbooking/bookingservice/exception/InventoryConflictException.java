@@ -0,0 +1,30 @@
+package com.flightbooking.bookingservice.exception;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Thrown when a seat reservation lost to a concurrent write on the same inventory.
+ * Nothing was written: the caller can try the same reservation again, counting the
+ * conflict against {@link #getContended()}, or give up with {@link #getCause()}.
+ */
+public class InventoryConflictException extends RuntimeException {
+
+    private final List<String> contended;
+
+    public InventoryConflictException(Collection<String> contended, RuntimeException cause) {
+        super("Inventory write conflicted on " + contended, cause);
+        this.contended = new ArrayList<>(contended);
+    }
+
+    /** The flight-dates, as inventory ids, whose writes lost. */
+    public List<String> getContended() {
+        return contended;
+    }
+
+    @Override
+    public synchronized RuntimeException getCause() {
+        return (RuntimeException) super.getCause();
+    }
+}
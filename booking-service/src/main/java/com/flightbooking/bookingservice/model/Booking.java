@@ -2,12 +2,36 @@ package com.flightbooking.bookingservice.model;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 
 import java.util.List;
 
+/**
+ * A booking, which also carries its own payment task. A booking whose payment has not
+ * settled has a {@code paymentQueue}, which puts it in a sparse index the payment outbox
+ * polls, and is due once {@code paymentDueAt} has passed. A worker claims the task by
+ * pushing {@code paymentDueAt} out by its lease and bumping {@code paymentAttempts};
+ * settling the payment sets the final status and removes the queue in one write, so a
+ * booking and its task can never disagree.
+ *
+ * <p>{@code sagaState} is the booking's step in its saga, saved by the worker holding the
+ * claim as each step is reached. A booking stays queued until its saga is final, so one
+ * whose worker died is claimed again once the lease runs out and resumes from that step.
+ *
+ * <p>A user's bookings are read through {@link #USER_INDEX}, by travel date, and bookings
+ * in a status through {@link #STATUS_INDEX}, oldest first, so neither lookup scans the
+ * table.
+ */
 @DynamoDBTable(tableName = "bookings")
 public class Booking {
+    public static final String PAYMENT_INDEX = "paymentQueue-paymentDueAt-index";
+    public static final String USER_INDEX = "userId-date-index";
+    public static final String STATUS_INDEX = "status-createdAt-index";
+    // Pending payments are spread over this many index partitions
+    public static final int PAYMENT_QUEUES = 8;
+
     private String bookingId;
     private String userId;
     private String flightIds;
@@ -16,6 +40,13 @@ public class Booking {
     private String destination;
     private String status;
     private String cost;
+    private Integer passengers;
+    private Long createdAt;
+    private String paymentQueue;
+    private Long paymentDueAt;
+    private String paymentOwner;
+    private Integer paymentAttempts;
+    private String sagaState;
 
     public Booking() {}
 
@@ -37,6 +68,7 @@ public class Booking {
     public void setBookingId(String bookingId) { this.bookingId = bookingId; }
 
     @DynamoDBAttribute(attributeName = "userId")
+    @DynamoDBIndexHashKey(globalSecondaryIndexName = USER_INDEX)
     public String getUserId() { return userId; }
     public void setUserId(String userId) { this.userId = userId; }
 
@@ -45,6 +77,7 @@ public class Booking {
     public void setFlightIds(String flightIds) { this.flightIds = flightIds; }
 
     @DynamoDBAttribute(attributeName = "date")
+    @DynamoDBIndexRangeKey(globalSecondaryIndexName = USER_INDEX)
     public String getDate() { return date; }
     public void setDate(String date) { this.date = date; }
 
@@ -57,6 +90,7 @@ public class Booking {
     public void setDestination(String destination) { this.destination = destination; }
 
     @DynamoDBAttribute(attributeName = "status")
+    @DynamoDBIndexHashKey(globalSecondaryIndexName = STATUS_INDEX)
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
 
@@ -64,6 +98,65 @@ public class Booking {
     public String getCost() { return cost; }
     public void setCost(String cost) { this.cost = cost; }
 
+    @DynamoDBAttribute(attributeName = "passengers")
+    public Integer getPassengers() { return passengers; }
+    public void setPassengers(Integer passengers) { this.passengers = passengers; }
+
+    // Epoch milliseconds; bookings saved before it was recorded are missing from STATUS_INDEX
+    @DynamoDBAttribute(attributeName = "createdAt")
+    @DynamoDBIndexRangeKey(globalSecondaryIndexName = STATUS_INDEX)
+    public Long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Long createdAt) { this.createdAt = createdAt; }
+
+    // Set only while the payment is pending
+    @DynamoDBAttribute(attributeName = "paymentQueue")
+    @DynamoDBIndexHashKey(globalSecondaryIndexName = PAYMENT_INDEX)
+    public String getPaymentQueue() { return paymentQueue; }
+    public void setPaymentQueue(String paymentQueue) { this.paymentQueue = paymentQueue; }
+
+    // Epoch milliseconds; when the task may next be claimed
+    @DynamoDBAttribute(attributeName = "paymentDueAt")
+    @DynamoDBIndexRangeKey(globalSecondaryIndexName = PAYMENT_INDEX)
+    public Long getPaymentDueAt() { return paymentDueAt; }
+    public void setPaymentDueAt(Long paymentDueAt) { this.paymentDueAt = paymentDueAt; }
+
+    @DynamoDBAttribute(attributeName = "paymentOwner")
+    public String getPaymentOwner() { return paymentOwner; }
+    public void setPaymentOwner(String paymentOwner) { this.paymentOwner = paymentOwner; }
+
+    @DynamoDBAttribute(attributeName = "paymentAttempts")
+    public Integer getPaymentAttempts() { return paymentAttempts; }
+    public void setPaymentAttempts(Integer paymentAttempts) { this.paymentAttempts = paymentAttempts; }
+
+    // A SagaState name
+    @DynamoDBAttribute(attributeName = "sagaState")
+    public String getSagaState() { return sagaState; }
+    public void setSagaState(String sagaState) { this.sagaState = sagaState; }
+
+    /** The index partition holding the pending payment of {@code bookingId}. */
+    public static String paymentQueueFor(String bookingId) {
+        return paymentQueue(Math.floorMod(bookingId.hashCode(), PAYMENT_QUEUES));
+    }
+
+    public static String paymentQueue(int partition) {
+        return "payments#" + partition;
+    }
+
+    /** Queues the booking's payment, due at {@code dueAt} epoch milliseconds. */
+    public void queuePayment(long dueAt) {
+        this.paymentQueue = paymentQueueFor(bookingId);
+        this.paymentDueAt = dueAt;
+        this.paymentAttempts = 0;
+    }
+
+    public int getPassengersAsInt() {
+        return passengers != null ? passengers : 0;
+    }
+
+    public int getPaymentAttemptsAsInt() {
+        return paymentAttempts != null ? paymentAttempts : 0;
+    }
+
     // Simple convenience methods
     public List<String> getFlightIdsAsList() {
         if (flightIds == null || flightIds.trim().isEmpty()) {
@@ -99,6 +192,11 @@ public class Booking {
                 ", destination='" + destination + '\'' +
                 ", status='" + status + '\'' +
                 ", cost='" + cost + '\'' +
+                ", passengers=" + passengers +
+                ", createdAt=" + createdAt +
+                ", paymentQueue='" + paymentQueue + '\'' +
+                ", paymentAttempts=" + paymentAttempts +
+                ", sagaState='" + sagaState + '\'' +
                 '}';
     }
 } 
\ No newline at end of file
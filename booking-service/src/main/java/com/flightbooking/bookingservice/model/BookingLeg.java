@@ -0,0 +1,59 @@
+package com.flightbooking.bookingservice.model;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * One flight of a {@link Booking}, keyed by flight and travel date, so the bookings on a
+ * flight-date can be read without going through every booking. A booking's legs are
+ * written before the booking itself and never change; a leg whose booking failed or was
+ * never written is simply skipped by readers.
+ */
+@DynamoDBTable(tableName = "booking_legs")
+public class BookingLeg {
+
+    private String flightDate;
+    private String bookingId;
+
+    public BookingLeg() {}
+
+    public BookingLeg(String flightDate, String bookingId) {
+        this.flightDate = flightDate;
+        this.bookingId = bookingId;
+    }
+
+    public static String keyFor(String flightId, String date) {
+        return flightId + "#" + date;
+    }
+
+    /** A leg for each distinct flight of the booking. */
+    public static List<BookingLeg> legsOf(Booking booking) {
+        List<BookingLeg> legs = new ArrayList<>();
+        for (String flightId : new LinkedHashSet<>(booking.getFlightIdsAsList())) {
+            legs.add(new BookingLeg(keyFor(flightId, booking.getDate()), booking.getBookingId()));
+        }
+        return legs;
+    }
+
+    // Getters and Setters
+    @DynamoDBHashKey(attributeName = "flightDate")
+    public String getFlightDate() { return flightDate; }
+    public void setFlightDate(String flightDate) { this.flightDate = flightDate; }
+
+    @DynamoDBRangeKey(attributeName = "bookingId")
+    public String getBookingId() { return bookingId; }
+    public void setBookingId(String bookingId) { this.bookingId = bookingId; }
+
+    @Override
+    public String toString() {
+        return "BookingLeg{" +
+                "flightDate='" + flightDate + '\'' +
+                ", bookingId='" + bookingId + '\'' +
+                '}';
+    }
+}
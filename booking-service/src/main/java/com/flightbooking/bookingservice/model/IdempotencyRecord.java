@@ -0,0 +1,111 @@
+package com.flightbooking.bookingservice.model;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.flightbooking.bookingservice.dto.BookingResponse;
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.enums.IdempotencyState;
+
+/**
+ * A booking request made under an {@code Idempotency-Key}. The record is claimed, with the
+ * id the booking will get, before any seats are touched, and completed with the response
+ * the client got, which every repeat of the request is answered with until {@code purgeAt},
+ * the table's TTL attribute. A claim is held until {@code lockedUntil}; after that another
+ * instance may take over a request whose first attempt never finished.
+ */
+@DynamoDBTable(tableName = "idempotency_keys")
+public class IdempotencyRecord {
+    private String idempotencyKey;
+    private String fingerprint;
+    private String state;
+    private String bookingId;
+    private Long lockedUntil;
+    private String responseStatus;
+    private String responseMessage;
+    private Double responseCost;
+    private Long purgeAt;
+
+    public IdempotencyRecord() {}
+
+    public IdempotencyRecord(String idempotencyKey, String fingerprint, String bookingId, long lockedUntil, long purgeAt) {
+        this.idempotencyKey = idempotencyKey;
+        this.fingerprint = fingerprint;
+        this.state = IdempotencyState.IN_PROGRESS.name();
+        this.bookingId = bookingId;
+        this.lockedUntil = lockedUntil;
+        this.purgeAt = purgeAt;
+    }
+
+    // Getters and Setters
+    // Scoped to the user: "<userId>#<Idempotency-Key header>"
+    @DynamoDBHashKey(attributeName = "idempotencyKey")
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
+    // Identifies the request body, so a key reused for a different booking is turned down
+    @DynamoDBAttribute(attributeName = "fingerprint")
+    public String getFingerprint() { return fingerprint; }
+    public void setFingerprint(String fingerprint) { this.fingerprint = fingerprint; }
+
+    @DynamoDBAttribute(attributeName = "state")
+    public String getState() { return state; }
+    public void setState(String state) { this.state = state; }
+
+    @DynamoDBAttribute(attributeName = "bookingId")
+    public String getBookingId() { return bookingId; }
+    public void setBookingId(String bookingId) { this.bookingId = bookingId; }
+
+    // Epoch milliseconds
+    @DynamoDBAttribute(attributeName = "lockedUntil")
+    public Long getLockedUntil() { return lockedUntil; }
+    public void setLockedUntil(Long lockedUntil) { this.lockedUntil = lockedUntil; }
+
+    @DynamoDBAttribute(attributeName = "responseStatus")
+    public String getResponseStatus() { return responseStatus; }
+    public void setResponseStatus(String responseStatus) { this.responseStatus = responseStatus; }
+
+    @DynamoDBAttribute(attributeName = "responseMessage")
+    public String getResponseMessage() { return responseMessage; }
+    public void setResponseMessage(String responseMessage) { this.responseMessage = responseMessage; }
+
+    @DynamoDBAttribute(attributeName = "responseCost")
+    public Double getResponseCost() { return responseCost; }
+    public void setResponseCost(Double responseCost) { this.responseCost = responseCost; }
+
+    // Epoch seconds; the table's TTL attribute
+    @DynamoDBAttribute(attributeName = "purgeAt")
+    public Long getPurgeAt() { return purgeAt; }
+    public void setPurgeAt(Long purgeAt) { this.purgeAt = purgeAt; }
+
+    // Simple convenience methods
+    public boolean isCompleted() {
+        return IdempotencyState.COMPLETED.name().equals(state);
+    }
+
+    public void complete(BookingResponse response) {
+        this.state = IdempotencyState.COMPLETED.name();
+        this.bookingId = response.getBookingId();
+        this.responseStatus = response.getStatus() != null ? response.getStatus().name() : null;
+        this.responseMessage = response.getMessage();
+        this.responseCost = response.getCost();
+    }
+
+    public BookingResponse toResponse() {
+        return new BookingResponse(bookingId,
+                responseStatus != null ? BookingStatus.valueOf(responseStatus) : null,
+                responseMessage,
+                responseCost != null ? responseCost : 0.0);
+    }
+
+    @Override
+    public String toString() {
+        return "IdempotencyRecord{" +
+                "idempotencyKey='" + idempotencyKey + '\'' +
+                ", state='" + state + '\'' +
+                ", bookingId='" + bookingId + '\'' +
+                ", lockedUntil=" + lockedUntil +
+                ", responseStatus='" + responseStatus + '\'' +
+                '}';
+    }
+}
@@ -2,18 +2,31 @@ package com.flightbooking.bookingservice.model;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverted;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverter;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 
 @DynamoDBTable(tableName = "inventory")
 public class Inventory {
+    public static final String FLIGHT_DATE_INDEX = "flightId-date-index";
+    public static final String DATE_INDEX = "date-index";
+
     private String inventoryId;
     private String flightId;
     private String date;
     private String numberOfSeatsLeft;  // Changed to String
     private String version;            // Changed to String
+    private Integer shardCount;        // Null until seats are split across InventoryShard items
 
     public Inventory() {}
 
+    public Inventory(String flightId, String date, int numberOfSeatsLeft) {
+        this(idFor(flightId, date), flightId, date, numberOfSeatsLeft);
+    }
+
     public Inventory(String inventoryId, String flightId, String date, int numberOfSeatsLeft) {
         this.inventoryId = inventoryId;
         this.flightId = flightId;
@@ -30,20 +43,32 @@ public class Inventory {
         this.version = String.valueOf(version);
     }
 
+    /**
+     * The key an inventory record for {@code flightId} on {@code date} is stored under,
+     * so a booking can read its seats with a single GetItem.
+     */
+    public static String idFor(String flightId, String date) {
+        return flightId + "#" + date;
+    }
+
     // Getters and Setters
     @DynamoDBHashKey(attributeName = "inventoryId")
     public String getInventoryId() { return inventoryId; }
     public void setInventoryId(String inventoryId) { this.inventoryId = inventoryId; }
 
     @DynamoDBAttribute(attributeName = "flightId")
+    @DynamoDBIndexHashKey(globalSecondaryIndexName = FLIGHT_DATE_INDEX)
     public String getFlightId() { return flightId; }
     public void setFlightId(String flightId) { this.flightId = flightId; }
 
     @DynamoDBAttribute(attributeName = "date")
+    @DynamoDBIndexRangeKey(globalSecondaryIndexName = FLIGHT_DATE_INDEX)
+    @DynamoDBIndexHashKey(globalSecondaryIndexName = DATE_INDEX)
     public String getDate() { return date; }
     public void setDate(String date) { this.date = date; }
 
     @DynamoDBAttribute(attributeName = "numberOfSeatsLeft")
+    @DynamoDBTypeConverted(converter = NumberConverter.class)
     public String getNumberOfSeatsLeft() { return numberOfSeatsLeft; }
     public void setNumberOfSeatsLeft(String numberOfSeatsLeft) { this.numberOfSeatsLeft = numberOfSeatsLeft; }
 
@@ -61,9 +86,23 @@ public class Inventory {
     }
 
     @DynamoDBAttribute(attributeName = "version")
+    @DynamoDBTypeConverted(converter = NumberConverter.class)
     public String getVersion() { return version; }
     public void setVersion(String version) { this.version = version; }
 
+    /**
+     * How many counters the seats are split across: this record, which holds shard 0, plus
+     * {@code shardCount - 1} {@link InventoryShard} items. Seats left for the flight and
+     * date is the sum over all of them.
+     */
+    @DynamoDBAttribute(attributeName = "shardCount")
+    public Integer getShardCount() { return shardCount; }
+    public void setShardCount(Integer shardCount) { this.shardCount = shardCount; }
+
+    public int shardCountOrOne() {
+        return shardCount != null && shardCount > 1 ? shardCount : 1;
+    }
+
     // Convenience methods for Long conversion
     public Long getVersionAsLong() { 
         try {
@@ -77,6 +116,29 @@ public class Inventory {
         this.version = String.valueOf(version); 
     }
 
+    // Counters are written as numbers so they can be updated in place with ADD;
+    // items written before that stored them as strings, so reads accept both
+    public static class NumberConverter implements DynamoDBTypeConverter<AttributeValue, String> {
+        @Override
+        public AttributeValue convert(String input) {
+            if (input == null || input.trim().isEmpty()) {
+                return new AttributeValue().withN("0");
+            }
+            return new AttributeValue().withN(input);
+        }
+
+        @Override
+        public String unconvert(AttributeValue input) {
+            if (input == null) {
+                return null;
+            }
+            if (input.getN() != null) {
+                return input.getN();
+            }
+            return input.getS();
+        }
+    }
+
     @Override
     public String toString() {
         return "Inventory{" +
@@ -85,6 +147,7 @@ public class Inventory {
                 ", date=" + date +
                 ", numberOfSeatsLeft=" + numberOfSeatsLeft +
                 ", version=" + version +
+                ", shardCount=" + shardCount +
                 '}';
     }
 } 
\ No newline at end of file
@@ -0,0 +1,53 @@
+package com.flightbooking.bookingservice.model;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+
+/**
+ * One of the extra seat counters of a hot {@link Inventory} record. Splitting a flight
+ * and date's seats across several items spreads its reservations over several partitions
+ * instead of queueing them all on one; shard {@code n} of inventory {@code id} is stored
+ * under {@code id#n}, and shard 0 is the inventory record itself.
+ */
+@DynamoDBTable(tableName = "inventory_shards")
+public class InventoryShard {
+
+    private String shardId;
+    private String inventoryId;
+    private Integer numberOfSeatsLeft;
+    private Long version;
+
+    public InventoryShard() {}
+
+    public static String idFor(String inventoryId, int shard) {
+        return inventoryId + "#" + shard;
+    }
+
+    // Getters and Setters
+    @DynamoDBHashKey(attributeName = "shardId")
+    public String getShardId() { return shardId; }
+    public void setShardId(String shardId) { this.shardId = shardId; }
+
+    @DynamoDBAttribute(attributeName = "inventoryId")
+    public String getInventoryId() { return inventoryId; }
+    public void setInventoryId(String inventoryId) { this.inventoryId = inventoryId; }
+
+    @DynamoDBAttribute(attributeName = "numberOfSeatsLeft")
+    public Integer getNumberOfSeatsLeft() { return numberOfSeatsLeft; }
+    public void setNumberOfSeatsLeft(Integer numberOfSeatsLeft) { this.numberOfSeatsLeft = numberOfSeatsLeft; }
+
+    @DynamoDBAttribute(attributeName = "version")
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
+    @Override
+    public String toString() {
+        return "InventoryShard{" +
+                "shardId='" + shardId + '\'' +
+                ", inventoryId='" + inventoryId + '\'' +
+                ", numberOfSeatsLeft=" + numberOfSeatsLeft +
+                ", version=" + version +
+                '}';
+    }
+}
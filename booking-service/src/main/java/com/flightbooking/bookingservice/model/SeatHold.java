@@ -0,0 +1,113 @@
+package com.flightbooking.bookingservice.model;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.flightbooking.bookingservice.enums.SeatHoldStatus;
+
+import java.util.List;
+
+/**
+ * Seats taken from inventory for a booking whose payment has not settled yet. A hold is
+ * written in the same transaction as the seat decrement and either confirmed when the
+ * payment succeeds or released, returning its seats, when it fails or expires.
+ *
+ * <p>Live holds carry an {@code expiryBucket}, the minute their expiry falls in, which
+ * puts them in a sparse index the expiry sweeper reads one minute at a time. Confirming
+ * or releasing a hold removes the bucket and sets {@code purgeAt}, the table's TTL
+ * attribute, so settled holds drop out of the index and are deleted later.
+ */
+@DynamoDBTable(tableName = "seat_holds")
+public class SeatHold {
+    public static final String EXPIRY_INDEX = "expiryBucket-expiresAt-index";
+    public static final long BUCKET_SECONDS = 60;
+
+    private String holdId;
+    private String flightIds;
+    private String date;
+    private Integer seats;
+    private String status;
+    private Long expiresAt;
+    private String expiryBucket;
+    private Long purgeAt;
+
+    public SeatHold() {}
+
+    public SeatHold(String holdId, List<String> flightIds, String date, int seats, long expiresAt) {
+        this.holdId = holdId;
+        setFlightIdsAsList(flightIds);
+        this.date = date;
+        this.seats = seats;
+        this.status = SeatHoldStatus.HELD.name();
+        this.expiresAt = expiresAt;
+        this.expiryBucket = bucketFor(expiresAt);
+    }
+
+    /** The index partition for holds expiring at {@code epochSecond}. */
+    public static String bucketFor(long epochSecond) {
+        return String.valueOf(Math.floorDiv(epochSecond, BUCKET_SECONDS));
+    }
+
+    // Getters and Setters
+    @DynamoDBHashKey(attributeName = "holdId")
+    public String getHoldId() { return holdId; }
+    public void setHoldId(String holdId) { this.holdId = holdId; }
+
+    @DynamoDBAttribute(attributeName = "flightIds")
+    public String getFlightIds() { return flightIds; }
+    public void setFlightIds(String flightIds) { this.flightIds = flightIds; }
+
+    @DynamoDBAttribute(attributeName = "date")
+    public String getDate() { return date; }
+    public void setDate(String date) { this.date = date; }
+
+    @DynamoDBAttribute(attributeName = "seats")
+    public Integer getSeats() { return seats; }
+    public void setSeats(Integer seats) { this.seats = seats; }
+
+    @DynamoDBAttribute(attributeName = "status")
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    // Epoch seconds
+    @DynamoDBAttribute(attributeName = "expiresAt")
+    @DynamoDBIndexRangeKey(globalSecondaryIndexName = EXPIRY_INDEX)
+    public Long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Long expiresAt) { this.expiresAt = expiresAt; }
+
+    @DynamoDBAttribute(attributeName = "expiryBucket")
+    @DynamoDBIndexHashKey(globalSecondaryIndexName = EXPIRY_INDEX)
+    public String getExpiryBucket() { return expiryBucket; }
+    public void setExpiryBucket(String expiryBucket) { this.expiryBucket = expiryBucket; }
+
+    // Epoch seconds; the table's TTL attribute, set once the hold is settled
+    @DynamoDBAttribute(attributeName = "purgeAt")
+    public Long getPurgeAt() { return purgeAt; }
+    public void setPurgeAt(Long purgeAt) { this.purgeAt = purgeAt; }
+
+    // Simple convenience methods
+    public List<String> getFlightIdsAsList() {
+        if (flightIds == null || flightIds.trim().isEmpty()) {
+            return List.of();
+        }
+        return List.of(flightIds.split(","));
+    }
+
+    public void setFlightIdsAsList(List<String> flightIds) {
+        this.flightIds = flightIds != null ? String.join(",", flightIds) : "";
+    }
+
+    @Override
+    public String toString() {
+        return "SeatHold{" +
+                "holdId='" + holdId + '\'' +
+                ", flightIds='" + flightIds + '\'' +
+                ", date='" + date + '\'' +
+                ", seats=" + seats +
+                ", status='" + status + '\'' +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
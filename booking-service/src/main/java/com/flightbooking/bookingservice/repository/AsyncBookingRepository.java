@@ -0,0 +1,23 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.dto.BookingPage;
+import com.flightbooking.bookingservice.model.Booking;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of the read side of {@link BookingRepository}, for the request
+ * paths that only look bookings up. The futures complete on the client's threads, so a
+ * request thread is not held for the round trip. Pages and cursors are interchangeable
+ * with the blocking repository's.
+ */
+public interface AsyncBookingRepository {
+
+    CompletableFuture<Booking> findById(String id);
+
+    /** As {@link BookingRepository#findByUserId}. */
+    CompletableFuture<BookingPage> findByUserId(String userId, String cursor, int limit);
+
+    /** As {@link BookingRepository#findByUserIdAndStatus}. */
+    CompletableFuture<BookingPage> findByUserIdAndStatus(String userId, String status, String cursor, int limit);
+}
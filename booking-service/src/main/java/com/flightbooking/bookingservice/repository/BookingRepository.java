@@ -1,21 +1,97 @@
 package com.flightbooking.bookingservice.repository;
 
+import com.flightbooking.bookingservice.dto.BookingPage;
 import com.flightbooking.bookingservice.model.Booking;
 import java.util.List;
 
 public interface BookingRepository {
-    
-    List<Booking> findByUserId(String userId);
-    
-    List<Booking> findByStatus(String status);
-    
-    List<Booking> findByUserIdAndStatus(String userId, String status);
-    
+
+    /**
+     * A page of at most {@code limit} of the user's bookings, latest travel date first.
+     * Pass the previous page's cursor, or null for the first page.
+     */
+    BookingPage findByUserId(String userId, String cursor, int limit);
+
+    /**
+     * A page of at most {@code limit} bookings in {@code status} created before
+     * {@code createdBefore} epoch milliseconds, oldest first.
+     */
+    BookingPage findByStatus(String status, long createdBefore, String cursor, int limit);
+
+    /**
+     * As {@link #findByUserId}, keeping the bookings in {@code status}. The status is
+     * filtered after the read, so a page may hold fewer than {@code limit} bookings, or
+     * none, and still have a next cursor.
+     */
+    BookingPage findByUserIdAndStatus(String userId, String status, String cursor, int limit);
+
+    /**
+     * A page of at most {@code limit} of the bookings with a leg on {@code flightId}
+     * travelling on {@code date}, in any status, read through their {@code BookingLeg}s.
+     * Pass the previous page's cursor, or null for the first page.
+     */
+    BookingPage findByFlightAndDate(String flightId, String date, String cursor, int limit);
+
+    /** Saves the booking, after the legs that let it be found by flight and date. */
     Booking save(Booking booking);
+
+    /**
+     * Saves every booking in batch writes of up to 25, retrying the ones a batch leaves
+     * unprocessed, after their legs. Returns the ids of the bookings that could still not
+     * be written; a booking whose legs were not all written is not written either.
+     */
+    List<String> saveAll(List<Booking> bookings);
     
     void deleteById(String id);
     
     Booking findById(String id);
     
     List<Booking> findAll();
-} 
\ No newline at end of file
+
+    /** The bookings among {@code ids} that exist, in no particular order, read in batches. */
+    List<Booking> findAllById(List<String> ids);
+
+    /**
+     * Up to {@code limit} bookings in payment queue {@code partition} whose payment is
+     * due at or before {@code now}, soonest first. Only their keys are certain to be set.
+     */
+    List<Booking> findPaymentsDue(int partition, long now, int limit);
+
+    /**
+     * Claims the booking's pending payment for {@code owner} until {@code leaseUntil},
+     * provided it is due at {@code now}. Returns the booking as claimed, its attempt
+     * count bumped, or null when the payment was settled, is not due or was claimed first.
+     */
+    Booking claimPayment(String bookingId, String owner, long now, long leaseUntil);
+
+    /**
+     * Saves the saga step of a booking claimed by {@link #claimPayment}, leaving its
+     * payment queued. Returns false when the claim is no longer the latest.
+     */
+    boolean advanceSaga(Booking claimed, String sagaState);
+
+    /**
+     * Sets the final status and saga step of a booking claimed by {@link #claimPayment}
+     * and takes its payment out of the queue, in one write. Returns false when the claim
+     * is no longer the latest, for instance because its lease ran out and another worker
+     * took over.
+     */
+    boolean completePayment(Booking claimed, String status, String sagaState);
+
+    /**
+     * Fails a booking that is still PROCESSING with its seats reserved and whose payment
+     * no worker has claimed, in one conditional write. Its payment stays queued, so the
+     * saga settles it as failed when it next runs. Returns false when the booking moved
+     * on or was claimed first; its saga then decides what happens to it.
+     */
+    boolean failUnclaimed(String bookingId);
+
+    /**
+     * Cancels the bookings among {@code bookings} that are still confirmed and returns
+     * their seats, leaving each in REFUND_PENDING with its refund queued, due at
+     * {@code now}. Bookings are written in batches, each with a single seat increment per
+     * flight-date for the whole batch. Bookings no longer confirmed are skipped. Returns
+     * the ids of the bookings cancelled.
+     */
+    List<String> cancelConfirmed(List<Booking> bookings, long now);
+}
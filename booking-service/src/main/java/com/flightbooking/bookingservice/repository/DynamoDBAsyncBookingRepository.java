@@ -0,0 +1,103 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.flightbooking.bookingservice.dto.BookingPage;
+import com.flightbooking.bookingservice.model.Booking;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.flightbooking.shared.repository.AttributeValues.toV1;
+import static com.flightbooking.shared.repository.AttributeValues.toV2;
+
+/**
+ * Reads bookings with the v2 async client. Items are mapped by the v1 mapper, so the
+ * annotations on {@link Booking} remain the one description of the item format, and
+ * cursors are encoded as {@link DynamoDBBookingRepository} encodes them.
+ */
+@Repository
+@Profile("!in-memory")
+public class DynamoDBAsyncBookingRepository implements AsyncBookingRepository {
+
+    private static final String TABLE_NAME = Booking.class.getAnnotation(DynamoDBTable.class).tableName();
+
+    @Autowired
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Autowired
+    private DynamoDBMapper dynamoDBMapper;
+
+    @Override
+    public CompletableFuture<Booking> findById(String id) {
+        GetItemRequest request = GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(Collections.singletonMap("bookingId", AttributeValue.builder().s(id).build()))
+                .build();
+
+        return dynamoDbAsyncClient.getItem(request)
+                .thenApply(response -> response.hasItem() && !response.item().isEmpty()
+                        ? toBooking(response.item()) : null);
+    }
+
+    @Override
+    public CompletableFuture<BookingPage> findByUserId(String userId, String cursor, int limit) {
+        return findByUserId(userId, null, cursor, limit);
+    }
+
+    @Override
+    public CompletableFuture<BookingPage> findByUserIdAndStatus(String userId, String status, String cursor, int limit) {
+        return findByUserId(userId, status, cursor, limit);
+    }
+
+    private CompletableFuture<BookingPage> findByUserId(String userId, String status, String cursor, int limit) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":userId", AttributeValue.builder().s(userId).build());
+
+        QueryRequest.Builder request = QueryRequest.builder()
+                .tableName(TABLE_NAME)
+                .indexName(Booking.USER_INDEX)
+                .consistentRead(false)
+                .keyConditionExpression("userId = :userId")
+                .scanIndexForward(false)
+                .limit(limit);
+
+        try {
+            request.exclusiveStartKey(toV2(DynamoDBBookingRepository.decodeCursor(cursor, "userId", userId)));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (status != null) {
+            expressionAttributeValues.put(":status", AttributeValue.builder().s(status).build());
+            request.filterExpression("#status = :status")
+                    .expressionAttributeNames(Collections.singletonMap("#status", "status"));
+        }
+        request.expressionAttributeValues(expressionAttributeValues);
+
+        // One page only, as with the blocking repository
+        return dynamoDbAsyncClient.query(request.build()).thenApply(response -> {
+            List<Booking> bookings = new ArrayList<>(response.items().size());
+            for (Map<String, AttributeValue> item : response.items()) {
+                bookings.add(toBooking(item));
+            }
+            return new BookingPage(bookings, response.hasLastEvaluatedKey()
+                    ? DynamoDBBookingRepository.encodeCursor(toV1(response.lastEvaluatedKey())) : null);
+        });
+    }
+
+    private Booking toBooking(Map<String, AttributeValue> item) {
+        return dynamoDBMapper.marshallIntoObject(Booking.class, toV1(item));
+    }
+}
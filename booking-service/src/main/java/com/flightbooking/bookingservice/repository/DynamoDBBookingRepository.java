@@ -1,57 +1,129 @@
 package com.flightbooking.bookingservice.repository;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.Update;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.flightbooking.bookingservice.dto.BookingPage;
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.enums.SagaState;
 import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.bookingservice.model.BookingLeg;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Repository
+@Profile("!in-memory")
 public class DynamoDBBookingRepository implements BookingRepository {
 
+    private static final String TABLE_NAME = Booking.class.getAnnotation(DynamoDBTable.class).tableName();
+    private static final String CLAIM_HELD = "attribute_exists(paymentQueue) AND paymentOwner = :owner AND paymentAttempts = :attempts";
+
     @Autowired
     private DynamoDBMapper dynamoDBMapper;
 
-    @Override
-    public List<Booking> findByUserId(String userId) {
-        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-        expressionAttributeValues.put(":userId", new AttributeValue().withS(userId));
+    @Autowired
+    private AmazonDynamoDB amazonDynamoDB;
 
-        DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                .withFilterExpression("userId = :userId")
-                .withExpressionAttributeValues(expressionAttributeValues);
+    @Autowired
+    private DynamoDBInventoryRepository inventoryRepository;
 
-        return dynamoDBMapper.scan(Booking.class, scanExpression);
+    @Override
+    public BookingPage findByUserId(String userId, String cursor, int limit) {
+        return findByUserId(userId, null, cursor, limit);
     }
 
     @Override
-    public List<Booking> findByStatus(String status) {
+    public BookingPage findByStatus(String status, long createdBefore, String cursor, int limit) {
         Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
         expressionAttributeValues.put(":status", new AttributeValue().withS(status));
+        expressionAttributeValues.put(":createdBefore", new AttributeValue().withN(String.valueOf(createdBefore)));
 
-        DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                .withFilterExpression("status = :status")
-                .withExpressionAttributeValues(expressionAttributeValues);
+        DynamoDBQueryExpression<Booking> queryExpression = new DynamoDBQueryExpression<Booking>()
+                .withIndexName(Booking.STATUS_INDEX)
+                .withConsistentRead(false)
+                .withKeyConditionExpression("#status = :status AND createdAt < :createdBefore")
+                .withExpressionAttributeNames(Collections.singletonMap("#status", "status"))
+                .withExpressionAttributeValues(expressionAttributeValues)
+                .withExclusiveStartKey(decodeCursor(cursor, "status", status))
+                .withLimit(limit);
+
+        return page(queryExpression);
+    }
 
-        return dynamoDBMapper.scan(Booking.class, scanExpression);
+    @Override
+    public BookingPage findByUserIdAndStatus(String userId, String status, String cursor, int limit) {
+        return findByUserId(userId, status, cursor, limit);
     }
 
     @Override
-    public List<Booking> findByUserIdAndStatus(String userId, String status) {
+    public BookingPage findByFlightAndDate(String flightId, String date, String cursor, int limit) {
+        String flightDate = BookingLeg.keyFor(flightId, date);
+        DynamoDBQueryExpression<BookingLeg> queryExpression = new DynamoDBQueryExpression<BookingLeg>()
+                .withHashKeyValues(new BookingLeg(flightDate, null))
+                .withConsistentRead(false)
+                .withExclusiveStartKey(decodeCursor(cursor, "flightDate", flightDate))
+                .withLimit(limit);
+
+        QueryResultPage<BookingLeg> page = dynamoDBMapper.queryPage(BookingLeg.class, queryExpression);
+        List<String> ids = new ArrayList<>();
+        for (BookingLeg leg : page.getResults()) {
+            ids.add(leg.getBookingId());
+        }
+        // Legs of bookings that were never written have nothing to load
+        List<Booking> bookings = ids.isEmpty() ? new ArrayList<>() : findAllById(ids);
+        return new BookingPage(bookings, encodeCursor(page.getLastEvaluatedKey()));
+    }
+
+    private BookingPage findByUserId(String userId, String status, String cursor, int limit) {
         Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
         expressionAttributeValues.put(":userId", new AttributeValue().withS(userId));
-        expressionAttributeValues.put(":status", new AttributeValue().withS(status));
 
-        DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                .withFilterExpression("userId = :userId AND status = :status")
-                .withExpressionAttributeValues(expressionAttributeValues);
+        DynamoDBQueryExpression<Booking> queryExpression = new DynamoDBQueryExpression<Booking>()
+                .withIndexName(Booking.USER_INDEX)
+                .withConsistentRead(false)
+                .withKeyConditionExpression("userId = :userId")
+                .withScanIndexForward(false)
+                .withExclusiveStartKey(decodeCursor(cursor, "userId", userId))
+                .withLimit(limit);
+
+        if (status != null) {
+            expressionAttributeValues.put(":status", new AttributeValue().withS(status));
+            queryExpression
+                    .withFilterExpression("#status = :status")
+                    .withExpressionAttributeNames(Collections.singletonMap("#status", "status"));
+        }
+        queryExpression.withExpressionAttributeValues(expressionAttributeValues);
+
+        return page(queryExpression);
+    }
 
-        return dynamoDBMapper.scan(Booking.class, scanExpression);
+    // One page only; the mapper's eager loading would otherwise read the whole partition
+    private BookingPage page(DynamoDBQueryExpression<Booking> queryExpression) {
+        QueryResultPage<Booking> page = dynamoDBMapper.queryPage(Booking.class, queryExpression);
+        return new BookingPage(page.getResults(), encodeCursor(page.getLastEvaluatedKey()));
     }
 
     @Override
@@ -70,6 +142,10 @@ public class DynamoDBBookingRepository implements BookingRepository {
         System.err.println("  - cost: " + booking.getCost() + " (type: " + (booking.getCost() != null ? booking.getCost().getClass().getName() : "null") + ")");
         
         try {
+            // Legs first, so a booking is never written without them
+            if (!unprocessed(BookingLeg.legsOf(booking)).isEmpty()) {
+                throw new IllegalStateException("Could not save legs of booking " + booking.getBookingId());
+            }
             System.err.println("About to call dynamoDBMapper.save()...");
             dynamoDBMapper.save(booking);
             System.err.println("DynamoDB save completed successfully");
@@ -85,6 +161,41 @@ public class DynamoDBBookingRepository implements BookingRepository {
         }
     }
 
+    @Override
+    public List<String> saveAll(List<Booking> bookings) {
+        List<BookingLeg> legs = new ArrayList<>();
+        for (Booking booking : bookings) {
+            legs.addAll(BookingLeg.legsOf(booking));
+        }
+        // Legs first, so a booking is never written without them; both item types carry bookingId
+        Set<String> unsaved = new LinkedHashSet<>(unprocessed(legs));
+        List<Booking> ready = new ArrayList<>();
+        for (Booking booking : bookings) {
+            if (!unsaved.contains(booking.getBookingId())) {
+                ready.add(booking);
+            }
+        }
+        unsaved.addAll(unprocessed(ready));
+        return new ArrayList<>(unsaved);
+    }
+
+    // The mapper splits the items into BatchWriteItem calls of up to 25 and retries unprocessed ones
+    private List<String> unprocessed(List<?> items) {
+        List<String> bookingIds = new ArrayList<>();
+        if (items.isEmpty()) {
+            return bookingIds;
+        }
+        for (DynamoDBMapper.FailedBatch failed : dynamoDBMapper.batchSave(items)) {
+            System.err.println("Batch save of bookings failed: " + failed.getException());
+            for (List<WriteRequest> writes : failed.getUnprocessedItems().values()) {
+                for (WriteRequest write : writes) {
+                    bookingIds.add(write.getPutRequest().getItem().get("bookingId").getS());
+                }
+            }
+        }
+        return bookingIds;
+    }
+
     @Override
     public void deleteById(String id) {
         Booking booking = new Booking();
@@ -101,4 +212,240 @@ public class DynamoDBBookingRepository implements BookingRepository {
     public List<Booking> findAll() {
         return dynamoDBMapper.scan(Booking.class, new DynamoDBScanExpression());
     }
-} 
\ No newline at end of file
+
+    @Override
+    public List<Booking> findAllById(List<String> ids) {
+        List<Booking> keys = new ArrayList<>();
+        for (String id : ids) {
+            Booking key = new Booking();
+            key.setBookingId(id);
+            keys.add(key);
+        }
+        // The mapper splits the keys into BatchGetItem calls of up to 100 and retries unprocessed ones
+        List<Booking> bookings = new ArrayList<>();
+        for (List<Object> loaded : dynamoDBMapper.batchLoad(keys).values()) {
+            for (Object booking : loaded) {
+                bookings.add((Booking) booking);
+            }
+        }
+        return bookings;
+    }
+
+    @Override
+    public List<Booking> findPaymentsDue(int partition, long now, int limit) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":queue", new AttributeValue().withS(Booking.paymentQueue(partition)));
+        expressionAttributeValues.put(":now", new AttributeValue().withN(String.valueOf(now)));
+
+        DynamoDBQueryExpression<Booking> queryExpression = new DynamoDBQueryExpression<Booking>()
+                .withIndexName(Booking.PAYMENT_INDEX)
+                .withConsistentRead(false)
+                .withKeyConditionExpression("paymentQueue = :queue AND paymentDueAt <= :now")
+                .withExpressionAttributeValues(expressionAttributeValues)
+                .withLimit(limit);
+
+        // One page only; the mapper's eager loading would otherwise read the whole queue
+        return dynamoDBMapper.queryPage(Booking.class, queryExpression).getResults();
+    }
+
+    @Override
+    public Booking claimPayment(String bookingId, String owner, long now, long leaseUntil) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":owner", new AttributeValue().withS(owner));
+        expressionAttributeValues.put(":now", new AttributeValue().withN(String.valueOf(now)));
+        expressionAttributeValues.put(":leaseUntil", new AttributeValue().withN(String.valueOf(leaseUntil)));
+        expressionAttributeValues.put(":one", new AttributeValue().withN("1"));
+
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(key(bookingId))
+                .withUpdateExpression("SET paymentOwner = :owner, paymentDueAt = :leaseUntil ADD paymentAttempts :one")
+                .withConditionExpression("attribute_exists(paymentQueue) AND paymentDueAt <= :now")
+                .withExpressionAttributeValues(expressionAttributeValues)
+                .withReturnValues(ReturnValue.ALL_NEW);
+
+        try {
+            return dynamoDBMapper.marshallIntoObject(Booking.class, amazonDynamoDB.updateItem(request).getAttributes());
+        } catch (ConditionalCheckFailedException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean advanceSaga(Booking claimed, String sagaState) {
+        Map<String, AttributeValue> expressionAttributeValues = claimValues(claimed);
+        expressionAttributeValues.put(":sagaState", new AttributeValue().withS(sagaState));
+
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(key(claimed.getBookingId()))
+                .withUpdateExpression("SET sagaState = :sagaState")
+                .withConditionExpression(CLAIM_HELD)
+                .withExpressionAttributeValues(expressionAttributeValues);
+
+        try {
+            amazonDynamoDB.updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean completePayment(Booking claimed, String status, String sagaState) {
+        Map<String, AttributeValue> expressionAttributeValues = claimValues(claimed);
+        expressionAttributeValues.put(":status", new AttributeValue().withS(status));
+        expressionAttributeValues.put(":sagaState", new AttributeValue().withS(sagaState));
+
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(key(claimed.getBookingId()))
+                .withUpdateExpression("SET #status = :status, sagaState = :sagaState REMOVE paymentQueue, paymentDueAt")
+                .withConditionExpression(CLAIM_HELD)
+                .withExpressionAttributeNames(Collections.singletonMap("#status", "status"))
+                .withExpressionAttributeValues(expressionAttributeValues);
+
+        try {
+            amazonDynamoDB.updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean failUnclaimed(String bookingId) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":processing", new AttributeValue().withS(BookingStatus.PROCESSING.name()));
+        expressionAttributeValues.put(":reserved", new AttributeValue().withS(SagaState.RESERVED.name()));
+        expressionAttributeValues.put(":failed", new AttributeValue().withS(BookingStatus.FAILED.name()));
+
+        // Bookings saved before the saga was tracked have no step and count as reserved
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(key(bookingId))
+                .withUpdateExpression("SET #status = :failed, sagaState = :failed")
+                .withConditionExpression("#status = :processing AND (attribute_not_exists(sagaState) OR sagaState = :reserved)"
+                        + " AND attribute_not_exists(paymentOwner)")
+                .withExpressionAttributeNames(Collections.singletonMap("#status", "status"))
+                .withExpressionAttributeValues(expressionAttributeValues);
+
+        try {
+            amazonDynamoDB.updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public List<String> cancelConfirmed(List<Booking> bookings, long now) {
+        Map<String, List<Booking>> byDate = new LinkedHashMap<>();
+        for (Booking booking : bookings) {
+            byDate.computeIfAbsent(booking.getDate(), date -> new ArrayList<>()).add(booking);
+        }
+        List<String> cancelled = new ArrayList<>();
+        for (Map.Entry<String, List<Booking>> entry : byDate.entrySet()) {
+            List<TransactWriteItem> guards = new ArrayList<>();
+            List<Map<String, Integer>> owed = new ArrayList<>();
+            for (Booking booking : entry.getValue()) {
+                guards.add(new TransactWriteItem().withUpdate(cancellation(booking, now)));
+                Map<String, Integer> seatsByFlight = new LinkedHashMap<>();
+                for (String flightId : booking.getFlightIdsAsList()) {
+                    seatsByFlight.merge(flightId, booking.getPassengersAsInt(), Integer::sum);
+                }
+                owed.add(seatsByFlight);
+            }
+            for (int written : inventoryRepository.releaseSeats(entry.getKey(), guards, owed)) {
+                cancelled.add(entry.getValue().get(written).getBookingId());
+            }
+        }
+        return cancelled;
+    }
+
+    // Applies only while the booking is confirmed and has nothing queued
+    private static Update cancellation(Booking booking, long now) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":success", new AttributeValue().withS(BookingStatus.SUCCESS.name()));
+        expressionAttributeValues.put(":cancelled", new AttributeValue().withS(BookingStatus.CANCELLED.name()));
+        expressionAttributeValues.put(":refundPending", new AttributeValue().withS(SagaState.REFUND_PENDING.name()));
+        expressionAttributeValues.put(":queue", new AttributeValue().withS(Booking.paymentQueueFor(booking.getBookingId())));
+        expressionAttributeValues.put(":now", new AttributeValue().withN(String.valueOf(now)));
+        expressionAttributeValues.put(":zero", new AttributeValue().withN("0"));
+
+        return new Update()
+                .withTableName(TABLE_NAME)
+                .withKey(key(booking.getBookingId()))
+                .withUpdateExpression("SET #status = :cancelled, sagaState = :refundPending, paymentQueue = :queue, "
+                        + "paymentDueAt = :now, paymentAttempts = :zero REMOVE paymentOwner")
+                .withConditionExpression("#status = :success AND attribute_not_exists(paymentQueue)")
+                .withExpressionAttributeNames(Collections.singletonMap("#status", "status"))
+                .withExpressionAttributeValues(expressionAttributeValues);
+    }
+
+    // The owner and attempt count fence off a worker whose lease ran out
+    private static Map<String, AttributeValue> claimValues(Booking claimed) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":owner", new AttributeValue().withS(claimed.getPaymentOwner()));
+        expressionAttributeValues.put(":attempts", new AttributeValue().withN(String.valueOf(claimed.getPaymentAttemptsAsInt())));
+        return expressionAttributeValues;
+    }
+
+    /**
+     * Encodes a page's last evaluated key, the table and index keys of its last booking,
+     * as one line per attribute, {@code name=S:value} or {@code name=N:value}, in base64.
+     */
+    static String encodeCursor(Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+        StringBuilder cursor = new StringBuilder();
+        new TreeMap<>(lastEvaluatedKey).forEach((name, value) -> {
+            if (cursor.length() > 0) {
+                cursor.append('\n');
+            }
+            cursor.append(name).append('=')
+                    .append(value.getN() != null ? "N:" + value.getN() : "S:" + value.getS());
+        });
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Decodes a cursor, which has to continue a query on {@code hashKey} = {@code hashValue}. */
+    static Map<String, AttributeValue> decodeCursor(String cursor, String hashKey, String hashValue) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        Map<String, AttributeValue> startKey = new HashMap<>();
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            for (String line : decoded.split("\n")) {
+                int equals = line.indexOf('=');
+                if (equals <= 0 || line.length() < equals + 3 || line.charAt(equals + 2) != ':') {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                String value = line.substring(equals + 3);
+                switch (line.charAt(equals + 1)) {
+                    case 'S':
+                        startKey.put(line.substring(0, equals), new AttributeValue().withS(value));
+                        break;
+                    case 'N':
+                        startKey.put(line.substring(0, equals), new AttributeValue().withN(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid cursor");
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        AttributeValue hash = startKey.get(hashKey);
+        if (hash == null || !hashValue.equals(hash.getS()) || !startKey.containsKey("bookingId")) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return startKey;
+    }
+
+    private static Map<String, AttributeValue> key(String bookingId) {
+        return Collections.singletonMap("bookingId", new AttributeValue().withS(bookingId));
+    }
+}
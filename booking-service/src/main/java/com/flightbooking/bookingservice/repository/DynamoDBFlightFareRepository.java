@@ -0,0 +1,75 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+@Profile("!in-memory")
+public class DynamoDBFlightFareRepository implements FlightFareRepository {
+
+    private static final String TABLE_NAME = "flights";
+    private static final String PROJECTION = "flightId, cost";
+
+    @Autowired
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Override
+    public Map<String, Long> findAllFares() {
+        Map<String, Long> fares = new HashMap<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanResult page = amazonDynamoDB.scan(new ScanRequest()
+                    .withTableName(TABLE_NAME)
+                    .withProjectionExpression(PROJECTION)
+                    .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : page.getItems()) {
+                Long fare = toCents(item.get("cost"));
+                AttributeValue flightId = item.get("flightId");
+                if (fare != null && flightId != null && flightId.getS() != null) {
+                    fares.put(flightId.getS(), fare);
+                }
+            }
+            startKey = page.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+        return fares;
+    }
+
+    @Override
+    public Long findFare(String flightId) {
+        Map<String, AttributeValue> item = amazonDynamoDB.getItem(new GetItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(Collections.singletonMap("flightId", new AttributeValue().withS(flightId)))
+                .withProjectionExpression(PROJECTION))
+                .getItem();
+        return item != null ? toCents(item.get("cost")) : null;
+    }
+
+    // Seed data stores cost as a number, items written through the mapper as a string
+    static Long toCents(AttributeValue cost) {
+        if (cost == null) {
+            return null;
+        }
+        String value = cost.getN() != null ? cost.getN() : cost.getS();
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim()).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            System.err.println("Ignoring unreadable flight cost: " + value);
+            return null;
+        }
+    }
+}
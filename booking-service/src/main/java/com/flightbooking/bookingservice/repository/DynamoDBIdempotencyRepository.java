@@ -0,0 +1,93 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.flightbooking.bookingservice.enums.IdempotencyState;
+import com.flightbooking.bookingservice.model.IdempotencyRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+@Profile("!in-memory")
+public class DynamoDBIdempotencyRepository implements IdempotencyRepository {
+
+    private static final String TABLE_NAME = IdempotencyRecord.class.getAnnotation(DynamoDBTable.class).tableName();
+
+    @Autowired
+    private DynamoDBMapper dynamoDBMapper;
+
+    @Autowired
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Override
+    public boolean claim(IdempotencyRecord record, long nowSeconds) {
+        // TTL deletion lags expiry, so an expired record counts as absent
+        PutItemRequest request = new PutItemRequest()
+                .withTableName(TABLE_NAME)
+                .withItem(dynamoDBMapper.getTableModel(IdempotencyRecord.class).convert(record))
+                .withConditionExpression("attribute_not_exists(idempotencyKey) OR purgeAt < :now")
+                .withExpressionAttributeValues(Collections.singletonMap(":now",
+                        new AttributeValue().withN(String.valueOf(nowSeconds))));
+
+        try {
+            amazonDynamoDB.putItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean takeOver(IdempotencyRecord record, long lockedUntil) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":inProgress", new AttributeValue().withS(IdempotencyState.IN_PROGRESS.name()));
+        expressionAttributeValues.put(":seen", new AttributeValue().withN(String.valueOf(record.getLockedUntil())));
+        expressionAttributeValues.put(":lockedUntil", new AttributeValue().withN(String.valueOf(lockedUntil)));
+
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(Collections.singletonMap("idempotencyKey", new AttributeValue().withS(record.getIdempotencyKey())))
+                .withUpdateExpression("SET lockedUntil = :lockedUntil")
+                .withConditionExpression("#state = :inProgress AND lockedUntil = :seen")
+                .withExpressionAttributeNames(Collections.singletonMap("#state", "state"))
+                .withExpressionAttributeValues(expressionAttributeValues);
+
+        try {
+            amazonDynamoDB.updateItem(request);
+            record.setLockedUntil(lockedUntil);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void complete(IdempotencyRecord record) {
+        // Clobber, so attributes the response leaves empty do not linger from the claim
+        dynamoDBMapper.save(record, DynamoDBMapperConfig.SaveBehavior.CLOBBER.config());
+    }
+
+    @Override
+    public IdempotencyRecord findById(String idempotencyKey) {
+        return dynamoDBMapper.load(IdempotencyRecord.class, idempotencyKey,
+                DynamoDBMapperConfig.ConsistentReads.CONSISTENT.config());
+    }
+
+    @Override
+    public void deleteById(String idempotencyKey) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setIdempotencyKey(idempotencyKey);
+        dynamoDBMapper.delete(record);
+    }
+}
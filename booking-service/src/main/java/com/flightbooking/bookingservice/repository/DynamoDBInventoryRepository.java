@@ -1,53 +1,180 @@
 package com.flightbooking.bookingservice.repository;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ReturnValuesOnConditionCheckFailure;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.Update;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.exception.InventoryConflictException;
 import com.flightbooking.bookingservice.model.Inventory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Repository
+@Profile("!in-memory")
 public class DynamoDBInventoryRepository implements InventoryRepository {
 
+    private static final String TABLE_NAME = Inventory.class.getAnnotation(DynamoDBTable.class).tableName();
+    // A sharded leg is re-planned when its shards change between the read and the write
+    private static final int MAX_SHARD_REPLANS = 3;
+    // Most items DynamoDB takes in one transaction
+    private static final int MAX_TRANSACTION_ITEMS = 100;
+
     @Autowired
     private DynamoDBMapper dynamoDBMapper;
 
+    @Autowired
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Autowired
+    private InventoryShards shards;
+
+    // Two transactions touching the same inventory item cancel one another; neither is
+    // applied, so the loser can simply try again after backing off
+    @Autowired
+    private InventoryRetries retries;
+
+    // flightId#date -> inventoryId; the same unless the record predates derived ids. The
+    // pairing never changes, so only the first reservation for a flight and date pays
+    // for the lookup
+    private final Map<String, String> inventoryIds = new ConcurrentHashMap<>();
+
+    /**
+     * Seats left on a record split into shards are reported as the sum over all of them,
+     * which is what a caller checking availability wants, so such a record cannot be
+     * saved back.
+     */
     @Override
     public Inventory findByFlightIdAndDate(String flightId, String date) {
-        System.err.println("=== DETAILED INVENTORY LOOKUP ===");
-        System.err.println("Looking for flightId: " + flightId + ", date: " + date);
-        
+        Inventory inventory = findRecord(flightId, date);
+        if (inventory != null && inventory.shardCountOrOne() > 1) {
+            int seats = inventory.getNumberOfSeatsLeftAsInt()
+                    + shards.seatsOnShards(inventory.getInventoryId(), inventory.shardCountOrOne());
+            inventory.setNumberOfSeatsLeftAsInt(seats);
+        }
+        return inventory;
+    }
+
+    /**
+     * Reads every leg's record in one BatchGetItem, then the shards of any split records in
+     * one more, so a multi-leg lookup costs about as much as a single leg.
+     */
+    @Override
+    public List<Inventory> findByFlightIdsAndDate(List<String> flightIds, String date) {
+        // BatchGetItem rejects repeated keys, and a leg may appear twice
+        Set<String> ids = new LinkedHashSet<>();
+        for (String flightId : flightIds) {
+            ids.add(Inventory.idFor(flightId, date));
+        }
+        List<Inventory> keys = new ArrayList<>();
+        for (String id : ids) {
+            Inventory key = new Inventory();
+            key.setInventoryId(id);
+            keys.add(key);
+        }
+
+        Map<String, Inventory> byId = new HashMap<>();
+        if (!keys.isEmpty()) {
+            try {
+                for (List<Object> loaded : dynamoDBMapper.batchLoad(keys).values()) {
+                    for (Object inventory : loaded) {
+                        byId.put(((Inventory) inventory).getInventoryId(), (Inventory) inventory);
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Error looking up inventory for flights " + flightIds + " on " + date + ": " + e.getMessage());
+                throw e;
+            }
+        }
+
+        List<Inventory> legs = new ArrayList<>();
+        for (String flightId : flightIds) {
+            Inventory inventory = byId.get(Inventory.idFor(flightId, date));
+            if (inventory == null) {
+                // Only records that predate derived ids miss here
+                inventory = findRecord(flightId, date);
+            }
+            legs.add(inventory);
+        }
+
+        addShardSeats(legs);
+        return legs;
+    }
+
+    /**
+     * Adds to each record split into shards the seats held on its shard items, read for all
+     * of them in one batch, so every read reports the seats left on the whole flight.
+     */
+    private List<Inventory> addShardSeats(List<Inventory> records) {
+        Map<String, Integer> sharded = new HashMap<>();
+        for (Inventory inventory : records) {
+            if (inventory != null && inventory.shardCountOrOne() > 1) {
+                sharded.put(inventory.getInventoryId(), inventory.shardCountOrOne());
+            }
+        }
+        if (!sharded.isEmpty()) {
+            Map<String, Integer> seatsOnShards = shards.seatsOnShards(sharded);
+            Set<Inventory> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Inventory inventory : records) {
+                if (inventory != null && sharded.containsKey(inventory.getInventoryId()) && counted.add(inventory)) {
+                    inventory.setNumberOfSeatsLeftAsInt(inventory.getNumberOfSeatsLeftAsInt()
+                            + seatsOnShards.getOrDefault(inventory.getInventoryId(), 0));
+                }
+            }
+        }
+        return records;
+    }
+
+    private Inventory findRecord(String flightId, String date) {
         try {
+            Inventory inventory = dynamoDBMapper.load(Inventory.class, Inventory.idFor(flightId, date));
+            if (inventory != null) {
+                return inventory;
+            }
+            // Records written before ids were derived from flight and date are still
+            // reachable through the index
             Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-            Map<String, String> expressionAttributeNames = new HashMap<>();
-            
             expressionAttributeValues.put(":flightId", new AttributeValue().withS(flightId));
             expressionAttributeValues.put(":date", new AttributeValue().withS(date));
-            expressionAttributeNames.put("#date", "date");
 
-            DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                    .withFilterExpression("flightId = :flightId AND #date = :date")
-                    .withExpressionAttributeValues(expressionAttributeValues)
-                    .withExpressionAttributeNames(expressionAttributeNames);
+            DynamoDBQueryExpression<Inventory> queryExpression = new DynamoDBQueryExpression<Inventory>()
+                    .withIndexName(Inventory.FLIGHT_DATE_INDEX)
+                    .withConsistentRead(false)
+                    .withKeyConditionExpression("flightId = :flightId AND #date = :date")
+                    .withExpressionAttributeNames(Collections.singletonMap("#date", "date"))
+                    .withExpressionAttributeValues(expressionAttributeValues);
 
-            System.err.println("About to scan with expression: " + scanExpression.getFilterExpression());
-            List<Inventory> results = dynamoDBMapper.scan(Inventory.class, scanExpression);
-            System.err.println("Scan completed successfully. Found " + results.size() + " results");
-            
+            List<Inventory> results = dynamoDBMapper.query(Inventory.class, queryExpression);
             return results.isEmpty() ? null : results.get(0);
         } catch (Exception e) {
-            System.err.println("=== FULL EXCEPTION DETAILS ===");
-            System.err.println("Exception class: " + e.getClass().getName());
-            System.err.println("Exception message: " + e.getMessage());
-            System.err.println("Stack trace:");
-            e.printStackTrace(System.err);
-            System.err.println("=== END EXCEPTION DETAILS ===");
-            throw e; // Re-throw to maintain original behavior
+            System.err.println("Error looking up inventory for flight " + flightId + " on " + date + ": " + e.getMessage());
+            throw e;
         }
     }
 
@@ -56,27 +183,28 @@ public class DynamoDBInventoryRepository implements InventoryRepository {
         Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
         expressionAttributeValues.put(":flightId", new AttributeValue().withS(flightId));
 
-        DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                .withFilterExpression("flightId = :flightId")
+        DynamoDBQueryExpression<Inventory> queryExpression = new DynamoDBQueryExpression<Inventory>()
+                .withIndexName(Inventory.FLIGHT_DATE_INDEX)
+                .withConsistentRead(false)
+                .withKeyConditionExpression("flightId = :flightId")
                 .withExpressionAttributeValues(expressionAttributeValues);
 
-        return dynamoDBMapper.scan(Inventory.class, scanExpression);
+        return addShardSeats(new ArrayList<>(dynamoDBMapper.query(Inventory.class, queryExpression)));
     }
 
     @Override
     public List<Inventory> findByDate(String date) {
         Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-        Map<String, String> expressionAttributeNames = new HashMap<>();
-        
         expressionAttributeValues.put(":date", new AttributeValue().withS(date));
-        expressionAttributeNames.put("#date", "date");
 
-        DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                .withFilterExpression("#date = :date")
-                .withExpressionAttributeValues(expressionAttributeValues)
-                .withExpressionAttributeNames(expressionAttributeNames);
+        DynamoDBQueryExpression<Inventory> queryExpression = new DynamoDBQueryExpression<Inventory>()
+                .withIndexName(Inventory.DATE_INDEX)
+                .withConsistentRead(false)
+                .withKeyConditionExpression("#date = :date")
+                .withExpressionAttributeNames(Collections.singletonMap("#date", "date"))
+                .withExpressionAttributeValues(expressionAttributeValues);
 
-        return dynamoDBMapper.scan(Inventory.class, scanExpression);
+        return addShardSeats(new ArrayList<>(dynamoDBMapper.query(Inventory.class, queryExpression)));
     }
 
     @Override
@@ -88,12 +216,38 @@ public class DynamoDBInventoryRepository implements InventoryRepository {
                 .withFilterExpression("numberOfSeatsLeft < :seats")
                 .withExpressionAttributeValues(expressionAttributeValues);
 
-        return dynamoDBMapper.scan(Inventory.class, scanExpression);
+        // A split record holds at least what its base item does, so the filter can only
+        // let through records whose shards turn out to hold enough
+        List<Inventory> results = addShardSeats(new ArrayList<>(dynamoDBMapper.scan(Inventory.class, scanExpression)));
+        results.removeIf(inventory -> inventory.getNumberOfSeatsLeftAsInt() >= seats);
+        return results;
     }
 
     @Override
     public Inventory save(Inventory inventory) {
-        dynamoDBMapper.save(inventory);
+        if (inventory.shardCountOrOne() > 1) {
+            // Its seats are spread over shard items that a plain save would not touch
+            throw new IllegalStateException("Inventory " + inventory.getInventoryId()
+                    + " is split into shards; change its seats by reserving and releasing them");
+        }
+        if (inventory.getInventoryId() == null) {
+            inventory.setInventoryId(Inventory.idFor(inventory.getFlightId(), inventory.getDate()));
+        }
+        // A copy read before the record was split has no shardCount, and writing it back
+        // would drop the split and strand the seats on its shard items
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":one", new AttributeValue().withN("1"));
+        PutItemRequest request = new PutItemRequest()
+                .withTableName(TABLE_NAME)
+                .withItem(dynamoDBMapper.getTableModel(Inventory.class).convert(inventory))
+                .withConditionExpression("attribute_not_exists(shardCount) OR shardCount <= :one")
+                .withExpressionAttributeValues(expressionAttributeValues);
+        try {
+            amazonDynamoDB.putItem(request);
+        } catch (ConditionalCheckFailedException e) {
+            throw new IllegalStateException("Inventory " + inventory.getInventoryId()
+                    + " is split into shards; change its seats by reserving and releasing them", e);
+        }
         return inventory;
     }
 
@@ -106,11 +260,586 @@ public class DynamoDBInventoryRepository implements InventoryRepository {
 
     @Override
     public Inventory findById(String id) {
-        return dynamoDBMapper.load(Inventory.class, id);
+        Inventory inventory = dynamoDBMapper.load(Inventory.class, id);
+        if (inventory != null && inventory.shardCountOrOne() > 1) {
+            inventory.setNumberOfSeatsLeftAsInt(inventory.getNumberOfSeatsLeftAsInt()
+                    + shards.seatsOnShards(inventory.getInventoryId(), inventory.shardCountOrOne()));
+        }
+        return inventory;
     }
 
     @Override
     public List<Inventory> findAll() {
-        return dynamoDBMapper.scan(Inventory.class, new DynamoDBScanExpression());
+        return addShardSeats(new ArrayList<>(dynamoDBMapper.scan(Inventory.class, new DynamoDBScanExpression())));
+    }
+
+    @Override
+    public ReservationResult reserveSeats(String flightId, String date, int seats) {
+        String inventoryId = resolveInventoryId(flightId, date);
+        if (inventoryId == null) {
+            return ReservationResult.notFound(flightId, date);
+        }
+        shards.ensureConfigured(flightId, inventoryId);
+        if (shards.shardCount(inventoryId) > 1) {
+            return reserveRetrying(Collections.singletonList(flightId), date, seats).get(0);
+        }
+
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":seats", new AttributeValue().withN(String.valueOf(seats)));
+        expressionAttributeValues.put(":taken", new AttributeValue().withN(String.valueOf(-seats)));
+        expressionAttributeValues.put(":one", new AttributeValue().withN("1"));
+
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(Collections.singletonMap("inventoryId", new AttributeValue().withS(inventoryId)))
+                .withUpdateExpression("ADD numberOfSeatsLeft :taken, version :one")
+                .withConditionExpression("numberOfSeatsLeft >= :seats")
+                .withExpressionAttributeValues(expressionAttributeValues)
+                .withReturnValues(ReturnValue.UPDATED_NEW);
+
+        try {
+            UpdateItemResult result = amazonDynamoDB.updateItem(request);
+            return ReservationResult.reserved(flightId, date,
+                    Integer.parseInt(result.getAttributes().get("numberOfSeatsLeft").getN()),
+                    Long.parseLong(result.getAttributes().get("version").getN()));
+        } catch (ConditionalCheckFailedException e) {
+            // Another instance may have split the record, leaving only part of its seats here
+            if (shards.refresh(inventoryId) > 1) {
+                return reserveRetrying(Collections.singletonList(flightId), date, seats).get(0);
+            }
+            return ReservationResult.insufficientSeats(flightId, date);
+        } catch (ProvisionedThroughputExceededException e) {
+            shards.recordContention(inventoryId);
+            retries.recordConflict(Inventory.idFor(flightId, date));
+            throw e;
+        }
+    }
+
+    @Override
+    public List<ReservationResult> reserveSeats(List<String> flightIds, String date, int seats) {
+        if (flightIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (flightIds.size() == 1) {
+            // A plain conditional update is already atomic and costs half a transactional write
+            return Collections.singletonList(reserveSeats(flightIds.get(0), date, seats));
+        }
+        return reserveRetrying(flightIds, date, seats);
+    }
+
+    // Callers here own their thread, so a conflict is waited out on it
+    private List<ReservationResult> reserveRetrying(List<String> flightIds, String date, int seats) {
+        InventoryRetries.Backoff backoff = retries.newBackoff();
+        while (true) {
+            try {
+                return reserveSeats(flightIds, date, seats, Collections.emptyList());
+            } catch (InventoryConflictException e) {
+                if (!backoff.retry(e.getContended())) {
+                    throw e.getCause();
+                }
+                backoff.await();
+            }
+        }
+    }
+
+    /**
+     * Reserves seats on every leg in one transaction together with {@code companions},
+     * writes to other tables that commit or fail with the reservation. A companion failing
+     * its own condition is rethrown, since it says nothing about seats.
+     *
+     * <p>A leg split into shards takes its seats from one shard picked by
+     * {@link InventoryShards#pickShard}. When that shard is short, the leg is planned again
+     * from a fresh read of every shard: its seats are taken from as few shards as hold
+     * enough, and those shards and the short one are levelled with what is left.
+     *
+     * <p>Losing to a concurrent write throws {@link InventoryConflictException} with
+     * nothing written; whether and when to try again is up to the caller.
+     */
+    List<ReservationResult> reserveSeats(List<String> flightIds, String date, int seats,
+                                         List<TransactWriteItem> companions) {
+        // A transaction may not touch an item twice, so repeated legs are folded together
+        Map<String, Integer> seatsByFlight = new LinkedHashMap<>();
+        for (String flightId : flightIds) {
+            seatsByFlight.merge(flightId, seats, Integer::sum);
+        }
+
+        Map<String, ReservationResult> results = new HashMap<>();
+        Map<String, String> inventoryIdsByFlight = new LinkedHashMap<>();
+        for (String flightId : seatsByFlight.keySet()) {
+            String inventoryId = resolveInventoryId(flightId, date);
+            if (inventoryId == null) {
+                results.put(flightId, ReservationResult.notFound(flightId, date));
+            } else {
+                inventoryIdsByFlight.put(flightId, inventoryId);
+            }
+        }
+        if (!results.isEmpty()) {
+            return inOrder(flightIds, date, results);
+        }
+
+        Map<String, List<ShardWrite>> plans = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : inventoryIdsByFlight.entrySet()) {
+            shards.ensureConfigured(entry.getKey(), entry.getValue());
+            int shard = shards.pickShard(entry.getValue());
+            plans.put(entry.getKey(), Collections.singletonList(
+                    seatDecrement(entry.getValue(), shard, seatsByFlight.get(entry.getKey()))));
+        }
+
+        int replans = 0;
+        while (true) {
+            List<TransactWriteItem> items = new ArrayList<>();
+            List<String> legs = new ArrayList<>();
+            List<ShardWrite> writes = new ArrayList<>();
+            for (Map.Entry<String, List<ShardWrite>> plan : plans.entrySet()) {
+                for (ShardWrite write : plan.getValue()) {
+                    items.add(new TransactWriteItem().withUpdate(write.update));
+                    legs.add(plan.getKey());
+                    writes.add(write);
+                }
+            }
+            items.addAll(companions);
+
+            try {
+                amazonDynamoDB.transactWriteItems(new TransactWriteItemsRequest().withTransactItems(items));
+                for (String flightId : seatsByFlight.keySet()) {
+                    // Transactions do not return the updated values
+                    results.put(flightId, ReservationResult.reserved(flightId, date, null));
+                }
+                return inOrder(flightIds, date, results);
+            } catch (TransactionCanceledException e) {
+                Map<String, Integer> shortShards = new LinkedHashMap<>();
+                if (!applyCancellationReasons(e, legs, writes, inventoryIdsByFlight, date, results, shortShards)) {
+                    return inOrder(flightIds, date, results);
+                }
+                if (!shortShards.isEmpty()) {
+                    if (++replans > MAX_SHARD_REPLANS) {
+                        throw e;
+                    }
+                    for (Map.Entry<String, Integer> leg : shortShards.entrySet()) {
+                        String flightId = leg.getKey();
+                        String inventoryId = inventoryIdsByFlight.get(flightId);
+                        Integer[] seen = shards.seatsByShard(inventoryId);
+                        if (seen == null) {
+                            inventoryIds.remove(Inventory.idFor(flightId, date));
+                            results.put(flightId, ReservationResult.notFound(flightId, date));
+                            continue;
+                        }
+                        List<ShardWrite> plan = planAcrossShards(inventoryId, seen, seatsByFlight.get(flightId), leg.getValue());
+                        if (plan == null) {
+                            results.put(flightId, ReservationResult.insufficientSeats(flightId, date));
+                        } else {
+                            plans.put(flightId, plan);
+                        }
+                    }
+                    if (!results.isEmpty()) {
+                        return inOrder(flightIds, date, results);
+                    }
+                    continue;
+                }
+                throw new InventoryConflictException(contended(e.getCancellationReasons(), legs, 0, date), e);
+            }
+        }
+    }
+
+    private ShardWrite seatDecrement(String inventoryId, int shard, int seats) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":seats", new AttributeValue().withN(String.valueOf(seats)));
+        expressionAttributeValues.put(":taken", new AttributeValue().withN(String.valueOf(-seats)));
+        expressionAttributeValues.put(":one", new AttributeValue().withN("1"));
+
+        return new ShardWrite(shard, new Update()
+                .withTableName(shards.tableFor(shard))
+                .withKey(shards.keyFor(inventoryId, shard))
+                .withUpdateExpression("ADD numberOfSeatsLeft :taken, version :one")
+                .withConditionExpression("numberOfSeatsLeft >= :seats")
+                .withExpressionAttributeValues(expressionAttributeValues)
+                // Tells a sold-out leg apart from one whose record has gone, and carries
+                // the shard count of a record split by another instance
+                .withReturnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD));
+    }
+
+    /**
+     * Takes {@code seats} from the shards holding the most seats until there are enough,
+     * and spreads what those shards and the short one hold afterwards evenly over them.
+     * Every write is conditioned on the shard still holding what was read. Returns null
+     * when all shards together hold fewer than {@code seats}.
+     */
+    private List<ShardWrite> planAcrossShards(String inventoryId, Integer[] seen, int seats, int shortShard) {
+        List<Integer> bySeats = new ArrayList<>();
+        int total = 0;
+        for (int shard = 0; shard < seen.length; shard++) {
+            bySeats.add(shard);
+            total += seen[shard] != null ? seen[shard] : 0;
+        }
+        if (total < seats) {
+            return null;
+        }
+        bySeats.sort((a, b) -> Integer.compare(seatsOn(seen, b), seatsOn(seen, a)));
+
+        List<Integer> touched = new ArrayList<>();
+        int taken = 0;
+        for (int shard : bySeats) {
+            if (taken >= seats) {
+                break;
+            }
+            touched.add(shard);
+            taken += seatsOn(seen, shard);
+        }
+        if (shortShard < seen.length && !touched.contains(shortShard)) {
+            touched.add(shortShard);
+            taken += seatsOn(seen, shortShard);
+        }
+
+        int left = taken - seats;
+        List<ShardWrite> writes = new ArrayList<>();
+        for (int i = 0; i < touched.size(); i++) {
+            int shard = touched.get(i);
+            int level = left / touched.size() + (i < left % touched.size() ? 1 : 0);
+            writes.add(seatLevel(inventoryId, shard, seen[shard], level));
+        }
+        return writes;
+    }
+
+    private ShardWrite seatLevel(String inventoryId, int shard, Integer seen, int seats) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":seats", new AttributeValue().withN(String.valueOf(seats)));
+        expressionAttributeValues.put(":one", new AttributeValue().withN("1"));
+        String updateExpression = "SET numberOfSeatsLeft = :seats ADD version :one";
+        String conditionExpression;
+        if (seen == null) {
+            conditionExpression = "attribute_not_exists(numberOfSeatsLeft)";
+        } else {
+            expressionAttributeValues.put(":seen", new AttributeValue().withN(String.valueOf(seen)));
+            conditionExpression = "numberOfSeatsLeft = :seen";
+        }
+        if (shard > 0) {
+            expressionAttributeValues.put(":inventoryId", new AttributeValue().withS(inventoryId));
+            updateExpression = "SET numberOfSeatsLeft = :seats, inventoryId = :inventoryId ADD version :one";
+        }
+
+        return new ShardWrite(shard, new Update()
+                .withTableName(shards.tableFor(shard))
+                .withKey(shards.keyFor(inventoryId, shard))
+                .withUpdateExpression(updateExpression)
+                .withConditionExpression(conditionExpression)
+                .withExpressionAttributeValues(expressionAttributeValues)
+                .withReturnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD));
+    }
+
+    private static int seatsOn(Integer[] seen, int shard) {
+        return seen[shard] != null ? seen[shard] : 0;
+    }
+
+    /**
+     * Records why each leg of a cancelled transaction failed. Returns false when a leg is
+     * blocked, with its result recorded. Returns true when the transaction can be tried
+     * again: as is, when it only lost a race with another one, or after re-planning the
+     * sharded legs added to {@code shortShards}, each with the shard that came up short.
+     */
+    private boolean applyCancellationReasons(TransactionCanceledException e, List<String> legs,
+                                             List<ShardWrite> writes, Map<String, String> inventoryIdsByFlight,
+                                             String date, Map<String, ReservationResult> results,
+                                             Map<String, Integer> shortShards) {
+        List<CancellationReason> reasons = e.getCancellationReasons();
+        if (reasons == null || reasons.size() < legs.size()) {
+            throw e;
+        }
+        for (CancellationReason companion : reasons.subList(legs.size(), reasons.size())) {
+            if ("ConditionalCheckFailed".equals(companion.getCode())) {
+                throw e;
+            }
+        }
+        boolean blocked = false;
+        for (int i = 0; i < legs.size(); i++) {
+            String flightId = legs.get(i);
+            String inventoryId = inventoryIdsByFlight.get(flightId);
+            int shard = writes.get(i).shard;
+            CancellationReason reason = reasons.get(i);
+            String code = reason.getCode();
+            if ("ConditionalCheckFailed".equals(code)) {
+                boolean itemGone = reason.getItem() == null || reason.getItem().isEmpty();
+                if (shard == 0 && itemGone) {
+                    blocked = true;
+                    inventoryIds.remove(Inventory.idFor(flightId, date));
+                    results.put(flightId, ReservationResult.notFound(flightId, date));
+                    continue;
+                }
+                if (shard == 0) {
+                    shards.observe(inventoryId, reason.getItem());
+                }
+                if (shards.shardCount(inventoryId) > 1) {
+                    shortShards.putIfAbsent(flightId, shard);
+                } else {
+                    blocked = true;
+                    results.put(flightId, ReservationResult.insufficientSeats(flightId, date));
+                }
+            } else if ("TransactionConflict".equals(code) || "ThrottlingError".equals(code)
+                    || "ProvisionedThroughputExceeded".equals(code)) {
+                shards.recordContention(inventoryId);
+            }
+        }
+        if (blocked) {
+            return false;
+        }
+        if (shortShards.isEmpty()) {
+            boolean retryable = reasons.stream().allMatch(reason ->
+                    "None".equals(reason.getCode()) || "TransactionConflict".equals(reason.getCode()));
+            if (!retryable) {
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code seats} to every leg in one transaction with {@code guard}, a
+     * conditional write elsewhere that decides whether the seats are still owed. Returns
+     * false, releasing nothing, when the guard's condition fails. Legs whose inventory
+     * record has gone are skipped.
+     */
+    boolean releaseSeats(List<String> flightIds, String date, int seats, TransactWriteItem guard) {
+        Map<String, Integer> seatsByFlight = new LinkedHashMap<>();
+        for (String flightId : flightIds) {
+            seatsByFlight.merge(flightId, seats, Integer::sum);
+        }
+        Map<String, String> inventoryIdsByFlight = new LinkedHashMap<>();
+        for (String flightId : seatsByFlight.keySet()) {
+            String inventoryId = resolveInventoryId(flightId, date);
+            if (inventoryId != null) {
+                inventoryIdsByFlight.put(flightId, inventoryId);
+            } else {
+                System.err.println("No inventory to release for flight: " + flightId);
+            }
+        }
+
+        InventoryRetries.Backoff backoff = retries.newBackoff();
+        while (true) {
+            List<TransactWriteItem> items = new ArrayList<>();
+            items.add(guard);
+            for (Map.Entry<String, String> entry : inventoryIdsByFlight.entrySet()) {
+                items.add(new TransactWriteItem().withUpdate(seatIncrement(entry.getValue(), seatsByFlight.get(entry.getKey()))));
+            }
+            try {
+                amazonDynamoDB.transactWriteItems(new TransactWriteItemsRequest().withTransactItems(items));
+                return true;
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.getCancellationReasons();
+                if (reasons == null || reasons.size() != items.size()) {
+                    throw e;
+                }
+                if ("ConditionalCheckFailed".equals(reasons.get(0).getCode())) {
+                    return false;
+                }
+                List<String> legs = new ArrayList<>(inventoryIdsByFlight.keySet());
+                boolean legMissing = false;
+                for (int i = 0; i < legs.size(); i++) {
+                    if ("ConditionalCheckFailed".equals(reasons.get(i + 1).getCode())) {
+                        System.err.println("No inventory to release for flight: " + legs.get(i));
+                        inventoryIds.remove(Inventory.idFor(legs.get(i), date));
+                        inventoryIdsByFlight.remove(legs.get(i));
+                        legMissing = true;
+                    }
+                }
+                if (!legMissing) {
+                    boolean retryable = reasons.stream().allMatch(reason ->
+                            "None".equals(reason.getCode()) || "TransactionConflict".equals(reason.getCode()));
+                    if (!retryable || !backoff.retry(contended(reasons, legs, 1, date))) {
+                        throw e;
+                    }
+                    backoff.await();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the seats owed by each of {@code guards} on {@code date}, where
+     * {@code owed.get(i)} is the seats per flight that {@code guards.get(i)}, a conditional
+     * write elsewhere, decides are still owed. Guards go in transactions of as many as fit,
+     * each with a single increment per flight for all of its guards, so however many
+     * guards there are, a flight-date takes one write per transaction. A guard whose
+     * condition fails is dropped with its seats and the rest written again. Returns the
+     * indexes of the guards written.
+     */
+    List<Integer> releaseSeats(String date, List<TransactWriteItem> guards, List<Map<String, Integer>> owed) {
+        List<Integer> written = new ArrayList<>();
+        int next = 0;
+        while (next < guards.size()) {
+            List<Integer> batch = new ArrayList<>();
+            Set<String> legs = new LinkedHashSet<>();
+            while (next < guards.size()) {
+                Set<String> withNext = new LinkedHashSet<>(legs);
+                withNext.addAll(owed.get(next).keySet());
+                if (!batch.isEmpty() && batch.size() + 1 + withNext.size() > MAX_TRANSACTION_ITEMS) {
+                    break;
+                }
+                batch.add(next++);
+                legs = withNext;
+            }
+            written.addAll(releaseBatch(date, guards, owed, batch));
+        }
+        return written;
+    }
+
+    private List<Integer> releaseBatch(String date, List<TransactWriteItem> guards,
+                                       List<Map<String, Integer>> owed, List<Integer> batch) {
+        List<Integer> pending = new ArrayList<>(batch);
+        Set<String> gone = new LinkedHashSet<>();
+        InventoryRetries.Backoff backoff = retries.newBackoff();
+        while (!pending.isEmpty()) {
+            Map<String, Integer> seatsByFlight = new LinkedHashMap<>();
+            for (int guard : pending) {
+                owed.get(guard).forEach((flightId, seats) -> seatsByFlight.merge(flightId, seats, Integer::sum));
+            }
+            Map<String, String> inventoryIdsByFlight = new LinkedHashMap<>();
+            for (String flightId : seatsByFlight.keySet()) {
+                String inventoryId = gone.contains(flightId) ? null : resolveInventoryId(flightId, date);
+                if (inventoryId != null) {
+                    inventoryIdsByFlight.put(flightId, inventoryId);
+                } else if (gone.add(flightId)) {
+                    System.err.println("No inventory to release for flight: " + flightId);
+                }
+            }
+
+            List<TransactWriteItem> items = new ArrayList<>();
+            for (int guard : pending) {
+                items.add(guards.get(guard));
+            }
+            for (Map.Entry<String, String> entry : inventoryIdsByFlight.entrySet()) {
+                items.add(new TransactWriteItem().withUpdate(seatIncrement(entry.getValue(), seatsByFlight.get(entry.getKey()))));
+            }
+            try {
+                amazonDynamoDB.transactWriteItems(new TransactWriteItemsRequest().withTransactItems(items));
+                return pending;
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.getCancellationReasons();
+                if (reasons == null || reasons.size() != items.size()) {
+                    throw e;
+                }
+                List<Integer> stillOwed = new ArrayList<>();
+                for (int i = 0; i < pending.size(); i++) {
+                    if (!"ConditionalCheckFailed".equals(reasons.get(i).getCode())) {
+                        stillOwed.add(pending.get(i));
+                    }
+                }
+                List<String> legs = new ArrayList<>(inventoryIdsByFlight.keySet());
+                for (int i = 0; i < legs.size(); i++) {
+                    if ("ConditionalCheckFailed".equals(reasons.get(pending.size() + i).getCode())) {
+                        inventoryIds.remove(Inventory.idFor(legs.get(i), date));
+                        gone.add(legs.get(i));
+                        System.err.println("No inventory to release for flight: " + legs.get(i));
+                    }
+                }
+                boolean changed = stillOwed.size() < pending.size()
+                        || reasons.stream().skip(pending.size()).anyMatch(reason -> "ConditionalCheckFailed".equals(reason.getCode()));
+                pending = stillOwed;
+                if (!changed) {
+                    boolean retryable = reasons.stream().allMatch(reason ->
+                            "None".equals(reason.getCode()) || "TransactionConflict".equals(reason.getCode()));
+                    if (!retryable || !backoff.retry(contended(reasons, legs, pending.size(), date))) {
+                        throw e;
+                    }
+                    backoff.await();
+                }
+            }
+        }
+        return pending;
+    }
+
+    private Update seatIncrement(String inventoryId, int seats) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":seats", new AttributeValue().withN(String.valueOf(seats)));
+        expressionAttributeValues.put(":one", new AttributeValue().withN("1"));
+
+        return new Update()
+                .withTableName(TABLE_NAME)
+                .withKey(Collections.singletonMap("inventoryId", new AttributeValue().withS(inventoryId)))
+                .withUpdateExpression("ADD numberOfSeatsLeft :seats, version :one")
+                // Never let ADD create a stub item for inventory that was deleted
+                .withConditionExpression("attribute_exists(inventoryId)")
+                .withExpressionAttributeValues(expressionAttributeValues);
+    }
+
+    // One write to one of a leg's seat counters
+    private static final class ShardWrite {
+        final int shard;
+        final Update update;
+
+        ShardWrite(int shard, Update update) {
+            this.shard = shard;
+            this.update = update;
+        }
+    }
+
+    private static List<ReservationResult> inOrder(List<String> flightIds, String date,
+                                                   Map<String, ReservationResult> results) {
+        List<ReservationResult> ordered = new ArrayList<>(flightIds.size());
+        for (String flightId : flightIds) {
+            ReservationResult result = results.get(flightId);
+            ordered.add(result != null ? result : ReservationResult.cancelled(flightId, date));
+        }
+        return ordered;
+    }
+
+    /**
+     * The flight-dates of {@code legs}, whose writes start at {@code offset} in the
+     * transaction, that lost to another write; all of them when only other items did.
+     */
+    private static Set<String> contended(List<CancellationReason> reasons, List<String> legs, int offset, String date) {
+        Set<String> contended = new LinkedHashSet<>();
+        for (int i = 0; i < legs.size() && offset + i < reasons.size(); i++) {
+            String code = reasons.get(offset + i).getCode();
+            if ("TransactionConflict".equals(code) || "ThrottlingError".equals(code)
+                    || "ProvisionedThroughputExceeded".equals(code)) {
+                contended.add(Inventory.idFor(legs.get(i), date));
+            }
+        }
+        if (contended.isEmpty()) {
+            legs.forEach(flightId -> contended.add(Inventory.idFor(flightId, date)));
+        }
+        return contended;
+    }
+
+    @Override
+    public boolean releaseSeats(String flightId, String date, int seats) {
+        String inventoryId = resolveInventoryId(flightId, date);
+        if (inventoryId == null) {
+            return false;
+        }
+
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":seats", new AttributeValue().withN(String.valueOf(seats)));
+        expressionAttributeValues.put(":one", new AttributeValue().withN("1"));
+
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(Collections.singletonMap("inventoryId", new AttributeValue().withS(inventoryId)))
+                .withUpdateExpression("ADD numberOfSeatsLeft :seats, version :one")
+                // Never let ADD create a stub item for inventory that was deleted
+                .withConditionExpression("attribute_exists(inventoryId)")
+                .withExpressionAttributeValues(expressionAttributeValues);
+
+        try {
+            amazonDynamoDB.updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            inventoryIds.remove(Inventory.idFor(flightId, date), inventoryId);
+            return false;
+        }
+    }
+
+    private String resolveInventoryId(String flightId, String date) {
+        String key = Inventory.idFor(flightId, date);
+        String inventoryId = inventoryIds.get(key);
+        if (inventoryId == null) {
+            Inventory inventory = findRecord(flightId, date);
+            if (inventory == null) {
+                return null;
+            }
+            inventoryId = inventory.getInventoryId();
+            inventoryIds.put(key, inventoryId);
+            shards.observe(inventory);
+        }
+        return inventoryId;
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
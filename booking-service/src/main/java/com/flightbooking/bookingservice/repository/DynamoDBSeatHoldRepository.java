@@ -0,0 +1,163 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.Put;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.Update;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.enums.SeatHoldStatus;
+import com.flightbooking.bookingservice.model.SeatHold;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@Profile("!in-memory")
+public class DynamoDBSeatHoldRepository implements SeatHoldRepository {
+
+    private static final String TABLE_NAME = SeatHold.class.getAnnotation(DynamoDBTable.class).tableName();
+    // Settling a hold takes it out of the expiry index and schedules it for TTL deletion
+    private static final String SETTLE_EXPRESSION = "SET #status = :settled, purgeAt = :purgeAt REMOVE expiryBucket";
+
+    @Autowired
+    private DynamoDBMapper dynamoDBMapper;
+
+    @Autowired
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Autowired
+    private DynamoDBInventoryRepository inventoryRepository;
+
+    @Override
+    public List<ReservationResult> reserve(SeatHold hold) {
+        Put put = new Put()
+                .withTableName(TABLE_NAME)
+                .withItem(dynamoDBMapper.getTableModel(SeatHold.class).convert(hold))
+                .withConditionExpression("attribute_not_exists(holdId)");
+
+        return inventoryRepository.reserveSeats(hold.getFlightIdsAsList(), hold.getDate(), hold.getSeats(),
+                Collections.singletonList(new TransactWriteItem().withPut(put)));
+    }
+
+    @Override
+    public ReservationResult reserveAll(String flightId, String date, List<SeatHold> holds) {
+        List<TransactWriteItem> puts = new ArrayList<>();
+        int seats = 0;
+        for (SeatHold hold : holds) {
+            puts.add(new TransactWriteItem().withPut(new Put()
+                    .withTableName(TABLE_NAME)
+                    .withItem(dynamoDBMapper.getTableModel(SeatHold.class).convert(hold))
+                    .withConditionExpression("attribute_not_exists(holdId)")));
+            seats += hold.getSeats();
+        }
+        // Always transactional, even for one leg, since the holds must land with the seats
+        return inventoryRepository.reserveSeats(Collections.singletonList(flightId), date, seats, puts).get(0);
+    }
+
+    @Override
+    public boolean confirm(String holdId, long purgeAt) {
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(key(holdId))
+                .withUpdateExpression(SETTLE_EXPRESSION)
+                .withConditionExpression("#status = :held")
+                .withExpressionAttributeNames(Collections.singletonMap("#status", "status"))
+                .withExpressionAttributeValues(settleValues(SeatHoldStatus.CONFIRMED, purgeAt));
+
+        try {
+            amazonDynamoDB.updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean release(SeatHold hold, long purgeAt) {
+        return inventoryRepository.releaseSeats(hold.getFlightIdsAsList(), hold.getDate(), hold.getSeats(),
+                new TransactWriteItem().withUpdate(releaseSettle(hold.getHoldId(), purgeAt)));
+    }
+
+    @Override
+    public List<String> releaseAll(List<SeatHold> holds, long purgeAt) {
+        Map<String, List<SeatHold>> byDate = new LinkedHashMap<>();
+        for (SeatHold hold : holds) {
+            byDate.computeIfAbsent(hold.getDate(), date -> new ArrayList<>()).add(hold);
+        }
+        List<String> released = new ArrayList<>();
+        for (Map.Entry<String, List<SeatHold>> entry : byDate.entrySet()) {
+            List<TransactWriteItem> guards = new ArrayList<>();
+            List<Map<String, Integer>> owed = new ArrayList<>();
+            for (SeatHold hold : entry.getValue()) {
+                guards.add(new TransactWriteItem().withUpdate(releaseSettle(hold.getHoldId(), purgeAt)));
+                Map<String, Integer> seatsByFlight = new LinkedHashMap<>();
+                for (String flightId : hold.getFlightIdsAsList()) {
+                    seatsByFlight.merge(flightId, hold.getSeats(), Integer::sum);
+                }
+                owed.add(seatsByFlight);
+            }
+            for (int written : inventoryRepository.releaseSeats(entry.getKey(), guards, owed)) {
+                released.add(entry.getValue().get(written).getHoldId());
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public SeatHold findById(String holdId) {
+        return dynamoDBMapper.load(SeatHold.class, holdId);
+    }
+
+    @Override
+    public List<SeatHold> findExpired(String expiryBucket, long now, int limit) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":bucket", new AttributeValue().withS(expiryBucket));
+        expressionAttributeValues.put(":now", new AttributeValue().withN(String.valueOf(now)));
+
+        DynamoDBQueryExpression<SeatHold> queryExpression = new DynamoDBQueryExpression<SeatHold>()
+                .withIndexName(SeatHold.EXPIRY_INDEX)
+                .withConsistentRead(false)
+                .withKeyConditionExpression("expiryBucket = :bucket AND expiresAt <= :now")
+                .withExpressionAttributeValues(expressionAttributeValues)
+                .withLimit(limit);
+
+        // One page only; the mapper's eager loading would otherwise read the whole bucket
+        return dynamoDBMapper.queryPage(SeatHold.class, queryExpression).getResults();
+    }
+
+    // Applies only while the hold is held, so its seats come back at most once
+    private static Update releaseSettle(String holdId, long purgeAt) {
+        return new Update()
+                .withTableName(TABLE_NAME)
+                .withKey(key(holdId))
+                .withUpdateExpression(SETTLE_EXPRESSION)
+                .withConditionExpression("#status = :held")
+                .withExpressionAttributeNames(Collections.singletonMap("#status", "status"))
+                .withExpressionAttributeValues(settleValues(SeatHoldStatus.RELEASED, purgeAt));
+    }
+
+    private static Map<String, AttributeValue> key(String holdId) {
+        return Collections.singletonMap("holdId", new AttributeValue().withS(holdId));
+    }
+
+    private static Map<String, AttributeValue> settleValues(SeatHoldStatus settled, long purgeAt) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":held", new AttributeValue().withS(SeatHoldStatus.HELD.name()));
+        expressionAttributeValues.put(":settled", new AttributeValue().withS(settled.name()));
+        expressionAttributeValues.put(":purgeAt", new AttributeValue().withN(String.valueOf(purgeAt)));
+        return expressionAttributeValues;
+    }
+}
@@ -0,0 +1,16 @@
+package com.flightbooking.bookingservice.repository;
+
+import java.util.Map;
+
+/**
+ * Fares from the flights table, in cents per passenger. Only the flight id and cost of
+ * each flight are read.
+ */
+public interface FlightFareRepository {
+
+    /** The fare of every flight, keyed by flight id, read in bulk. */
+    Map<String, Long> findAllFares();
+
+    /** The fare of one flight, or null when the flight does not exist or has no cost. */
+    Long findFare(String flightId);
+}
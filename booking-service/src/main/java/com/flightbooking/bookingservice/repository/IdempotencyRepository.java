@@ -0,0 +1,27 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.model.IdempotencyRecord;
+
+public interface IdempotencyRepository {
+
+    /**
+     * Stores {@code record} unless its key is already in use by a record that has not
+     * expired at {@code nowSeconds}. Returns false when the key is taken.
+     */
+    boolean claim(IdempotencyRecord record, long nowSeconds);
+
+    /**
+     * Moves the claim of an in-progress record to {@code lockedUntil}, provided it still
+     * holds the claim that was read; {@code record} then carries the new lock. Returns
+     * false when someone else changed it first.
+     */
+    boolean takeOver(IdempotencyRecord record, long lockedUntil);
+
+    /** Stores the completed record, response included. */
+    void complete(IdempotencyRecord record);
+
+    /** The record for {@code idempotencyKey}, read consistently; null when there is none. */
+    IdempotencyRecord findById(String idempotencyKey);
+
+    void deleteById(String idempotencyKey);
+}
@@ -0,0 +1,39 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.dto.BookingPage;
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking view over {@link InMemoryBookingRepository}; both see the same records.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryAsyncBookingRepository implements AsyncBookingRepository {
+
+    @Autowired
+    private InMemoryBookingRepository store;
+
+    @Autowired
+    private LatencyInjector latencyInjector;
+
+    @Override
+    public CompletableFuture<Booking> findById(String id) {
+        return latencyInjector.async("findById", () -> store.doFindById(id));
+    }
+
+    @Override
+    public CompletableFuture<BookingPage> findByUserId(String userId, String cursor, int limit) {
+        return latencyInjector.async("findByUserId", () -> store.doFindByUserId(userId, null, cursor, limit));
+    }
+
+    @Override
+    public CompletableFuture<BookingPage> findByUserIdAndStatus(String userId, String status, String cursor, int limit) {
+        return latencyInjector.async("findByUserIdAndStatus", () -> store.doFindByUserId(userId, status, cursor, limit));
+    }
+}
@@ -0,0 +1,303 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.dto.BookingPage;
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.enums.SagaState;
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Process-local booking store for benchmarks and load tests. Entities are copied on the
+ * way in and out; saves are last-writer-wins, as with the mapper.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryBookingRepository implements BookingRepository {
+
+    private static final Comparator<Booking> BY_DATE_LATEST_FIRST = Comparator
+            .comparing(Booking::getDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Booking::getBookingId, Comparator.reverseOrder());
+
+    private static final Comparator<Booking> BY_CREATED_AT = Comparator
+            .comparing(Booking::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Booking::getBookingId);
+
+    // The order of the booking legs table, whose range key is the booking id
+    private static final Comparator<Booking> BY_BOOKING_ID = Comparator.comparing(Booking::getBookingId);
+
+    private final Map<String, Booking> bookings = new ConcurrentHashMap<>();
+
+    @Autowired
+    private LatencyInjector latencyInjector;
+
+    @Autowired
+    private InMemoryInventoryRepository inventoryRepository;
+
+    @Override
+    public BookingPage findByUserId(String userId, String cursor, int limit) {
+        latencyInjector.pause("findByUserId");
+        return doFindByUserId(userId, null, cursor, limit);
+    }
+
+    @Override
+    public BookingPage findByStatus(String status, long createdBefore, String cursor, int limit) {
+        latencyInjector.pause("findByStatus");
+        return page(booking -> status.equals(booking.getStatus())
+                        && booking.getCreatedAt() != null && booking.getCreatedAt() < createdBefore,
+                BY_CREATED_AT, cursor, limit);
+    }
+
+    @Override
+    public BookingPage findByUserIdAndStatus(String userId, String status, String cursor, int limit) {
+        latencyInjector.pause("findByUserIdAndStatus");
+        return doFindByUserId(userId, status, cursor, limit);
+    }
+
+    @Override
+    public BookingPage findByFlightAndDate(String flightId, String date, String cursor, int limit) {
+        latencyInjector.pause("findByFlightAndDate");
+        return page(booking -> date.equals(booking.getDate()) && booking.getFlightIdsAsList().contains(flightId),
+                BY_BOOKING_ID, cursor, limit);
+    }
+
+    @Override
+    public Booking save(Booking booking) {
+        latencyInjector.pause("save");
+        return doSave(booking);
+    }
+
+    @Override
+    public List<String> saveAll(List<Booking> batch) {
+        latencyInjector.pause("saveAll");
+        batch.forEach(this::doSave);
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        latencyInjector.pause("deleteById");
+        bookings.remove(id);
+    }
+
+    @Override
+    public Booking findById(String id) {
+        latencyInjector.pause("findById");
+        return doFindById(id);
+    }
+
+    @Override
+    public List<Booking> findAll() {
+        latencyInjector.pause("findAll");
+        return filter(booking -> true);
+    }
+
+    @Override
+    public List<Booking> findAllById(List<String> ids) {
+        latencyInjector.pause("findAllById");
+        return ids.stream()
+                .map(this::doFindById)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Booking> findPaymentsDue(int partition, long now, int limit) {
+        latencyInjector.pause("findPaymentsDue");
+        String queue = Booking.paymentQueue(partition);
+        return bookings.values().stream()
+                .filter(booking -> queue.equals(booking.getPaymentQueue()) && booking.getPaymentDueAt() <= now)
+                .sorted(Comparator.comparing(Booking::getPaymentDueAt))
+                .limit(limit)
+                .map(InMemoryBookingRepository::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Booking claimPayment(String bookingId, String owner, long now, long leaseUntil) {
+        latencyInjector.pause("claimPayment");
+        Booking[] claimed = {null};
+        bookings.computeIfPresent(bookingId, (id, booking) -> {
+            if (booking.getPaymentQueue() != null && booking.getPaymentDueAt() <= now) {
+                booking.setPaymentOwner(owner);
+                booking.setPaymentDueAt(leaseUntil);
+                booking.setPaymentAttempts(booking.getPaymentAttemptsAsInt() + 1);
+                claimed[0] = copyOf(booking);
+            }
+            return booking;
+        });
+        return claimed[0];
+    }
+
+    @Override
+    public boolean advanceSaga(Booking claimed, String sagaState) {
+        latencyInjector.pause("advanceSaga");
+        boolean[] advanced = {false};
+        bookings.computeIfPresent(claimed.getBookingId(), (id, booking) -> {
+            if (holdsClaim(booking, claimed)) {
+                booking.setSagaState(sagaState);
+                advanced[0] = true;
+            }
+            return booking;
+        });
+        return advanced[0];
+    }
+
+    @Override
+    public boolean completePayment(Booking claimed, String status, String sagaState) {
+        latencyInjector.pause("completePayment");
+        boolean[] completed = {false};
+        bookings.computeIfPresent(claimed.getBookingId(), (id, booking) -> {
+            if (holdsClaim(booking, claimed)) {
+                booking.setStatus(status);
+                booking.setSagaState(sagaState);
+                booking.setPaymentQueue(null);
+                booking.setPaymentDueAt(null);
+                completed[0] = true;
+            }
+            return booking;
+        });
+        return completed[0];
+    }
+
+    @Override
+    public boolean failUnclaimed(String bookingId) {
+        latencyInjector.pause("failUnclaimed");
+        boolean[] failed = {false};
+        bookings.computeIfPresent(bookingId, (id, booking) -> {
+            if (BookingStatus.PROCESSING.name().equals(booking.getStatus())
+                    && SagaState.of(booking.getSagaState()) == SagaState.RESERVED
+                    && booking.getPaymentOwner() == null) {
+                booking.setStatus(BookingStatus.FAILED.name());
+                booking.setSagaState(SagaState.FAILED.name());
+                failed[0] = true;
+            }
+            return booking;
+        });
+        return failed[0];
+    }
+
+    @Override
+    public List<String> cancelConfirmed(List<Booking> candidates, long now) {
+        latencyInjector.pause("cancelConfirmed");
+        List<String> cancelled = new ArrayList<>();
+        // date -> flightId -> seats owed by the bookings cancelled
+        Map<String, Map<String, Integer>> owed = new LinkedHashMap<>();
+        for (Booking candidate : candidates) {
+            Booking[] applied = {null};
+            bookings.computeIfPresent(candidate.getBookingId(), (id, booking) -> {
+                if (BookingStatus.SUCCESS.name().equals(booking.getStatus()) && booking.getPaymentQueue() == null) {
+                    booking.setStatus(BookingStatus.CANCELLED.name());
+                    booking.setSagaState(SagaState.REFUND_PENDING.name());
+                    booking.queuePayment(now);
+                    booking.setPaymentOwner(null);
+                    applied[0] = copyOf(booking);
+                }
+                return booking;
+            });
+            if (applied[0] != null) {
+                cancelled.add(applied[0].getBookingId());
+                Map<String, Integer> seatsByFlight = owed.computeIfAbsent(applied[0].getDate(), date -> new LinkedHashMap<>());
+                for (String flightId : applied[0].getFlightIdsAsList()) {
+                    seatsByFlight.merge(flightId, applied[0].getPassengersAsInt(), Integer::sum);
+                }
+            }
+        }
+        owed.forEach((date, seatsByFlight) -> seatsByFlight.forEach((flightId, seats) -> {
+            if (!inventoryRepository.releaseSeats(flightId, date, seats)) {
+                System.err.println("No inventory to release for flight: " + flightId);
+            }
+        }));
+        return cancelled;
+    }
+
+    private static boolean holdsClaim(Booking booking, Booking claimed) {
+        return booking.getPaymentQueue() != null
+                && Objects.equals(booking.getPaymentOwner(), claimed.getPaymentOwner())
+                && booking.getPaymentAttemptsAsInt() == claimed.getPaymentAttemptsAsInt();
+    }
+
+    // Unpaced operations, so a call that touches several records pauses only once; the
+    // async view paces its own calls
+
+    Booking doFindById(String id) {
+        return copyOf(bookings.get(id));
+    }
+
+    BookingPage doFindByUserId(String userId, String status, String cursor, int limit) {
+        return page(booking -> userId.equals(booking.getUserId())
+                        && (status == null || status.equals(booking.getStatus())),
+                BY_DATE_LATEST_FIRST, cursor, limit);
+    }
+
+    private Booking doSave(Booking booking) {
+        bookings.put(booking.getBookingId(), copyOf(booking));
+        return booking;
+    }
+
+    // The cursor is the last booking of the previous page, which a booking may no longer match
+    private BookingPage page(Predicate<Booking> predicate, Comparator<Booking> order, String cursor, int limit) {
+        Booking after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            after = doFindById(cursor);
+            if (after == null) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+        Booking last = after;
+        List<Booking> matches = bookings.values().stream()
+                .filter(predicate)
+                .filter(booking -> last == null || order.compare(booking, last) > 0)
+                .sorted(order)
+                .limit(limit + 1L)
+                .map(InMemoryBookingRepository::copyOf)
+                .collect(Collectors.toList());
+        if (matches.size() <= limit) {
+            return new BookingPage(matches, null);
+        }
+        List<Booking> page = matches.subList(0, limit);
+        return new BookingPage(new ArrayList<>(page), page.get(limit - 1).getBookingId());
+    }
+
+    private List<Booking> filter(Predicate<Booking> predicate) {
+        return bookings.values().stream()
+                .filter(predicate)
+                .map(InMemoryBookingRepository::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    static Booking copyOf(Booking booking) {
+        if (booking == null) {
+            return null;
+        }
+        Booking copy = new Booking();
+        copy.setBookingId(booking.getBookingId());
+        copy.setUserId(booking.getUserId());
+        copy.setFlightIds(booking.getFlightIds());
+        copy.setDate(booking.getDate());
+        copy.setSource(booking.getSource());
+        copy.setDestination(booking.getDestination());
+        copy.setStatus(booking.getStatus());
+        copy.setCost(booking.getCost());
+        copy.setPassengers(booking.getPassengers());
+        copy.setCreatedAt(booking.getCreatedAt());
+        copy.setPaymentQueue(booking.getPaymentQueue());
+        copy.setPaymentDueAt(booking.getPaymentDueAt());
+        copy.setPaymentOwner(booking.getPaymentOwner());
+        copy.setPaymentAttempts(booking.getPaymentAttempts());
+        copy.setSagaState(booking.getSagaState());
+        return copy;
+    }
+}
@@ -0,0 +1,41 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-local fares for benchmarks and load tests; starts empty, like the in-memory
+ * inventory, and is filled through {@link #save}.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryFlightFareRepository implements FlightFareRepository {
+
+    private final Map<String, Long> fares = new ConcurrentHashMap<>();
+
+    @Autowired
+    private LatencyInjector latencyInjector;
+
+    @Override
+    public Map<String, Long> findAllFares() {
+        latencyInjector.pause("findAllFares");
+        return new HashMap<>(fares);
+    }
+
+    @Override
+    public Long findFare(String flightId) {
+        latencyInjector.pause("findFare");
+        return fares.get(flightId);
+    }
+
+    /** Sets the fare of a flight, in cents per passenger. */
+    public void save(String flightId, long fareCents) {
+        fares.put(flightId, fareCents);
+    }
+}
@@ -0,0 +1,88 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.enums.IdempotencyState;
+import com.flightbooking.bookingservice.model.IdempotencyRecord;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-local idempotency records for benchmarks and load tests. Claims are
+ * compare-and-set on the map entry; expired records are replaced rather than purged.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryIdempotencyRepository implements IdempotencyRepository {
+
+    private final Map<String, IdempotencyRecord> records = new ConcurrentHashMap<>();
+
+    @Autowired
+    private LatencyInjector latencyInjector;
+
+    @Override
+    public boolean claim(IdempotencyRecord record, long nowSeconds) {
+        latencyInjector.pause("claimIdempotencyKey");
+        IdempotencyRecord copy = copyOf(record);
+        IdempotencyRecord stored = records.merge(record.getIdempotencyKey(), copy,
+                (existing, claimed) -> existing.getPurgeAt() < nowSeconds ? claimed : existing);
+        return stored == copy;
+    }
+
+    @Override
+    public boolean takeOver(IdempotencyRecord record, long lockedUntil) {
+        latencyInjector.pause("takeOverIdempotencyKey");
+        boolean[] taken = {false};
+        records.computeIfPresent(record.getIdempotencyKey(), (key, existing) -> {
+            if (IdempotencyState.IN_PROGRESS.name().equals(existing.getState())
+                    && Objects.equals(existing.getLockedUntil(), record.getLockedUntil())) {
+                existing.setLockedUntil(lockedUntil);
+                taken[0] = true;
+            }
+            return existing;
+        });
+        if (taken[0]) {
+            record.setLockedUntil(lockedUntil);
+        }
+        return taken[0];
+    }
+
+    @Override
+    public void complete(IdempotencyRecord record) {
+        latencyInjector.pause("completeIdempotencyKey");
+        records.put(record.getIdempotencyKey(), copyOf(record));
+    }
+
+    @Override
+    public IdempotencyRecord findById(String idempotencyKey) {
+        latencyInjector.pause("findIdempotencyKey");
+        return copyOf(records.get(idempotencyKey));
+    }
+
+    @Override
+    public void deleteById(String idempotencyKey) {
+        latencyInjector.pause("deleteIdempotencyKey");
+        records.remove(idempotencyKey);
+    }
+
+    private static IdempotencyRecord copyOf(IdempotencyRecord record) {
+        if (record == null) {
+            return null;
+        }
+        IdempotencyRecord copy = new IdempotencyRecord();
+        copy.setIdempotencyKey(record.getIdempotencyKey());
+        copy.setFingerprint(record.getFingerprint());
+        copy.setState(record.getState());
+        copy.setBookingId(record.getBookingId());
+        copy.setLockedUntil(record.getLockedUntil());
+        copy.setResponseStatus(record.getResponseStatus());
+        copy.setResponseMessage(record.getResponseMessage());
+        copy.setResponseCost(record.getResponseCost());
+        copy.setPurgeAt(record.getPurgeAt());
+        return copy;
+    }
+}
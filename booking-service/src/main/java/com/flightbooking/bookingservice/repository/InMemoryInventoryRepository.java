@@ -0,0 +1,266 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.exception.OptimisticLockingException;
+import com.flightbooking.bookingservice.model.Inventory;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Process-local inventory store for benchmarks and load tests. Entities are copied on the
+ * way in and out, so callers can mutate what they read exactly as they would a DynamoDB
+ * result. {@link #save} is a compare-and-set on the version: an existing record is only
+ * replaced by a write carrying its version plus one, otherwise the write is rejected with
+ * {@link OptimisticLockingException}. Itinerary reservations hold a write lock against
+ * every other write, so they apply to every leg or none at once.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryInventoryRepository implements InventoryRepository {
+
+    private final Map<String, Inventory> inventories = new ConcurrentHashMap<>();
+    // flightId#date -> inventoryId, so the booking path's lookup does not scan
+    private final Map<String, String> flightDateIndex = new ConcurrentHashMap<>();
+    private final ReadWriteLock itineraryLock = new ReentrantReadWriteLock();
+
+    @Autowired
+    private LatencyInjector latencyInjector;
+
+    @Override
+    public Inventory findByFlightIdAndDate(String flightId, String date) {
+        latencyInjector.pause("findByFlightIdAndDate");
+        return doFindByFlightIdAndDate(flightId, date);
+    }
+
+    // One pause for every leg, as a batched read costs one round trip
+    @Override
+    public List<Inventory> findByFlightIdsAndDate(List<String> flightIds, String date) {
+        latencyInjector.pause("findByFlightIdsAndDate");
+        List<Inventory> legs = new ArrayList<>(flightIds.size());
+        for (String flightId : flightIds) {
+            legs.add(doFindByFlightIdAndDate(flightId, date));
+        }
+        return legs;
+    }
+
+    @Override
+    public List<Inventory> findByFlightId(String flightId) {
+        latencyInjector.pause("findByFlightId");
+        return inventories.values().stream()
+                .filter(inventory -> flightId.equals(inventory.getFlightId()))
+                .map(InMemoryInventoryRepository::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Inventory> findByDate(String date) {
+        latencyInjector.pause("findByDate");
+        return inventories.values().stream()
+                .filter(inventory -> date.equals(inventory.getDate()))
+                .map(InMemoryInventoryRepository::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Inventory> findByNumberOfSeatsLeftLessThan(int seats) {
+        latencyInjector.pause("findByNumberOfSeatsLeftLessThan");
+        return inventories.values().stream()
+                .filter(inventory -> inventory.getNumberOfSeatsLeftAsInt() < seats)
+                .map(InMemoryInventoryRepository::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Inventory save(Inventory inventory) {
+        latencyInjector.pause("save");
+        return doSave(inventory);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        latencyInjector.pause("deleteById");
+        itineraryLock.readLock().lock();
+        try {
+            Inventory removed = inventories.remove(id);
+            if (removed != null) {
+                flightDateIndex.remove(indexKey(removed.getFlightId(), removed.getDate()), id);
+            }
+        } finally {
+            itineraryLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Inventory findById(String id) {
+        latencyInjector.pause("findById");
+        return doFindById(id);
+    }
+
+    @Override
+    public List<Inventory> findAll() {
+        latencyInjector.pause("findAll");
+        return inventories.values().stream()
+                .map(InMemoryInventoryRepository::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public ReservationResult reserveSeats(String flightId, String date, int seats) {
+        latencyInjector.pause("reserveSeats");
+        itineraryLock.readLock().lock();
+        try {
+            return doReserveSeats(flightId, date, seats);
+        } finally {
+            itineraryLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ReservationResult> reserveSeats(List<String> flightIds, String date, int seats) {
+        latencyInjector.pause("reserveItinerary");
+        Map<String, Integer> seatsByFlight = new LinkedHashMap<>();
+        for (String flightId : flightIds) {
+            seatsByFlight.merge(flightId, seats, Integer::sum);
+        }
+        itineraryLock.writeLock().lock();
+        try {
+            Map<String, ReservationResult> blocked = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> entry : seatsByFlight.entrySet()) {
+                String inventoryId = flightDateIndex.get(indexKey(entry.getKey(), date));
+                Inventory inventory = inventoryId != null ? inventories.get(inventoryId) : null;
+                if (inventory == null) {
+                    blocked.put(entry.getKey(), ReservationResult.notFound(entry.getKey(), date));
+                } else if (inventory.getNumberOfSeatsLeftAsInt() < entry.getValue()) {
+                    blocked.put(entry.getKey(), ReservationResult.insufficientSeats(entry.getKey(), date));
+                }
+            }
+            List<ReservationResult> results = new ArrayList<>(flightIds.size());
+            if (!blocked.isEmpty()) {
+                for (String flightId : flightIds) {
+                    results.add(blocked.getOrDefault(flightId, ReservationResult.cancelled(flightId, date)));
+                }
+                return results;
+            }
+            // Nothing else can touch seats while the write lock is held, so every leg succeeds
+            Map<String, ReservationResult> reserved = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> entry : seatsByFlight.entrySet()) {
+                reserved.put(entry.getKey(), doReserveSeats(entry.getKey(), date, entry.getValue()));
+            }
+            for (String flightId : flightIds) {
+                results.add(reserved.get(flightId));
+            }
+            return results;
+        } finally {
+            itineraryLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean releaseSeats(String flightId, String date, int seats) {
+        latencyInjector.pause("releaseSeats");
+        String inventoryId = flightDateIndex.get(indexKey(flightId, date));
+        if (inventoryId == null) {
+            return false;
+        }
+        itineraryLock.readLock().lock();
+        try {
+            return inventories.computeIfPresent(inventoryId, (id, existing) -> {
+                Inventory updated = copyOf(existing);
+                updated.setNumberOfSeatsLeftAsInt(existing.getNumberOfSeatsLeftAsInt() + seats);
+                updated.setVersionAsLong(existing.getVersionAsLong() + 1);
+                return updated;
+            }) != null;
+        } finally {
+            itineraryLock.readLock().unlock();
+        }
+    }
+
+    private ReservationResult doReserveSeats(String flightId, String date, int seats) {
+        String inventoryId = flightDateIndex.get(indexKey(flightId, date));
+        if (inventoryId == null) {
+            return ReservationResult.notFound(flightId, date);
+        }
+        boolean[] reserved = {false};
+        Inventory after = inventories.computeIfPresent(inventoryId, (id, existing) -> {
+            int available = existing.getNumberOfSeatsLeftAsInt();
+            if (available < seats) {
+                return existing;
+            }
+            Inventory updated = copyOf(existing);
+            updated.setNumberOfSeatsLeftAsInt(available - seats);
+            updated.setVersionAsLong(existing.getVersionAsLong() + 1);
+            reserved[0] = true;
+            return updated;
+        });
+        if (after == null) {
+            return ReservationResult.notFound(flightId, date);
+        }
+        return reserved[0]
+                ? ReservationResult.reserved(flightId, date, after.getNumberOfSeatsLeftAsInt(), after.getVersionAsLong())
+                : ReservationResult.insufficientSeats(flightId, date);
+    }
+
+    // Unpaced operations, so a call that touches several records pauses only once
+
+    private Inventory doFindByFlightIdAndDate(String flightId, String date) {
+        String inventoryId = flightDateIndex.get(indexKey(flightId, date));
+        return inventoryId != null ? doFindById(inventoryId) : null;
+    }
+
+    private Inventory doFindById(String id) {
+        return copyOf(inventories.get(id));
+    }
+
+    private Inventory doSave(Inventory inventory) {
+        if (inventory.getInventoryId() == null) {
+            inventory.setInventoryId(Inventory.idFor(inventory.getFlightId(), inventory.getDate()));
+        }
+        Inventory stored = copyOf(inventory);
+        itineraryLock.readLock().lock();
+        try {
+            inventories.compute(inventory.getInventoryId(), (id, existing) -> {
+                if (existing != null && stored.getVersionAsLong() != existing.getVersionAsLong() + 1) {
+                    throw new OptimisticLockingException("Version conflict for inventory " + id
+                            + ": stored version " + existing.getVersion() + ", write carries " + stored.getVersion());
+                }
+                if (existing != null && !indexKey(existing.getFlightId(), existing.getDate())
+                        .equals(indexKey(stored.getFlightId(), stored.getDate()))) {
+                    flightDateIndex.remove(indexKey(existing.getFlightId(), existing.getDate()), id);
+                }
+                flightDateIndex.put(indexKey(stored.getFlightId(), stored.getDate()), id);
+                return stored;
+            });
+        } finally {
+            itineraryLock.readLock().unlock();
+        }
+        return inventory;
+    }
+
+    private static String indexKey(String flightId, String date) {
+        return Inventory.idFor(flightId, date);
+    }
+
+    static Inventory copyOf(Inventory inventory) {
+        if (inventory == null) {
+            return null;
+        }
+        Inventory copy = new Inventory();
+        copy.setInventoryId(inventory.getInventoryId());
+        copy.setFlightId(inventory.getFlightId());
+        copy.setDate(inventory.getDate());
+        copy.setNumberOfSeatsLeft(inventory.getNumberOfSeatsLeft());
+        copy.setVersion(inventory.getVersion());
+        return copy;
+    }
+}
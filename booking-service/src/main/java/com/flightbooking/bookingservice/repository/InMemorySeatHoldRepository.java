@@ -0,0 +1,163 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.enums.SeatHoldStatus;
+import com.flightbooking.bookingservice.model.SeatHold;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Process-local seat holds for benchmarks and load tests. Seats and holds live in the same
+ * process, so a crash loses both together; settling a hold is a compare-and-set on its
+ * status, which is what makes each hold's seats come back at most once.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemorySeatHoldRepository implements SeatHoldRepository {
+
+    private final Map<String, SeatHold> holds = new ConcurrentHashMap<>();
+
+    @Autowired
+    private InMemoryInventoryRepository inventoryRepository;
+
+    @Autowired
+    private LatencyInjector latencyInjector;
+
+    @Override
+    public List<ReservationResult> reserve(SeatHold hold) {
+        latencyInjector.pause("reserveHold");
+        if (holds.containsKey(hold.getHoldId())) {
+            throw new IllegalStateException("Seat hold already exists: " + hold.getHoldId());
+        }
+        List<ReservationResult> results = inventoryRepository.reserveSeats(hold.getFlightIdsAsList(), hold.getDate(), hold.getSeats());
+        if (results.stream().allMatch(ReservationResult::isReserved)
+                && holds.putIfAbsent(hold.getHoldId(), copyOf(hold)) != null) {
+            for (String flightId : hold.getFlightIdsAsList()) {
+                inventoryRepository.releaseSeats(flightId, hold.getDate(), hold.getSeats());
+            }
+            throw new IllegalStateException("Seat hold already exists: " + hold.getHoldId());
+        }
+        return results;
+    }
+
+    @Override
+    public ReservationResult reserveAll(String flightId, String date, List<SeatHold> holds) {
+        latencyInjector.pause("reserveHolds");
+        int seats = holds.stream().mapToInt(SeatHold::getSeats).sum();
+        ReservationResult result = inventoryRepository.reserveSeats(flightId, date, seats);
+        if (!result.isReserved()) {
+            return result;
+        }
+        List<String> added = new ArrayList<>();
+        for (SeatHold hold : holds) {
+            if (this.holds.putIfAbsent(hold.getHoldId(), copyOf(hold)) != null) {
+                added.forEach(this.holds::remove);
+                inventoryRepository.releaseSeats(flightId, date, seats);
+                throw new IllegalStateException("Seat hold already exists: " + hold.getHoldId());
+            }
+            added.add(hold.getHoldId());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean confirm(String holdId, long purgeAt) {
+        latencyInjector.pause("confirmHold");
+        return settle(holdId, SeatHoldStatus.CONFIRMED, purgeAt) != null;
+    }
+
+    @Override
+    public boolean release(SeatHold hold, long purgeAt) {
+        latencyInjector.pause("releaseHold");
+        SeatHold released = settle(hold.getHoldId(), SeatHoldStatus.RELEASED, purgeAt);
+        if (released == null) {
+            return false;
+        }
+        for (String flightId : released.getFlightIdsAsList()) {
+            inventoryRepository.releaseSeats(flightId, released.getDate(), released.getSeats());
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> releaseAll(List<SeatHold> candidates, long purgeAt) {
+        latencyInjector.pause("releaseHolds");
+        List<String> released = new ArrayList<>();
+        // date -> flightId -> seats owed by the holds released
+        Map<String, Map<String, Integer>> owed = new LinkedHashMap<>();
+        for (SeatHold candidate : candidates) {
+            SeatHold settled = settle(candidate.getHoldId(), SeatHoldStatus.RELEASED, purgeAt);
+            if (settled == null) {
+                continue;
+            }
+            released.add(settled.getHoldId());
+            Map<String, Integer> seatsByFlight = owed.computeIfAbsent(settled.getDate(), date -> new LinkedHashMap<>());
+            for (String flightId : settled.getFlightIdsAsList()) {
+                seatsByFlight.merge(flightId, settled.getSeats(), Integer::sum);
+            }
+        }
+        owed.forEach((date, seatsByFlight) -> seatsByFlight.forEach((flightId, seats) ->
+                inventoryRepository.releaseSeats(flightId, date, seats)));
+        return released;
+    }
+
+    @Override
+    public SeatHold findById(String holdId) {
+        latencyInjector.pause("findHold");
+        return copyOf(holds.get(holdId));
+    }
+
+    @Override
+    public List<SeatHold> findExpired(String expiryBucket, long now, int limit) {
+        latencyInjector.pause("findExpiredHolds");
+        return holds.values().stream()
+                .filter(hold -> expiryBucket.equals(hold.getExpiryBucket()) && hold.getExpiresAt() <= now)
+                .sorted(Comparator.comparing(SeatHold::getExpiresAt))
+                .limit(limit)
+                .map(InMemorySeatHoldRepository::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    // Returns the settled hold, or null when it was missing or no longer held
+    private SeatHold settle(String holdId, SeatHoldStatus settled, long purgeAt) {
+        SeatHold[] result = {null};
+        holds.computeIfPresent(holdId, (id, existing) -> {
+            if (!SeatHoldStatus.HELD.name().equals(existing.getStatus())) {
+                return existing;
+            }
+            SeatHold updated = copyOf(existing);
+            updated.setStatus(settled.name());
+            updated.setExpiryBucket(null);
+            updated.setPurgeAt(purgeAt);
+            result[0] = updated;
+            return updated;
+        });
+        return result[0];
+    }
+
+    static SeatHold copyOf(SeatHold hold) {
+        if (hold == null) {
+            return null;
+        }
+        SeatHold copy = new SeatHold();
+        copy.setHoldId(hold.getHoldId());
+        copy.setFlightIds(hold.getFlightIds());
+        copy.setDate(hold.getDate());
+        copy.setSeats(hold.getSeats());
+        copy.setStatus(hold.getStatus());
+        copy.setExpiresAt(hold.getExpiresAt());
+        copy.setExpiryBucket(hold.getExpiryBucket());
+        copy.setPurgeAt(hold.getPurgeAt());
+        return copy;
+    }
+}
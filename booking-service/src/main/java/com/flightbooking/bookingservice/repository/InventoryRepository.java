@@ -1,11 +1,18 @@
 package com.flightbooking.bookingservice.repository;
 
+import com.flightbooking.bookingservice.dto.ReservationResult;
 import com.flightbooking.bookingservice.model.Inventory;
 import java.util.List;
 
 public interface InventoryRepository {
     
     Inventory findByFlightIdAndDate(String flightId, String date);
+
+    /**
+     * Looks up every leg at once rather than one after another. The result keeps the
+     * order of {@code flightIds}; legs with no inventory record are returned as null.
+     */
+    List<Inventory> findByFlightIdsAndDate(List<String> flightIds, String date);
     
     List<Inventory> findByFlightId(String flightId);
     
@@ -20,4 +27,24 @@ public interface InventoryRepository {
     Inventory findById(String id);
     
     List<Inventory> findAll();
+
+    /**
+     * Atomically takes {@code seats} from the flight's inventory for {@code date} if at
+     * least that many are left, in a single conditional write.
+     */
+    ReservationResult reserveSeats(String flightId, String date, int seats);
+
+    /**
+     * Takes {@code seats} from every flight in {@code flightIds} for {@code date}, all or
+     * nothing. Returns one result per flight in the same order: all RESERVED, or no seats
+     * taken anywhere, with the legs that blocked the reservation marked INSUFFICIENT_SEATS
+     * or NOT_FOUND and the rest CANCELLED.
+     */
+    List<ReservationResult> reserveSeats(List<String> flightIds, String date, int seats);
+
+    /**
+     * Atomically returns {@code seats} to the flight's inventory for {@code date}.
+     * Returns false when there is no inventory record to return them to.
+     */
+    boolean releaseSeats(String flightId, String date, int seats);
 } 
\ No newline at end of file
@@ -0,0 +1,266 @@
+package com.flightbooking.bookingservice.repository;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether, and after how long, an inventory write that lost to a concurrent one
+ * is tried again, and counts those conflicts per flight-date.
+ *
+ * <p>The wait is drawn at random, so callers that collided do not retry in lockstep and
+ * collide again: with {@code booking.inventory.retry.backoff} set to {@code decorrelated}
+ * each wait falls between the base delay and three times the previous one, with
+ * {@code exponential} between zero and a doubling ceiling; both are capped at
+ * {@code max-delay-ms}. Besides {@code max-attempts} per write, each flight-date has a
+ * budget of {@code budget-per-key} retries per {@code budget-window-ms} on this
+ * instance; once it is spent, writes to it give up at their first conflict instead of
+ * piling more load onto the hot record.
+ *
+ * <p>A {@link Backoff} only decides; waiting is up to its caller, so a thread serving
+ * other writes can have the retry run later instead of sleeping through the delay. The
+ * totals are published as {@code inventory.write.*} meters.
+ */
+@Component
+public class InventoryRetries implements MeterBinder {
+
+    @Value("${booking.inventory.retry.max-attempts:3}")
+    private int maxAttempts = 3;
+
+    @Value("${booking.inventory.retry.backoff:decorrelated}")
+    private String backoff = "decorrelated";
+
+    @Value("${booking.inventory.retry.base-delay-ms:10}")
+    private long baseDelayMs = 10;
+
+    @Value("${booking.inventory.retry.max-delay-ms:200}")
+    private long maxDelayMs = 200;
+
+    @Value("${booking.inventory.retry.budget-per-key:50}")
+    private int budgetPerKey = 50;
+
+    @Value("${booking.inventory.retry.budget-window-ms:1000}")
+    private long budgetWindowMs = 1000;
+
+    // Flight-dates counted one by one; conflicts on any beyond these only reach the totals
+    @Value("${booking.inventory.retry.max-tracked-keys:10000}")
+    private int maxTrackedKeys = 10000;
+
+    private Clock clock = Clock.systemUTC();
+
+    private final Map<String, KeyStats> keys = new ConcurrentHashMap<>();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong givenUp = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    /** Retry state for one write, used by one thread at a time. */
+    public Backoff newBackoff() {
+        return new Backoff();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("inventory.write.conflicts", conflicts, AtomicLong::get)
+                .description("Inventory writes that lost to a concurrent write or were throttled")
+                .register(registry);
+        FunctionCounter.builder("inventory.write.retries", retries, AtomicLong::get)
+                .description("Inventory writes tried again after a conflict")
+                .register(registry);
+        FunctionCounter.builder("inventory.write.given.up", givenUp, AtomicLong::get)
+                .description("Inventory writes that failed after a conflict without another try")
+                .register(registry);
+        FunctionCounter.builder("inventory.write.budget.exhausted", budgetExhausted, AtomicLong::get)
+                .description("Inventory writes given up because a flight-date had spent its retry budget")
+                .register(registry);
+        Gauge.builder("inventory.write.tracked.keys", keys, Map::size)
+                .description("Flight-dates whose conflicts are counted one by one")
+                .register(registry);
+    }
+
+    /** Counts a conflict or throttle on {@code key} that is not going to be retried here. */
+    void recordConflict(String key) {
+        conflicts.incrementAndGet();
+        KeyStats stats = statsFor(key);
+        if (stats != null) {
+            stats.conflicts.incrementAndGet();
+        }
+    }
+
+    /**
+     * Totals since startup and the {@code limit} flight-dates with the most conflicts,
+     * most first, each with its conflicts, retries and writes given up.
+     */
+    public Map<String, Object> stats(int limit) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("conflicts", conflicts.get());
+        stats.put("retries", retries.get());
+        stats.put("givenUp", givenUp.get());
+        stats.put("budgetExhausted", budgetExhausted.get());
+        stats.put("trackedKeys", keys.size());
+
+        List<Map.Entry<String, KeyStats>> hottest = new ArrayList<>(keys.entrySet());
+        hottest.sort(Comparator.comparingLong((Map.Entry<String, KeyStats> entry) -> entry.getValue().conflicts.get()).reversed());
+        List<Map<String, Object>> hotKeys = new ArrayList<>();
+        for (Map.Entry<String, KeyStats> entry : hottest.subList(0, Math.min(Math.max(0, limit), hottest.size()))) {
+            Map<String, Object> key = new LinkedHashMap<>();
+            key.put("key", entry.getKey());
+            key.put("conflicts", entry.getValue().conflicts.get());
+            key.put("retries", entry.getValue().retries.get());
+            key.put("givenUp", entry.getValue().givenUp.get());
+            hotKeys.add(key);
+        }
+        stats.put("hotKeys", hotKeys);
+        return stats;
+    }
+
+    private KeyStats statsFor(String key) {
+        KeyStats stats = keys.get(key);
+        if (stats == null && keys.size() < maxTrackedKeys) {
+            stats = keys.computeIfAbsent(key, k -> new KeyStats());
+        }
+        return stats;
+    }
+
+    // Takes one retry from the budget of every key, or none if any of them has run out
+    private boolean spendBudget(List<KeyStats> contended, long now) {
+        if (budgetPerKey <= 0) {
+            return true;
+        }
+        long window = now / Math.max(1, budgetWindowMs);
+        for (int i = 0; i < contended.size(); i++) {
+            if (!contended.get(i).budget.take(window, budgetPerKey)) {
+                for (KeyStats taken : contended.subList(0, i)) {
+                    taken.budget.giveBack(window);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public final class Backoff {
+        private int attempts = 1;
+        private long previousDelayMs;
+
+        private long delayMs;
+
+        /**
+         * Counts a conflict on each of {@code contended}, the flight-dates whose writes
+         * lost, and draws the wait before the next attempt, see {@link #delayMs()}.
+         * Returns false when the write has had its attempts or one of the flight-dates
+         * has spent its budget.
+         */
+        public boolean retry(Collection<String> contended) {
+            List<KeyStats> tracked = new ArrayList<>();
+            for (String key : contended) {
+                recordConflict(key);
+                KeyStats stats = keys.get(key);
+                if (stats != null) {
+                    tracked.add(stats);
+                }
+            }
+            boolean exhausted = attempts >= maxAttempts;
+            boolean overBudget = !exhausted && !spendBudget(tracked, clock.millis());
+            if (exhausted || overBudget) {
+                givenUp.incrementAndGet();
+                if (overBudget) {
+                    budgetExhausted.incrementAndGet();
+                }
+                tracked.forEach(stats -> stats.givenUp.incrementAndGet());
+                return false;
+            }
+            retries.incrementAndGet();
+            tracked.forEach(stats -> stats.retries.incrementAndGet());
+            delayMs = nextDelayMs();
+            attempts++;
+            return true;
+        }
+
+        /** How long to wait before the attempt the last {@link #retry} allowed. */
+        public long delayMs() {
+            return delayMs;
+        }
+
+        /** Waits out {@link #delayMs()} on the calling thread. */
+        public void await() {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while retrying an inventory write", e);
+            }
+        }
+
+        long nextDelayMs() {
+            long base = Math.max(1, baseDelayMs);
+            long cap = Math.max(base, maxDelayMs);
+            long delay;
+            if ("exponential".equals(backoff)) {
+                long ceiling = Math.min(cap, base << Math.min(attempts - 1, 20));
+                delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+            } else {
+                long upper = Math.max(base, previousDelayMs * 3);
+                delay = Math.min(cap, base + ThreadLocalRandom.current().nextLong(upper - base + 1));
+            }
+            previousDelayMs = delay;
+            return delay;
+        }
+    }
+
+    private static final class KeyStats {
+        final AtomicLong conflicts = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong givenUp = new AtomicLong();
+        final Budget budget = new Budget();
+    }
+
+    /**
+     * Retries spent on one key in the current window, held with the window in a single
+     * long so that checking and spending is one compare-and-set.
+     */
+    private static final class Budget {
+        private static final int SPENT_BITS = 24;
+        private static final long SPENT_MASK = (1L << SPENT_BITS) - 1;
+        // Windows only need telling apart from the one before, so their index may wrap
+        private static final long WINDOW_MASK = (1L << (Long.SIZE - SPENT_BITS)) - 1;
+
+        private final AtomicLong state = new AtomicLong();
+
+        boolean take(long window, int limit) {
+            long tag = window & WINDOW_MASK;
+            long current;
+            long spent;
+            do {
+                current = state.get();
+                spent = (current >>> SPENT_BITS) == tag ? current & SPENT_MASK : 0;
+                if (spent >= Math.min(limit, SPENT_MASK)) {
+                    return false;
+                }
+            } while (!state.compareAndSet(current, tag << SPENT_BITS | (spent + 1)));
+            return true;
+        }
+
+        // Returns a retry taken in window, unless the window has turned since
+        void giveBack(long window) {
+            long tag = window & WINDOW_MASK;
+            state.updateAndGet(current -> (current >>> SPENT_BITS) == tag && (current & SPENT_MASK) > 0
+                    ? current - 1 : current);
+        }
+    }
+}
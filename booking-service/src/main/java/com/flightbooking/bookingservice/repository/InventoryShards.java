@@ -0,0 +1,333 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.Update;
+import com.flightbooking.bookingservice.model.Inventory;
+import com.flightbooking.bookingservice.model.InventoryShard;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Splits the seat counter of hot flight-dates across {@link InventoryShard} items. A
+ * record is split up front when its flight is listed in
+ * {@code booking.inventory.sharding.flights} as {@code flightId:shards}, and doubled,
+ * up to {@code max-shards}, when its writes hit more than {@code contention-threshold}
+ * transaction conflicts or throttles within {@code contention-window-ms}.
+ *
+ * <p>Shard counts are cached per record. Another instance may split a record after this
+ * one cached it; reservations then keep going to shard 0 until it runs short, and the
+ * failed write's old image, which carries the new count, corrects the cache.
+ */
+@Component
+@Profile("!in-memory")
+public class InventoryShards {
+
+    static final String INVENTORY_TABLE_NAME = Inventory.class.getAnnotation(DynamoDBTable.class).tableName();
+    static final String SHARD_TABLE_NAME = InventoryShard.class.getAnnotation(DynamoDBTable.class).tableName();
+
+    private static final int MAX_BATCH_GET_KEYS = 100;
+
+    @Autowired
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Value("${booking.inventory.sharding.enabled:true}")
+    private boolean enabled = true;
+
+    // Comma separated flightId:shards pairs
+    @Value("${booking.inventory.sharding.flights:}")
+    private String configuredFlights = "";
+
+    @Value("${booking.inventory.sharding.max-shards:8}")
+    private int maxShards = 8;
+
+    // random spreads every caller over all shards; sticky keeps each thread on one of them
+    @Value("${booking.inventory.sharding.selection:random}")
+    private String selection = "random";
+
+    @Value("${booking.inventory.sharding.contention-threshold:20}")
+    private int contentionThreshold = 20;
+
+    @Value("${booking.inventory.sharding.contention-window-ms:10000}")
+    private long contentionWindowMs = 10000;
+
+    private Clock clock = Clock.systemUTC();
+
+    private final Map<String, Integer> shardCounts = new ConcurrentHashMap<>();
+    private final Map<String, Contention> contention = new ConcurrentHashMap<>();
+    private volatile Map<String, Integer> shardsByFlight;
+
+    /** Shards the record is known to be split into; 1 when it is not split. */
+    int shardCount(String inventoryId) {
+        return shardCounts.getOrDefault(inventoryId, 1);
+    }
+
+    void observe(Inventory inventory) {
+        shardCounts.put(inventory.getInventoryId(), inventory.shardCountOrOne());
+    }
+
+    // From the old image of a record whose write failed its condition
+    void observe(String inventoryId, Map<String, AttributeValue> item) {
+        AttributeValue shardCount = item.get("shardCount");
+        shardCounts.put(inventoryId, shardCount != null && shardCount.getN() != null
+                ? Math.max(1, Integer.parseInt(shardCount.getN())) : 1);
+    }
+
+    /** Rereads the record's shard count; returns 1 when it is not split or has gone. */
+    int refresh(String inventoryId) {
+        Map<String, AttributeValue> item = getItem(INVENTORY_TABLE_NAME, baseKey(inventoryId));
+        if (item == null) {
+            shardCounts.remove(inventoryId);
+            return 1;
+        }
+        observe(inventoryId, item);
+        return shardCount(inventoryId);
+    }
+
+    /** The shard a reservation tries first. */
+    int pickShard(String inventoryId) {
+        int shards = shardCount(inventoryId);
+        if (shards <= 1) {
+            return 0;
+        }
+        if ("sticky".equalsIgnoreCase(selection)) {
+            return Math.floorMod(31 * Long.hashCode(Thread.currentThread().getId()) + inventoryId.hashCode(), shards);
+        }
+        return ThreadLocalRandom.current().nextInt(shards);
+    }
+
+    String tableFor(int shard) {
+        return shard == 0 ? INVENTORY_TABLE_NAME : SHARD_TABLE_NAME;
+    }
+
+    Map<String, AttributeValue> keyFor(String inventoryId, int shard) {
+        return shard == 0
+                ? baseKey(inventoryId)
+                : Collections.singletonMap("shardId", new AttributeValue().withS(InventoryShard.idFor(inventoryId, shard)));
+    }
+
+    /**
+     * Seats left on each shard, read consistently; shard 0 is the record itself and a
+     * shard item not written yet reads as null. Returns null when the record has gone.
+     */
+    Integer[] seatsByShard(String inventoryId) {
+        Map<String, AttributeValue> base = getItem(INVENTORY_TABLE_NAME, baseKey(inventoryId));
+        if (base == null) {
+            return null;
+        }
+        observe(inventoryId, base);
+        Integer[] seats = new Integer[shardCount(inventoryId)];
+        seats[0] = seatsOf(base);
+        for (int shard = 1; shard < seats.length; shard++) {
+            Map<String, AttributeValue> item = getItem(SHARD_TABLE_NAME, keyFor(inventoryId, shard));
+            seats[shard] = item != null ? seatsOf(item) : null;
+        }
+        return seats;
+    }
+
+    /** Seats left across shards 1 and up of a record split into {@code shards}. */
+    int seatsOnShards(String inventoryId, int shards) {
+        int seats = 0;
+        for (int shard = 1; shard < shards; shard++) {
+            Map<String, AttributeValue> item = amazonDynamoDB.getItem(new GetItemRequest()
+                    .withTableName(SHARD_TABLE_NAME)
+                    .withKey(keyFor(inventoryId, shard))).getItem();
+            if (item != null && !item.isEmpty()) {
+                seats += seatsOf(item);
+            }
+        }
+        return seats;
+    }
+
+    /**
+     * Seats left across shards 1 and up of several records, keyed by inventory id, in one
+     * batched read instead of a read per shard.
+     */
+    Map<String, Integer> seatsOnShards(Map<String, Integer> shardsByInventoryId) {
+        Map<String, Integer> seats = new HashMap<>();
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        shardsByInventoryId.forEach((inventoryId, shards) -> {
+            seats.put(inventoryId, 0);
+            for (int shard = 1; shard < shards; shard++) {
+                keys.add(keyFor(inventoryId, shard));
+            }
+        });
+        for (int from = 0; from < keys.size(); from += MAX_BATCH_GET_KEYS) {
+            Map<String, KeysAndAttributes> request = Collections.singletonMap(SHARD_TABLE_NAME,
+                    new KeysAndAttributes().withKeys(keys.subList(from, Math.min(keys.size(), from + MAX_BATCH_GET_KEYS))));
+            // Keys left unread under throttling come back to be asked for again
+            while (request != null && !request.isEmpty()) {
+                BatchGetItemResult result = amazonDynamoDB.batchGetItem(new BatchGetItemRequest().withRequestItems(request));
+                for (Map<String, AttributeValue> item : result.getResponses().getOrDefault(SHARD_TABLE_NAME, Collections.emptyList())) {
+                    AttributeValue inventoryId = item.get("inventoryId");
+                    if (inventoryId != null && seats.containsKey(inventoryId.getS())) {
+                        seats.merge(inventoryId.getS(), seatsOf(item), Integer::sum);
+                    }
+                }
+                request = result.getUnprocessedKeys();
+            }
+        }
+        return seats;
+    }
+
+    /** Splits the record up to the shard count configured for its flight, if it has fewer. */
+    void ensureConfigured(String flightId, String inventoryId) {
+        Integer configured = shardsByFlight().get(flightId);
+        if (enabled && configured != null && Math.min(configured, maxShards) > shardCount(inventoryId)) {
+            split(inventoryId, configured);
+        }
+    }
+
+    /** Counts a conflict or throttle on the record, doubling its shards past the threshold. */
+    void recordContention(String inventoryId) {
+        if (!enabled || contentionThreshold <= 0) {
+            return;
+        }
+        long now = clock.millis();
+        Contention counter = contention.computeIfAbsent(inventoryId, id -> new Contention());
+        boolean crossed;
+        synchronized (counter) {
+            if (now - counter.windowStart > contentionWindowMs) {
+                counter.windowStart = now;
+                counter.events = 0;
+            }
+            crossed = ++counter.events == contentionThreshold;
+        }
+        if (crossed) {
+            split(inventoryId, Math.max(2, shardCount(inventoryId) * 2));
+        }
+    }
+
+    /**
+     * Grows the record to {@code target} shards, moving an even share of shard 0's seats
+     * to each new shard in one transaction. Returns false when nothing changed, because
+     * the record already had enough shards or changed while being split. Never throws.
+     */
+    boolean split(String inventoryId, int target) {
+        if (!enabled) {
+            return false;
+        }
+        target = Math.min(target, maxShards);
+        try {
+            Map<String, AttributeValue> base = getItem(INVENTORY_TABLE_NAME, baseKey(inventoryId));
+            if (base == null) {
+                return false;
+            }
+            observe(inventoryId, base);
+            int current = shardCount(inventoryId);
+            if (current >= target) {
+                return false;
+            }
+            int seats = seatsOf(base);
+            int share = Math.max(0, seats) / target;
+            int moved = share * (target - current);
+
+            Map<String, AttributeValue> values = new HashMap<>();
+            values.put(":target", new AttributeValue().withN(String.valueOf(target)));
+            values.put(":current", new AttributeValue().withN(String.valueOf(current)));
+            values.put(":moved", new AttributeValue().withN(String.valueOf(moved)));
+            values.put(":taken", new AttributeValue().withN(String.valueOf(-moved)));
+            values.put(":one", new AttributeValue().withN("1"));
+
+            List<TransactWriteItem> items = new ArrayList<>();
+            items.add(new TransactWriteItem().withUpdate(new Update()
+                    .withTableName(INVENTORY_TABLE_NAME)
+                    .withKey(baseKey(inventoryId))
+                    .withUpdateExpression("SET shardCount = :target ADD numberOfSeatsLeft :taken, version :one")
+                    .withConditionExpression("numberOfSeatsLeft >= :moved AND "
+                            + "(attribute_not_exists(shardCount) OR shardCount = :current)")
+                    .withExpressionAttributeValues(values)));
+            for (int shard = current; shard < target; shard++) {
+                Map<String, AttributeValue> shardValues = new HashMap<>();
+                shardValues.put(":inventoryId", new AttributeValue().withS(inventoryId));
+                shardValues.put(":share", new AttributeValue().withN(String.valueOf(share)));
+                shardValues.put(":one", new AttributeValue().withN("1"));
+                // ADD rather than a put, so seats left on a shard by an earlier split are kept
+                items.add(new TransactWriteItem().withUpdate(new Update()
+                        .withTableName(SHARD_TABLE_NAME)
+                        .withKey(keyFor(inventoryId, shard))
+                        .withUpdateExpression("SET inventoryId = :inventoryId ADD numberOfSeatsLeft :share, version :one")
+                        .withExpressionAttributeValues(shardValues)));
+            }
+
+            amazonDynamoDB.transactWriteItems(new TransactWriteItemsRequest().withTransactItems(items));
+            shardCounts.put(inventoryId, target);
+            System.err.println("Split inventory " + inventoryId + " from " + current + " into " + target + " shards");
+            return true;
+        } catch (TransactionCanceledException e) {
+            // Seats or shards changed since the read; the next trigger tries again
+            return false;
+        } catch (Exception e) {
+            System.err.println("Error splitting inventory " + inventoryId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Map<String, Integer> shardsByFlight() {
+        Map<String, Integer> parsed = shardsByFlight;
+        if (parsed == null) {
+            parsed = new HashMap<>();
+            for (String entry : configuredFlights.split(",")) {
+                String[] parts = entry.trim().split(":");
+                if (parts.length == 2 && !parts[0].trim().isEmpty()) {
+                    try {
+                        parsed.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+                    } catch (NumberFormatException e) {
+                        System.err.println("Ignoring inventory sharding entry: " + entry);
+                    }
+                }
+            }
+            shardsByFlight = parsed;
+        }
+        return parsed;
+    }
+
+    private Map<String, AttributeValue> getItem(String table, Map<String, AttributeValue> key) {
+        Map<String, AttributeValue> item = amazonDynamoDB.getItem(new GetItemRequest()
+                .withTableName(table)
+                .withKey(key)
+                .withConsistentRead(true)).getItem();
+        return item == null || item.isEmpty() ? null : item;
+    }
+
+    private static Map<String, AttributeValue> baseKey(String inventoryId) {
+        return Collections.singletonMap("inventoryId", new AttributeValue().withS(inventoryId));
+    }
+
+    // Counters are numbers, or strings on records that predate in-place updates
+    static int seatsOf(Map<String, AttributeValue> item) {
+        AttributeValue seats = item.get("numberOfSeatsLeft");
+        if (seats == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(seats.getN() != null ? seats.getN() : seats.getS());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class Contention {
+        long windowStart;
+        int events;
+    }
+}
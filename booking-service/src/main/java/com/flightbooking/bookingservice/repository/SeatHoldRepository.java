@@ -0,0 +1,53 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.model.SeatHold;
+import java.util.List;
+
+public interface SeatHoldRepository {
+
+    /**
+     * Takes the hold's seats from every leg and stores the hold, all or nothing. Results
+     * follow {@link InventoryRepository#reserveSeats(List, String, int)}. Throws
+     * {@link com.flightbooking.bookingservice.exception.InventoryConflictException}, having
+     * written nothing, when a concurrent write got in the way; the caller decides whether
+     * to try again.
+     */
+    List<ReservationResult> reserve(SeatHold hold);
+
+    /**
+     * Takes the seats of every hold in {@code holds}, each of which holds only
+     * {@code flightId} on {@code date}, as one decrement and stores every hold, all or
+     * nothing. Returns the leg's result for the combined seat count. Conflicts are
+     * thrown as by {@link #reserve(SeatHold)}.
+     */
+    ReservationResult reserveAll(String flightId, String date, List<SeatHold> holds);
+
+    /**
+     * Marks a held hold confirmed, keeping its seats taken. Returns false when the hold
+     * is missing or was already settled, for instance released on expiry.
+     */
+    boolean confirm(String holdId, long purgeAt);
+
+    /**
+     * Marks a held hold released and returns its seats in the same write. Returns false,
+     * returning nothing, when the hold was already settled.
+     */
+    boolean release(SeatHold hold, long purgeAt);
+
+    /**
+     * Releases the holds among {@code holds} that are still held and returns their
+     * seats. Holds are written in batches, each with a single seat increment per
+     * flight-date for the whole batch. Holds already settled are skipped. Returns the ids
+     * of the holds released.
+     */
+    List<String> releaseAll(List<SeatHold> holds, long purgeAt);
+
+    SeatHold findById(String holdId);
+
+    /**
+     * Up to {@code limit} live holds in {@code expiryBucket} that expired at or before
+     * {@code now}, soonest first.
+     */
+    List<SeatHold> findExpired(String expiryBucket, long now, int limit);
+}
@@ -0,0 +1,211 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.model.Inventory;
+import com.flightbooking.bookingservice.repository.InventoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Seats left per flight-date as this instance last saw them. Reservations write what they
+ * learn straight through, and {@link #seatsLeft} reads through to the inventory table on
+ * a miss, so "seats left" hints are served from memory.
+ *
+ * <p>Nothing here decides a booking: the seat hold's own conditional write does, so an
+ * entry never lets seats be oversold. Entries only turn away bookings that cannot fit
+ * within {@code booking.availability.fast-reject-ttl-ms}, and are shown for up to
+ * {@code booking.availability.display-ttl-ms}, so seats taken or handed back on other
+ * instances show up within that time.
+ *
+ * <p>Each entry carries the version of the inventory record it was read from, and is only
+ * replaced by one at least as new, so a slow read cannot put back a count a reservation
+ * has since moved past. Seats handed back here drop the entry, along with whatever reads
+ * were under way at the time.
+ */
+@Component
+public class AvailabilityCache {
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Value("${booking.availability.fast-reject-enabled:true}")
+    private boolean fastRejectEnabled = true;
+
+    @Value("${booking.availability.fast-reject-ttl-ms:2000}")
+    private long fastRejectTtlMs = 2000;
+
+    @Value("${booking.availability.display-ttl-ms:10000}")
+    private long displayTtlMs = 10000;
+
+    @Value("${booking.availability.max-entries:10000}")
+    private int maxEntries = 10000;
+
+    private Clock clock = Clock.systemUTC();
+
+    // flightId#date -> seats left, or most seats that may be left
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Bumped on every invalidation; a read that saw it change keeps its result to itself
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * True when a leg was seen with fewer than {@code seats} left within the TTL. False
+     * says nothing; the reservation still has to check.
+     */
+    public boolean isKnownShort(List<String> flightIds, String date, int seats) {
+        if (!fastRejectEnabled) {
+            return false;
+        }
+        long now = clock.millis();
+        for (String flightId : flightIds) {
+            Entry entry = entries.get(key(flightId, date));
+            if (entry != null && entry.storedAt + fastRejectTtlMs > now && entry.seatsLeft < seats) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Seats left on each leg, for display only: a count may be up to
+     * {@code booking.availability.display-ttl-ms} old, or older when the inventory table
+     * cannot be read. Legs missing from memory are read in one batch; legs with no
+     * inventory record are left out.
+     */
+    public Map<String, Integer> seatsLeft(List<String> flightIds, String date) {
+        long now = clock.millis();
+        Map<String, Integer> seats = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String flightId : new LinkedHashSet<>(flightIds)) {
+            Entry entry = entries.get(key(flightId, date));
+            if (entry != null && entry.isCount() && entry.storedAt + displayTtlMs > now) {
+                seats.put(flightId, entry.seatsLeft);
+            } else {
+                misses.add(flightId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return seats;
+        }
+
+        long seen = invalidations.get();
+        List<Inventory> loaded;
+        try {
+            loaded = inventoryRepository.findByFlightIdsAndDate(misses, date);
+        } catch (Exception e) {
+            System.err.println("Error reading seats left for " + date + ", showing last known counts: " + e.getMessage());
+            for (String flightId : misses) {
+                Entry entry = entries.get(key(flightId, date));
+                if (entry != null && entry.isCount()) {
+                    seats.put(flightId, entry.seatsLeft);
+                }
+            }
+            return seats;
+        }
+        long loadedAt = clock.millis();
+        for (int i = 0; i < misses.size(); i++) {
+            Inventory inventory = loaded.get(i);
+            if (inventory == null) {
+                continue;
+            }
+            seats.put(misses.get(i), inventory.getNumberOfSeatsLeftAsInt());
+            if (invalidations.get() == seen) {
+                store(key(misses.get(i), date),
+                        new Entry(inventory.getNumberOfSeatsLeftAsInt(), inventory.getVersionAsLong(), loadedAt));
+            }
+        }
+        return seats;
+    }
+
+    /** Records what a reservation of {@code seats} per leg learned about each leg. */
+    public void record(String date, int seats, List<ReservationResult> results) {
+        long now = clock.millis();
+        for (ReservationResult result : results) {
+            switch (result.getStatus()) {
+                case RESERVED:
+                    if (result.getSeatsLeft() != null) {
+                        store(key(result.getFlightId(), date), new Entry(result.getSeatsLeft(), result.getVersion(), now));
+                    } else {
+                        // Seats were taken but the count was not reported
+                        invalidate(Collections.singletonList(result.getFlightId()), date);
+                    }
+                    break;
+                case INSUFFICIENT_SEATS:
+                    // Only known to be fewer than were asked for
+                    store(key(result.getFlightId(), date), new Entry(seats - 1, null, now));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /** Forgets the legs of seats handed back, which may now fit bookings turned away before. */
+    public void invalidate(List<String> flightIds, String date) {
+        invalidations.incrementAndGet();
+        for (String flightId : flightIds) {
+            entries.remove(key(flightId, date));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${booking.availability.fast-reject-ttl-ms:2000}")
+    public void evictExpired() {
+        long expiredBefore = clock.millis() - Math.max(fastRejectTtlMs, displayTtlMs);
+        entries.values().removeIf(entry -> entry.storedAt <= expiredBefore);
+    }
+
+    // Entries held
+    int size() {
+        return entries.size();
+    }
+
+    private void store(String key, Entry entry) {
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            evictExpired();
+            if (entries.size() >= maxEntries) {
+                // Full of live entries; this leg is read from the table until some expire
+                return;
+            }
+        }
+        entries.merge(key, entry, AvailabilityCache::newer);
+    }
+
+    private static Entry newer(Entry current, Entry offered) {
+        if (current.version != null && offered.version != null && offered.version < current.version) {
+            return current;
+        }
+        return offered;
+    }
+
+    private static String key(String flightId, String date) {
+        return flightId + "#" + date;
+    }
+
+    private static final class Entry {
+        final int seatsLeft;
+        final Long version;      // null when seatsLeft is only an upper bound
+        final long storedAt;
+
+        Entry(int seatsLeft, Long version, long storedAt) {
+            this.seatsLeft = seatsLeft;
+            this.version = version;
+            this.storedAt = storedAt;
+        }
+
+        boolean isCount() {
+            return version != null;
+        }
+    }
+}
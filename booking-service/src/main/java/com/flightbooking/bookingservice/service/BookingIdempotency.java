@@ -0,0 +1,238 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.dto.BookingRequest;
+import com.flightbooking.bookingservice.dto.BookingResponse;
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.exception.BookingRejectedException;
+import com.flightbooking.bookingservice.exception.IdempotencyConflictException;
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.bookingservice.model.IdempotencyRecord;
+import com.flightbooking.bookingservice.repository.IdempotencyRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Books each request carrying an {@code Idempotency-Key} once. Repeats of a request, such
+ * as client retries after a timeout, get the first response back without touching seats.
+ *
+ * <p>Keys are looked up first in a process-local map, where repeats of a request still in
+ * flight on this instance wait for its outcome, and then in the {@code idempotency_keys}
+ * table, which a request claims with a conditional put before it takes any seats. Entries
+ * live in the map for {@code booking.idempotency.cache-ttl-ms} and in the table for
+ * {@code ttl-seconds}. A booking turned away at capacity gives its key back, so the retry
+ * the 503 asks for goes through.
+ */
+@Service
+public class BookingIdempotency {
+
+    @Autowired
+    private IdempotencyRepository idempotencyRepository;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Value("${booking.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds = 86400;
+
+    @Value("${booking.idempotency.cache-ttl-ms:600000}")
+    private long cacheTtlMs = 600000;
+
+    // Keys kept in the map at most; beyond that repeats are answered from the table
+    @Value("${booking.idempotency.cache-size:100000}")
+    private int cacheSize = 100000;
+
+    // How long a claim keeps other instances off a request before they may take it over
+    @Value("${booking.idempotency.lock-ms:30000}")
+    private long lockMs = 30000;
+
+    // How long a repeat waits for the first request in flight on this instance
+    @Value("${booking.idempotency.wait-ms:10000}")
+    private long waitMs = 10000;
+
+    private Clock clock = Clock.systemUTC();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public BookingResponse bookFlight(String idempotencyKey, BookingRequest request) {
+        Objects.requireNonNull(request, "Booking request must not be null");
+        String key = request.getUserId() + "#" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+        long now = clock.millis();
+
+        Entry fresh = new Entry(fingerprint, now + cacheTtlMs);
+        Entry entry = entries.size() < cacheSize
+                ? entries.compute(key, (k, existing) -> existing != null && existing.expiresAt > now ? existing : fresh)
+                : fresh;
+        if (entry != fresh) {
+            checkFingerprint(entry.fingerprint, fingerprint);
+            return await(entry);
+        }
+
+        try {
+            BookingResponse response = bookOnce(key, fingerprint, request);
+            entry.response.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            entries.remove(key, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${booking.idempotency.cache-ttl-ms:600000}")
+    public void evictExpired() {
+        long now = clock.millis();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+    }
+
+    private BookingResponse bookOnce(String key, String fingerprint, BookingRequest request) {
+        long now = clock.millis();
+        IdempotencyRecord record = new IdempotencyRecord(key, fingerprint, UUID.randomUUID().toString(),
+                now + lockMs, now / 1000 + ttlSeconds);
+
+        if (!idempotencyRepository.claim(record, now / 1000)) {
+            IdempotencyRecord existing = idempotencyRepository.findById(key);
+            if (existing == null) {
+                // Purged between the claim and the read
+                throw new IdempotencyConflictException("Request with this Idempotency-Key is being processed", true);
+            }
+            checkFingerprint(existing.getFingerprint(), fingerprint);
+            if (existing.isCompleted()) {
+                return existing.toResponse();
+            }
+            if (existing.getLockedUntil() > now || !idempotencyRepository.takeOver(existing, now + lockMs)) {
+                throw new IdempotencyConflictException("Request with this Idempotency-Key is being processed", true);
+            }
+            // The first attempt died; it may have got as far as saving the booking
+            record = existing;
+            Booking booking = bookingService.getBookingDetails(record.getBookingId()).join();
+            if (booking != null) {
+                return complete(record, new BookingResponse(booking.getBookingId(),
+                        BookingStatus.valueOf(booking.getStatus()),
+                        "Booking initiated successfully. Use booking ID to check status.",
+                        booking.getCostAsDouble()));
+            }
+        }
+
+        BookingResponse response;
+        try {
+            response = bookingService.bookFlight(request, record.getBookingId());
+        } catch (BookingRejectedException e) {
+            release(key);
+            throw e;
+        }
+        return complete(record, response);
+    }
+
+    private BookingResponse complete(IdempotencyRecord record, BookingResponse response) {
+        record.complete(response);
+        try {
+            idempotencyRepository.complete(record);
+        } catch (Exception e) {
+            // The claim lapses and a later repeat takes over, finding the booking
+            System.err.println("Error storing response for " + record.getIdempotencyKey() + ": " + e.getMessage());
+        }
+        return response;
+    }
+
+    private void release(String key) {
+        try {
+            idempotencyRepository.deleteById(key);
+        } catch (Exception e) {
+            // Retries are held off until the claim lapses
+            System.err.println("Error releasing idempotency key " + key + ": " + e.getMessage());
+        }
+    }
+
+    private BookingResponse await(Entry entry) {
+        try {
+            return entry.response.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyConflictException("Request with this Idempotency-Key is being processed", true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyConflictException("Request with this Idempotency-Key is being processed", true);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void checkFingerprint(String expected, String actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new IdempotencyConflictException("Idempotency-Key was already used for a different booking request", false);
+        }
+    }
+
+    /**
+     * SHA-256 over every field that decides the booking, each length-prefixed so that no
+     * two different requests encode the same bytes. A collision would answer a different
+     * request with the first one's booking instead of a 409.
+     */
+    static String fingerprint(BookingRequest request) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            writeString(out, request.getUserId());
+            List<String> flightIds = request.getFlightIds();
+            out.writeInt(flightIds != null ? flightIds.size() : -1);
+            if (flightIds != null) {
+                for (String flightId : flightIds) {
+                    writeString(out, flightId);
+                }
+            }
+            writeString(out, request.getDate());
+            writeString(out, request.getSource());
+            writeString(out, request.getDestination());
+            out.writeInt(request.getNumberOfPassengers());
+            out.flush();
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            // Neither happens for an in-memory stream and a digest every JVM provides
+            throw new IllegalStateException("Cannot fingerprint booking request", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static final class Entry {
+        final String fingerprint;
+        final long expiresAt;
+        final CompletableFuture<BookingResponse> response = new CompletableFuture<>();
+
+        Entry(String fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -2,20 +2,38 @@ package com.flightbooking.bookingservice.service;
 
 import com.flightbooking.bookingservice.client.PaymentServiceClient;
 import com.flightbooking.bookingservice.client.UserServiceClient;
+import com.flightbooking.bookingservice.dto.BookingPage;
 import com.flightbooking.bookingservice.dto.BookingRequest;
 import com.flightbooking.bookingservice.dto.BookingResponse;
+import com.flightbooking.bookingservice.dto.ReservationResult;
 import com.flightbooking.bookingservice.enums.BookingStatus;
-import com.flightbooking.bookingservice.exception.OptimisticLockingException;
+import com.flightbooking.bookingservice.enums.SagaState;
+import com.flightbooking.bookingservice.exception.BookingRejectedException;
 import com.flightbooking.bookingservice.model.Booking;
-import com.flightbooking.bookingservice.model.Inventory;
+import com.flightbooking.bookingservice.model.SeatHold;
+import com.flightbooking.bookingservice.repository.AsyncBookingRepository;
 import com.flightbooking.bookingservice.repository.BookingRepository;
 import com.flightbooking.bookingservice.repository.InventoryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class BookingService {
@@ -23,58 +41,116 @@ public class BookingService {
     @Autowired
     private BookingRepository bookingRepository;
 
+    @Autowired
+    private AsyncBookingRepository asyncBookingRepository;
+
     @Autowired
     private InventoryRepository inventoryRepository;
 
+    @Autowired
+    private SeatHoldService seatHoldService;
+
     @Autowired
     private PaymentServiceClient paymentServiceClient;
 
     @Autowired
     private UserServiceClient userServiceClient;
 
-    private static final int MAX_RETRIES = 3;
-    private static final int RETRY_DELAY_MS = 100;
+    @Autowired
+    private PaymentExecutor paymentExecutor;
+
+    @Autowired
+    private BookingStatusNotifier statusNotifier;
+
+    @Autowired
+    private FareCatalog fareCatalog;
+
+    @Autowired
+    private AvailabilityCache availabilityCache;
+
+    // How long a claimed payment is left to its worker before another one may take it over
+    @Value("${booking.outbox.lease-ms:60000}")
+    private long paymentLeaseMs = 60000;
+
+    // Claims after which a payment that never settled is given up and the booking failed
+    @Value("${booking.outbox.max-attempts:5}")
+    private int maxPaymentAttempts = 5;
+
+    // Most bookings a single bulk booking request may make
+    @Value("${booking.bulk.max-size:100}")
+    private int maxBulkSize = 100;
+
+    @Value("${booking.history.max-page-size:100}")
+    private int maxHistoryPageSize = 100;
+
+    // Confirmed bookings read, and cancelled together, at a time when a flight is cancelled
+    @Value("${booking.cancellation.batch-size:100}")
+    private int cancellationBatchSize = 100;
+
+    private Clock clock = Clock.systemUTC();
+
+    // Tells this instance's claims apart from those of other instances
+    private final String instanceId = UUID.randomUUID().toString();
 
     public BookingResponse bookFlight(BookingRequest request) {
+        return bookFlight(request, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Books under a given id. Seat holds share the booking's id and are written only if
+     * none exists, so a second attempt under the same id never takes seats twice.
+     */
+    public BookingResponse bookFlight(BookingRequest request, String bookingId) {
         System.err.println("=== BOOKING SERVICE ENTRY ===");
         System.err.println("Request received: " + request);
+        Objects.requireNonNull(request, "Booking request must not be null");
+        // Turn the booking away before taking seats if its payment could not be started
+        if (!paymentExecutor.hasCapacity()) {
+            throw new BookingRejectedException("Booking service is at capacity, please retry shortly");
+        }
         
+        // The booking id doubles as the id of the booking's seat hold
+        boolean seatsHeld = false;
         try {
-            System.err.println("About to check inventory...");
-            // 1. Check inventory first
-            if (!checkInventory(request.getFlightIds(), request.getDate(), request.getNumberOfPassengers())) {
-                System.err.println("Inventory check failed - insufficient seats");
+            // 0. Price the booking from the local fare catalog before any seats are taken
+            Long totalCents = fareCatalog.quote(request.getFlightIds(), request.getNumberOfPassengers());
+            if (totalCents == null) {
+                System.err.println("No fare for one of flights " + request.getFlightIds());
+                return new BookingResponse(null, BookingStatus.FAILED, "Fare not available for the requested flights", 0.0);
+            }
+
+            // 1. Turn away bookings for which no seats can be held, without a store read;
+            //    otherwise availability is checked only by the hold's own conditional write
+            int passengers = request.getNumberOfPassengers();
+            if (passengers <= 0 || availabilityCache.isKnownShort(request.getFlightIds(), request.getDate(), passengers)) {
+                System.err.println("Insufficient seats known for flights " + request.getFlightIds());
                 return new BookingResponse(null, BookingStatus.FAILED, "Insufficient seats available", 0.0);
             }
-            System.err.println("Inventory check passed");
 
             System.err.println("About to lock inventory...");
-            // 2. Decrease available seats and put a lock using optimistic locking
-            lockInventoryOptimistic(request.getFlightIds(), request.getDate(), request.getNumberOfPassengers());
+            // 2. Hold the seats until payment settles, checking and taking them in one write
+            if (!request.getFlightIds().isEmpty()) {
+                if (!reserveInventory(bookingId, request.getFlightIds(), request.getDate(), passengers)) {
+                    System.err.println("Seat hold refused - insufficient seats");
+                    return new BookingResponse(null, BookingStatus.FAILED, "Insufficient seats available", 0.0);
+                }
+                seatsHeld = true;
+            }
             System.err.println("Inventory locked successfully");
 
             System.err.println("About to create booking...");
-            // 3. Create booking ID with PROCESSING status
-            String bookingId = UUID.randomUUID().toString();
-            double totalCost = calculateTotalCost(request.getFlightIds(), request.getNumberOfPassengers());
-            
-            Booking booking = new Booking();
-            booking.setBookingId(bookingId);
-            booking.setUserId(request.getUserId());
-            booking.setFlightIdsAsList(request.getFlightIds());
-            booking.setDate(request.getDate());
-            booking.setSource(request.getSource());
-            booking.setDestination(request.getDestination());
-            booking.setStatus(BookingStatus.PROCESSING.name());
-            booking.setCostAsDouble(totalCost);
+            // 3. Create booking with PROCESSING status, its payment task queued in the same write
+            double totalCost = FareCatalog.toAmount(totalCents);
+            Booking booking = newBooking(request, bookingId, totalCost, clock.millis());
             
             System.err.println("About to save booking to repository...");
             bookingRepository.save(booking);
             System.err.println("Booking saved successfully");
+            // From here on the payment task is durable and owns the held seats
+            seatsHeld = false;
 
-            // 4. Start async payment processing
-            CompletableFuture.runAsync(() -> 
-                processPaymentAsync(bookingId, totalCost, request.getFlightIds(), request.getDate(), request.getNumberOfPassengers()));
+            // 4. Start the payment right away on the bounded payment executor
+            dispatchPayment(bookingId);
 
             return new BookingResponse(bookingId, BookingStatus.PROCESSING, 
                 "Booking initiated successfully. Use booking ID to check status.", totalCost);
@@ -88,197 +164,497 @@ public class BookingService {
             e.printStackTrace(System.err);
             System.err.println("=== END ERROR DETAILS ===");
             
-            // Release inventory lock in case of any error
-            releaseInventoryLock(request.getFlightIds(), request.getDate(), request.getNumberOfPassengers());
+            // Return the held seats now rather than when the hold expires
+            if (seatsHeld) {
+                releaseInventoryLock(bookingId);
+            }
             return new BookingResponse(null, BookingStatus.FAILED, "Error processing booking: " + e.getMessage(), 0.0);
         }
     }
 
-    private void lockInventoryOptimistic(List<String> flightIds, String date, int passengers) {
-        for (String flightId : flightIds) {
-            boolean locked = false;
-            int retries = 0;
-            
-            while (!locked && retries < MAX_RETRIES) {
-                try {
-                    // Get current inventory with version
-                    Inventory inventory = inventoryRepository.findByFlightIdAndDate(flightId, date);
-                    
-                    if (inventory == null) {
-                        throw new RuntimeException("Inventory not found for flight: " + flightId);
-                    }
-                    
-                    if (inventory.getNumberOfSeatsLeftAsInt() < passengers) {
-                        throw new RuntimeException("Insufficient seats for flight: " + flightId);
-                    }
-                    
-                    // Store current version for optimistic locking
-                    Long currentVersion = inventory.getVersionAsLong();
-                    
-                    // Update seats
-                    inventory.setNumberOfSeatsLeftAsInt(inventory.getNumberOfSeatsLeftAsInt() - passengers);
-                    inventory.setVersionAsLong(currentVersion + 1);
-                    
-                    // Try to save with version check
-                    try {
-                        inventoryRepository.save(inventory);
-                        locked = true;
-                    } catch (Exception e) {
-                        // If save fails, it might be due to version conflict
-                        // We'll retry in the next iteration
-                        retries++;
-                        if (retries >= MAX_RETRIES) {
-                            throw new OptimisticLockingException("Failed to lock inventory for flight: " + flightId + " after " + MAX_RETRIES + " retries");
-                        }
-                        
-                        // Small delay before retry to reduce contention
-                        try {
-                            Thread.sleep(RETRY_DELAY_MS);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            throw new RuntimeException("Interrupted while retrying inventory lock", ie);
-                        }
-                    }
-                    
-                } catch (RuntimeException e) {
-                    // Don't retry for business logic errors
-                    throw e;
+    // Malformed requests turn the whole order away, as a client error
+    private void validateBulk(List<BookingRequest> requests) {
+        if (requests == null) {
+            throw new IllegalArgumentException("Booking requests must not be null");
+        }
+        if (requests.size() > maxBulkSize) {
+            throw new IllegalArgumentException("At most " + maxBulkSize + " bookings can be made at once");
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            BookingRequest request = requests.get(i);
+            if (request == null) {
+                throw new IllegalArgumentException("Booking request " + i + " must not be null");
+            }
+            if (request.getFlightIds() == null || request.getFlightIds().contains(null)) {
+                throw new IllegalArgumentException("Booking request " + i + " has a missing flight id");
+            }
+            if (request.getDate() == null || request.getDate().isEmpty()) {
+                throw new IllegalArgumentException("Booking request " + i + " must have a date");
+            }
+        }
+    }
+
+    /**
+     * Books every request of a group or agency order at once and returns one response per
+     * request, in order, each as {@link #bookFlight(BookingRequest)} would. Seats on the
+     * same flight-date are taken in as few writes as the store allows, the bookings are
+     * saved in batch writes, and their payments are started together. Throws
+     * {@link IllegalArgumentException}, booking nothing, when the list or one of its
+     * requests is malformed.
+     */
+    public List<BookingResponse> bookFlights(List<BookingRequest> requests) {
+        validateBulk(requests);
+        if (!paymentExecutor.hasCapacity()) {
+            throw new BookingRejectedException("Booking service is at capacity, please retry shortly");
+        }
+
+        BookingResponse[] responses = new BookingResponse[requests.size()];
+        List<Integer> priced = new ArrayList<>();
+        List<SeatHold> holds = new ArrayList<>();
+        String[] bookingIds = new String[requests.size()];
+        long[] totals = new long[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            BookingRequest request = requests.get(i);
+            try {
+                Long totalCents = fareCatalog.quote(request.getFlightIds(), request.getNumberOfPassengers());
+                if (totalCents == null) {
+                    responses[i] = new BookingResponse(null, BookingStatus.FAILED, "Fare not available for the requested flights", 0.0);
+                    continue;
+                }
+                int passengers = request.getNumberOfPassengers();
+                if (passengers <= 0 || availabilityCache.isKnownShort(request.getFlightIds(), request.getDate(), passengers)) {
+                    responses[i] = new BookingResponse(null, BookingStatus.FAILED, "Insufficient seats available", 0.0);
+                    continue;
                 }
+                bookingIds[i] = UUID.randomUUID().toString();
+                totals[i] = totalCents;
+                priced.add(i);
+                if (!request.getFlightIds().isEmpty()) {
+                    holds.add(seatHoldService.newHold(bookingIds[i], request.getFlightIds(), request.getDate(), passengers));
+                }
+            } catch (Exception e) {
+                responses[i] = new BookingResponse(null, BookingStatus.FAILED, "Error processing booking: " + e.getMessage(), 0.0);
             }
-            
-            if (!locked) {
-                throw new OptimisticLockingException("Failed to lock inventory for flight: " + flightId + " after " + MAX_RETRIES + " retries");
+        }
+
+        // Seat holds share their booking's id
+        Map<String, CompletableFuture<List<ReservationResult>>> reservations = new HashMap<>();
+        List<CompletableFuture<List<ReservationResult>>> placed = seatHoldService.placeHolds(holds);
+        for (int h = 0; h < holds.size(); h++) {
+            reservations.put(holds.get(h).getHoldId(), placed.get(h));
+        }
+
+        List<Booking> bookings = new ArrayList<>();
+        long now = clock.millis();
+        for (int i : priced) {
+            BookingRequest request = requests.get(i);
+            CompletableFuture<List<ReservationResult>> reservation = reservations.get(bookingIds[i]);
+            try {
+                if (reservation != null
+                        && !isReserved(bookingIds[i], request.getFlightIds(), request.getNumberOfPassengers(), reservation.join())) {
+                    responses[i] = new BookingResponse(null, BookingStatus.FAILED, "Insufficient seats available", 0.0);
+                    continue;
+                }
+            } catch (Exception e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                responses[i] = new BookingResponse(null, BookingStatus.FAILED, "Error processing booking: " + cause.getMessage(), 0.0);
+                continue;
             }
+            bookings.add(newBooking(request, bookingIds[i], FareCatalog.toAmount(totals[i]), now));
+        }
+
+        // From here on each saved booking's payment task owns its held seats
+        Set<String> unsaved;
+        try {
+            unsaved = new HashSet<>(bookingRepository.saveAll(bookings));
+        } catch (Exception e) {
+            System.err.println("Error saving " + bookings.size() + " bookings: " + e.getMessage());
+            unsaved = bookings.stream().map(Booking::getBookingId).collect(Collectors.toSet());
         }
+        List<String> saved = new ArrayList<>();
+        for (Booking booking : bookings) {
+            if (unsaved.contains(booking.getBookingId())) {
+                releaseInventoryLock(booking.getBookingId());
+            } else {
+                saved.add(booking.getBookingId());
+            }
+        }
+        dispatchPayments(saved);
+
+        Map<String, Booking> byId = new HashMap<>();
+        bookings.forEach(booking -> byId.put(booking.getBookingId(), booking));
+        for (int i : priced) {
+            Booking booking = byId.get(bookingIds[i]);
+            if (booking == null) {
+                continue;
+            }
+            responses[i] = unsaved.contains(booking.getBookingId())
+                    ? new BookingResponse(null, BookingStatus.FAILED, "Error processing booking: booking could not be saved", 0.0)
+                    : new BookingResponse(booking.getBookingId(), BookingStatus.PROCESSING,
+                            "Booking initiated successfully. Use booking ID to check status.", booking.getCostAsDouble());
+        }
+        System.err.println("Bulk booking initiated " + saved.size() + " of " + requests.size() + " bookings");
+        return Arrays.asList(responses);
+    }
+
+    // A new booking with its seats held, in PROCESSING with its payment task queued
+    private static Booking newBooking(BookingRequest request, String bookingId, double totalCost, long now) {
+        Booking booking = new Booking();
+        booking.setBookingId(bookingId);
+        booking.setUserId(request.getUserId());
+        booking.setFlightIdsAsList(request.getFlightIds());
+        booking.setDate(request.getDate());
+        booking.setSource(request.getSource());
+        booking.setDestination(request.getDestination());
+        booking.setStatus(BookingStatus.PROCESSING.name());
+        booking.setCostAsDouble(totalCost);
+        booking.setPassengers(request.getNumberOfPassengers());
+        booking.setCreatedAt(now);
+        booking.setSagaState(SagaState.RESERVED.name());
+        booking.queuePayment(now);
+        return booking;
+    }
+
+    /**
+     * Holds seats on every leg in one all-or-nothing write, so a sold-out connection
+     * leaves nothing to compensate. Returns false, holding nothing, when a leg is short.
+     */
+    private boolean reserveInventory(String bookingId, List<String> flightIds, String date, int passengers) {
+        return isReserved(bookingId, flightIds, passengers,
+                seatHoldService.placeHold(bookingId, flightIds, date, passengers));
+    }
+
+    private boolean isReserved(String bookingId, List<String> flightIds, int passengers, List<ReservationResult> results) {
+        for (ReservationResult result : results) {
+            switch (result.getStatus()) {
+                case NOT_FOUND:
+                    throw new RuntimeException("Inventory not found for flight: " + result.getFlightId());
+                case INSUFFICIENT_SEATS:
+                    System.err.println("Insufficient seats for flight: " + result.getFlightId());
+                    return false;
+                default:
+                    break;
+            }
+        }
+        if (!results.stream().allMatch(ReservationResult::isReserved)) {
+            throw new RuntimeException("Seat reservation was not applied for flights: " + flightIds);
+        }
+        System.err.println("Holding " + passengers + " seats on flights " + flightIds + " for booking " + bookingId);
+        return true;
     }
 
-    private void processPaymentAsync(String bookingId, double totalCost, 
-                                   List<String> flightIds, String date, int passengers) {
+    /**
+     * Runs the booking's pending payment on the payment executor. Returns false when the
+     * executor is full; the payment stays queued and {@link PaymentOutbox} picks it up.
+     */
+    public boolean dispatchPayment(String bookingId) {
         try {
-            // Process payment by calling external Payment Service
-            String paymentStatus = paymentServiceClient.processPayment(totalCost);
+            paymentExecutor.execute(() -> processPayment(bookingId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            System.err.println("Payment executor is full, leaving payment of booking " + bookingId + " queued");
+            return false;
+        }
+    }
 
-            // Update booking status based on payment result
-            if ("SUCCESS".equals(paymentStatus)) {
-                updateBookingStatus(bookingId, BookingStatus.SUCCESS);
-                // Update user's total booking value by calling external User Service
-                userServiceClient.updateTotalBookingValue(bookingId, totalCost);
-            } else {
-                updateBookingStatus(bookingId, BookingStatus.FAILED);
+    /**
+     * Starts the payments of several new bookings. Once the executor is full the rest are
+     * left queued for {@link PaymentOutbox}, without trying each of them in turn.
+     */
+    private void dispatchPayments(List<String> bookingIds) {
+        for (int i = 0; i < bookingIds.size(); i++) {
+            if (!dispatchPayment(bookingIds.get(i))) {
+                System.err.println("Leaving " + (bookingIds.size() - i - 1) + " more payments queued");
+                return;
             }
+        }
+    }
 
-            // Release inventory lock
-            releaseInventoryLock(flightIds, date, passengers);
+    /**
+     * Claims the booking and runs its saga on from the last saved step. Safe to call any
+     * number of times from any instance: only the latest claim can save a step, the
+     * payment service charges each booking id once, and a saga interrupted by a crash or
+     * a deploy is claimed again once its lease runs out.
+     */
+    public void processPayment(String bookingId) {
+        long now = clock.millis();
+        Booking booking;
+        try {
+            booking = bookingRepository.claimPayment(bookingId, instanceId, now, now + paymentLeaseMs);
+        } catch (Exception e) {
+            System.err.println("Error claiming payment of booking " + bookingId + ": " + e.getMessage());
+            return;
+        }
+        if (booking == null) {
+            // Settled, not due yet, or claimed by another worker
+            return;
+        }
 
+        try {
+            SagaState state = SagaState.of(booking.getSagaState());
+            if (state == SagaState.REFUND_PENDING || state == SagaState.COMPENSATING_PAYMENT) {
+                refund(booking);
+                return;
+            }
+            if (!BookingStatus.PROCESSING.name().equals(booking.getStatus())) {
+                // Failed elsewhere, for instance when its seat hold expired. Past
+                // PAYMENT_PENDING the charge may have gone out, so it is refunded if it did
+                if (state == SagaState.PAYMENT_PENDING && "SUCCESS".equals(requestPayment(booking))) {
+                    if (moveSaga(booking, SagaState.COMPENSATING_PAYMENT)) {
+                        refund(booking);
+                    }
+                    return;
+                }
+                completeSaga(booking, SagaState.FAILED);
+                return;
+            }
+            if (state == SagaState.COMPENSATING) {
+                compensate(booking);
+                return;
+            }
+            if (booking.getPaymentAttemptsAsInt() > maxPaymentAttempts) {
+                System.err.println("Giving up on payment of booking " + bookingId + " after "
+                        + maxPaymentAttempts + " attempts");
+                if (moveSaga(booking, SagaState.COMPENSATING)) {
+                    compensate(booking);
+                }
+                return;
+            }
+            if (state == SagaState.RESERVED && !moveSaga(booking, SagaState.PAYMENT_PENDING)) {
+                return;
+            }
+            settlePayment(booking);
         } catch (Exception e) {
-            // Handle any errors during async processing
-            updateBookingStatus(bookingId, BookingStatus.FAILED);
-            releaseInventoryLock(flightIds, date, passengers);
+            // Steps after the last saved one run again once the lease runs out
+            System.err.println("Error running saga of booking " + bookingId + ": " + e.getMessage());
         }
     }
 
-    private void updateBookingStatus(String bookingId, BookingStatus status) {
-        try {
-            Booking booking = bookingRepository.findById(bookingId);
-            if (booking != null) {
-                booking.setStatus(status.name());
-                bookingRepository.save(booking);
+    private void settlePayment(Booking booking) {
+        String bookingId = booking.getBookingId();
+        double totalCost = booking.getCostAsDouble();
+
+        // Update booking status based on payment result
+        if ("SUCCESS".equals(requestPayment(booking))) {
+            // The seats now belong to the booking; they are not returned
+            if (!confirmInventory(bookingId, booking.getFlightIdsAsList(), booking.getDate(), booking.getPassengersAsInt())) {
+                // Paid for seats it cannot have, so the charge goes back before it fails
+                if (moveSaga(booking, SagaState.COMPENSATING_PAYMENT)) {
+                    refund(booking);
+                }
+                return;
             }
+            // Only the worker that settled the booking reports it, so the total is updated once
+            if (completeSaga(booking, SagaState.CONFIRMED)) {
+                // Update user's total booking value by calling external User Service
+                userServiceClient.updateTotalBookingValue(bookingId, totalCost);
+            }
+        } else if (moveSaga(booking, SagaState.COMPENSATING)) {
+            compensate(booking);
+        }
+    }
+
+    /**
+     * Charges the booking by calling external Payment Service. The booking id keys the
+     * charge, so a repeat is answered with the first outcome instead of charging again.
+     */
+    private String requestPayment(Booking booking) {
+        try {
+            return paymentServiceClient.processPayment(booking.getBookingId(), booking.getCostAsDouble());
         } catch (Exception e) {
-            // Log error but don't throw - this is async processing
-            System.err.println("Error updating booking status: " + e.getMessage());
+            System.err.println("Error processing payment of booking " + booking.getBookingId() + ": " + e.getMessage());
+            return "FAILED";
+        }
+    }
+
+    /**
+     * Returns the booking's held seats, then fails it. Both writes are safe to repeat, so
+     * a compensation cut short is simply run again from the start.
+     */
+    private void compensate(Booking booking) {
+        String bookingId = booking.getBookingId();
+        if (!booking.getFlightIdsAsList().isEmpty() && !seatHoldService.releaseHold(bookingId)) {
+            // Released already, or expired and returned by the sweep
+            System.err.println("No seat hold to release for booking: " + bookingId);
         }
+        completeSaga(booking, SagaState.FAILED);
     }
 
-    public BookingStatus getBookingStatus(String bookingId) {
+    /**
+     * Refunds a booking whose seats are already gone: one cancelled, which then ends
+     * CANCELLED, or one paid for after its seats were lost, which ends FAILED. A refund
+     * the payment service turns down is asked for again once the lease runs out.
+     */
+    private void refund(Booking booking) {
+        String bookingId = booking.getBookingId();
+        double totalCost = booking.getCostAsDouble();
+        boolean cancelled = SagaState.of(booking.getSagaState()) == SagaState.REFUND_PENDING;
+        SagaState finalState = cancelled ? SagaState.CANCELLED : SagaState.FAILED;
+        if (booking.getPaymentAttemptsAsInt() > maxPaymentAttempts) {
+            System.err.println("Giving up on refund of booking " + bookingId + " after "
+                    + maxPaymentAttempts + " attempts");
+            completeSaga(booking, finalState);
+            return;
+        }
+        // Keyed like the payment, so the payment service refunds it once
+        if (!"SUCCESS".equals(paymentServiceClient.refundPayment(bookingId, totalCost))) {
+            System.err.println("Refund of booking " + bookingId + " was not made, retrying later");
+            return;
+        }
+        if (completeSaga(booking, finalState) && cancelled) {
+            // Takes back what the confirmed payment added, under the same key
+            userServiceClient.updateTotalBookingValue(bookingId, -totalCost);
+        }
+    }
+
+    /**
+     * Confirms the booking's hold. If it already expired and its seats went back, tries to
+     * take them again; returns false when they are gone.
+     */
+    private boolean confirmInventory(String bookingId, List<String> flightIds, String date, int passengers) {
+        if (flightIds.isEmpty() || seatHoldService.confirmHold(bookingId)) {
+            return true;
+        }
+        System.err.println("Seat hold for booking " + bookingId + " expired before payment settled, reserving again");
+        List<ReservationResult> results = inventoryRepository.reserveSeats(flightIds, date, passengers);
+        availabilityCache.record(date, passengers, results);
+        if (results.stream().allMatch(ReservationResult::isReserved)) {
+            return true;
+        }
+        System.err.println("Seats for paid booking " + bookingId + " are no longer available");
+        return false;
+    }
+
+    /**
+     * Saves the claimed booking's next saga step. Returns false when the claim was taken
+     * over, in which case the new owner carries the saga on.
+     */
+    private boolean moveSaga(Booking claimed, SagaState next) {
+        SagaState current = SagaState.of(claimed.getSagaState());
+        if (!current.canMoveTo(next)) {
+            throw new IllegalStateException("Booking " + claimed.getBookingId() + " cannot move from " + current + " to " + next);
+        }
+        if (!bookingRepository.advanceSaga(claimed, next.name())) {
+            System.err.println("Saga of booking " + claimed.getBookingId() + " was taken over before it reached " + next);
+            return false;
+        }
+        claimed.setSagaState(next.name());
+        return true;
+    }
+
+    private boolean completeSaga(Booking claimed, SagaState finalState) {
+        BookingStatus status = finalState.getBookingStatus();
         try {
-            Booking booking = bookingRepository.findById(bookingId);
-            return booking != null ? BookingStatus.valueOf(booking.getStatus()) : null;
+            if (bookingRepository.completePayment(claimed, status.name(), finalState.name())) {
+                claimed.setSagaState(finalState.name());
+                statusNotifier.publish(claimed.getBookingId(), status);
+                return true;
+            }
+            System.err.println("Payment of booking " + claimed.getBookingId() + " was taken over before it settled");
         } catch (Exception e) {
-            return null;
+            // The payment is claimed again once the lease runs out
+            System.err.println("Error settling booking " + claimed.getBookingId() + ": " + e.getMessage());
         }
+        return false;
+    }
+
+    /**
+     * The booking's status, or null when there is no such booking or it cannot be read.
+     * Completes on the store client's threads rather than the caller's.
+     */
+    public CompletableFuture<BookingStatus> getBookingStatus(String bookingId) {
+        return getBookingDetails(bookingId)
+                .thenApply(booking -> booking != null ? BookingStatus.valueOf(booking.getStatus()) : null);
     }
 
-    public Booking getBookingDetails(String bookingId) {
+    /** The booking, or null when there is no such booking or it cannot be read. */
+    public CompletableFuture<Booking> getBookingDetails(String bookingId) {
+        if (bookingId == null || bookingId.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
         try {
-            return bookingRepository.findById(bookingId);
+            return asyncBookingRepository.findById(bookingId).exceptionally(e -> null);
         } catch (Exception e) {
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
     }
 
-    private boolean checkInventory(List<String> flightIds, String date, int passengers) {
-        System.err.println("=== CHECKING INVENTORY ===");
-        System.err.println("Flight IDs: " + flightIds);
-        System.err.println("Date: " + date);
-        System.err.println("Passengers: " + passengers);
-        
-        for (String flightId : flightIds) {
-            System.err.println("Checking inventory for flight: " + flightId);
-            Inventory inventory = inventoryRepository.findByFlightIdAndDate(flightId, date);
-            System.err.println("Found inventory: " + (inventory != null ? "YES" : "NO"));
-            if (inventory != null) {
-                System.err.println("Inventory details: " + inventory);
-                System.err.println("Seats left: " + inventory.getNumberOfSeatsLeftAsInt());
-            }
-            if (inventory == null || inventory.getNumberOfSeatsLeftAsInt() < passengers) {
-                System.err.println("Insufficient inventory for flight: " + flightId);
-                return false;
+    /**
+     * A page of the user's bookings, latest travel date first, optionally only those in
+     * {@code status}. Fails with IllegalArgumentException for a cursor from another query.
+     */
+    public CompletableFuture<BookingPage> getUserBookings(String userId, BookingStatus status, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, maxHistoryPageSize));
+        return status != null
+                ? asyncBookingRepository.findByUserIdAndStatus(userId, status.name(), cursor, pageSize)
+                : asyncBookingRepository.findByUserId(userId, cursor, pageSize);
+    }
+
+    /**
+     * Cancels a confirmed booking: its seats go back at once and its payment is refunded
+     * in the background. Returns the booking's status afterwards, which is CANCELLED also
+     * when it was cancelled before, or null when there is no such booking. Bookings still
+     * processing or failed are left as they are.
+     */
+    public BookingStatus cancelBooking(String bookingId) {
+        Booking booking = bookingRepository.findById(bookingId);
+        if (booking == null) {
+            return null;
+        }
+        if (BookingStatus.SUCCESS.name().equals(booking.getStatus())) {
+            if (!bookingRepository.cancelConfirmed(Collections.singletonList(booking), clock.millis()).isEmpty()) {
+                availabilityCache.invalidate(booking.getFlightIdsAsList(), booking.getDate());
+                dispatchPayment(bookingId);
+                return BookingStatus.CANCELLED;
             }
+            // Changed since it was read
+            booking = bookingRepository.findById(bookingId);
         }
-        System.err.println("=== INVENTORY CHECK COMPLETE ===");
-        return true;
+        return booking != null ? BookingStatus.valueOf(booking.getStatus()) : null;
     }
 
-    private void releaseInventoryLock(List<String> flightIds, String date, int passengers) {
-        for (String flightId : flightIds) {
-            boolean released = false;
-            int retries = 0;
-            
-            while (!released && retries < MAX_RETRIES) {
-                try {
-                    Inventory inventory = inventoryRepository.findByFlightIdAndDate(flightId, date);
-                    if (inventory != null) {
-                        // Store current version for optimistic locking
-                        Long currentVersion = inventory.getVersionAsLong();
-                        
-                        // Restore seats
-                        inventory.setNumberOfSeatsLeftAsInt(inventory.getNumberOfSeatsLeftAsInt() + passengers);
-                        inventory.setVersionAsLong(currentVersion + 1);
-                        
-                        try {
-                            inventoryRepository.save(inventory);
-                            released = true;
-                        } catch (Exception e) {
-                            // If save fails, retry
-                            retries++;
-                            if (retries >= MAX_RETRIES) {
-                                System.err.println("Failed to release inventory lock for flight: " + flightId + " after " + MAX_RETRIES + " retries");
-                                break;
-                            }
-                            
-                            try {
-                                Thread.sleep(RETRY_DELAY_MS);
-                            } catch (InterruptedException ie) {
-                                Thread.currentThread().interrupt();
-                                break;
-                            }
-                        }
-                    } else {
-                        // Inventory not found, consider it released
-                        released = true;
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error releasing inventory lock for flight: " + e.getMessage());
-                    break;
+    /**
+     * Cancels every confirmed booking on {@code flightId} travelling on {@code date}, as
+     * when the flight itself is cancelled. Only the bookings with a leg on that flight-date
+     * are read, a page at a time, and each page is cancelled in as few writes as fit with
+     * a single seat increment per flight-date; their
+     * refunds are left to {@link PaymentOutbox}, which runs them as the payment executor
+     * has room. Cancelling again after a failure part way picks up the rest. Returns the
+     * number of bookings cancelled.
+     */
+    public int cancelFlight(String flightId, String date) {
+        long now = clock.millis();
+        int cancelled = 0;
+        Set<String> legs = new LinkedHashSet<>();
+        String cursor = null;
+        do {
+            BookingPage page = bookingRepository.findByFlightAndDate(flightId, date, cursor, cancellationBatchSize);
+            List<Booking> affected = new ArrayList<>();
+            for (Booking booking : page.getBookings()) {
+                if (BookingStatus.SUCCESS.name().equals(booking.getStatus())) {
+                    affected.add(booking);
+                    legs.addAll(booking.getFlightIdsAsList());
                 }
             }
-        }
+            if (!affected.isEmpty()) {
+                cancelled += bookingRepository.cancelConfirmed(affected, now).size();
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        availabilityCache.invalidate(new ArrayList<>(legs), date);
+        System.err.println("Cancelled " + cancelled + " bookings on flight " + flightId + " for " + date);
+        return cancelled;
     }
 
-    private double calculateTotalCost(List<String> flightIds, int passengers) {
-        // This would typically involve getting flight costs from the search service
-        // For now, using a placeholder calculation
-        return flightIds.size() * 100.0 * passengers; // $100 per flight per passenger
+    private void releaseInventoryLock(String bookingId) {
+        try {
+            // Settles the hold and returns its seats in one write, so they come back at most once
+            if (!seatHoldService.releaseHold(bookingId)) {
+                System.err.println("No seat hold to release for booking: " + bookingId);
+            }
+        } catch (Exception e) {
+            // The expiry sweep returns the seats later
+            System.err.println("Error releasing seat hold for booking " + bookingId + ": " + e.getMessage());
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,129 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.bookingservice.repository.BookingRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tells clients waiting on a booking when it settles. A booking settled on this instance
+ * is published the moment its final status is written. One settled on another instance is
+ * found by {@link #pollWatched()}, which reads every booking still watched here, at most
+ * one read per booking and interval however many clients wait on it, in batches, once it
+ * has been watched for {@code booking.status.local-grace-ms}.
+ */
+@Component
+public class BookingStatusNotifier {
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    // Bookings left to this instance's own publishing before they are read from the store
+    @Value("${booking.status.local-grace-ms:2000}")
+    private long localGraceMs = 2000;
+
+    @Value("${booking.status.watch-batch-size:100}")
+    private int watchBatchSize = 100;
+
+    private Clock clock = Clock.systemUTC();
+
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+    /**
+     * Completes with the booking's final status, SUCCESS or FAILED. Cancel the returned
+     * future to stop waiting; the booking stops being watched once nobody waits on it.
+     */
+    public CompletableFuture<BookingStatus> watch(String bookingId) {
+        long now = clock.millis();
+        Watch watch = watches.compute(bookingId, (id, existing) -> {
+            Watch current = existing != null ? existing : new Watch(now);
+            current.subscribers++;
+            return current;
+        });
+        // A copy per caller, so one caller cancelling leaves the others waiting
+        CompletableFuture<BookingStatus> subscription = watch.settled.thenApply(status -> status);
+        subscription.whenComplete((status, error) -> unwatch(bookingId, watch));
+        return subscription;
+    }
+
+    /** Records a status change; a final status completes everyone waiting on the booking. */
+    public void publish(String bookingId, BookingStatus status) {
+        if (status == BookingStatus.PROCESSING) {
+            return;
+        }
+        Watch watch = watches.remove(bookingId);
+        if (watch != null) {
+            watch.settled.complete(status);
+        }
+    }
+
+    /** Reads bookings watched past the grace period and publishes those that settled. */
+    @Scheduled(fixedDelayString = "${booking.status.watch-interval-ms:2000}")
+    public int pollWatched() {
+        long readyBefore = clock.millis() - localGraceMs;
+        List<String> due = new ArrayList<>();
+        watches.forEach((bookingId, watch) -> {
+            if (watch.since <= readyBefore) {
+                due.add(bookingId);
+            }
+        });
+
+        int settled = 0;
+        int batch = Math.max(1, watchBatchSize);
+        for (int from = 0; from < due.size(); from += batch) {
+            List<Booking> bookings;
+            try {
+                bookings = bookingRepository.findAllById(due.subList(from, Math.min(due.size(), from + batch)));
+            } catch (Exception e) {
+                System.err.println("Error reading watched bookings: " + e.getMessage());
+                continue;
+            }
+            for (Booking booking : bookings) {
+                BookingStatus status = statusOf(booking);
+                if (status != null && status != BookingStatus.PROCESSING) {
+                    publish(booking.getBookingId(), status);
+                    settled++;
+                }
+            }
+        }
+        return settled;
+    }
+
+    // Bookings with someone waiting on them
+    int watchedBookings() {
+        return watches.size();
+    }
+
+    private void unwatch(String bookingId, Watch watch) {
+        watches.computeIfPresent(bookingId, (id, current) -> current == watch && --current.subscribers <= 0 ? null : current);
+    }
+
+    private static BookingStatus statusOf(Booking booking) {
+        try {
+            return booking.getStatus() != null ? BookingStatus.valueOf(booking.getStatus()) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Watch {
+        final long since;
+        final CompletableFuture<BookingStatus> settled = new CompletableFuture<>();
+        // Guarded by the map entry
+        int subscribers;
+
+        Watch(long since) {
+            this.since = since;
+        }
+    }
+}
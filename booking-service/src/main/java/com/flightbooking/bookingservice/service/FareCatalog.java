@@ -0,0 +1,110 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.repository.FlightFareRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flight fares held in memory, in cents per passenger, so pricing a booking is a local
+ * lookup. The whole catalog is reloaded in one bulk read every
+ * {@code booking.fares.refresh-interval-ms}; a flight missing from the last load, such as
+ * one added since, is read on its own and kept until the next load.
+ */
+@Component
+public class FareCatalog {
+
+    @Autowired
+    private FlightFareRepository flightFareRepository;
+
+    // How long a flight that had no fare is left before it is looked up again
+    @Value("${booking.fares.miss-retry-ms:5000}")
+    private long missRetryMs = 5000;
+
+    private Clock clock = Clock.systemUTC();
+
+    private volatile Map<String, Long> fares = Collections.emptyMap();
+
+    // Read one at a time since the last load
+    private final Map<String, Long> added = new ConcurrentHashMap<>();
+
+    // Flights without a fare, and when they may be looked up again
+    private final Map<String, Long> missing = new ConcurrentHashMap<>();
+
+    /** Reloads every fare; on failure the previous fares stay in use. Returns the fare count. */
+    @Scheduled(fixedDelayString = "${booking.fares.refresh-interval-ms:60000}")
+    public int refresh() {
+        try {
+            Map<String, Long> loaded = flightFareRepository.findAllFares();
+            fares = Collections.unmodifiableMap(loaded);
+            added.clear();
+            missing.clear();
+            return loaded.size();
+        } catch (Exception e) {
+            System.err.println("Error loading flight fares: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /** The fare of a flight in cents per passenger, or null when it has none. */
+    public Long fareOf(String flightId) {
+        Long fare = fares.get(flightId);
+        if (fare == null) {
+            fare = added.get(flightId);
+        }
+        return fare != null ? fare : lookUp(flightId);
+    }
+
+    /**
+     * The cost in cents of {@code passengers} seats on every flight, or null when a flight
+     * has no fare.
+     */
+    public Long quote(List<String> flightIds, int passengers) {
+        long total = 0;
+        for (String flightId : flightIds) {
+            Long fare = fareOf(flightId);
+            if (fare == null) {
+                return null;
+            }
+            total = Math.addExact(total, Math.multiplyExact(fare, (long) passengers));
+        }
+        return total;
+    }
+
+    public static double toAmount(long cents) {
+        return cents / 100.0;
+    }
+
+    // Fares in the catalog
+    int size() {
+        return fares.size() + added.size();
+    }
+
+    private Long lookUp(String flightId) {
+        long now = clock.millis();
+        Long retryAt = missing.get(flightId);
+        if (retryAt != null && retryAt > now) {
+            return null;
+        }
+        try {
+            Long fare = flightFareRepository.findFare(flightId);
+            if (fare != null) {
+                added.put(flightId, fare);
+                missing.remove(flightId);
+            } else {
+                missing.put(flightId, now + missRetryMs);
+            }
+            return fare;
+        } catch (Exception e) {
+            System.err.println("Error reading fare of flight " + flightId + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
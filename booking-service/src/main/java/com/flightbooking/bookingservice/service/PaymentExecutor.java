@@ -0,0 +1,146 @@
+package com.flightbooking.bookingservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs payment orchestration, which blocks on the payment and user services, on its own
+ * pool of {@code booking.payment.executor.threads} threads named {@code payment-N} in
+ * front of a queue of {@code queue-capacity} bookings. A full queue rejects new work
+ * instead of growing, so intake slows down predictably under load and the JVM's common
+ * pool is left to everything else.
+ *
+ * <p>With {@code virtual-threads} set and a runtime that has them, the pool's threads are
+ * virtual, which makes a large thread count cheap; the bounds stay the same.
+ */
+@Component
+public class PaymentExecutor {
+
+    @Value("${booking.payment.executor.threads:32}")
+    private int threads = 32;
+
+    @Value("${booking.payment.executor.queue-capacity:256}")
+    private int queueCapacity = 256;
+
+    @Value("${booking.payment.executor.virtual-threads:false}")
+    private boolean virtualThreads = false;
+
+    private volatile ThreadPoolExecutor executor;
+    private volatile boolean virtual;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public PaymentExecutor() {
+    }
+
+    public PaymentExecutor(int threads, int queueCapacity, boolean virtualThreads) {
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /** Queues {@code task}; throws {@link RejectedExecutionException} when the queue is full. */
+    public void execute(Runnable task) {
+        try {
+            executor().execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /** Whether a task submitted now would be accepted, barring a race with other callers. */
+    public boolean hasCapacity() {
+        ThreadPoolExecutor current = executor();
+        return !current.isShutdown()
+                && (current.getActiveCount() < current.getMaximumPoolSize() || current.getQueue().remainingCapacity() > 0);
+    }
+
+    /** How many more tasks would be accepted right now: idle threads plus free queue slots. */
+    public int availableSlots() {
+        ThreadPoolExecutor current = executor();
+        if (current.isShutdown()) {
+            return 0;
+        }
+        return Math.max(0, current.getMaximumPoolSize() - current.getActiveCount())
+                + current.getQueue().remainingCapacity();
+    }
+
+    public Map<String, Object> stats() {
+        ThreadPoolExecutor current = executor();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", current.getMaximumPoolSize());
+        stats.put("virtualThreads", virtual);
+        stats.put("active", current.getActiveCount());
+        stats.put("queued", current.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", current.getCompletedTaskCount());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        ThreadPoolExecutor current = executor;
+        if (current != null) {
+            current.shutdown();
+            // Payments already taken from callers get a chance to settle
+            if (!current.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("Payment executor stopped with " + current.getQueue().size() + " bookings queued");
+                current.shutdownNow();
+            }
+        }
+    }
+
+    private ThreadPoolExecutor executor() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    int size = Math.max(1, threads);
+                    current = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory(),
+                            new ThreadPoolExecutor.AbortPolicy());
+                    current.allowCoreThreadTimeOut(true);
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private ThreadFactory threadFactory() {
+        if (virtualThreads) {
+            try {
+                // Thread.ofVirtual().name("payment-", 0).factory(), on runtimes that have it
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                Method name = builderType.getMethod("name", String.class, long.class);
+                ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory")
+                        .invoke(name.invoke(builder, "payment-", 0L));
+                virtual = true;
+                return factory;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.err.println("Virtual threads are not available on this runtime, using platform threads");
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "payment-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
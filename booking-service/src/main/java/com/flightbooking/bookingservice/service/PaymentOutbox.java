@@ -0,0 +1,96 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.bookingservice.repository.BookingRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Feeds pending payments to the payment executor, and with them every booking saga not yet
+ * final. Every booking is saved with its payment task and dispatched straight away; this
+ * poller picks up the ones that were not, because the executor was full, the instance
+ * died or was redeployed mid-saga, or its claim's lease ran out. Each is resumed from its
+ * saved {@link com.flightbooking.bookingservice.enums.SagaState}. The first poll runs as
+ * the application starts, so in-flight work resumes after a restart.
+ *
+ * <p>Each poll reads up to {@code booking.outbox.batch-size} due payments from every queue
+ * partition, never more than the executor has room for. Workers on any instance claim a
+ * payment before running it, so instances polling the same partitions do not double up.
+ */
+@Component
+public class PaymentOutbox {
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private PaymentExecutor paymentExecutor;
+
+    @Value("${booking.outbox.batch-size:25}")
+    private int batchSize = 25;
+
+    private Clock clock = Clock.systemUTC();
+
+    // Payments this instance has handed to the executor and not finished yet
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    /** Dispatches due payments. Returns the number handed to the executor. */
+    @Scheduled(fixedDelayString = "${booking.outbox.poll-interval-ms:1000}")
+    public synchronized int poll() {
+        long now = clock.millis();
+        int dispatched = 0;
+        for (int partition = 0; partition < Booking.PAYMENT_QUEUES; partition++) {
+            int room = Math.min(batchSize, paymentExecutor.availableSlots());
+            if (room <= 0) {
+                break;
+            }
+            List<Booking> due;
+            try {
+                due = bookingRepository.findPaymentsDue(partition, now, room);
+            } catch (Exception e) {
+                System.err.println("Error reading payment queue " + Booking.paymentQueue(partition) + ": " + e.getMessage());
+                continue;
+            }
+            for (Booking booking : due) {
+                if (dispatch(booking.getBookingId())) {
+                    dispatched++;
+                }
+            }
+        }
+        if (dispatched > 0) {
+            System.err.println("Dispatched " + dispatched + " queued payments");
+        }
+        return dispatched;
+    }
+
+    private boolean dispatch(String bookingId) {
+        if (!inFlight.add(bookingId)) {
+            return false;
+        }
+        try {
+            paymentExecutor.execute(() -> {
+                try {
+                    bookingService.processPayment(bookingId);
+                } finally {
+                    inFlight.remove(bookingId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Executor full; the payment stays due for the next poll
+            inFlight.remove(bookingId);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.enums.ReservationStatus;
+import com.flightbooking.bookingservice.exception.InventoryConflictException;
+import com.flightbooking.bookingservice.model.Inventory;
+import com.flightbooking.bookingservice.model.SeatHold;
+import com.flightbooking.bookingservice.repository.InventoryRetries;
+import com.flightbooking.bookingservice.repository.SeatHoldRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequences seat reservations per flight-date. Every hold is routed by its first leg to
+ * one of a fixed set of lanes, each a bounded queue drained by a single worker thread, so
+ * reservations on the same hot flight-date reach the store one after another instead of
+ * racing each other into conditional check failures and transaction conflicts.
+ *
+ * <p>Each worker keeps, for the flight-dates it has seen, a ceiling on the seats that can
+ * still be left, lowered by every reservation it makes and by every one the store rejects.
+ * Requests above a fresh ceiling are turned down without a store round trip. Seats given
+ * back elsewhere, by releases or other instances, only become visible once the ceiling is
+ * older than {@code booking.allocator.ceiling-ttl-ms}, so the store stays the authority.
+ * Expired ceilings are dropped, so a worker keeps only the flight-dates it saw recently.
+ * The ceiling only turns requests away: every reservation that passes it is still a
+ * conditional decrement in the store.
+ *
+ * <p>A worker drains everything queued behind its previous write, optionally waiting up
+ * to {@code booking.allocator.batch-window-ms} for more, and commits the single-leg holds
+ * for one flight-date as one conditional decrement written together with their holds.
+ * The holds of a bulk booking are queued as one submission, so those on the same
+ * flight-date always reach the worker together.
+ *
+ * <p>A reservation that loses to a concurrent write is not waited out by the worker,
+ * which would hold up everything queued behind it: once the delay chosen by
+ * {@link InventoryRetries} has passed it is queued on its lane again.
+ *
+ * <p>When a lane is full, or the allocator is disabled, the caller reserves directly.
+ */
+@Component
+public class SeatAllocator {
+
+    // DynamoDB caps a transaction at 100 items: the decrement plus one put per hold
+    static final int MAX_GROUP_SIZE = 99;
+
+    @Autowired
+    private SeatHoldRepository seatHoldRepository;
+
+    @Autowired
+    private InventoryRetries inventoryRetries;
+
+    @Value("${booking.allocator.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${booking.allocator.lanes:4}")
+    private int laneCount = 4;
+
+    @Value("${booking.allocator.ring-size:1024}")
+    private int ringSize = 1024;
+
+    // Most holds a worker takes off its queue at once, and so commits in a single write;
+    // a bulk submission is always taken whole
+    @Value("${booking.allocator.batch-size:25}")
+    private int batchSize = 25;
+
+    // How long a worker waits for more holds before committing a batch that is not full
+    @Value("${booking.allocator.batch-window-ms:0}")
+    private long batchWindowMs = 0;
+
+    @Value("${booking.allocator.ceiling-ttl-ms:1000}")
+    private long ceilingTtlMs = 1000;
+
+    private Clock clock = Clock.systemUTC();
+
+    // Queues reservations that lost to a concurrent write again once their backoff is over
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "seat-allocator-retries");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Lane[] lanes;
+    private volatile boolean stopped;
+
+    /**
+     * Takes the hold's seats and stores the hold, all or nothing, with results as from
+     * {@link SeatHoldRepository#reserve(SeatHold)}.
+     */
+    public List<ReservationResult> reserve(SeatHold hold) {
+        Allocation allocation = new Allocation(hold);
+        if (!enabled || stopped || hold.getFlightIdsAsList().isEmpty()) {
+            reserveDirectly(allocation);
+        } else {
+            submit(lanes(), allocation);
+        }
+        try {
+            return allocation.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reserves several holds at once without waiting for them. The holds bound for each
+     * lane are queued as one submission, so single-leg holds on the same flight-date are
+     * committed together. Returns one result per hold, in order, each completing as
+     * {@link #reserve(SeatHold)} would return or throw.
+     */
+    public List<CompletableFuture<List<ReservationResult>>> reserveAll(List<SeatHold> holds) {
+        Lane[] current = enabled && !stopped ? lanes() : null;
+        List<CompletableFuture<List<ReservationResult>>> results = new ArrayList<>();
+        Map<Lane, List<Allocation>> submissions = new LinkedHashMap<>();
+        for (SeatHold hold : holds) {
+            Allocation allocation = new Allocation(hold);
+            results.add(allocation.result);
+            if (current == null || hold.getFlightIdsAsList().isEmpty()) {
+                reserveDirectly(allocation);
+            } else {
+                submissions.computeIfAbsent(laneFor(current, hold), lane -> new ArrayList<>()).add(allocation);
+            }
+        }
+        for (Map.Entry<Lane, List<Allocation>> entry : submissions.entrySet()) {
+            BlockingQueue<List<Allocation>> queue = entry.getKey().queue;
+            List<Allocation> submission = entry.getValue();
+            if (!queue.offer(submission) || (stopped && queue.remove(submission))) {
+                submission.forEach(this::reserveDirectly);
+            }
+        }
+        return results;
+    }
+
+    private void submit(Lane[] current, Allocation allocation) {
+        List<Allocation> submission = Collections.singletonList(allocation);
+        BlockingQueue<List<Allocation>> queue = laneFor(current, allocation.hold).queue;
+        // A worker stopping concurrently may never see the allocation; take it back unless it was
+        if (!queue.offer(submission) || (stopped && queue.remove(submission))) {
+            reserveDirectly(allocation);
+        }
+    }
+
+    private static Lane laneFor(Lane[] current, SeatHold hold) {
+        String key = Inventory.idFor(hold.getFlightIdsAsList().get(0), hold.getDate());
+        return current[Math.floorMod(key.hashCode(), current.length)];
+    }
+
+    private void reserveDirectly(Allocation allocation) {
+        try {
+            allocation.result.complete(seatHoldRepository.reserve(allocation.hold));
+        } catch (InventoryConflictException e) {
+            retryLater(allocation, e);
+        } catch (Exception e) {
+            allocation.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Queues a reservation that lost to a concurrent write again once its backoff is
+     * over, behind whatever reached its lane meanwhile, or fails it with the conflict
+     * when it has had its retries or the allocator has stopped.
+     */
+    private void retryLater(Allocation allocation, InventoryConflictException conflict) {
+        if (allocation.backoff == null) {
+            allocation.backoff = inventoryRetries.newBackoff();
+        }
+        if (!allocation.backoff.retry(conflict.getContended())) {
+            allocation.result.completeExceptionally(conflict.getCause());
+            return;
+        }
+        try {
+            retryScheduler.schedule(() -> {
+                if (enabled && !stopped) {
+                    submit(lanes(), allocation);
+                } else {
+                    reserveDirectly(allocation);
+                }
+            }, allocation.backoff.delayMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            allocation.result.completeExceptionally(conflict.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        // Retries already scheduled still run, each getting one more direct attempt
+        retryScheduler.shutdown();
+        Lane[] current = lanes;
+        if (current != null) {
+            for (Lane lane : current) {
+                lane.worker.interrupt();
+            }
+        }
+    }
+
+    // Holds waiting in the lanes, not counting those being written
+    int queuedHolds() {
+        Lane[] current = lanes;
+        int queued = 0;
+        if (current != null) {
+            for (Lane lane : current) {
+                for (List<Allocation> submission : lane.queue) {
+                    queued += submission.size();
+                }
+            }
+        }
+        return queued;
+    }
+
+    private int batchSize() {
+        return Math.max(1, Math.min(batchSize, MAX_GROUP_SIZE));
+    }
+
+    private Lane[] lanes() {
+        Lane[] current = lanes;
+        if (current == null) {
+            synchronized (this) {
+                current = lanes;
+                if (current == null) {
+                    current = new Lane[Math.max(1, laneCount)];
+                    for (int i = 0; i < current.length; i++) {
+                        current[i] = new Lane(i);
+                    }
+                    lanes = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private final class Lane implements Runnable {
+        final BlockingQueue<List<Allocation>> queue = new ArrayBlockingQueue<>(Math.max(1, ringSize));
+        final Thread worker;
+        // Confined to the worker thread
+        final Map<String, Ceiling> ceilings = new HashMap<>();
+        private long ceilingsPrunedAt;
+
+        Lane(int index) {
+            worker = new Thread(this, "seat-allocator-" + index);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        @Override
+        public void run() {
+            List<Allocation> batch = new ArrayList<>();
+            while (!stopped) {
+                try {
+                    batch.addAll(queue.take());
+                    drain(batch);
+                    if (batchWindowMs > 0) {
+                        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+                        long remaining;
+                        while (batch.size() < batchSize() && (remaining = deadline - System.nanoTime()) > 0) {
+                            List<Allocation> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                            if (next == null) {
+                                break;
+                            }
+                            batch.addAll(next);
+                            drain(batch);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                } finally {
+                    allocate(batch);
+                    batch.clear();
+                }
+            }
+            // Callers already waiting are served before the worker exits
+            List<Allocation> submission;
+            while ((submission = queue.poll()) != null) {
+                batch.addAll(submission);
+            }
+            allocate(batch);
+        }
+
+        // Takes queued submissions until the batch is full, without waiting
+        private void drain(List<Allocation> batch) {
+            List<Allocation> submission;
+            while (batch.size() < batchSize() && (submission = queue.poll()) != null) {
+                batch.addAll(submission);
+            }
+        }
+
+        /**
+         * Holds for a single leg are committed together per flight-date; itineraries go
+         * through one at a time, since their legs may each belong to a different batch.
+         */
+        private void allocate(List<Allocation> batch) {
+            Map<String, List<Allocation>> groups = new LinkedHashMap<>();
+            for (Allocation allocation : batch) {
+                List<String> flightIds = allocation.hold.getFlightIdsAsList();
+                if (flightIds.size() == 1) {
+                    groups.computeIfAbsent(Inventory.idFor(flightIds.get(0), allocation.hold.getDate()),
+                            key -> new ArrayList<>()).add(allocation);
+                } else {
+                    allocate(allocation);
+                }
+            }
+            for (List<Allocation> group : groups.values()) {
+                if (group.size() == 1) {
+                    allocate(group.get(0));
+                } else {
+                    commit(group);
+                }
+            }
+        }
+
+        private void allocate(Allocation allocation) {
+            try {
+                allocation.result.complete(reserve(allocation.hold));
+            } catch (InventoryConflictException e) {
+                retryLater(allocation, e);
+            } catch (Exception e) {
+                allocation.result.completeExceptionally(e);
+            }
+        }
+
+        private List<ReservationResult> reserve(SeatHold hold) {
+            String date = hold.getDate();
+            Map<String, Integer> seatsByLeg = new LinkedHashMap<>();
+            for (String flightId : hold.getFlightIdsAsList()) {
+                seatsByLeg.merge(flightId, hold.getSeats(), Integer::sum);
+            }
+
+            long now = clock.millis();
+            for (Map.Entry<String, Integer> leg : seatsByLeg.entrySet()) {
+                if (leg.getValue() > ceiling(Inventory.idFor(leg.getKey(), date), now)) {
+                    return rejected(hold.getFlightIdsAsList(), date, leg.getKey());
+                }
+            }
+
+            List<ReservationResult> results = seatHoldRepository.reserve(hold);
+            Map<String, ReservationResult> byLeg = new HashMap<>();
+            for (ReservationResult result : results) {
+                byLeg.putIfAbsent(result.getFlightId(), result);
+            }
+            for (Map.Entry<String, Integer> leg : seatsByLeg.entrySet()) {
+                ReservationResult result = byLeg.get(leg.getKey());
+                if (result != null) {
+                    observe(Inventory.idFor(leg.getKey(), date), result, leg.getValue(), now);
+                }
+            }
+            return results;
+        }
+
+        /**
+         * Takes the seats of single-leg holds on one flight-date in as few writes as the
+         * store allows. When the combined count does not fit, or a write fails, each hold
+         * falls back to its own reservation, so callers see the outcome they would have
+         * had alone.
+         */
+        private void commit(List<Allocation> group) {
+            SeatHold first = group.get(0).hold;
+            String flightId = first.getFlightIdsAsList().get(0);
+            String date = first.getDate();
+            String key = Inventory.idFor(flightId, date);
+
+            for (int from = 0; from < group.size(); from += MAX_GROUP_SIZE) {
+                List<Allocation> chunk = group.subList(from, Math.min(group.size(), from + MAX_GROUP_SIZE));
+                List<SeatHold> holds = new ArrayList<>();
+                int seats = 0;
+                for (Allocation allocation : chunk) {
+                    holds.add(allocation.hold);
+                    seats += allocation.hold.getSeats();
+                }
+
+                long now = clock.millis();
+                ReservationResult result = null;
+                if (seats <= ceiling(key, now)) {
+                    try {
+                        result = seatHoldRepository.reserveAll(flightId, date, holds);
+                        observe(key, result, seats, now);
+                    } catch (Exception e) {
+                        System.err.println("Group commit of " + holds.size() + " seat holds on " + key
+                                + " failed, reserving them one by one: " + e.getMessage());
+                    }
+                }
+
+                if (result != null && (result.isReserved() || result.getStatus() == ReservationStatus.NOT_FOUND)) {
+                    for (Allocation allocation : chunk) {
+                        allocation.result.complete(Collections.singletonList(new ReservationResult(
+                                flightId, date, result.getStatus(), result.getSeatsLeft())));
+                    }
+                } else {
+                    for (Allocation allocation : chunk) {
+                        allocate(allocation);
+                    }
+                }
+            }
+        }
+
+        // Seats that may still be left on a flight-date, as far as this worker knows
+        private int ceiling(String key, long now) {
+            Ceiling ceiling = ceilings.get(key);
+            if (ceiling == null) {
+                return Integer.MAX_VALUE;
+            }
+            if (ceiling.expiresAt <= now) {
+                ceilings.remove(key);
+                return Integer.MAX_VALUE;
+            }
+            return ceiling.seats;
+        }
+
+        private void observe(String key, ReservationResult result, int seats, long now) {
+            // Flight-dates nobody asks for again would otherwise keep their ceilings for
+            // good; one pass per TTL keeps the map to those seen in the last two
+            if (now - ceilingsPrunedAt >= ceilingTtlMs) {
+                ceilings.values().removeIf(expired -> expired.expiresAt <= now);
+                ceilingsPrunedAt = now;
+            }
+            Ceiling ceiling = ceilings.get(key);
+            boolean fresh = ceiling != null && ceiling.expiresAt > now;
+            switch (result.getStatus()) {
+                case RESERVED:
+                    if (result.getSeatsLeft() != null) {
+                        ceilings.put(key, new Ceiling(result.getSeatsLeft(), now + ceilingTtlMs));
+                    } else if (fresh) {
+                        ceiling.seats -= seats;
+                    }
+                    break;
+                case INSUFFICIENT_SEATS:
+                    int below = seats - 1;
+                    ceilings.put(key, new Ceiling(fresh ? Math.min(ceiling.seats, below) : below, now + ceilingTtlMs));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Matches the store's answer for an itinerary one of whose legs is short of seats
+    private static List<ReservationResult> rejected(List<String> flightIds, String date, String blocked) {
+        List<ReservationResult> results = new ArrayList<>();
+        for (String flightId : flightIds) {
+            results.add(flightId.equals(blocked)
+                    ? ReservationResult.insufficientSeats(flightId, date)
+                    : ReservationResult.cancelled(flightId, date));
+        }
+        return results;
+    }
+
+    private static final class Allocation {
+        final SeatHold hold;
+        final CompletableFuture<List<ReservationResult>> result = new CompletableFuture<>();
+        // Set at the first conflict; handed between threads only through a queue or the scheduler
+        InventoryRetries.Backoff backoff;
+
+        Allocation(SeatHold hold) {
+            this.hold = hold;
+        }
+    }
+
+    // Upper bound on the seats left for one flight-date, trusted until it expires
+    private static final class Ceiling {
+        int seats;
+        final long expiresAt;
+
+        Ceiling(int seats, long expiresAt) {
+            this.seats = seats;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
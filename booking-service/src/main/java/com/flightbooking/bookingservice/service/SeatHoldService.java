@@ -0,0 +1,220 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.enums.SeatHoldStatus;
+import com.flightbooking.bookingservice.model.SeatHold;
+import com.flightbooking.bookingservice.repository.BookingRepository;
+import com.flightbooking.bookingservice.repository.SeatHoldRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Places, settles and expires seat holds. A booking's seats are taken together with a
+ * hold that expires after {@code booking.holds.ttl-seconds}; the payment outcome confirms
+ * or releases it, and holds nobody settled in time, for instance because the instance
+ * handling the payment died, are released by {@link #sweepExpiredHolds()}.
+ */
+@Service
+public class SeatHoldService {
+
+    @Autowired
+    private SeatHoldRepository seatHoldRepository;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private SeatAllocator seatAllocator;
+
+    @Autowired
+    private BookingStatusNotifier statusNotifier;
+
+    @Autowired
+    private AvailabilityCache availabilityCache;
+
+    @Value("${booking.holds.ttl-seconds:900}")
+    private long holdTtlSeconds = 900;
+
+    // How long settled holds are kept before the table's TTL deletes them
+    @Value("${booking.holds.retention-seconds:604800}")
+    private long retentionSeconds = 604800;
+
+    @Value("${booking.holds.sweep-batch-size:100}")
+    private int sweepBatchSize = 100;
+
+    // How far back the first sweep after startup looks for expired holds
+    @Value("${booking.holds.sweep-lookback-minutes:1440}")
+    private long sweepLookbackMinutes = 1440;
+
+    private Clock clock = Clock.systemUTC();
+
+    // Oldest expiry bucket that may still contain unreleased holds; -1 before the first sweep
+    private long nextBucket = -1;
+
+    /** Takes {@code seats} on every leg under a hold with id {@code holdId}, all or nothing. */
+    public List<ReservationResult> placeHold(String holdId, List<String> flightIds, String date, int seats) {
+        SeatHold hold = newHold(holdId, flightIds, date, seats);
+        List<ReservationResult> results = seatAllocator.reserve(hold);
+        availabilityCache.record(date, seats, results);
+        return results;
+    }
+
+    /** A hold for {@link #placeHolds}, expiring {@code booking.holds.ttl-seconds} from now. */
+    public SeatHold newHold(String holdId, List<String> flightIds, String date, int seats) {
+        return new SeatHold(holdId, flightIds, date, seats, now() + holdTtlSeconds);
+    }
+
+    /**
+     * Places several holds at once, taking the seats of those on the same flight-date in
+     * as few writes as the store allows. Each hold is still all or nothing on its own;
+     * the results, one per hold and in order, are as from {@link #placeHold}.
+     */
+    public List<CompletableFuture<List<ReservationResult>>> placeHolds(List<SeatHold> holds) {
+        List<CompletableFuture<List<ReservationResult>>> reservations = seatAllocator.reserveAll(holds);
+        List<CompletableFuture<List<ReservationResult>>> results = new ArrayList<>();
+        for (int i = 0; i < holds.size(); i++) {
+            SeatHold hold = holds.get(i);
+            results.add(reservations.get(i).thenApply(reserved -> {
+                availabilityCache.record(hold.getDate(), hold.getSeats(), reserved);
+                return reserved;
+            }));
+        }
+        return results;
+    }
+
+    /**
+     * Keeps the hold's seats for good. Returns true as well when it was confirmed before,
+     * so a retried payment does not take the seats twice; false if it was released.
+     */
+    public boolean confirmHold(String holdId) {
+        if (seatHoldRepository.confirm(holdId, now() + retentionSeconds)) {
+            return true;
+        }
+        SeatHold hold = seatHoldRepository.findById(holdId);
+        return hold != null && SeatHoldStatus.CONFIRMED.name().equals(hold.getStatus());
+    }
+
+    /** Returns the hold's seats. Returns false if it was missing or already settled. */
+    public boolean releaseHold(String holdId) {
+        SeatHold hold = seatHoldRepository.findById(holdId);
+        if (hold == null || !SeatHoldStatus.HELD.name().equals(hold.getStatus())) {
+            return false;
+        }
+        if (!seatHoldRepository.release(hold, now() + retentionSeconds)) {
+            return false;
+        }
+        availabilityCache.invalidate(hold.getFlightIdsAsList(), hold.getDate());
+        return true;
+    }
+
+    /**
+     * Releases holds past their expiry, one expiry bucket at a time from the oldest one
+     * not yet drained up to the current minute. Returns the number of holds released.
+     */
+    @Scheduled(fixedDelayString = "${booking.holds.sweep-interval-ms:30000}")
+    public synchronized int sweepExpiredHolds() {
+        long now = now();
+        long currentBucket = Math.floorDiv(now, SeatHold.BUCKET_SECONDS);
+        long firstBucket = nextBucket >= 0 ? nextBucket : currentBucket - sweepLookbackMinutes * 60 / SeatHold.BUCKET_SECONDS;
+
+        int[] released = {0};
+        long resumeFrom = currentBucket;
+        for (long bucket = firstBucket; bucket <= currentBucket; bucket++) {
+            if (!sweepBucket(SeatHold.bucketFor(bucket * SeatHold.BUCKET_SECONDS), now, released)) {
+                resumeFrom = Math.min(resumeFrom, bucket);
+            }
+        }
+        // The current bucket is always revisited, since more of its holds will expire
+        nextBucket = resumeFrom;
+
+        if (released[0] > 0) {
+            System.err.println("Released " + released[0] + " expired seat holds");
+        }
+        return released[0];
+    }
+
+    // Returns true once nothing expired is left in the bucket
+    private boolean sweepBucket(String bucket, long now, int[] released) {
+        Set<String> attempted = new HashSet<>();
+        boolean failed = false;
+        while (true) {
+            List<SeatHold> expired = seatHoldRepository.findExpired(bucket, now, sweepBatchSize);
+            if (expired.isEmpty()) {
+                return !failed;
+            }
+            Map<String, SeatHold> batch = new LinkedHashMap<>();
+            for (SeatHold hold : expired) {
+                if (attempted.add(hold.getHoldId())) {
+                    batch.put(hold.getHoldId(), hold);
+                }
+            }
+            if (batch.isEmpty()) {
+                // Only holds already tried this sweep: failures, or the index lagging a
+                // release; leave the bucket for the next sweep
+                return false;
+            }
+            // The page's seats come back with one increment per flight-date
+            List<String> releasedIds;
+            try {
+                releasedIds = seatHoldRepository.releaseAll(new ArrayList<>(batch.values()), now + retentionSeconds);
+            } catch (Exception e) {
+                failed = true;
+                System.err.println("Error releasing " + batch.size() + " expired seat holds: " + e.getMessage());
+                releasedIds = releasedBeforeFailure(batch.values());
+            }
+            for (String holdId : releasedIds) {
+                SeatHold hold = batch.get(holdId);
+                released[0]++;
+                availabilityCache.invalidate(hold.getFlightIdsAsList(), hold.getDate());
+                failExpiredBooking(holdId);
+            }
+        }
+    }
+
+    // Batches written before a failure are not retried, as those holds leave the expiry
+    // index, so their bookings are failed from here
+    private List<String> releasedBeforeFailure(Collection<SeatHold> attempted) {
+        List<String> released = new ArrayList<>();
+        for (SeatHold hold : attempted) {
+            try {
+                SeatHold current = seatHoldRepository.findById(hold.getHoldId());
+                if (current != null && SeatHoldStatus.RELEASED.name().equals(current.getStatus())) {
+                    released.add(hold.getHoldId());
+                }
+            } catch (Exception e) {
+                System.err.println("Error reading seat hold " + hold.getHoldId() + ": " + e.getMessage());
+            }
+        }
+        return released;
+    }
+
+    // Holds share their booking's id; a booking whose seats expired before its payment
+    // started can no longer succeed. One further on takes the seats again if paid, and one
+    // claimed in the meantime is failed by its own saga instead
+    private void failExpiredBooking(String bookingId) {
+        try {
+            if (bookingRepository.failUnclaimed(bookingId)) {
+                statusNotifier.publish(bookingId, BookingStatus.FAILED);
+            }
+        } catch (Exception e) {
+            System.err.println("Error failing booking " + bookingId + " after its hold expired: " + e.getMessage());
+        }
+    }
+
+    private long now() {
+        return clock.instant().getEpochSecond();
+    }
+}
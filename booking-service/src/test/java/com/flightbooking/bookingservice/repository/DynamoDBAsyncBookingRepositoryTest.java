@@ -0,0 +1,129 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.flightbooking.bookingservice.dto.BookingPage;
+import com.flightbooking.bookingservice.model.Booking;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.flightbooking.shared.repository.AttributeValues.toV1;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DynamoDBAsyncBookingRepositoryTest {
+
+    @Mock
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Spy
+    private DynamoDBMapper dynamoDBMapper = new DynamoDBMapper(mock(AmazonDynamoDB.class));
+
+    @InjectMocks
+    private DynamoDBAsyncBookingRepository bookingRepository;
+
+    @Test
+    void testFindById_MapsTheItemThroughTheMapper() {
+        // Given
+        when(dynamoDbAsyncClient.getItem(any(GetItemRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(GetItemResponse.builder().item(item("B001", "2024-01-15")).build()));
+
+        // When
+        Booking booking = bookingRepository.findById("B001").join();
+
+        // Then
+        assertEquals("B001", booking.getBookingId());
+        assertEquals("U001", booking.getUserId());
+        assertEquals("SUCCESS", booking.getStatus());
+        assertEquals(2, booking.getPassengers());
+        assertEquals(1_000L, booking.getCreatedAt());
+    }
+
+    @Test
+    void testFindById_NotFound() {
+        // Given
+        when(dynamoDbAsyncClient.getItem(any(GetItemRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(GetItemResponse.builder().build()));
+
+        // When / Then
+        assertNull(bookingRepository.findById("MISSING").join());
+    }
+
+    @Test
+    void testFindByUserIdAndStatus_CursorRoundTripsWithTheBlockingRepository() {
+        // Given - the next cursor comes back as the blocking repository would encode it
+        Map<String, AttributeValue> lastKey = new HashMap<>();
+        lastKey.put("bookingId", s("B001"));
+        lastKey.put("userId", s("U001"));
+        lastKey.put("date", s("2024-01-15"));
+        when(dynamoDbAsyncClient.query(any(QueryRequest.class))).thenReturn(CompletableFuture.completedFuture(
+            QueryResponse.builder().items(item("B001", "2024-01-15")).lastEvaluatedKey(lastKey).build()));
+        String cursor = DynamoDBBookingRepository.encodeCursor(toV1(lastKey));
+
+        // When
+        BookingPage page = bookingRepository.findByUserIdAndStatus("U001", "SUCCESS", cursor, 10).join();
+
+        // Then
+        assertEquals(1, page.getBookings().size());
+        assertEquals(cursor, page.getNextCursor());
+        ArgumentCaptor<QueryRequest> request = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(dynamoDbAsyncClient).query(request.capture());
+        assertEquals(Booking.USER_INDEX, request.getValue().indexName());
+        assertFalse(request.getValue().scanIndexForward());
+        assertEquals(lastKey, request.getValue().exclusiveStartKey());
+        assertEquals("#status = :status", request.getValue().filterExpression());
+        assertEquals(10, request.getValue().limit());
+    }
+
+    @Test
+    void testFindByUserId_CursorFromAnotherUserFailsTheFuture() {
+        // Given
+        Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> otherUser = new HashMap<>();
+        otherUser.put("bookingId", new com.amazonaws.services.dynamodbv2.model.AttributeValue().withS("B009"));
+        otherUser.put("userId", new com.amazonaws.services.dynamodbv2.model.AttributeValue().withS("U009"));
+
+        // When
+        CompletableFuture<BookingPage> page = bookingRepository.findByUserId(
+            "U001", DynamoDBBookingRepository.encodeCursor(otherUser), 10);
+
+        // Then
+        CompletionException failure = assertThrows(CompletionException.class, page::join);
+        assertTrue(failure.getCause() instanceof IllegalArgumentException);
+        verifyNoInteractions(dynamoDbAsyncClient);
+    }
+
+    private static Map<String, AttributeValue> item(String bookingId, String date) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("bookingId", s(bookingId));
+        item.put("userId", s("U001"));
+        item.put("flightIds", s("F001"));
+        item.put("date", s(date));
+        item.put("status", s("SUCCESS"));
+        item.put("cost", s("200.0"));
+        item.put("passengers", AttributeValue.builder().n("2").build());
+        item.put("createdAt", AttributeValue.builder().n("1000").build());
+        return item;
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+}
@@ -0,0 +1,77 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.flightbooking.bookingservice.model.Inventory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DynamoDBInventoryRepositoryTest {
+
+    private static final String INVENTORY_ID = "F001#2024-01-15";
+
+    @Mock
+    private DynamoDBMapper dynamoDBMapper;
+
+    @Mock
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Mock
+    private InventoryShards shards;
+
+    @InjectMocks
+    private DynamoDBInventoryRepository inventoryRepository;
+
+    @Test
+    void testSave_IsConditionedOnTheRecordNotBeingSplit() {
+        // Given
+        Inventory inventory = new Inventory(INVENTORY_ID, "F001", "2024-01-15", 100, 1L);
+        when(dynamoDBMapper.getTableModel(Inventory.class)).thenReturn(new DynamoDBMapper(amazonDynamoDB).getTableModel(Inventory.class));
+
+        // When
+        inventoryRepository.save(inventory);
+
+        // Then
+        ArgumentCaptor<PutItemRequest> captor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(amazonDynamoDB).putItem(captor.capture());
+        assertEquals("attribute_not_exists(shardCount) OR shardCount <= :one", captor.getValue().getConditionExpression());
+        assertEquals("100", captor.getValue().getItem().get("numberOfSeatsLeft").getN());
+    }
+
+    @Test
+    void testSave_RecordSplitSinceItWasReadIsRejected() {
+        // Given - another instance split the record after this copy was read
+        Inventory stale = new Inventory(INVENTORY_ID, "F001", "2024-01-15", 100, 1L);
+        when(dynamoDBMapper.getTableModel(Inventory.class)).thenReturn(new DynamoDBMapper(amazonDynamoDB).getTableModel(Inventory.class));
+        when(amazonDynamoDB.putItem(any(PutItemRequest.class))).thenThrow(new ConditionalCheckFailedException("split"));
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> inventoryRepository.save(stale));
+    }
+
+    @Test
+    void testFindById_SplitRecordReportsSeatsOnEveryShard() {
+        // Given
+        Inventory base = new Inventory(INVENTORY_ID, "F001", "2024-01-15", 25, 1L);
+        base.setShardCount(4);
+        when(dynamoDBMapper.load(Inventory.class, INVENTORY_ID)).thenReturn(base);
+        when(shards.seatsOnShards(INVENTORY_ID, 4)).thenReturn(60);
+
+        // When
+        Inventory inventory = inventoryRepository.findById(INVENTORY_ID);
+
+        // Then
+        assertEquals(85, inventory.getNumberOfSeatsLeftAsInt());
+    }
+}
@@ -0,0 +1,194 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.flightbooking.bookingservice.dto.BookingPage;
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryBookingRepositoryTest {
+
+    @Spy
+    private LatencyInjector latencyInjector = new LatencyInjector(0, 0, 0.0, 0);
+
+    @Mock
+    private InMemoryInventoryRepository inventoryRepository;
+
+    @InjectMocks
+    private InMemoryBookingRepository bookingRepository;
+
+    @BeforeEach
+    void setUp() {
+        bookingRepository.save(booking("B001", "U001", "2024-01-15", "SUCCESS", 1_000L));
+        bookingRepository.save(booking("B002", "U001", "2024-01-17", "PROCESSING", 2_000L));
+        bookingRepository.save(booking("B003", "U001", "2024-01-16", "SUCCESS", 3_000L));
+        bookingRepository.save(booking("B004", "U002", "2024-01-15", "PROCESSING", 4_000L));
+    }
+
+    @Test
+    void testFindByUserId_PagesLatestTravelDateFirst() {
+        // When
+        BookingPage first = bookingRepository.findByUserId("U001", null, 2);
+        BookingPage second = bookingRepository.findByUserId("U001", first.getNextCursor(), 2);
+
+        // Then
+        assertEquals(List.of("B002", "B003"), ids(first));
+        assertTrue(first.hasMore());
+        assertEquals(List.of("B001"), ids(second));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void testFindByStatus_OldestFirstBeforeCutoff() {
+        // Given - saved before createdAt was recorded, so it is not in the status index
+        bookingRepository.save(booking("B005", "U003", "2024-01-15", "PROCESSING", null));
+
+        // When
+        BookingPage stuck = bookingRepository.findByStatus("PROCESSING", 3_000L, null, 10);
+
+        // Then
+        assertEquals(List.of("B002"), ids(stuck));
+        assertNull(stuck.getNextCursor());
+    }
+
+    @Test
+    void testFindByFlightAndDate_PagesEveryBookingWithALegOnTheFlight() {
+        // Given - a multi-leg booking, and one made before createdAt was recorded
+        Booking connecting = booking("B005", "U003", "2024-01-15", "SUCCESS", 5_000L);
+        connecting.setFlightIds("F002,F001");
+        bookingRepository.save(connecting);
+        bookingRepository.save(booking("B006", "U003", "2024-01-15", "SUCCESS", null));
+        Booking otherFlight = booking("B007", "U003", "2024-01-15", "SUCCESS", 7_000L);
+        otherFlight.setFlightIds("F003");
+        bookingRepository.save(otherFlight);
+
+        // When
+        BookingPage first = bookingRepository.findByFlightAndDate("F001", "2024-01-15", null, 2);
+        BookingPage second = bookingRepository.findByFlightAndDate("F001", "2024-01-15", first.getNextCursor(), 2);
+
+        // Then
+        assertEquals(List.of("B001", "B004"), ids(first));
+        assertEquals(List.of("B005", "B006"), ids(second));
+        assertNull(second.getNextCursor());
+        assertEquals(List.of("B005"), ids(bookingRepository.findByFlightAndDate("F002", "2024-01-15", null, 10)));
+    }
+
+    @Test
+    void testFindByUserIdAndStatus_KeepsOnlyMatchingStatus() {
+        // When
+        BookingPage settled = bookingRepository.findByUserIdAndStatus("U001", "SUCCESS", null, 10);
+
+        // Then
+        assertEquals(List.of("B003", "B001"), ids(settled));
+        assertThrows(IllegalArgumentException.class,
+            () -> bookingRepository.findByUserId("U001", "no-such-booking", 10));
+    }
+
+    @Test
+    void testAdvanceSaga_OnlyLatestClaimSavesSteps() {
+        // Given - the first claim's lease ran out and another worker claimed the booking
+        Booking queued = booking("B006", "U003", "2024-01-15", "PROCESSING", 5_000L);
+        queued.setSagaState("RESERVED");
+        queued.queuePayment(5_000L);
+        bookingRepository.save(queued);
+        Booking stale = bookingRepository.claimPayment("B006", "worker-1", 5_000L, 6_000L);
+        Booking latest = bookingRepository.claimPayment("B006", "worker-2", 6_000L, 7_000L);
+
+        // When
+        boolean staleAdvanced = bookingRepository.advanceSaga(stale, "PAYMENT_PENDING");
+        boolean latestAdvanced = bookingRepository.advanceSaga(latest, "COMPENSATING");
+
+        // Then - the step is saved and the payment stays queued until the saga is final
+        assertFalse(staleAdvanced);
+        assertTrue(latestAdvanced);
+        Booking stored = bookingRepository.findById("B006");
+        assertEquals("COMPENSATING", stored.getSagaState());
+        assertNotNull(stored.getPaymentQueue());
+        assertTrue(bookingRepository.completePayment(latest, "FAILED", "FAILED"));
+        assertEquals("FAILED", bookingRepository.findById("B006").getSagaState());
+        assertNull(bookingRepository.findById("B006").getPaymentQueue());
+    }
+
+    @Test
+    void testFailUnclaimed_ClaimBetweenExpiryAndSweepKeepsTheBooking() {
+        // Given - two bookings whose holds expired; the saga claims B006 before the sweep
+        for (String bookingId : Arrays.asList("B006", "B007")) {
+            Booking queued = booking(bookingId, "U003", "2024-01-15", "PROCESSING", 5_000L);
+            queued.setSagaState("RESERVED");
+            queued.queuePayment(5_000L);
+            bookingRepository.save(queued);
+        }
+        Booking claimed = bookingRepository.claimPayment("B006", "worker-1", 5_000L, 6_000L);
+
+        // When
+        boolean claimedFailed = bookingRepository.failUnclaimed("B006");
+        boolean unclaimedFailed = bookingRepository.failUnclaimed("B007");
+
+        // Then - the claimed saga's steps still apply; the other is failed with its
+        // payment left queued for the saga to settle
+        assertFalse(claimedFailed);
+        assertTrue(unclaimedFailed);
+        assertTrue(bookingRepository.advanceSaga(claimed, "PAYMENT_PENDING"));
+        assertEquals("PROCESSING", bookingRepository.findById("B006").getStatus());
+        Booking failed = bookingRepository.findById("B007");
+        assertEquals("FAILED", failed.getStatus());
+        assertEquals("FAILED", failed.getSagaState());
+        assertNotNull(failed.getPaymentQueue());
+        assertFalse(bookingRepository.failUnclaimed("B001"));
+    }
+
+    @Test
+    void testCancelConfirmed_ReturnsSeatsOncePerFlightDate() {
+        // Given - B001 and B003 are confirmed on F001; B002 is still processing
+        Booking twoSeats = booking("B006", "U003", "2024-01-15", "SUCCESS", 5_000L);
+        twoSeats.setPassengers(2);
+        bookingRepository.save(twoSeats);
+        when(inventoryRepository.releaseSeats(anyString(), anyString(), anyInt())).thenReturn(true);
+
+        // When
+        List<String> cancelled = bookingRepository.cancelConfirmed(Arrays.asList(
+            bookingRepository.findById("B001"), bookingRepository.findById("B002"),
+            bookingRepository.findById("B006")), 9_000L);
+
+        // Then
+        assertEquals(Arrays.asList("B001", "B006"), cancelled);
+        verify(inventoryRepository).releaseSeats("F001", "2024-01-15", 3);
+        verify(inventoryRepository, times(1)).releaseSeats(anyString(), anyString(), anyInt());
+        Booking refunding = bookingRepository.findById("B001");
+        assertEquals("CANCELLED", refunding.getStatus());
+        assertEquals("REFUND_PENDING", refunding.getSagaState());
+        assertEquals(9_000L, refunding.getPaymentDueAt());
+        assertEquals("PROCESSING", bookingRepository.findById("B002").getStatus());
+        assertTrue(bookingRepository.cancelConfirmed(Arrays.asList(refunding), 9_500L).isEmpty());
+    }
+
+    private static List<String> ids(BookingPage page) {
+        List<String> ids = new ArrayList<>();
+        for (Booking booking : page.getBookings()) {
+            ids.add(booking.getBookingId());
+        }
+        return ids;
+    }
+
+    private static Booking booking(String bookingId, String userId, String date, String status, Long createdAt) {
+        Booking booking = new Booking(bookingId, userId, "F001", date, "DEL", "BOM", status, "200.0");
+        booking.setPassengers(1);
+        booking.setCreatedAt(createdAt);
+        return booking;
+    }
+}
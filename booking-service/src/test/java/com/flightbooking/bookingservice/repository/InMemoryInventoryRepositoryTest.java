@@ -0,0 +1,325 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.enums.ReservationStatus;
+import com.flightbooking.bookingservice.exception.OptimisticLockingException;
+import com.flightbooking.bookingservice.model.Inventory;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryInventoryRepositoryTest {
+
+    @Spy
+    private LatencyInjector latencyInjector = new LatencyInjector(0, 0, 0.0, 0);
+
+    @InjectMocks
+    private InMemoryInventoryRepository inventoryRepository;
+
+    @BeforeEach
+    void setUp() {
+        inventoryRepository.save(new Inventory("INV001", "FL001", "2024-01-15", 100));
+    }
+
+    @Test
+    void testFindByFlightIdAndDate_ReturnsIsolatedCopy() {
+        // Given
+        Inventory read = inventoryRepository.findByFlightIdAndDate("FL001", "2024-01-15");
+        read.setNumberOfSeatsLeftAsInt(0);
+
+        // When
+        Inventory reread = inventoryRepository.findByFlightIdAndDate("FL001", "2024-01-15");
+
+        // Then
+        assertEquals(100, reread.getNumberOfSeatsLeftAsInt());
+        assertNull(inventoryRepository.findByFlightIdAndDate("FL001", "2024-01-16"));
+    }
+
+    @Test
+    void testFindByFlightIdsAndDate_KeepsLegOrderWithNullForMissingLegs() {
+        // Given
+        inventoryRepository.save(new Inventory("FL002", "2024-01-15", 40));
+
+        // When
+        List<Inventory> legs = inventoryRepository.findByFlightIdsAndDate(Arrays.asList("FL002", "FL404", "FL001"), "2024-01-15");
+
+        // Then
+        assertEquals(3, legs.size());
+        assertEquals(40, legs.get(0).getNumberOfSeatsLeftAsInt());
+        assertNull(legs.get(1));
+        assertEquals(100, legs.get(2).getNumberOfSeatsLeftAsInt());
+    }
+
+    @Test
+    void testSave_DerivesIdFromFlightAndDate() {
+        // When
+        inventoryRepository.save(new Inventory("FL002", "2024-01-15", 40));
+        Inventory withoutId = new Inventory();
+        withoutId.setFlightId("FL003");
+        withoutId.setDate("2024-01-15");
+        withoutId.setNumberOfSeatsLeftAsInt(10);
+        withoutId.setVersionAsLong(1L);
+        inventoryRepository.save(withoutId);
+
+        // Then
+        assertEquals("FL002#2024-01-15", inventoryRepository.findByFlightIdAndDate("FL002", "2024-01-15").getInventoryId());
+        assertEquals(10, inventoryRepository.findById("FL003#2024-01-15").getNumberOfSeatsLeftAsInt());
+    }
+
+    @Test
+    void testSave_NextVersionSucceeds() {
+        // Given
+        Inventory inventory = inventoryRepository.findById("INV001");
+        inventory.setNumberOfSeatsLeftAsInt(98);
+        inventory.setVersionAsLong(inventory.getVersionAsLong() + 1);
+
+        // When
+        inventoryRepository.save(inventory);
+
+        // Then
+        Inventory stored = inventoryRepository.findById("INV001");
+        assertEquals(98, stored.getNumberOfSeatsLeftAsInt());
+        assertEquals(2L, stored.getVersionAsLong());
+    }
+
+    @Test
+    void testSave_StaleVersionIsRejected() {
+        // Given - two readers of version 1
+        Inventory first = inventoryRepository.findById("INV001");
+        Inventory second = inventoryRepository.findById("INV001");
+        first.setNumberOfSeatsLeftAsInt(99);
+        first.setVersionAsLong(2L);
+        second.setNumberOfSeatsLeftAsInt(98);
+        second.setVersionAsLong(2L);
+        inventoryRepository.save(first);
+
+        // When & Then
+        assertThrows(OptimisticLockingException.class, () -> inventoryRepository.save(second));
+        assertEquals(99, inventoryRepository.findById("INV001").getNumberOfSeatsLeftAsInt());
+    }
+
+    @Test
+    void testSave_ConcurrentReadModifyWriteLosesNoUpdates() throws Exception {
+        // Given
+        int threads = 8;
+        int reservationsPerThread = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When - every thread retries on conflict until its reservations land
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < reservationsPerThread; i++) {
+                    while (true) {
+                        Inventory inventory = inventoryRepository.findByFlightIdAndDate("FL001", "2024-01-15");
+                        inventory.setNumberOfSeatsLeftAsInt(inventory.getNumberOfSeatsLeftAsInt() - 1);
+                        inventory.setVersionAsLong(inventory.getVersionAsLong() + 1);
+                        try {
+                            inventoryRepository.save(inventory);
+                            break;
+                        } catch (OptimisticLockingException e) {
+                            // retry
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        Inventory stored = inventoryRepository.findById("INV001");
+        assertEquals(100 - threads * reservationsPerThread, stored.getNumberOfSeatsLeftAsInt());
+        assertEquals(1L + threads * reservationsPerThread, stored.getVersionAsLong());
+    }
+
+    @Test
+    void testReserveSeats_DecrementsAndBumpsVersion() {
+        // When
+        ReservationResult result = inventoryRepository.reserveSeats("FL001", "2024-01-15", 3);
+
+        // Then
+        assertTrue(result.isReserved());
+        assertEquals(97, result.getSeatsLeft());
+        Inventory stored = inventoryRepository.findById("INV001");
+        assertEquals(97, stored.getNumberOfSeatsLeftAsInt());
+        assertEquals(2L, stored.getVersionAsLong());
+    }
+
+    @Test
+    void testReserveSeats_RejectsWithoutChangingInventory() {
+        // When
+        ReservationResult tooMany = inventoryRepository.reserveSeats("FL001", "2024-01-15", 101);
+        ReservationResult missing = inventoryRepository.reserveSeats("FL001", "2024-01-16", 1);
+
+        // Then
+        assertEquals(ReservationStatus.INSUFFICIENT_SEATS, tooMany.getStatus());
+        assertEquals(ReservationStatus.NOT_FOUND, missing.getStatus());
+        Inventory stored = inventoryRepository.findById("INV001");
+        assertEquals(100, stored.getNumberOfSeatsLeftAsInt());
+        assertEquals(1L, stored.getVersionAsLong());
+    }
+
+    @Test
+    void testReleaseSeats_ReturnsSeats() {
+        // Given
+        inventoryRepository.reserveSeats("FL001", "2024-01-15", 5);
+
+        // When
+        boolean released = inventoryRepository.releaseSeats("FL001", "2024-01-15", 5);
+
+        // Then
+        assertTrue(released);
+        assertEquals(100, inventoryRepository.findById("INV001").getNumberOfSeatsLeftAsInt());
+        assertFalse(inventoryRepository.releaseSeats("FL001", "2024-01-16", 5));
+    }
+
+    @Test
+    void testReserveSeats_ConcurrentReservationsNeverOversell() throws Exception {
+        // Given - more demand than seats
+        int threads = 8;
+        int attemptsPerThread = 20;
+        AtomicInteger reserved = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    if (inventoryRepository.reserveSeats("FL001", "2024-01-15", 1).isReserved()) {
+                        reserved.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        assertEquals(100, reserved.get());
+        assertEquals(0, inventoryRepository.findById("INV001").getNumberOfSeatsLeftAsInt());
+    }
+
+    @Test
+    void testReserveItinerary_ReservesEveryLeg() {
+        // Given
+        inventoryRepository.save(new Inventory("INV002", "FL002", "2024-01-15", 10));
+
+        // When
+        List<ReservationResult> results = inventoryRepository.reserveSeats(Arrays.asList("FL001", "FL002"), "2024-01-15", 4);
+
+        // Then
+        assertTrue(results.stream().allMatch(ReservationResult::isReserved));
+        assertEquals(96, inventoryRepository.findById("INV001").getNumberOfSeatsLeftAsInt());
+        assertEquals(6, inventoryRepository.findById("INV002").getNumberOfSeatsLeftAsInt());
+    }
+
+    @Test
+    void testReserveItinerary_SoldOutLegReservesNothing() {
+        // Given
+        inventoryRepository.save(new Inventory("INV002", "FL002", "2024-01-15", 3));
+
+        // When
+        List<ReservationResult> results = inventoryRepository.reserveSeats(
+                Arrays.asList("FL001", "FL002", "FL003"), "2024-01-15", 4);
+
+        // Then
+        assertEquals(ReservationStatus.CANCELLED, results.get(0).getStatus());
+        assertEquals(ReservationStatus.INSUFFICIENT_SEATS, results.get(1).getStatus());
+        assertEquals(ReservationStatus.NOT_FOUND, results.get(2).getStatus());
+        assertEquals(100, inventoryRepository.findById("INV001").getNumberOfSeatsLeftAsInt());
+        assertEquals(1L, inventoryRepository.findById("INV001").getVersionAsLong());
+        assertEquals(3, inventoryRepository.findById("INV002").getNumberOfSeatsLeftAsInt());
+    }
+
+    @Test
+    void testReserveItinerary_ConcurrentItinerariesNeverSplit() throws Exception {
+        // Given - more demand than seats on both flights
+        inventoryRepository.save(new Inventory("INV002", "FL002", "2024-01-15", 30));
+        int threads = 8;
+        AtomicInteger itineraries = new AtomicInteger();
+        AtomicInteger singles = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When - itineraries race with single-leg bookings on FL001
+        for (int t = 0; t < threads; t++) {
+            boolean itinerary = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    if (itinerary) {
+                        List<ReservationResult> results = inventoryRepository.reserveSeats(
+                                Arrays.asList("FL001", "FL002"), "2024-01-15", 1);
+                        if (results.stream().allMatch(ReservationResult::isReserved)) {
+                            itineraries.incrementAndGet();
+                        }
+                    } else if (inventoryRepository.reserveSeats("FL001", "2024-01-15", 1).isReserved()) {
+                        singles.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then - every seat taken is accounted for by a whole itinerary or a single leg
+        int fl001Left = inventoryRepository.findById("INV001").getNumberOfSeatsLeftAsInt();
+        int fl002Left = inventoryRepository.findById("INV002").getNumberOfSeatsLeftAsInt();
+        assertEquals(100 - itineraries.get() - singles.get(), fl001Left);
+        assertEquals(30 - itineraries.get(), fl002Left);
+        assertTrue(fl001Left >= 0 && fl002Left >= 0);
+    }
+
+    @Test
+    void testLatencyInjector_FailureRateOneAlwaysFails() {
+        // Given
+        LatencyInjector failing = new LatencyInjector(0, 0, 1.0, 42L);
+
+        // When & Then
+        assertThrows(ProvisionedThroughputExceededException.class, () -> failing.pause("save"));
+    }
+
+    @Test
+    void testLatencyInjector_SameSeedGivesSameFailures() {
+        // Given
+        LatencyInjector first = new LatencyInjector(0, 0, 0.5, 7L);
+        LatencyInjector second = new LatencyInjector(0, 0, 0.5, 7L);
+
+        // When & Then
+        for (int i = 0; i < 20; i++) {
+            assertEquals(failed(first), failed(second));
+        }
+    }
+
+    private static boolean failed(LatencyInjector injector) {
+        try {
+            injector.pause("findById");
+            return false;
+        } catch (ProvisionedThroughputExceededException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.flightbooking.bookingservice.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryRetriesTest {
+
+    private static final String HOT = "F001#2024-01-15";
+    private static final String COLD = "F002#2024-01-15";
+
+    @Mock
+    private Clock clock;
+
+    @InjectMocks
+    private InventoryRetries inventoryRetries;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(clock.millis()).thenReturn(1_000L);
+    }
+
+    @Test
+    void testNextDelay_DecorrelatedJitterStaysBetweenBaseAndCap() {
+        // Given
+        InventoryRetries.Backoff backoff = inventoryRetries.newBackoff();
+
+        // When & Then - the first wait is the base, later ones at most three times the last
+        long previous = backoff.nextDelayMs();
+        assertEquals(10, previous);
+        for (int i = 0; i < 50; i++) {
+            long delay = backoff.nextDelayMs();
+            assertTrue(delay >= 10 && delay <= Math.min(200, previous * 3), "delay " + delay + " after " + previous);
+            previous = delay;
+        }
+    }
+
+    @Test
+    void testRetry_DrawsTheDelayForTheCallerToWait() {
+        // Given
+        InventoryRetries.Backoff backoff = inventoryRetries.newBackoff();
+
+        // When
+        boolean retry = backoff.retry(Collections.singletonList(HOT));
+
+        // Then - the first decorrelated wait is the base delay
+        assertTrue(retry);
+        assertEquals(10, backoff.delayMs());
+    }
+
+    @Test
+    void testRetry_GivesUpAfterMaxAttempts() {
+        // Given
+        InventoryRetries.Backoff backoff = inventoryRetries.newBackoff();
+
+        // When
+        boolean first = backoff.retry(Collections.singletonList(HOT));
+        boolean second = backoff.retry(Collections.singletonList(HOT));
+        boolean third = backoff.retry(Collections.singletonList(HOT));
+
+        // Then
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+        Map<String, Object> stats = inventoryRetries.stats(10);
+        assertEquals(3L, stats.get("conflicts"));
+        assertEquals(2L, stats.get("retries"));
+        assertEquals(1L, stats.get("givenUp"));
+    }
+
+    @Test
+    void testRetry_SpentBudgetFailsFastUntilTheWindowTurns() {
+        // Given - fifty writes have each retried once on the hot flight-date
+        for (int i = 0; i < 50; i++) {
+            assertTrue(inventoryRetries.newBackoff().retry(Collections.singletonList(HOT)));
+        }
+
+        // When
+        boolean overBudget = inventoryRetries.newBackoff().retry(Collections.singletonList(HOT));
+        boolean otherKey = inventoryRetries.newBackoff().retry(Collections.singletonList(COLD));
+        when(clock.millis()).thenReturn(2_001L);
+        boolean nextWindow = inventoryRetries.newBackoff().retry(Collections.singletonList(HOT));
+
+        // Then
+        assertFalse(overBudget);
+        assertTrue(otherKey);
+        assertTrue(nextWindow);
+        assertEquals(1L, inventoryRetries.stats(10).get("budgetExhausted"));
+    }
+
+    @Test
+    void testRetry_KeyOverBudgetSpendsNothingFromTheOthers() {
+        // Given - the hot flight-date has spent its budget
+        for (int i = 0; i < 50; i++) {
+            inventoryRetries.newBackoff().retry(Collections.singletonList(HOT));
+        }
+
+        // When
+        boolean both = inventoryRetries.newBackoff().retry(Arrays.asList(COLD, HOT));
+
+        // Then - the cold flight-date still has all fifty retries
+        assertFalse(both);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(inventoryRetries.newBackoff().retry(Collections.singletonList(COLD)));
+        }
+        assertFalse(inventoryRetries.newBackoff().retry(Collections.singletonList(COLD)));
+    }
+
+    @Test
+    void testBindTo_PublishesTotalsAsMeters() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        inventoryRetries.bindTo(registry);
+
+        // When
+        inventoryRetries.newBackoff().retry(Collections.singletonList(HOT));
+        inventoryRetries.recordConflict(COLD);
+
+        // Then
+        assertEquals(2.0, registry.get("inventory.write.conflicts").functionCounter().count());
+        assertEquals(1.0, registry.get("inventory.write.retries").functionCounter().count());
+        assertEquals(0.0, registry.get("inventory.write.given.up").functionCounter().count());
+        assertEquals(2.0, registry.get("inventory.write.tracked.keys").gauge().value());
+    }
+
+    @Test
+    void testStats_ListsHottestKeysFirst() {
+        // Given
+        inventoryRetries.recordConflict(COLD);
+        inventoryRetries.recordConflict(HOT);
+        inventoryRetries.recordConflict(HOT);
+
+        // When
+        Map<String, Object> stats = inventoryRetries.stats(1);
+
+        // Then
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> hotKeys = (List<Map<String, Object>>) stats.get("hotKeys");
+        assertEquals(1, hotKeys.size());
+        assertEquals(HOT, hotKeys.get(0).get("key"));
+        assertEquals(2L, hotKeys.get(0).get("conflicts"));
+        assertEquals(2, stats.get("trackedKeys"));
+    }
+}
@@ -0,0 +1,129 @@
+package com.flightbooking.bookingservice.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.Update;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryShardsTest {
+
+    private static final String INVENTORY_ID = "F001#2024-01-15";
+
+    @Mock
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @InjectMocks
+    private InventoryShards inventoryShards;
+
+    @Test
+    void testSeatsOnShards_ReadsEveryRecordsShardsInOneBatch() {
+        // Given - one shard is left unprocessed by the first call and returned by the second
+        Map<String, AttributeValue> unprocessedKey = inventoryShards.keyFor("F002#2024-01-15", 1);
+        when(amazonDynamoDB.batchGetItem(any(BatchGetItemRequest.class)))
+            .thenReturn(new BatchGetItemResult()
+                .withResponses(Map.of(InventoryShards.SHARD_TABLE_NAME, List.of(shard(INVENTORY_ID, 10), shard(INVENTORY_ID, 15))))
+                .withUnprocessedKeys(Map.of(InventoryShards.SHARD_TABLE_NAME, new KeysAndAttributes().withKeys(unprocessedKey))))
+            .thenReturn(new BatchGetItemResult()
+                .withResponses(Map.of(InventoryShards.SHARD_TABLE_NAME, List.of(shard("F002#2024-01-15", 7)))));
+
+        // When
+        Map<String, Integer> seats = inventoryShards.seatsOnShards(Map.of(INVENTORY_ID, 3, "F002#2024-01-15", 2));
+
+        // Then
+        assertEquals(25, seats.get(INVENTORY_ID));
+        assertEquals(7, seats.get("F002#2024-01-15"));
+        ArgumentCaptor<BatchGetItemRequest> captor = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(amazonDynamoDB, times(2)).batchGetItem(captor.capture());
+        assertEquals(3, captor.getAllValues().get(0).getRequestItems().get(InventoryShards.SHARD_TABLE_NAME).getKeys().size());
+        verify(amazonDynamoDB, never()).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    void testSplit_MovesAnEvenShareToEachNewShard() {
+        // Given
+        when(amazonDynamoDB.getItem(any(GetItemRequest.class))).thenReturn(record(100, null));
+
+        // When
+        assertTrue(inventoryShards.split(INVENTORY_ID, 4));
+
+        // Then - shard 0 keeps its share and three shard items get 25 seats each
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(amazonDynamoDB).transactWriteItems(captor.capture());
+        List<TransactWriteItem> items = captor.getValue().getTransactItems();
+        assertEquals(4, items.size());
+        Update base = items.get(0).getUpdate();
+        assertEquals(InventoryShards.INVENTORY_TABLE_NAME, base.getTableName());
+        assertEquals("-75", base.getExpressionAttributeValues().get(":taken").getN());
+        for (TransactWriteItem shard : items.subList(1, items.size())) {
+            assertEquals(InventoryShards.SHARD_TABLE_NAME, shard.getUpdate().getTableName());
+            assertEquals("25", shard.getUpdate().getExpressionAttributeValues().get(":share").getN());
+        }
+        assertEquals(4, inventoryShards.shardCount(INVENTORY_ID));
+    }
+
+    @Test
+    void testSplit_RecordChangedConcurrentlyIsLeftAlone() {
+        // Given
+        when(amazonDynamoDB.getItem(any(GetItemRequest.class))).thenReturn(record(100, null));
+        when(amazonDynamoDB.transactWriteItems(any(TransactWriteItemsRequest.class)))
+            .thenThrow(new TransactionCanceledException("Transaction cancelled"));
+
+        // When & Then
+        assertFalse(inventoryShards.split(INVENTORY_ID, 2));
+        assertEquals(1, inventoryShards.shardCount(INVENTORY_ID));
+    }
+
+    @Test
+    void testRecordContention_SplitsOnceWhenThresholdIsCrossed() {
+        // Given
+        when(amazonDynamoDB.getItem(any(GetItemRequest.class))).thenReturn(record(40, null));
+
+        // When - twenty conflicts reach the default threshold, the rest stay below the next
+        for (int i = 0; i < 30; i++) {
+            inventoryShards.recordContention(INVENTORY_ID);
+        }
+
+        // Then
+        verify(amazonDynamoDB, times(1)).transactWriteItems(any(TransactWriteItemsRequest.class));
+        assertEquals(2, inventoryShards.shardCount(INVENTORY_ID));
+    }
+
+    private static GetItemResult record(int seats, Integer shardCount) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("inventoryId", new AttributeValue().withS(INVENTORY_ID));
+        item.put("numberOfSeatsLeft", new AttributeValue().withN(String.valueOf(seats)));
+        if (shardCount != null) {
+            item.put("shardCount", new AttributeValue().withN(String.valueOf(shardCount)));
+        }
+        return new GetItemResult().withItem(item);
+    }
+
+    private static Map<String, AttributeValue> shard(String inventoryId, int seats) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("inventoryId", new AttributeValue().withS(inventoryId));
+        item.put("numberOfSeatsLeft", new AttributeValue().withN(String.valueOf(seats)));
+        return item;
+    }
+}
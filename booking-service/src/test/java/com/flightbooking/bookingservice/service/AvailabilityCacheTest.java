@@ -0,0 +1,146 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.model.Inventory;
+import com.flightbooking.bookingservice.repository.InventoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvailabilityCacheTest {
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    @Mock
+    private Clock clock;
+
+    @InjectMocks
+    private AvailabilityCache availabilityCache;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(clock.millis()).thenReturn(10_000L);
+    }
+
+    @Test
+    void testIsKnownShort_RejectedReservationMarksLegShort() {
+        // Given - a request for 3 seats found F002 short
+        availabilityCache.record("2024-01-15", 3, Arrays.asList(
+            ReservationResult.cancelled("F001", "2024-01-15"),
+            ReservationResult.insufficientSeats("F002", "2024-01-15")));
+
+        // Then - 3 or more seats cannot fit, fewer might
+        assertTrue(availabilityCache.isKnownShort(Arrays.asList("F001", "F002"), "2024-01-15", 3));
+        assertFalse(availabilityCache.isKnownShort(Arrays.asList("F001", "F002"), "2024-01-15", 2));
+        assertFalse(availabilityCache.isKnownShort(Arrays.asList("F002"), "2024-01-16", 3));
+    }
+
+    @Test
+    void testIsKnownShort_SeatsLeftAfterReservation() {
+        // Given
+        availabilityCache.record("2024-01-15", 2, Arrays.asList(ReservationResult.reserved("F001", "2024-01-15", 1)));
+
+        // Then
+        assertTrue(availabilityCache.isKnownShort(Arrays.asList("F001"), "2024-01-15", 2));
+        assertFalse(availabilityCache.isKnownShort(Arrays.asList("F001"), "2024-01-15", 1));
+    }
+
+    @Test
+    void testIsKnownShort_ReleasedSeatsAndExpiryClearTheEntry() {
+        // Given
+        availabilityCache.record("2024-01-15", 2, Arrays.asList(
+            ReservationResult.insufficientSeats("F001", "2024-01-15"),
+            ReservationResult.insufficientSeats("F002", "2024-01-15")));
+
+        // When
+        availabilityCache.invalidate(Arrays.asList("F001"), "2024-01-15");
+        when(clock.millis()).thenReturn(12_000L);
+
+        // Then - F001 was released; F002's entry is past its TTL
+        assertFalse(availabilityCache.isKnownShort(Arrays.asList("F001"), "2024-01-15", 2));
+        assertFalse(availabilityCache.isKnownShort(Arrays.asList("F002"), "2024-01-15", 2));
+    }
+
+    @Test
+    void testSeatsLeft_ReadsMissesOnceThenServesFromMemory() {
+        // Given - F002 has no inventory record
+        when(inventoryRepository.findByFlightIdsAndDate(Arrays.asList("F001", "F002"), "2024-01-15"))
+            .thenReturn(Arrays.asList(inventory("F001", 40, 3L), null));
+
+        // When
+        Map<String, Integer> first = availabilityCache.seatsLeft(Arrays.asList("F001", "F002"), "2024-01-15");
+        Map<String, Integer> second = availabilityCache.seatsLeft(Arrays.asList("F001"), "2024-01-15");
+
+        // Then
+        assertEquals(Map.of("F001", 40), first);
+        assertEquals(Map.of("F001", 40), second);
+        verify(inventoryRepository, times(1)).findByFlightIdsAndDate(anyList(), anyString());
+    }
+
+    @Test
+    void testSeatsLeft_ReadOvertakenByReservationDoesNotReplaceIt() {
+        // Given - a reservation leaves 38 seats at version 5 while the read of version 4 is under way
+        when(inventoryRepository.findByFlightIdsAndDate(Arrays.asList("F001"), "2024-01-15")).thenAnswer(invocation -> {
+            availabilityCache.record("2024-01-15", 2, Arrays.asList(ReservationResult.reserved("F001", "2024-01-15", 38, 5L)));
+            return Collections.singletonList(inventory("F001", 40, 4L));
+        });
+
+        // When
+        Map<String, Integer> first = availabilityCache.seatsLeft(Arrays.asList("F001"), "2024-01-15");
+        Map<String, Integer> second = availabilityCache.seatsLeft(Arrays.asList("F001"), "2024-01-15");
+
+        // Then - the read is shown once, but the reservation's count is what stays
+        assertEquals(Map.of("F001", 40), first);
+        assertEquals(Map.of("F001", 38), second);
+        verify(inventoryRepository, times(1)).findByFlightIdsAndDate(anyList(), anyString());
+    }
+
+    @Test
+    void testSeatsLeft_ReadUnderWayWhenSeatsAreHandedBackIsNotKept() {
+        // Given
+        when(inventoryRepository.findByFlightIdsAndDate(Arrays.asList("F001"), "2024-01-15")).thenAnswer(invocation -> {
+            availabilityCache.invalidate(Arrays.asList("F001"), "2024-01-15");
+            return Collections.singletonList(inventory("F001", 40, 4L));
+        });
+
+        // When
+        availabilityCache.seatsLeft(Arrays.asList("F001"), "2024-01-15");
+
+        // Then
+        assertEquals(0, availabilityCache.size());
+    }
+
+    @Test
+    void testSeatsLeft_ShortLegIsReadRatherThanShownAsItsBound() {
+        // Given - F001 is only known to hold fewer than 3 seats
+        availabilityCache.record("2024-01-15", 3, Arrays.asList(ReservationResult.insufficientSeats("F001", "2024-01-15")));
+        when(inventoryRepository.findByFlightIdsAndDate(Arrays.asList("F001"), "2024-01-15"))
+            .thenReturn(Collections.singletonList(inventory("F001", 1, 9L)));
+
+        // When
+        Map<String, Integer> shown = availabilityCache.seatsLeft(Arrays.asList("F001"), "2024-01-15");
+
+        // Then
+        assertEquals(Map.of("F001", 1), shown);
+        assertTrue(availabilityCache.isKnownShort(Arrays.asList("F001"), "2024-01-15", 2));
+    }
+
+    private static Inventory inventory(String flightId, int seatsLeft, long version) {
+        return new Inventory(Inventory.idFor(flightId, "2024-01-15"), flightId, "2024-01-15", seatsLeft, version);
+    }
+}
@@ -0,0 +1,178 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.dto.BookingRequest;
+import com.flightbooking.bookingservice.dto.BookingResponse;
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.exception.BookingRejectedException;
+import com.flightbooking.bookingservice.exception.IdempotencyConflictException;
+import com.flightbooking.bookingservice.model.IdempotencyRecord;
+import com.flightbooking.bookingservice.repository.IdempotencyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookingIdempotencyTest {
+
+    private static final String KEY = "U001#retry-key";
+
+    @Mock
+    private IdempotencyRepository idempotencyRepository;
+
+    @Mock
+    private BookingService bookingService;
+
+    @InjectMocks
+    private BookingIdempotency bookingIdempotency;
+
+    private BookingRequest bookingRequest;
+
+    @BeforeEach
+    void setUp() {
+        bookingRequest = new BookingRequest("U001", Arrays.asList("F001", "F002"), "2024-01-15", "DEL", "BOM", 2);
+    }
+
+    @Test
+    void testBookFlight_RepeatGetsOriginalResponseWithoutBookingAgain() {
+        // Given
+        when(idempotencyRepository.claim(any(IdempotencyRecord.class), anyLong())).thenReturn(true);
+        BookingResponse original = new BookingResponse("B001", BookingStatus.PROCESSING, "Booking initiated", 400.0);
+        when(bookingService.bookFlight(eq(bookingRequest), anyString())).thenReturn(original);
+
+        // When
+        BookingResponse first = bookingIdempotency.bookFlight("retry-key", bookingRequest);
+        BookingResponse repeat = bookingIdempotency.bookFlight("retry-key", bookingRequest);
+
+        // Then - the repeat is answered locally, and the response is stored for other instances
+        assertSame(original, first);
+        assertSame(original, repeat);
+        verify(bookingService, times(1)).bookFlight(eq(bookingRequest), anyString());
+        verify(idempotencyRepository, times(1)).claim(any(IdempotencyRecord.class), anyLong());
+        ArgumentCaptor<IdempotencyRecord> captor = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(idempotencyRepository).complete(captor.capture());
+        assertTrue(captor.getValue().isCompleted());
+        assertEquals(KEY, captor.getValue().getIdempotencyKey());
+        assertEquals("B001", captor.getValue().getBookingId());
+    }
+
+    @Test
+    void testBookFlight_KeyCompletedOnAnotherInstanceIsAnsweredFromTable() {
+        // Given
+        when(idempotencyRepository.claim(any(IdempotencyRecord.class), anyLong())).thenReturn(false);
+        IdempotencyRecord completed = record("B001", System.currentTimeMillis() + 30_000);
+        completed.complete(new BookingResponse("B001", BookingStatus.SUCCESS, "Booking initiated", 400.0));
+        when(idempotencyRepository.findById(KEY)).thenReturn(completed);
+
+        // When
+        BookingResponse response = bookingIdempotency.bookFlight("retry-key", bookingRequest);
+
+        // Then
+        assertEquals("B001", response.getBookingId());
+        assertEquals(BookingStatus.SUCCESS, response.getStatus());
+        assertEquals(400.0, response.getCost());
+        verifyNoInteractions(bookingService);
+    }
+
+    @Test
+    void testBookFlight_KeyReusedForDifferentRequestIsRejected() {
+        // Given
+        when(idempotencyRepository.claim(any(IdempotencyRecord.class), anyLong())).thenReturn(true);
+        when(bookingService.bookFlight(eq(bookingRequest), anyString()))
+            .thenReturn(new BookingResponse("B001", BookingStatus.PROCESSING, "Booking initiated", 400.0));
+        bookingIdempotency.bookFlight("retry-key", bookingRequest);
+        BookingRequest other = new BookingRequest("U001", Arrays.asList("F001"), "2024-01-15", "DEL", "BOM", 1);
+
+        // When & Then
+        IdempotencyConflictException thrown = assertThrows(IdempotencyConflictException.class,
+            () -> bookingIdempotency.bookFlight("retry-key", other));
+        assertFalse(thrown.isRetryable());
+        verify(bookingService, never()).bookFlight(eq(other), anyString());
+    }
+
+    @Test
+    void testBookFlight_RequestWithCollidingHashCodeIsStillRejected() {
+        // Given - "Aa" and "BB" share a String hash code, so the fields hash alike
+        BookingRequest first = new BookingRequest("U001", Arrays.asList("F001"), "2024-01-15", "Aa", "BOM", 1);
+        BookingRequest second = new BookingRequest("U001", Arrays.asList("F001"), "2024-01-15", "BB", "BOM", 1);
+        assertEquals(first.getSource().hashCode(), second.getSource().hashCode());
+        when(idempotencyRepository.claim(any(IdempotencyRecord.class), anyLong())).thenReturn(true);
+        when(bookingService.bookFlight(eq(first), anyString()))
+            .thenReturn(new BookingResponse("B001", BookingStatus.PROCESSING, "Booking initiated", 100.0));
+        bookingIdempotency.bookFlight("retry-key", first);
+
+        // When & Then
+        assertNotEquals(BookingIdempotency.fingerprint(first), BookingIdempotency.fingerprint(second));
+        assertThrows(IdempotencyConflictException.class, () -> bookingIdempotency.bookFlight("retry-key", second));
+        verify(bookingService, never()).bookFlight(eq(second), anyString());
+    }
+
+    @Test
+    void testBookFlight_RejectedBookingGivesKeyBack() {
+        // Given - the first attempt is turned away at capacity
+        when(idempotencyRepository.claim(any(IdempotencyRecord.class), anyLong())).thenReturn(true);
+        when(bookingService.bookFlight(eq(bookingRequest), anyString()))
+            .thenThrow(new BookingRejectedException("Booking service is at capacity"))
+            .thenReturn(new BookingResponse("B001", BookingStatus.PROCESSING, "Booking initiated", 400.0));
+
+        // When
+        assertThrows(BookingRejectedException.class, () -> bookingIdempotency.bookFlight("retry-key", bookingRequest));
+        BookingResponse retried = bookingIdempotency.bookFlight("retry-key", bookingRequest);
+
+        // Then
+        verify(idempotencyRepository).deleteById(KEY);
+        assertEquals("B001", retried.getBookingId());
+        verify(bookingService, times(2)).bookFlight(eq(bookingRequest), anyString());
+    }
+
+    @Test
+    void testBookFlight_RequestInProgressElsewhereIsRetryableConflict() {
+        // Given
+        when(idempotencyRepository.claim(any(IdempotencyRecord.class), anyLong())).thenReturn(false);
+        when(idempotencyRepository.findById(KEY)).thenReturn(record("B001", System.currentTimeMillis() + 30_000));
+
+        // When & Then
+        IdempotencyConflictException thrown = assertThrows(IdempotencyConflictException.class,
+            () -> bookingIdempotency.bookFlight("retry-key", bookingRequest));
+        assertTrue(thrown.isRetryable());
+        verifyNoInteractions(bookingService);
+    }
+
+    @Test
+    void testBookFlight_AbandonedRequestIsFinishedUnderItsBookingId() {
+        // Given - the instance that claimed the key died before saving the booking
+        when(idempotencyRepository.claim(any(IdempotencyRecord.class), anyLong())).thenReturn(false);
+        IdempotencyRecord abandoned = record("B-first", System.currentTimeMillis() - 1_000);
+        when(idempotencyRepository.findById(KEY)).thenReturn(abandoned);
+        when(idempotencyRepository.takeOver(eq(abandoned), anyLong())).thenReturn(true);
+        when(bookingService.getBookingDetails("B-first")).thenReturn(CompletableFuture.completedFuture(null));
+        when(bookingService.bookFlight(bookingRequest, "B-first"))
+            .thenReturn(new BookingResponse("B-first", BookingStatus.PROCESSING, "Booking initiated", 400.0));
+
+        // When
+        BookingResponse response = bookingIdempotency.bookFlight("retry-key", bookingRequest);
+
+        // Then - the seat hold shares the id, so seats taken by the first attempt are not taken again
+        assertEquals("B-first", response.getBookingId());
+        verify(bookingService).getBookingDetails("B-first");
+        verify(bookingService).bookFlight(bookingRequest, "B-first");
+    }
+
+    private IdempotencyRecord record(String bookingId, long lockedUntil) {
+        return new IdempotencyRecord(KEY, BookingIdempotency.fingerprint(bookingRequest), bookingId,
+            lockedUntil, System.currentTimeMillis() / 1000 + 86400);
+    }
+}
@@ -2,31 +2,46 @@ package com.flightbooking.bookingservice.service;
 
 import com.flightbooking.bookingservice.client.PaymentServiceClient;
 import com.flightbooking.bookingservice.client.UserServiceClient;
+import com.flightbooking.bookingservice.dto.BookingPage;
 import com.flightbooking.bookingservice.dto.BookingRequest;
 import com.flightbooking.bookingservice.dto.BookingResponse;
+import com.flightbooking.bookingservice.dto.ReservationResult;
 import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.enums.SagaState;
+import com.flightbooking.bookingservice.exception.BookingRejectedException;
 import com.flightbooking.bookingservice.model.Booking;
 import com.flightbooking.bookingservice.model.Inventory;
+import com.flightbooking.bookingservice.model.SeatHold;
+import com.flightbooking.bookingservice.repository.AsyncBookingRepository;
 import com.flightbooking.bookingservice.repository.BookingRepository;
 import com.flightbooking.bookingservice.repository.InventoryRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.lenient;
-import static org.mockito.ArgumentMatchers.argThat;
 
 @ExtendWith(MockitoExtension.class)
 class BookingServiceTest {
@@ -34,15 +49,33 @@ class BookingServiceTest {
     @Mock
     private BookingRepository bookingRepository;
 
+    @Mock
+    private AsyncBookingRepository asyncBookingRepository;
+
     @Mock
     private InventoryRepository inventoryRepository;
 
+    @Mock
+    private SeatHoldService seatHoldService;
+
     @Mock
     private PaymentServiceClient paymentServiceClient;
 
     @Mock
     private UserServiceClient userServiceClient;
 
+    @Mock
+    private BookingStatusNotifier statusNotifier;
+
+    @Mock
+    private FareCatalog fareCatalog;
+
+    @Mock
+    private AvailabilityCache availabilityCache;
+
+    @Spy
+    private PaymentExecutor paymentExecutor = new PaymentExecutor(4, 16, false);
+
     @InjectMocks
     private BookingService bookingService;
 
@@ -65,6 +98,28 @@ class BookingServiceTest {
         sampleBooking.setBookingId("B001");
         sampleBooking.setUserId("U001");
         sampleBooking.setStatus(BookingStatus.PROCESSING.name());
+
+        lenient().when(seatHoldService.placeHold(anyString(), anyList(), anyString(), anyInt()))
+            .thenAnswer(invocation -> {
+                List<String> flightIds = invocation.getArgument(1);
+                List<ReservationResult> results = new ArrayList<>();
+                for (String flightId : flightIds) {
+                    results.add(ReservationResult.reserved(flightId, invocation.getArgument(2), null));
+                }
+                return results;
+            });
+        lenient().when(seatHoldService.confirmHold(anyString())).thenReturn(true);
+        // Every flight costs $100 per passenger
+        lenient().when(fareCatalog.quote(anyList(), anyInt())).thenAnswer(invocation -> {
+            List<String> flightIds = invocation.getArgument(0);
+            int passengers = invocation.getArgument(1);
+            return flightIds.size() * 10000L * passengers;
+        });
+        // Payments are claimed as the booking bookingRequest creates
+        lenient().when(bookingRepository.claimPayment(anyString(), anyString(), anyLong(), anyLong()))
+            .thenAnswer(invocation -> claimed(invocation.getArgument(0), BookingStatus.PROCESSING, 1));
+        lenient().when(bookingRepository.advanceSaga(any(Booking.class), anyString())).thenReturn(true);
+        lenient().when(bookingRepository.completePayment(any(Booking.class), anyString(), anyString())).thenReturn(true);
     }
 
     // ========== BOOK FLIGHT TESTS ==========
@@ -73,10 +128,6 @@ class BookingServiceTest {
     void testBookFlight_Success() {
         // Given
         String testDate = "2024-01-15";
-        when(inventoryRepository.findByFlightIdAndDate("F001", testDate))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", testDate))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenAnswer(invocation -> {
             Booking booking = invocation.getArgument(0);
             return booking;
@@ -93,15 +144,18 @@ class BookingServiceTest {
         assertEquals(400.0, response.getCost()); // 2 flights * $100 * 2 passengers
         
         verify(bookingRepository).save(any(Booking.class));
-        // Verify inventory was locked (2 flights, each with 2 saves: lock + release)
-        verify(inventoryRepository, times(4)).save(any(Inventory.class));
+        // Both legs in one all-or-nothing reservation, no read-modify-write
+        verify(seatHoldService).placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq(testDate), eq(2));
+        verify(inventoryRepository, never()).save(any(Inventory.class));
     }
 
     @Test
     void testBookFlight_InsufficientInventory() {
-        // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(new Inventory("INV001", "F001", "2024-01-15", 1));
+        // Given - the hold's conditional write finds F001 short
+        when(seatHoldService.placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2)))
+            .thenReturn(Arrays.asList(
+                ReservationResult.insufficientSeats("F001", "2024-01-15"),
+                ReservationResult.cancelled("F002", "2024-01-15")));
 
         // When
         BookingResponse response = bookingService.bookFlight(bookingRequest);
@@ -113,14 +167,17 @@ class BookingServiceTest {
         assertEquals(0.0, response.getCost());
         
         verify(bookingRepository, never()).save(any(Booking.class));
-        verify(inventoryRepository, never()).save(any(Inventory.class));
+        verify(seatHoldService, never()).releaseHold(anyString());
+        verifyNoInteractions(inventoryRepository);
     }
 
     @Test
     void testBookFlight_InventoryNotFound() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(null);
+        when(seatHoldService.placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2)))
+            .thenReturn(Arrays.asList(
+                ReservationResult.notFound("F001", "2024-01-15"),
+                ReservationResult.cancelled("F002", "2024-01-15")));
 
         // When
         BookingResponse response = bookingService.bookFlight(bookingRequest);
@@ -128,7 +185,7 @@ class BookingServiceTest {
         // Then
         assertNotNull(response);
         assertEquals(BookingStatus.FAILED, response.getStatus());
-        assertEquals("Insufficient seats available", response.getMessage());
+        assertTrue(response.getMessage().contains("Inventory not found for flight: F001"));
         
         verify(bookingRepository, never()).save(any(Booking.class));
     }
@@ -136,10 +193,6 @@ class BookingServiceTest {
     @Test
     void testBookFlight_RepositoryException() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class)))
             .thenThrow(new RuntimeException("Database error"));
 
@@ -151,8 +204,8 @@ class BookingServiceTest {
         assertEquals(BookingStatus.FAILED, response.getStatus());
         assertTrue(response.getMessage().contains("Error processing booking"));
         
-        // Verify that inventory save was attempted (lock operation)
-        verify(inventoryRepository, atLeastOnce()).save(any(Inventory.class));
+        // The held seats are handed back straight away
+        verify(seatHoldService).releaseHold(anyString());
     }
 
     @Test
@@ -166,7 +219,7 @@ class BookingServiceTest {
 
         // Then
         assertNotNull(response);
-        assertEquals(BookingStatus.PROCESSING, response.getStatus()); // Empty list returns true from checkInventory
+        assertEquals(BookingStatus.PROCESSING, response.getStatus()); // Nothing to hold
         assertEquals(0.0, response.getCost()); // 0 flights * $100 * 2 passengers
     }
 
@@ -192,18 +245,135 @@ class BookingServiceTest {
             bookingService.bookFlight(null));
     }
 
+    @Test
+    void testBookFlight_PaymentExecutorFull_RejectsBeforeHoldingSeats() {
+        // Given
+        doReturn(false).when(paymentExecutor).hasCapacity();
+
+        // When & Then
+        assertThrows(BookingRejectedException.class, () -> bookingService.bookFlight(bookingRequest));
+        verify(seatHoldService, never()).placeHold(anyString(), anyList(), anyString(), anyInt());
+        verify(bookingRepository, never()).save(any(Booking.class));
+    }
+
+    @Test
+    void testBookFlight_PaymentRejectedAfterHold_LeavesPaymentQueued() {
+        // Given - the executor fills up between the capacity check and the submit
+        when(bookingRepository.save(any(Booking.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        doThrow(new RejectedExecutionException("Queue full")).when(paymentExecutor).execute(any(Runnable.class));
+
+        // When
+        BookingResponse response = bookingService.bookFlight(bookingRequest);
+
+        // Then - the booking keeps its seats and the outbox poller takes the payment later
+        assertEquals(BookingStatus.PROCESSING, response.getStatus());
+        ArgumentCaptor<Booking> captor = ArgumentCaptor.forClass(Booking.class);
+        verify(bookingRepository).save(captor.capture());
+        assertEquals(Booking.paymentQueueFor(response.getBookingId()), captor.getValue().getPaymentQueue());
+        assertEquals(2, captor.getValue().getPassengers());
+        verify(seatHoldService, never()).releaseHold(anyString());
+        verify(paymentServiceClient, never()).processPayment(anyString(), anyDouble());
+    }
+
+    // ========== BULK BOOKING TESTS ==========
+
+    @Test
+    void testBookFlights_HoldsSavesAndStartsPaymentsTogether() {
+        // Given
+        stubBulkHolds(null);
+        when(bookingRepository.saveAll(anyList())).thenReturn(new ArrayList<>());
+        List<BookingRequest> requests = Arrays.asList(
+            new BookingRequest("A001", Arrays.asList("F001"), "2024-01-15", "DEL", "BOM", 2),
+            new BookingRequest("A001", Arrays.asList("F001"), "2024-01-15", "DEL", "BOM", 3),
+            bookingRequest);
+
+        // When
+        List<BookingResponse> responses = bookingService.bookFlights(requests);
+
+        // Then - one call each to hold, save and start the payments of all three
+        assertEquals(3, responses.size());
+        assertEquals(Arrays.asList(200.0, 300.0, 400.0),
+            Arrays.asList(responses.get(0).getCost(), responses.get(1).getCost(), responses.get(2).getCost()));
+        responses.forEach(response -> assertEquals(BookingStatus.PROCESSING, response.getStatus()));
+        verify(seatHoldService).placeHolds(argThat(holds -> holds.size() == 3));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Booking>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bookingRepository).saveAll(captor.capture());
+        assertEquals(3, captor.getValue().size());
+        assertEquals(responses.get(1).getBookingId(), captor.getValue().get(1).getBookingId());
+        assertEquals(Booking.paymentQueueFor(responses.get(1).getBookingId()), captor.getValue().get(1).getPaymentQueue());
+        verify(bookingRepository, never()).save(any(Booking.class));
+        verify(paymentExecutor, times(3)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void testBookFlights_EachRequestGetsItsOwnOutcome() {
+        // Given - no fare for F009, F002 is sold out and the third booking is not written
+        when(fareCatalog.quote(eq(Arrays.asList("F009")), anyInt())).thenReturn(null);
+        stubBulkHolds("F002");
+        String[] unsaved = {null};
+        when(bookingRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Booking> bookings = invocation.getArgument(0);
+            unsaved[0] = bookings.get(0).getBookingId();
+            return Arrays.asList(unsaved[0]);
+        });
+        // The payment is only dispatched, so its compensation cannot release a hold mid-test
+        doNothing().when(paymentExecutor).execute(any(Runnable.class));
+        List<BookingRequest> requests = Arrays.asList(
+            new BookingRequest("A001", Arrays.asList("F009"), "2024-01-15", "DEL", "BOM", 1),
+            new BookingRequest("A001", Arrays.asList("F002"), "2024-01-15", "DEL", "BOM", 1),
+            new BookingRequest("A001", Arrays.asList("F001"), "2024-01-15", "DEL", "BOM", 1),
+            new BookingRequest("A001", Arrays.asList("F003"), "2024-01-15", "DEL", "BOM", 1));
+
+        // When
+        List<BookingResponse> responses = bookingService.bookFlights(requests);
+
+        // Then
+        assertEquals("Fare not available for the requested flights", responses.get(0).getMessage());
+        assertEquals("Insufficient seats available", responses.get(1).getMessage());
+        assertEquals(BookingStatus.FAILED, responses.get(2).getStatus());
+        assertEquals(BookingStatus.PROCESSING, responses.get(3).getStatus());
+        // The unsaved booking's seats go back at once; the sold-out one held none
+        verify(seatHoldService).releaseHold(unsaved[0]);
+        verify(seatHoldService, times(1)).releaseHold(anyString());
+        verify(paymentExecutor, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void testBookFlights_TooManyRequestsAreRefusedWhole() {
+        // Given
+        List<BookingRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            requests.add(bookingRequest);
+        }
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bookFlights(requests));
+        verify(seatHoldService, never()).placeHolds(anyList());
+    }
+
+    @Test
+    void testBookFlights_MalformedRequestIsRefusedWhole() {
+        // Given - the second request has no date, the third names no flights
+        BookingRequest undated = new BookingRequest("A001", Arrays.asList("F001"), null, "DEL", "BOM", 1);
+        BookingRequest noFlights = new BookingRequest("A001", null, "2024-01-15", "DEL", "BOM", 1);
+
+        // When & Then - nothing is priced or held for the valid request either
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bookFlights(Arrays.asList(bookingRequest, undated)));
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bookFlights(Arrays.asList(bookingRequest, noFlights)));
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bookFlights(Arrays.asList(bookingRequest, null)));
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bookFlights(null));
+        verify(fareCatalog, never()).quote(anyList(), anyInt());
+        verify(seatHoldService, never()).placeHolds(anyList());
+    }
+
     // ========== ASYNC PAYMENT PROCESSING TESTS ==========
 
     @Test
     void testProcessPaymentAsync_Success() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        when(bookingRepository.findById(anyString())).thenReturn(sampleBooking);
-        when(paymentServiceClient.processPayment(400.0)).thenReturn("SUCCESS");
+        when(paymentServiceClient.processPayment(anyString(), eq(400.0))).thenReturn("SUCCESS");
 
         // When
         bookingService.bookFlight(bookingRequest);
@@ -215,18 +385,15 @@ class BookingServiceTest {
             Thread.currentThread().interrupt();
         }
 
-        verify(paymentServiceClient, timeout(2000)).processPayment(400.0);
+        verify(paymentServiceClient, timeout(2000)).processPayment(anyString(), eq(400.0));
         verify(userServiceClient, timeout(2000)).updateTotalBookingValue(anyString(), eq(400.0));
     }
 
     @Test
     void testProcessPaymentAsync_Failure() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate(anyString(), anyString()))
-            .thenReturn(sampleInventories.get(0));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        when(bookingRepository.findById(anyString())).thenReturn(sampleBooking);
-        when(paymentServiceClient.processPayment(400.0)).thenReturn("FAILED");
+        when(paymentServiceClient.processPayment(anyString(), eq(400.0))).thenReturn("FAILED");
 
         // When
         bookingService.bookFlight(bookingRequest);
@@ -238,18 +405,15 @@ class BookingServiceTest {
             Thread.currentThread().interrupt();
         }
 
-        verify(paymentServiceClient, timeout(2000)).processPayment(400.0);
+        verify(paymentServiceClient, timeout(2000)).processPayment(anyString(), eq(400.0));
         verify(userServiceClient, never()).updateTotalBookingValue(anyString(), anyDouble());
     }
 
     @Test
     void testProcessPaymentAsync_Exception() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate(anyString(), anyString()))
-            .thenReturn(sampleInventories.get(0));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        when(bookingRepository.findById(anyString())).thenReturn(sampleBooking);
-        when(paymentServiceClient.processPayment(400.0)).thenThrow(new RuntimeException("Payment service error"));
+        when(paymentServiceClient.processPayment(anyString(), eq(400.0))).thenThrow(new RuntimeException("Payment service error"));
 
         // When
         bookingService.bookFlight(bookingRequest);
@@ -261,82 +425,149 @@ class BookingServiceTest {
             Thread.currentThread().interrupt();
         }
 
-        verify(paymentServiceClient, timeout(2000)).processPayment(400.0);
+        verify(paymentServiceClient, timeout(2000)).processPayment(anyString(), eq(400.0));
         verify(userServiceClient, never()).updateTotalBookingValue(anyString(), anyDouble());
     }
 
-    // ========== STATUS UPDATE TESTS ==========
+    // ========== PAYMENT OUTBOX TESTS ==========
 
     @Test
-    void testUpdateBookingStatus_Success() {
+    void testProcessPayment_SuccessSettlesBookingInOneWrite() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
-        when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        when(bookingRepository.findById(anyString())).thenReturn(sampleBooking);
+        when(paymentServiceClient.processPayment("B001", 400.0)).thenReturn("SUCCESS");
 
         // When
-        bookingService.bookFlight(bookingRequest);
+        bookingService.processPayment("B001");
 
-        // Then - Wait for async processing to complete
-        try {
-            Thread.sleep(200);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        // Then
+        ArgumentCaptor<Booking> captor = ArgumentCaptor.forClass(Booking.class);
+        verify(bookingRepository).completePayment(captor.capture(), eq(BookingStatus.SUCCESS.name()), eq(SagaState.CONFIRMED.name()));
+        assertEquals(1, captor.getValue().getPaymentAttempts());
+        verify(seatHoldService).confirmHold("B001");
+        verify(userServiceClient).updateTotalBookingValue("B001", 400.0);
+        verify(bookingRepository, never()).save(any(Booking.class));
+        verify(statusNotifier).publish("B001", BookingStatus.SUCCESS);
+    }
+
+    @Test
+    void testProcessPayment_NothingToClaim() {
+        // Given - settled already, not due, or claimed by another worker
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(null);
+
+        // When
+        bookingService.processPayment("B001");
 
-        verify(bookingRepository, atLeastOnce()).save(any(Booking.class));
+        // Then
+        verify(paymentServiceClient, never()).processPayment(anyString(), anyDouble());
+        verify(bookingRepository, never()).completePayment(any(Booking.class), anyString(), anyString());
     }
 
     @Test
-    void testUpdateBookingStatus_BookingNotFound() {
-        // Given
-        when(inventoryRepository.findByFlightIdAndDate(anyString(), anyString()))
-            .thenReturn(sampleInventories.get(0));
-        when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        when(bookingRepository.findById(anyString())).thenReturn(null);
+    void testProcessPayment_LostClaimDoesNotReportBookingTwice() {
+        // Given - the lease ran out mid-payment and another worker settled the booking
+        when(paymentServiceClient.processPayment("B001", 400.0)).thenReturn("SUCCESS");
+        when(bookingRepository.completePayment(any(Booking.class), anyString(), anyString())).thenReturn(false);
 
         // When
-        bookingService.bookFlight(bookingRequest);
+        bookingService.processPayment("B001");
 
-        // Then - Wait for async processing to complete
-        try {
-            Thread.sleep(200);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        // Then
+        verify(userServiceClient, never()).updateTotalBookingValue(anyString(), anyDouble());
+        verify(statusNotifier, never()).publish(anyString(), any(BookingStatus.class));
+    }
+
+    @Test
+    void testProcessPayment_StoreFailureLeavesPaymentForRetry() {
+        // Given
+        when(paymentServiceClient.processPayment("B001", 400.0)).thenReturn("FAILED");
+        when(bookingRepository.advanceSaga(any(Booking.class), eq(SagaState.COMPENSATING.name())))
+            .thenThrow(new RuntimeException("Save error"));
+
+        // When - does not throw
+        bookingService.processPayment("B001");
 
-        // Should not save again since booking not found
-        verify(bookingRepository, times(1)).save(any(Booking.class)); // Only initial save
+        // Then - the seats stay held until a later claim settles the booking
+        verify(seatHoldService, never()).releaseHold(anyString());
+        verify(bookingRepository, never()).completePayment(any(Booking.class), anyString(), anyString());
     }
 
     @Test
-    void testUpdateBookingStatus_RepositoryException() {
+    void testProcessPayment_SavesEachStepBeforeRunningIt() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate(anyString(), anyString()))
-            .thenReturn(sampleInventories.get(0));
-        lenient().when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        when(bookingRepository.findById(anyString())).thenReturn(sampleBooking);
-        
-        // When updating status, save fails - use lenient to avoid unnecessary stubbing
-        lenient().when(bookingRepository.save(any(Booking.class)))
-            .thenReturn(sampleBooking) // First save succeeds
-            .thenThrow(new RuntimeException("Save error")); // Second save fails
+        when(paymentServiceClient.processPayment("B001", 400.0)).thenReturn("FAILED");
 
         // When
-        bookingService.bookFlight(bookingRequest);
+        bookingService.processPayment("B001");
 
-        // Then - Wait for async processing to complete
-        try {
-            Thread.sleep(200);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        // Then
+        InOrder inOrder = inOrder(bookingRepository, paymentServiceClient, seatHoldService);
+        inOrder.verify(bookingRepository).advanceSaga(any(Booking.class), eq(SagaState.PAYMENT_PENDING.name()));
+        inOrder.verify(paymentServiceClient).processPayment("B001", 400.0);
+        inOrder.verify(bookingRepository).advanceSaga(any(Booking.class), eq(SagaState.COMPENSATING.name()));
+        inOrder.verify(seatHoldService).releaseHold("B001");
+        inOrder.verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.FAILED.name()), eq(SagaState.FAILED.name()));
+    }
+
+    @Test
+    void testProcessPayment_ResumesCompensationWithoutCharging() {
+        // Given - the previous worker died after deciding to compensate
+        Booking compensating = claimed("B001", BookingStatus.PROCESSING, 2);
+        compensating.setSagaState(SagaState.COMPENSATING.name());
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(compensating);
 
-        // Should not throw exception due to error handling in async method
-        verify(bookingRepository, atLeastOnce()).findById(anyString());
+        // When
+        bookingService.processPayment("B001");
+
+        // Then
+        verify(paymentServiceClient, never()).processPayment(anyString(), anyDouble());
+        verify(seatHoldService).releaseHold("B001");
+        verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.FAILED.name()), eq(SagaState.FAILED.name()));
+        verify(bookingRepository, never()).advanceSaga(any(Booking.class), anyString());
+    }
+
+    @Test
+    void testProcessPayment_PendingPaymentIsAskedAgainNotStartedOver() {
+        // Given - the previous worker died while the payment was in flight
+        Booking pending = claimed("B001", BookingStatus.PROCESSING, 2);
+        pending.setSagaState(SagaState.PAYMENT_PENDING.name());
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(pending);
+        when(paymentServiceClient.processPayment("B001", 400.0)).thenReturn("SUCCESS");
+
+        // When
+        bookingService.processPayment("B001");
+
+        // Then - the charge is keyed by the booking id, so asking again does not charge twice
+        verify(bookingRepository, never()).advanceSaga(any(Booking.class), anyString());
+        verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.SUCCESS.name()), eq(SagaState.CONFIRMED.name()));
+    }
+
+    @Test
+    void testProcessPayment_BookingFailedElsewhereIsNotCharged() {
+        // Given - the hold expired and the sweep failed the booking
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong()))
+            .thenReturn(claimed("B001", BookingStatus.FAILED, 1));
+
+        // When
+        bookingService.processPayment("B001");
+
+        // Then
+        verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.FAILED.name()), eq(SagaState.FAILED.name()));
+        verify(paymentServiceClient, never()).processPayment(anyString(), anyDouble());
+    }
+
+    @Test
+    void testProcessPayment_GivesUpAfterMaxAttempts() {
+        // Given
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong()))
+            .thenReturn(claimed("B001", BookingStatus.PROCESSING, 6));
+
+        // When
+        bookingService.processPayment("B001");
+
+        // Then
+        verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.FAILED.name()), eq(SagaState.FAILED.name()));
+        verify(seatHoldService).releaseHold("B001");
+        verify(paymentServiceClient, never()).processPayment(anyString(), anyDouble());
     }
 
     // ========== STATUS QUERY TESTS ==========
@@ -344,58 +575,62 @@ class BookingServiceTest {
     @Test
     void testGetBookingStatus_Success() {
         // Given
-        when(bookingRepository.findById("B001")).thenReturn(sampleBooking);
+        when(asyncBookingRepository.findById("B001")).thenReturn(CompletableFuture.completedFuture(sampleBooking));
 
         // When
-        BookingStatus status = bookingService.getBookingStatus("B001");
+        BookingStatus status = bookingService.getBookingStatus("B001").join();
 
         // Then
         assertEquals(BookingStatus.PROCESSING, status);
-        verify(bookingRepository).findById("B001");
+        verify(asyncBookingRepository).findById("B001");
+        verifyNoInteractions(bookingRepository);
     }
 
     @Test
     void testGetBookingStatus_NotFound() {
         // Given
-        when(bookingRepository.findById("NONEXISTENT")).thenReturn(null);
+        when(asyncBookingRepository.findById("NONEXISTENT")).thenReturn(CompletableFuture.completedFuture(null));
 
         // When
-        BookingStatus status = bookingService.getBookingStatus("NONEXISTENT");
+        BookingStatus status = bookingService.getBookingStatus("NONEXISTENT").join();
 
         // Then
         assertNull(status);
-        verify(bookingRepository).findById("NONEXISTENT");
+        verify(asyncBookingRepository).findById("NONEXISTENT");
     }
 
     @Test
     void testGetBookingStatus_RepositoryException() {
         // Given
-        when(bookingRepository.findById("B001")).thenThrow(new RuntimeException("Database error"));
+        when(asyncBookingRepository.findById("B001"))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Database error")));
 
         // When
-        BookingStatus status = bookingService.getBookingStatus("B001");
+        BookingStatus status = bookingService.getBookingStatus("B001").join();
 
         // Then
         assertNull(status);
-        verify(bookingRepository).findById("B001");
+        verify(asyncBookingRepository).findById("B001");
     }
 
     @Test
     void testGetBookingStatus_NullId() {
         // When
-        BookingStatus status = bookingService.getBookingStatus(null);
+        BookingStatus status = bookingService.getBookingStatus(null).join();
 
         // Then
         assertNull(status);
+        verifyNoInteractions(asyncBookingRepository);
     }
 
     @Test
     void testGetBookingStatus_EmptyId() {
         // When
-        BookingStatus status = bookingService.getBookingStatus("");
+        BookingStatus status = bookingService.getBookingStatus("").join();
 
         // Then
         assertNull(status);
+        verifyNoInteractions(asyncBookingRepository);
     }
 
     // ========== BOOKING DETAILS TESTS ==========
@@ -403,82 +638,94 @@ class BookingServiceTest {
     @Test
     void testGetBookingDetails_Success() {
         // Given
-        when(bookingRepository.findById("B001")).thenReturn(sampleBooking);
+        when(asyncBookingRepository.findById("B001")).thenReturn(CompletableFuture.completedFuture(sampleBooking));
 
         // When
-        Booking result = bookingService.getBookingDetails("B001");
+        Booking result = bookingService.getBookingDetails("B001").join();
 
         // Then
         assertNotNull(result);
         assertEquals("B001", result.getBookingId());
         assertEquals("U001", result.getUserId());
-        verify(bookingRepository).findById("B001");
+        verify(asyncBookingRepository).findById("B001");
     }
 
     @Test
     void testGetBookingDetails_NotFound() {
         // Given
-        when(bookingRepository.findById("NONEXISTENT")).thenReturn(null);
+        when(asyncBookingRepository.findById("NONEXISTENT")).thenReturn(CompletableFuture.completedFuture(null));
 
         // When
-        Booking result = bookingService.getBookingDetails("NONEXISTENT");
+        Booking result = bookingService.getBookingDetails("NONEXISTENT").join();
 
         // Then
         assertNull(result);
-        verify(bookingRepository).findById("NONEXISTENT");
+        verify(asyncBookingRepository).findById("NONEXISTENT");
     }
 
     @Test
     void testGetBookingDetails_RepositoryException() {
         // Given
-        when(bookingRepository.findById("B001")).thenThrow(new RuntimeException("Database error"));
+        when(asyncBookingRepository.findById("B001"))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Database error")));
 
         // When
-        Booking result = bookingService.getBookingDetails("B001");
+        Booking result = bookingService.getBookingDetails("B001").join();
 
         // Then
         assertNull(result);
-        verify(bookingRepository).findById("B001");
+        verify(asyncBookingRepository).findById("B001");
     }
 
     @Test
     void testGetBookingDetails_NullId() {
         // When
-        Booking result = bookingService.getBookingDetails(null);
+        Booking result = bookingService.getBookingDetails(null).join();
 
         // Then
         assertNull(result);
     }
 
+    @Test
+    void testGetUserBookings_StatusFilterAndPageSizeCap() {
+        // Given
+        BookingPage page = new BookingPage(Arrays.asList(sampleBooking), "cursor-2");
+        when(asyncBookingRepository.findByUserIdAndStatus("U001", "SUCCESS", "cursor-1", 100))
+            .thenReturn(CompletableFuture.completedFuture(page));
+
+        // When
+        BookingPage result = bookingService.getUserBookings("U001", BookingStatus.SUCCESS, "cursor-1", 5000).join();
+
+        // Then
+        assertSame(page, result);
+        verify(asyncBookingRepository, never()).findByUserId(anyString(), any(), anyInt());
+        verifyNoInteractions(bookingRepository);
+    }
+
     // ========== INVENTORY MANAGEMENT TESTS ==========
 
     @Test
-    void testCheckInventory_SufficientSeats() {
+    void testBookFlight_HoldsSeatsWithoutReadingInventoryFirst() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         // When
         BookingResponse response = bookingService.bookFlight(bookingRequest);
 
-        // Then
+        // Then - the hold's conditional write is the only availability check
         assertNotNull(response);
         assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was looked up (checkInventory + lockInventoryOptimistic)
-        verify(inventoryRepository, atLeastOnce()).findByFlightIdAndDate(anyString(), anyString());
+        verify(seatHoldService).placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2));
+        verifyNoInteractions(inventoryRepository);
     }
 
     @Test
     void testCheckInventory_ExactSeats() {
         // Given
-        Inventory exactSeats = new Inventory("INV001", "F001", "2024-01-15", 2);
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(exactSeats);
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
+        when(seatHoldService.placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2)))
+            .thenReturn(Arrays.asList(
+                ReservationResult.reserved("F001", "2024-01-15", 0),
+                ReservationResult.reserved("F002", "2024-01-15", 28)));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         // When
@@ -486,17 +733,12 @@ class BookingServiceTest {
 
         // Then
         assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was saved at least once (lock operation)
-        verify(inventoryRepository, atLeastOnce()).save(any(Inventory.class));
+        verify(seatHoldService).placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2));
     }
 
     @Test
     void testCheckInventory_MultipleFlights() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         // When
@@ -504,8 +746,21 @@ class BookingServiceTest {
 
         // Then
         assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was saved at least once (lock operation)
-        verify(inventoryRepository, atLeastOnce()).save(any(Inventory.class));
+        verify(seatHoldService).placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2));
+    }
+
+    @Test
+    void testBookFlight_KnownShortLegIsTurnedAwayWithoutStoreCalls() {
+        // Given - a recent reservation saw F002 with fewer seats than asked for
+        when(availabilityCache.isKnownShort(Arrays.asList("F001", "F002"), "2024-01-15", 2)).thenReturn(true);
+
+        // When
+        BookingResponse response = bookingService.bookFlight(bookingRequest);
+
+        // Then
+        assertEquals(BookingStatus.FAILED, response.getStatus());
+        assertEquals("Insufficient seats available", response.getMessage());
+        verifyNoInteractions(seatHoldService, inventoryRepository, bookingRepository);
     }
 
     // ========== COST CALCULATION TESTS ==========
@@ -515,8 +770,6 @@ class BookingServiceTest {
         // Given
         BookingRequest singleFlightRequest = new BookingRequest("U001", Arrays.asList("F001"), 
             "2024-01-15", "DEL", "BOM", 3);
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         // When
@@ -529,10 +782,6 @@ class BookingServiceTest {
     @Test
     void testCalculateTotalCost_MultipleFlights() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         // When
@@ -555,12 +804,26 @@ class BookingServiceTest {
         assertEquals(0.0, response.getCost());
     }
 
+    @Test
+    void testBookFlight_FlightWithoutFareFailsBeforeTakingSeats() {
+        // Given
+        when(fareCatalog.quote(Arrays.asList("F001", "F002"), 2)).thenReturn(null);
+
+        // When
+        BookingResponse response = bookingService.bookFlight(bookingRequest);
+
+        // Then
+        assertEquals(BookingStatus.FAILED, response.getStatus());
+        assertEquals("Fare not available for the requested flights", response.getMessage());
+        verifyNoInteractions(seatHoldService, inventoryRepository, bookingRepository);
+    }
+
     // ========== ERROR HANDLING TESTS ==========
 
     @Test
     void testBookFlight_InventoryRepositoryException() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
+        when(seatHoldService.placeHold(anyString(), anyList(), anyString(), anyInt()))
             .thenThrow(new RuntimeException("Inventory service error"));
 
         // When
@@ -574,10 +837,6 @@ class BookingServiceTest {
     @Test
     void testBookFlight_InventoryLockReleaseOnError() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class)))
             .thenThrow(new RuntimeException("Booking service error"));
 
@@ -585,8 +844,7 @@ class BookingServiceTest {
         bookingService.bookFlight(bookingRequest);
 
         // Then
-        // Verify that inventory save was attempted (lock operation)
-        verify(inventoryRepository, atLeastOnce()).save(any(Inventory.class));
+        verify(seatHoldService).releaseHold(anyString());
     }
 
     // ========== EDGE CASE TESTS ==========
@@ -596,10 +854,6 @@ class BookingServiceTest {
         // Given
         BookingRequest largePassengerRequest = new BookingRequest("U001", Arrays.asList("F001"), 
             "2024-01-15", "DEL", "BOM", 1000);
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(new Inventory("INV001", "F001", "2024-01-15", 1000));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         // When
@@ -614,10 +868,6 @@ class BookingServiceTest {
     void testBookFlight_FutureDate() {
         // Given
         String futureDate = "2025-01-15";
-        when(inventoryRepository.findByFlightIdAndDate("F001", futureDate))
-            .thenReturn(new Inventory("INV001", "F001", futureDate, 50));
-        when(inventoryRepository.findByFlightIdAndDate("F002", futureDate))
-            .thenReturn(new Inventory("INV002", "F002", futureDate, 30));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         BookingRequest futureRequest = new BookingRequest("U001", Arrays.asList("F001", "F002"), 
@@ -628,18 +878,13 @@ class BookingServiceTest {
 
         // Then
         assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was looked up (checkInventory + lockInventoryOptimistic)
-        verify(inventoryRepository, atLeastOnce()).findByFlightIdAndDate(anyString(), eq(futureDate));
+        verify(seatHoldService).placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq(futureDate), eq(2));
     }
 
     @Test
     void testBookFlight_PastDate() {
         // Given
         String pastDate = "2024-01-14";
-        when(inventoryRepository.findByFlightIdAndDate("F001", pastDate))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", pastDate))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         BookingRequest pastRequest = new BookingRequest("U001", Arrays.asList("F001", "F002"), 
@@ -650,19 +895,14 @@ class BookingServiceTest {
 
         // Then
         assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was looked up (checkInventory + lockInventoryOptimistic)
-        verify(inventoryRepository, atLeastOnce()).findByFlightIdAndDate(anyString(), eq(pastDate));
+        verify(seatHoldService).placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq(pastDate), eq(2));
     }
 
 
 
     @Test
-    void testLockInventoryOptimistic_Success() {
+    void testReserveInventory_Success() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         // When
@@ -670,49 +910,66 @@ class BookingServiceTest {
 
         // Then
         assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was saved at least once (lock operation)
-        verify(inventoryRepository, atLeastOnce()).save(any(Inventory.class));
+        verify(seatHoldService).placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2));
+        verify(inventoryRepository, never()).reserveSeats(anyString(), anyString(), anyInt());
     }
 
     @Test
-    void testLockInventoryOptimistic_RetryOnConflict() {
+    void testReserveInventory_SoldOutLegNeedsNoCompensation() {
+        // Given - another booking has taken F002's seats
+        when(seatHoldService.placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2)))
+            .thenReturn(Arrays.asList(
+                ReservationResult.cancelled("F001", "2024-01-15"),
+                ReservationResult.insufficientSeats("F002", "2024-01-15")));
+
+        // When
+        BookingResponse response = bookingService.bookFlight(bookingRequest);
+
+        // Then
+        assertEquals(BookingStatus.FAILED, response.getStatus());
+        assertEquals("Insufficient seats available", response.getMessage());
+        verify(seatHoldService, never()).releaseHold(anyString());
+        verify(bookingRepository, never()).save(any(Booking.class));
+    }
+
+    @Test
+    void testReserveInventory_InventoryNotFound() {
+        // Given - F002 has no inventory record
+        when(seatHoldService.placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2)))
+            .thenReturn(Arrays.asList(
+                ReservationResult.cancelled("F001", "2024-01-15"),
+                ReservationResult.notFound("F002", "2024-01-15")));
+
+        // When
+        BookingResponse response = bookingService.bookFlight(bookingRequest);
+
+        // Then
+        assertEquals(BookingStatus.FAILED, response.getStatus());
+        assertTrue(response.getMessage().contains("Error processing booking: Inventory not found for flight"));
+        verify(seatHoldService, never()).releaseHold(anyString());
+    }
+
+    @Test
+    void testReserveInventory_InsufficientSeats() {
         // Given
-        Inventory inventory1 = sampleInventories.get(0);
-        Inventory inventory2 = sampleInventories.get(1);
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(inventory1);
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(inventory2);
-        when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        
-        // First save fails, second succeeds for both inventories
-        when(inventoryRepository.save(any(Inventory.class)))
-            .thenThrow(new RuntimeException("Version conflict"))
-            .thenReturn(inventory1)
-            .thenThrow(new RuntimeException("Version conflict"))
-            .thenReturn(inventory2);
+        when(seatHoldService.placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2)))
+            .thenReturn(Arrays.asList(
+                ReservationResult.insufficientSeats("F001", "2024-01-15"),
+                ReservationResult.cancelled("F002", "2024-01-15")));
 
         // When
         BookingResponse response = bookingService.bookFlight(bookingRequest);
 
         // Then
-        assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was saved multiple times due to retries
-        verify(inventoryRepository, atLeastOnce()).save(any(Inventory.class));
+        assertEquals(BookingStatus.FAILED, response.getStatus());
+        assertTrue(response.getMessage().contains("Insufficient seats"));
     }
 
     @Test
-    void testLockInventoryOptimistic_MaxRetriesExceeded() {
+    void testReserveInventory_ReservationThrowsReleasesNothing() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
-        lenient().when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        
-        // All saves fail - use lenient to avoid unnecessary stubbing
-        lenient().when(inventoryRepository.save(any(Inventory.class)))
-            .thenThrow(new RuntimeException("Version conflict"));
+        when(seatHoldService.placeHold(anyString(), eq(Arrays.asList("F001", "F002")), eq("2024-01-15"), eq(2)))
+            .thenThrow(new RuntimeException("Throughput exceeded"));
 
         // When
         BookingResponse response = bookingService.bookFlight(bookingRequest);
@@ -720,76 +977,77 @@ class BookingServiceTest {
         // Then
         assertEquals(BookingStatus.FAILED, response.getStatus());
         assertTrue(response.getMessage().contains("Error processing booking"));
+        verify(seatHoldService, never()).releaseHold(anyString());
     }
 
     @Test
-    void testLockInventoryOptimistic_InventoryNotFound() {
-        // Given - Create a scenario where checkInventory passes but lockInventoryOptimistic fails
-        // First flight has inventory, second flight doesn't (to trigger the exception in lockInventoryOptimistic)
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0)); // F001 has inventory
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1)) // F002 has inventory for checkInventory
-            .thenReturn(null); // But F002 becomes null during lockInventoryOptimistic (simulating race condition)
+    void testReleaseInventoryLock_ReleaseFailureIsSwallowed() {
+        // Given
+        when(bookingRepository.save(any(Booking.class)))
+            .thenThrow(new RuntimeException("Database error"));
+        when(seatHoldService.releaseHold(anyString()))
+            .thenThrow(new RuntimeException("Release failed"));
 
         // When
         BookingResponse response = bookingService.bookFlight(bookingRequest);
 
-        // Then
+        // Then - the hold is left for the expiry sweep
         assertEquals(BookingStatus.FAILED, response.getStatus());
-        assertTrue(response.getMessage().contains("Error processing booking: Inventory not found for flight"));
+        assertTrue(response.getMessage().contains("Error processing booking: Database error"));
     }
 
     @Test
-    void testLockInventoryOptimistic_InsufficientSeats() {
+    void testProcessPaymentAsync_SuccessConfirmsHoldWithoutReleasingSeats() {
         // Given
-        Inventory lowSeats = new Inventory("INV001", "F001", "2024-01-15", 1);
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(lowSeats);
+        when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
+        when(paymentServiceClient.processPayment(anyString(), eq(400.0))).thenReturn("SUCCESS");
 
         // When
         BookingResponse response = bookingService.bookFlight(bookingRequest);
 
         // Then
-        assertEquals(BookingStatus.FAILED, response.getStatus());
-        assertTrue(response.getMessage().contains("Insufficient seats"));
+        verify(seatHoldService, timeout(2000)).confirmHold(response.getBookingId());
+        verify(userServiceClient, timeout(2000)).updateTotalBookingValue(anyString(), eq(400.0));
+        verify(seatHoldService, never()).releaseHold(anyString());
+        verify(inventoryRepository, never()).releaseSeats(anyString(), anyString(), anyInt());
     }
 
     @Test
-    void testLockInventoryOptimistic_VersionIncrement() {
+    void testProcessPaymentAsync_FailureReleasesHold() {
         // Given
-        Inventory inventory1 = sampleInventories.get(0);
-        Inventory inventory2 = sampleInventories.get(1);
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(inventory1);
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(inventory2);
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        when(inventoryRepository.save(any(Inventory.class))).thenReturn(inventory1);
+        when(paymentServiceClient.processPayment(anyString(), eq(400.0))).thenReturn("FAILED");
+
+        // When
+        BookingResponse response = bookingService.bookFlight(bookingRequest);
+
+        // Then
+        verify(seatHoldService, timeout(2000)).releaseHold(response.getBookingId());
+        verify(seatHoldService, never()).confirmHold(anyString());
+    }
+
+    @Test
+    void testProcessPaymentAsync_ExpiredHoldIsReservedAgain() {
+        // Given - the sweep released the hold before the payment came back
+        when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
+        when(paymentServiceClient.processPayment(anyString(), eq(400.0))).thenReturn("SUCCESS");
+        when(seatHoldService.confirmHold(anyString())).thenReturn(false);
+        when(inventoryRepository.reserveSeats(Arrays.asList("F001", "F002"), "2024-01-15", 2))
+            .thenReturn(Arrays.asList(
+                ReservationResult.reserved("F001", "2024-01-15", null),
+                ReservationResult.reserved("F002", "2024-01-15", null)));
 
         // When
         bookingService.bookFlight(bookingRequest);
 
         // Then
-        // Wait for async processing to complete
-        try {
-            Thread.sleep(200);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        
-        // Verify that version increment happened during any save operation
-        verify(inventoryRepository, atLeastOnce()).save(argThat(inv -> 
-            inv.getVersionAsLong() > 1L));
+        verify(userServiceClient, timeout(2000)).updateTotalBookingValue(anyString(), eq(400.0));
+        verify(inventoryRepository).reserveSeats(Arrays.asList("F001", "F002"), "2024-01-15", 2);
     }
 
     @Test
     void testReleaseInventoryLock_InventoryNotFound() {
         // Given
-        lenient().when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        lenient().when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
         when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
 
         // When
@@ -803,55 +1061,222 @@ class BookingServiceTest {
         }
 
         // Should handle gracefully when inventory operations occur
-        verify(inventoryRepository, atLeastOnce()).findByFlightIdAndDate(anyString(), anyString());
+        verify(seatHoldService, atLeastOnce()).placeHold(anyString(), anyList(), anyString(), anyInt());
     }
 
+    // ========== CANCELLATION TESTS ==========
+
     @Test
-    void testConcurrentInventoryUpdates_OptimisticLocking() {
+    void testCancelBooking_ConfirmedBookingReturnsSeatsAndQueuesRefund() {
         // Given
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(sampleInventories.get(0));
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
-        when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        
-        // Simulate concurrent update scenario
-        when(inventoryRepository.save(any(Inventory.class)))
-            .thenThrow(new RuntimeException("Version conflict"))
-            .thenReturn(sampleInventories.get(0))
-            .thenThrow(new RuntimeException("Version conflict"))
-            .thenReturn(sampleInventories.get(1));
+        Booking confirmed = claimed("B001", BookingStatus.SUCCESS, 1);
+        confirmed.setPaymentQueue(null);
+        when(bookingRepository.findById("B001")).thenReturn(confirmed);
+        when(bookingRepository.cancelConfirmed(eq(Arrays.asList(confirmed)), anyLong())).thenReturn(Arrays.asList("B001"));
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(null);
 
         // When
-        BookingResponse response = bookingService.bookFlight(bookingRequest);
+        BookingStatus status = bookingService.cancelBooking("B001");
 
         // Then
-        assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was saved multiple times due to retries
-        verify(inventoryRepository, atLeastOnce()).save(any(Inventory.class));
+        assertEquals(BookingStatus.CANCELLED, status);
+        verify(availabilityCache).invalidate(Arrays.asList("F001", "F002"), "2024-01-15");
+        // The refund is started straight away
+        verify(bookingRepository, timeout(2000)).claimPayment(eq("B001"), anyString(), anyLong(), anyLong());
     }
 
     @Test
-    void testOptimisticLocking_ExactSeatsWithRetry() {
+    void testCancelBooking_BookingStillProcessingIsLeftAlone() {
         // Given
-        Inventory exactSeats = new Inventory("INV001", "F001", "2024-01-15", 2);
-        when(inventoryRepository.findByFlightIdAndDate("F001", "2024-01-15"))
-            .thenReturn(exactSeats);
-        when(inventoryRepository.findByFlightIdAndDate("F002", "2024-01-15"))
-            .thenReturn(sampleInventories.get(1));
-        when(bookingRepository.save(any(Booking.class))).thenReturn(sampleBooking);
-        
-        // Mock successful saves (no conflicts)
-        when(inventoryRepository.save(any(Inventory.class)))
-            .thenReturn(exactSeats)
-            .thenReturn(sampleInventories.get(1));
+        when(bookingRepository.findById("B001")).thenReturn(claimed("B001", BookingStatus.PROCESSING, 1));
 
         // When
-        BookingResponse response = bookingService.bookFlight(bookingRequest);
+        BookingStatus status = bookingService.cancelBooking("B001");
 
         // Then
-        assertEquals(BookingStatus.PROCESSING, response.getStatus());
-        // Verify that inventory was saved
-        verify(inventoryRepository, atLeastOnce()).save(any(Inventory.class));
+        assertEquals(BookingStatus.PROCESSING, status);
+        verify(bookingRepository, never()).cancelConfirmed(anyList(), anyLong());
+    }
+
+    @Test
+    void testCancelFlight_CancelsEachPageOfAffectedBookingsTogether() {
+        // Given - two pages of bookings with a leg on the cancelled flight, not all confirmed
+        Booking onFlight = confirmedOn("B001", "F001,F002", "2024-01-15");
+        Booking processing = confirmedOn("B002", "F001", "2024-01-15");
+        processing.setStatus(BookingStatus.PROCESSING.name());
+        Booking failed = confirmedOn("B003", "F001", "2024-01-15");
+        failed.setStatus(BookingStatus.FAILED.name());
+        Booking alsoOnFlight = confirmedOn("B004", "F001", "2024-01-15");
+        when(bookingRepository.findByFlightAndDate(eq("F001"), eq("2024-01-15"), isNull(), anyInt()))
+            .thenReturn(new BookingPage(Arrays.asList(onFlight, processing, failed), "next"));
+        when(bookingRepository.findByFlightAndDate(eq("F001"), eq("2024-01-15"), eq("next"), anyInt()))
+            .thenReturn(new BookingPage(Arrays.asList(alsoOnFlight), null));
+        when(bookingRepository.cancelConfirmed(anyList(), anyLong()))
+            .thenReturn(Arrays.asList("B001"))
+            .thenReturn(Arrays.asList("B004"));
+
+        // When
+        int cancelled = bookingService.cancelFlight("F001", "2024-01-15");
+
+        // Then - one cancellation write per page, refunds left to the outbox
+        assertEquals(2, cancelled);
+        verify(bookingRepository).cancelConfirmed(eq(Arrays.asList(onFlight)), anyLong());
+        verify(bookingRepository).cancelConfirmed(eq(Arrays.asList(alsoOnFlight)), anyLong());
+        verify(availabilityCache).invalidate(Arrays.asList("F001", "F002"), "2024-01-15");
+        verify(paymentExecutor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    void testProcessPayment_RefundPendingIsRefundedOnceAndClosed() {
+        // Given
+        Booking refunding = claimed("B001", BookingStatus.CANCELLED, 1);
+        refunding.setSagaState(SagaState.REFUND_PENDING.name());
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(refunding);
+        when(paymentServiceClient.refundPayment("B001", 400.0)).thenReturn("SUCCESS");
+
+        // When
+        bookingService.processPayment("B001");
+
+        // Then - seats went back with the cancellation, so only the refund is left
+        verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.CANCELLED.name()), eq(SagaState.CANCELLED.name()));
+        verify(userServiceClient).updateTotalBookingValue("B001", -400.0);
+        verify(paymentServiceClient, never()).processPayment(anyString(), anyDouble());
+        verify(seatHoldService, never()).releaseHold(anyString());
+    }
+
+    @Test
+    void testProcessPayment_RefundTurnedDownIsLeftForRetry() {
+        // Given
+        Booking refunding = claimed("B001", BookingStatus.CANCELLED, 1);
+        refunding.setSagaState(SagaState.REFUND_PENDING.name());
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(refunding);
+        when(paymentServiceClient.refundPayment("B001", 400.0)).thenReturn("FAILED");
+
+        // When
+        bookingService.processPayment("B001");
+
+        // Then
+        verify(bookingRepository, never()).completePayment(any(Booking.class), anyString(), anyString());
+    }
+
+    @Test
+    void testProcessPayment_PaidWithoutSeatsIsRefundedBeforeFailing() {
+        // Given - the hold expired and its seats were sold before the payment came back
+        Booking paying = claimed("B001", BookingStatus.PROCESSING, 1);
+        paying.setSagaState(SagaState.PAYMENT_PENDING.name());
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(paying);
+        when(paymentServiceClient.processPayment("B001", 400.0)).thenReturn("SUCCESS");
+        when(seatHoldService.confirmHold("B001")).thenReturn(false);
+        when(inventoryRepository.reserveSeats(Arrays.asList("F001", "F002"), "2024-01-15", 2))
+            .thenReturn(Arrays.asList(
+                ReservationResult.reserved("F001", "2024-01-15", null),
+                ReservationResult.insufficientSeats("F002", "2024-01-15")));
+        when(paymentServiceClient.refundPayment("B001", 400.0)).thenReturn("SUCCESS");
+
+        // When
+        bookingService.processPayment("B001");
+
+        // Then - the refund step is saved before the charge goes back
+        InOrder inOrder = inOrder(bookingRepository, paymentServiceClient);
+        inOrder.verify(bookingRepository).advanceSaga(any(Booking.class), eq(SagaState.COMPENSATING_PAYMENT.name()));
+        inOrder.verify(paymentServiceClient).refundPayment("B001", 400.0);
+        inOrder.verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.FAILED.name()), eq(SagaState.FAILED.name()));
+        verify(userServiceClient, never()).updateTotalBookingValue(anyString(), anyDouble());
+    }
+
+    @Test
+    void testProcessPayment_InterruptedRefundOfPaidBookingIsResumed() {
+        // Given - the previous worker died after saving the refund step
+        Booking refunding = claimed("B001", BookingStatus.PROCESSING, 2);
+        refunding.setSagaState(SagaState.COMPENSATING_PAYMENT.name());
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(refunding);
+        when(paymentServiceClient.refundPayment("B001", 400.0)).thenReturn("FAILED").thenReturn("SUCCESS");
+
+        // When - the first refund is turned down and asked for again on the next claim
+        bookingService.processPayment("B001");
+        verify(bookingRepository, never()).completePayment(any(Booking.class), anyString(), anyString());
+        bookingService.processPayment("B001");
+
+        // Then
+        verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.FAILED.name()), eq(SagaState.FAILED.name()));
+        verify(paymentServiceClient, never()).processPayment(anyString(), anyDouble());
+        verify(seatHoldService, never()).releaseHold(anyString());
+    }
+
+    @Test
+    void testProcessPayment_BookingFailedElsewhereMidPaymentIsRefunded() {
+        // Given - the booking was failed while its payment was already in flight
+        Booking failed = claimed("B001", BookingStatus.FAILED, 2);
+        failed.setSagaState(SagaState.PAYMENT_PENDING.name());
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(failed);
+        when(paymentServiceClient.processPayment("B001", 400.0)).thenReturn("SUCCESS");
+        when(paymentServiceClient.refundPayment("B001", 400.0)).thenReturn("SUCCESS");
+
+        // When
+        bookingService.processPayment("B001");
+
+        // Then - the charge is looked up under its key and given back; the booking stays failed
+        verify(bookingRepository).advanceSaga(any(Booking.class), eq(SagaState.COMPENSATING_PAYMENT.name()));
+        verify(paymentServiceClient).refundPayment("B001", 400.0);
+        verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.FAILED.name()), eq(SagaState.FAILED.name()));
+        verify(seatHoldService, never()).confirmHold(anyString());
+    }
+
+    @Test
+    void testProcessPayment_BookingFailedElsewhereBeforeChargeIsClosed() {
+        // Given - in flight, but the payment service has no charge under the key
+        Booking failed = claimed("B001", BookingStatus.FAILED, 2);
+        failed.setSagaState(SagaState.PAYMENT_PENDING.name());
+        when(bookingRepository.claimPayment(eq("B001"), anyString(), anyLong(), anyLong())).thenReturn(failed);
+        when(paymentServiceClient.processPayment("B001", 400.0)).thenReturn("FAILED");
+
+        // When
+        bookingService.processPayment("B001");
+
+        // Then
+        verify(bookingRepository).completePayment(any(Booking.class), eq(BookingStatus.FAILED.name()), eq(SagaState.FAILED.name()));
+        verify(paymentServiceClient, never()).refundPayment(anyString(), anyDouble());
+    }
+
+    // Every hold is reserved unless it includes soldOutFlight
+    private void stubBulkHolds(String soldOutFlight) {
+        when(seatHoldService.newHold(anyString(), anyList(), anyString(), anyInt())).thenAnswer(invocation ->
+            new SeatHold(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2),
+                invocation.<Integer>getArgument(3), 1_700_000_000L));
+        when(seatHoldService.placeHolds(anyList())).thenAnswer(invocation -> {
+            List<CompletableFuture<List<ReservationResult>>> results = new ArrayList<>();
+            for (SeatHold hold : invocation.<List<SeatHold>>getArgument(0)) {
+                List<ReservationResult> legs = new ArrayList<>();
+                for (String flightId : hold.getFlightIdsAsList()) {
+                    legs.add(flightId.equals(soldOutFlight)
+                        ? ReservationResult.insufficientSeats(flightId, hold.getDate())
+                        : ReservationResult.reserved(flightId, hold.getDate(), null));
+                }
+                results.add(CompletableFuture.completedFuture(legs));
+            }
+            return results;
+        });
+    }
+
+    private static Booking confirmedOn(String bookingId, String flightIds, String date) {
+        Booking booking = new Booking(bookingId, "U001", flightIds, date, "DEL", "BOM", BookingStatus.SUCCESS.name(), "200.0");
+        booking.setPassengers(1);
+        return booking;
+    }
+
+    // The booking bookingRequest creates, as a worker's claim returns it
+    private static Booking claimed(String bookingId, BookingStatus status, int attempts) {
+        Booking booking = new Booking();
+        booking.setBookingId(bookingId);
+        booking.setUserId("U001");
+        booking.setFlightIdsAsList(Arrays.asList("F001", "F002"));
+        booking.setDate("2024-01-15");
+        booking.setStatus(status.name());
+        booking.setCostAsDouble(400.0);
+        booking.setPassengers(2);
+        booking.setPaymentQueue(Booking.paymentQueueFor(bookingId));
+        booking.setPaymentOwner("instance");
+        booking.setPaymentAttempts(attempts);
+        return booking;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,111 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.bookingservice.repository.BookingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookingStatusNotifierTest {
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    @Mock
+    private Clock clock;
+
+    @InjectMocks
+    private BookingStatusNotifier statusNotifier;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(clock.millis()).thenReturn(10_000L);
+    }
+
+    @Test
+    void testPublish_CompletesEveryWaiterWithoutStoreRead() {
+        // Given
+        CompletableFuture<BookingStatus> first = statusNotifier.watch("B001");
+        CompletableFuture<BookingStatus> second = statusNotifier.watch("B001");
+
+        // When
+        statusNotifier.publish("B001", BookingStatus.SUCCESS);
+
+        // Then
+        assertEquals(BookingStatus.SUCCESS, first.getNow(null));
+        assertEquals(BookingStatus.SUCCESS, second.getNow(null));
+        assertEquals(0, statusNotifier.watchedBookings());
+        verifyNoInteractions(bookingRepository);
+    }
+
+    @Test
+    void testWatch_LastWaiterLeavingStopsTheWatch() {
+        // Given
+        CompletableFuture<BookingStatus> first = statusNotifier.watch("B001");
+        CompletableFuture<BookingStatus> second = statusNotifier.watch("B001");
+
+        // When
+        first.cancel(false);
+
+        // Then - the other waiter still gets the outcome
+        assertEquals(1, statusNotifier.watchedBookings());
+        statusNotifier.publish("B001", BookingStatus.FAILED);
+        assertEquals(BookingStatus.FAILED, second.getNow(null));
+        second.cancel(false);
+        assertEquals(0, statusNotifier.watchedBookings());
+    }
+
+    @Test
+    void testPollWatched_ReadsBookingsSettledElsewhereOncePerBooking() {
+        // Given - three waiters on B001 and one on B002, past the grace period
+        CompletableFuture<BookingStatus> first = statusNotifier.watch("B001");
+        statusNotifier.watch("B001");
+        statusNotifier.watch("B001");
+        CompletableFuture<BookingStatus> other = statusNotifier.watch("B002");
+        when(clock.millis()).thenReturn(20_000L);
+        when(bookingRepository.findAllById(anyList()))
+            .thenReturn(Arrays.asList(booking("B001", BookingStatus.SUCCESS), booking("B002", BookingStatus.PROCESSING)));
+
+        // When
+        int settled = statusNotifier.pollWatched();
+
+        // Then
+        assertEquals(1, settled);
+        assertEquals(BookingStatus.SUCCESS, first.getNow(null));
+        assertFalse(other.isDone());
+        verify(bookingRepository, times(1)).findAllById(anyList());
+    }
+
+    @Test
+    void testPollWatched_LeavesNewWatchesToLocalPublishing() {
+        // Given
+        statusNotifier.watch("B001");
+
+        // When
+        int settled = statusNotifier.pollWatched();
+
+        // Then
+        assertEquals(0, settled);
+        verify(bookingRepository, never()).findAllById(anyList());
+    }
+
+    private static Booking booking(String bookingId, BookingStatus status) {
+        Booking booking = new Booking();
+        booking.setBookingId(bookingId);
+        booking.setStatus(status.name());
+        return booking;
+    }
+}
@@ -0,0 +1,92 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.repository.FlightFareRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FareCatalogTest {
+
+    @Mock
+    private FlightFareRepository flightFareRepository;
+
+    @InjectMocks
+    private FareCatalog fareCatalog;
+
+    @Test
+    void testQuote_PricesFromLoadedFaresWithoutStoreReads() {
+        // Given
+        Map<String, Long> fares = new HashMap<>();
+        fares.put("F001", 29999L);
+        fares.put("F002", 15050L);
+        when(flightFareRepository.findAllFares()).thenReturn(fares);
+        assertEquals(2, fareCatalog.refresh());
+
+        // When
+        Long total = fareCatalog.quote(Arrays.asList("F001", "F002"), 3);
+
+        // Then - exact in cents, 3 * (299.99 + 150.50)
+        assertEquals(135147L, total);
+        assertEquals(1351.47, FareCatalog.toAmount(total));
+        verify(flightFareRepository, never()).findFare(anyString());
+    }
+
+    @Test
+    void testFareOf_FlightAddedSinceLoadIsReadOnceAndKept() {
+        // Given
+        when(flightFareRepository.findAllFares()).thenReturn(new HashMap<>());
+        fareCatalog.refresh();
+        when(flightFareRepository.findFare("F003")).thenReturn(12000L);
+
+        // When
+        Long first = fareCatalog.fareOf("F003");
+        Long second = fareCatalog.fareOf("F003");
+
+        // Then
+        assertEquals(12000L, first);
+        assertEquals(12000L, second);
+        verify(flightFareRepository, times(1)).findFare("F003");
+        assertEquals(1, fareCatalog.size());
+    }
+
+    @Test
+    void testQuote_UnknownFlightIsNotLookedUpOnEveryBooking() {
+        // Given
+        when(flightFareRepository.findFare("F404")).thenReturn(null);
+
+        // When
+        Long first = fareCatalog.quote(Arrays.asList("F404"), 1);
+        Long second = fareCatalog.quote(Arrays.asList("F404"), 1);
+
+        // Then
+        assertNull(first);
+        assertNull(second);
+        verify(flightFareRepository, times(1)).findFare("F404");
+    }
+
+    @Test
+    void testRefresh_FailureKeepsPreviousFares() {
+        // Given
+        when(flightFareRepository.findAllFares())
+            .thenReturn(new HashMap<>(Map.of("F001", 10000L)))
+            .thenThrow(new RuntimeException("Throttled"));
+        fareCatalog.refresh();
+
+        // When
+        int loaded = fareCatalog.refresh();
+
+        // Then
+        assertEquals(-1, loaded);
+        assertEquals(10000L, fareCatalog.fareOf("F001"));
+    }
+}
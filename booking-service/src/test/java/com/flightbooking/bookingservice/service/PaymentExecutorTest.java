@@ -0,0 +1,69 @@
+package com.flightbooking.bookingservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentExecutorTest {
+
+    private final PaymentExecutor paymentExecutor = new PaymentExecutor(1, 1, false);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        paymentExecutor.shutdown();
+    }
+
+    @Test
+    void testExecute_RejectsOnceThreadsAndQueueAreFull() throws InterruptedException {
+        // Given - one task running and one queued
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String[] threadName = {null};
+        paymentExecutor.execute(() -> {
+            threadName[0] = Thread.currentThread().getName();
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        paymentExecutor.execute(() -> { });
+
+        // When & Then
+        assertFalse(paymentExecutor.hasCapacity());
+        assertThrows(RejectedExecutionException.class, () -> paymentExecutor.execute(() -> { }));
+        Map<String, Object> stats = paymentExecutor.stats();
+        assertEquals(1L, stats.get("rejected"));
+        assertEquals(1, stats.get("queued"));
+        assertEquals("payment-0", threadName[0]);
+
+        release.countDown();
+    }
+
+    @Test
+    void testExecute_VirtualThreadsFallBackWhereUnsupported() throws InterruptedException {
+        // Given
+        PaymentExecutor executor = new PaymentExecutor(2, 4, true);
+        CountDownLatch ran = new CountDownLatch(1);
+
+        // When
+        executor.execute(ran::countDown);
+
+        // Then - runs either way; virtual only where the runtime has them
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(Runtime.version().feature() >= 21, executor.stats().get("virtualThreads"));
+        executor.shutdown();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
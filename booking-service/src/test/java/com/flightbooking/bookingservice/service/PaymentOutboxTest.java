@@ -0,0 +1,120 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.bookingservice.repository.BookingRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentOutboxTest {
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    @Mock
+    private BookingService bookingService;
+
+    @Spy
+    private PaymentExecutor paymentExecutor = new PaymentExecutor(2, 2, false);
+
+    @InjectMocks
+    private PaymentOutbox paymentOutbox;
+
+    @Test
+    void testPoll_DispatchesDuePaymentsFromEveryPartition() {
+        // Given
+        for (int partition = 0; partition < Booking.PAYMENT_QUEUES; partition++) {
+            lenient().when(bookingRepository.findPaymentsDue(eq(partition), anyLong(), anyInt()))
+                .thenReturn(Collections.emptyList());
+        }
+        when(bookingRepository.findPaymentsDue(eq(0), anyLong(), anyInt())).thenReturn(due("B001"));
+        when(bookingRepository.findPaymentsDue(eq(5), anyLong(), anyInt())).thenReturn(due("B002"));
+
+        // When
+        int dispatched = paymentOutbox.poll();
+
+        // Then
+        assertEquals(2, dispatched);
+        verify(bookingService, timeout(2000)).processPayment("B001");
+        verify(bookingService, timeout(2000)).processPayment("B002");
+    }
+
+    @Test
+    void testPoll_ReadsNoMoreThanTheExecutorCanTake() throws Exception {
+        // Given - both threads are busy, leaving the two queue slots
+        CountDownLatch busy = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            paymentExecutor.execute(() -> {
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(busy.await(10, TimeUnit.SECONDS));
+        when(bookingRepository.findPaymentsDue(eq(0), anyLong(), eq(2))).thenReturn(due("B001", "B002"));
+
+        // When
+        int dispatched = paymentOutbox.poll();
+        release.countDown();
+
+        // Then - the queue is full after the first partition, so no other is read
+        assertEquals(2, dispatched);
+        verify(bookingRepository, times(1)).findPaymentsDue(anyInt(), anyLong(), anyInt());
+        verify(bookingService, timeout(2000)).processPayment("B002");
+    }
+
+    @Test
+    void testPoll_SkipsPaymentsStillRunningHere() throws Exception {
+        // Given - the first poll's payment has not finished when the second poll sees it again
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return null;
+        }).when(bookingService).processPayment("B001");
+        lenient().when(bookingRepository.findPaymentsDue(anyInt(), anyLong(), anyInt()))
+            .thenReturn(Collections.emptyList());
+        when(bookingRepository.findPaymentsDue(eq(0), anyLong(), anyInt())).thenReturn(due("B001"));
+
+        // When
+        assertEquals(1, paymentOutbox.poll());
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        int second = paymentOutbox.poll();
+        release.countDown();
+
+        // Then
+        assertEquals(0, second);
+        verify(bookingService, times(1)).processPayment("B001");
+    }
+
+    private static List<Booking> due(String... bookingIds) {
+        List<Booking> bookings = new ArrayList<>();
+        for (String bookingId : bookingIds) {
+            Booking booking = new Booking();
+            booking.setBookingId(bookingId);
+            bookings.add(booking);
+        }
+        return bookings;
+    }
+}
@@ -0,0 +1,331 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.dto.ReservationResult;
+import com.flightbooking.bookingservice.enums.ReservationStatus;
+import com.flightbooking.bookingservice.exception.InventoryConflictException;
+import com.flightbooking.bookingservice.model.SeatHold;
+import com.flightbooking.bookingservice.repository.InventoryRetries;
+import com.flightbooking.bookingservice.repository.SeatHoldRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SeatAllocatorTest {
+
+    private static final String DATE = "2024-01-15";
+
+    @Mock
+    private SeatHoldRepository seatHoldRepository;
+
+    @Mock
+    private Clock clock;
+
+    @Spy
+    private InventoryRetries inventoryRetries = new InventoryRetries();
+
+    @InjectMocks
+    private SeatAllocator seatAllocator;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(clock.millis()).thenReturn(1_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        seatAllocator.stop();
+    }
+
+    @Test
+    void testReserve_HoldsOnSameFlightReachStoreOneAtATime() throws Exception {
+        // Given
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger seatsTaken = new AtomicInteger();
+        lenient().when(seatHoldRepository.reserve(any(SeatHold.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(2);
+            seatsTaken.addAndGet(invocation.<SeatHold>getArgument(0).getSeats());
+            inFlight.decrementAndGet();
+            return Collections.singletonList(ReservationResult.reserved("F001", DATE, null));
+        });
+        lenient().when(seatHoldRepository.reserveAll(eq("F001"), eq(DATE), anyList())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(2);
+            invocation.<List<SeatHold>>getArgument(2).forEach(hold -> seatsTaken.addAndGet(hold.getSeats()));
+            inFlight.decrementAndGet();
+            return ReservationResult.reserved("F001", DATE, null);
+        });
+
+        // When
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<ReservationResult>>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            SeatHold hold = hold("B" + i, Collections.singletonList("F001"), 1);
+            futures.add(executor.submit(() -> seatAllocator.reserve(hold)));
+        }
+        for (Future<List<ReservationResult>> future : futures) {
+            assertTrue(future.get(10, TimeUnit.SECONDS).get(0).isReserved());
+        }
+        executor.shutdown();
+
+        // Then
+        assertEquals(1, maxInFlight.get());
+        assertEquals(40, seatsTaken.get());
+    }
+
+    @Test
+    void testReserve_HoldsQueuedBehindAWriteAreCommittedTogether() throws Exception {
+        // Given - the worker is stuck on the first hold while three more queue up
+        CountDownLatch storeEntered = new CountDownLatch(1);
+        CountDownLatch storeReleased = new CountDownLatch(1);
+        when(seatHoldRepository.reserve(any(SeatHold.class))).thenAnswer(invocation -> {
+            storeEntered.countDown();
+            storeReleased.await();
+            return Collections.singletonList(ReservationResult.reserved("F001", DATE, 50));
+        });
+        when(seatHoldRepository.reserveAll(eq("F001"), eq(DATE), anyList()))
+            .thenReturn(ReservationResult.reserved("F001", DATE, 44));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<List<ReservationResult>> first = executor.submit(
+            () -> seatAllocator.reserve(hold("B000", Collections.singletonList("F001"), 1)));
+        assertTrue(storeEntered.await(10, TimeUnit.SECONDS));
+        List<Future<List<ReservationResult>>> queued = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            SeatHold hold = hold("B00" + i, Collections.singletonList("F001"), 2);
+            queued.add(executor.submit(() -> seatAllocator.reserve(hold)));
+        }
+        awaitQueued(3);
+
+        // When
+        storeReleased.countDown();
+
+        // Then - one write for the three queued holds, and each caller gets its outcome
+        assertTrue(first.get(10, TimeUnit.SECONDS).get(0).isReserved());
+        for (Future<List<ReservationResult>> future : queued) {
+            ReservationResult result = future.get(10, TimeUnit.SECONDS).get(0);
+            assertTrue(result.isReserved());
+            assertEquals(44, result.getSeatsLeft());
+        }
+        executor.shutdown();
+        ArgumentCaptor<List<SeatHold>> captor = ArgumentCaptor.forClass(List.class);
+        verify(seatHoldRepository).reserveAll(eq("F001"), eq(DATE), captor.capture());
+        assertEquals(3, captor.getValue().size());
+        verify(seatHoldRepository, times(1)).reserve(any(SeatHold.class));
+    }
+
+    @Test
+    void testReserve_GroupThatDoesNotFitFallsBackToEachHold() throws Exception {
+        // Given - three holds of two seats queue up behind the first with five seats left
+        CountDownLatch storeEntered = new CountDownLatch(1);
+        CountDownLatch storeReleased = new CountDownLatch(1);
+        AtomicInteger seatsLeft = new AtomicInteger(5);
+        when(seatHoldRepository.reserve(any(SeatHold.class))).thenAnswer(invocation -> {
+            storeEntered.countDown();
+            storeReleased.await();
+            int seats = invocation.<SeatHold>getArgument(0).getSeats();
+            if (seatsLeft.get() < seats) {
+                return Collections.singletonList(ReservationResult.insufficientSeats("F001", DATE));
+            }
+            seatsLeft.addAndGet(-seats);
+            // Like a transactional write, which does not report what is left
+            return Collections.singletonList(ReservationResult.reserved("F001", DATE, null));
+        });
+        when(seatHoldRepository.reserveAll(eq("F001"), eq(DATE), anyList()))
+            .thenReturn(ReservationResult.insufficientSeats("F001", DATE));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<List<ReservationResult>> first = executor.submit(
+            () -> seatAllocator.reserve(hold("B000", Collections.singletonList("F001"), 1)));
+        assertTrue(storeEntered.await(10, TimeUnit.SECONDS));
+        List<Future<List<ReservationResult>>> queued = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            SeatHold hold = hold("B00" + i, Collections.singletonList("F001"), 2);
+            queued.add(executor.submit(() -> seatAllocator.reserve(hold)));
+        }
+        awaitQueued(3);
+
+        // When
+        storeReleased.countDown();
+
+        // Then - after the first hold four seats are left: two holds fit, the third does not
+        assertTrue(first.get(10, TimeUnit.SECONDS).get(0).isReserved());
+        int reserved = 0;
+        for (Future<List<ReservationResult>> future : queued) {
+            if (future.get(10, TimeUnit.SECONDS).get(0).isReserved()) {
+                reserved++;
+            }
+        }
+        executor.shutdown();
+        assertEquals(2, reserved);
+        assertEquals(0, seatsLeft.get());
+    }
+
+    @Test
+    void testReserve_RejectsAboveKnownSeatsWithoutStoreRoundTrip() {
+        // Given - the first hold leaves one seat on F001
+        when(seatHoldRepository.reserve(any(SeatHold.class)))
+            .thenReturn(Collections.singletonList(ReservationResult.reserved("F001", DATE, 1)));
+        seatAllocator.reserve(hold("B001", Collections.singletonList("F001"), 2));
+
+        // When
+        List<ReservationResult> results = seatAllocator.reserve(hold("B002", Arrays.asList("F001", "F002"), 2));
+
+        // Then
+        assertEquals(ReservationStatus.INSUFFICIENT_SEATS, results.get(0).getStatus());
+        assertEquals(ReservationStatus.CANCELLED, results.get(1).getStatus());
+        verify(seatHoldRepository, times(1)).reserve(any(SeatHold.class));
+    }
+
+    @Test
+    void testReserve_StaleCeilingAsksStoreAgain() {
+        // Given - the store turned down three seats on F001
+        when(seatHoldRepository.reserve(any(SeatHold.class)))
+            .thenReturn(Collections.singletonList(ReservationResult.insufficientSeats("F001", DATE)))
+            .thenReturn(Collections.singletonList(ReservationResult.reserved("F001", DATE, 0)));
+        seatAllocator.reserve(hold("B001", Collections.singletonList("F001"), 3));
+
+        // When - a release elsewhere may have returned seats once the ceiling expires
+        when(clock.millis()).thenReturn(5_000L);
+        List<ReservationResult> results = seatAllocator.reserve(hold("B002", Collections.singletonList("F001"), 3));
+
+        // Then
+        assertTrue(results.get(0).isReserved());
+        verify(seatHoldRepository, times(2)).reserve(any(SeatHold.class));
+    }
+
+    @Test
+    void testReserve_StoreFailureReachesCaller() {
+        // Given
+        RuntimeException failure = new RuntimeException("Throughput exceeded");
+        when(seatHoldRepository.reserve(any(SeatHold.class))).thenThrow(failure);
+
+        // When & Then
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+            () -> seatAllocator.reserve(hold("B001", Collections.singletonList("F001"), 1)));
+        assertSame(failure, thrown);
+    }
+
+    @Test
+    void testReserve_ConflictIsRetriedWithoutHoldingUpTheLane() throws Exception {
+        // Given - two itineraries in one lane, the first losing its first write to a concurrent one
+        List<String> calls = new CopyOnWriteArrayList<>();
+        when(seatHoldRepository.reserve(any(SeatHold.class))).thenAnswer(invocation -> {
+            String holdId = invocation.<SeatHold>getArgument(0).getHoldId();
+            calls.add(holdId);
+            if (calls.size() == 1) {
+                throw new InventoryConflictException(Collections.singletonList("F001#" + DATE),
+                    new RuntimeException("Transaction cancelled"));
+            }
+            return Arrays.asList(ReservationResult.reserved("F001", DATE, null), ReservationResult.reserved("F002", DATE, null));
+        });
+        List<SeatHold> holds = Arrays.asList(
+            hold("B001", Arrays.asList("F001", "F002"), 1),
+            hold("B002", Arrays.asList("F001", "F002"), 1));
+
+        // When
+        List<CompletableFuture<List<ReservationResult>>> results = seatAllocator.reserveAll(holds);
+
+        // Then - the second hold is written while the first waits out its backoff
+        for (CompletableFuture<List<ReservationResult>> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS).get(0).isReserved());
+        }
+        assertEquals(Arrays.asList("B001", "B002", "B001"), calls);
+    }
+
+    @Test
+    void testReserve_ConflictPastMaxAttemptsFailsWithItsCause() {
+        // Given
+        RuntimeException cancelled = new RuntimeException("Transaction cancelled");
+        when(seatHoldRepository.reserve(any(SeatHold.class)))
+            .thenThrow(new InventoryConflictException(Collections.singletonList("F001#" + DATE), cancelled));
+
+        // When & Then
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+            () -> seatAllocator.reserve(hold("B001", Arrays.asList("F001", "F002"), 1)));
+        assertSame(cancelled, thrown);
+        verify(seatHoldRepository, times(3)).reserve(any(SeatHold.class));
+    }
+
+    @Test
+    void testReserve_AfterStopReservesOnCallerThread() {
+        // Given
+        seatAllocator.stop();
+        String[] thread = {null};
+        when(seatHoldRepository.reserve(any(SeatHold.class))).thenAnswer(invocation -> {
+            thread[0] = Thread.currentThread().getName();
+            return Collections.singletonList(ReservationResult.reserved("F001", DATE, 5));
+        });
+
+        // When
+        seatAllocator.reserve(hold("B001", Collections.singletonList("F001"), 1));
+
+        // Then
+        assertEquals(Thread.currentThread().getName(), thread[0]);
+    }
+
+    @Test
+    void testReserveAll_BulkHoldsOnOneFlightDateAreCommittedInOneWrite() throws Exception {
+        // Given
+        when(seatHoldRepository.reserveAll(eq("F001"), eq(DATE), anyList()))
+            .thenReturn(ReservationResult.reserved("F001", DATE, 44));
+        List<SeatHold> holds = Arrays.asList(
+            hold("B001", Collections.singletonList("F001"), 2),
+            hold("B002", Collections.singletonList("F001"), 3),
+            hold("B003", Collections.singletonList("F001"), 1));
+
+        // When
+        List<CompletableFuture<List<ReservationResult>>> results = seatAllocator.reserveAll(holds);
+
+        // Then - one decrement for all three, and each hold gets its outcome
+        for (CompletableFuture<List<ReservationResult>> result : results) {
+            assertEquals(44, result.get(10, TimeUnit.SECONDS).get(0).getSeatsLeft());
+        }
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SeatHold>> captor = ArgumentCaptor.forClass(List.class);
+        verify(seatHoldRepository).reserveAll(eq("F001"), eq(DATE), captor.capture());
+        assertEquals(3, captor.getValue().size());
+        verify(seatHoldRepository, never()).reserve(any(SeatHold.class));
+    }
+
+    // Waits until the callers' holds sit in a lane behind the write in progress
+    private void awaitQueued(int holds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (seatAllocator.queuedHolds() < holds && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(holds, seatAllocator.queuedHolds());
+    }
+
+    private static SeatHold hold(String holdId, List<String> flightIds, int seats) {
+        return new SeatHold(holdId, flightIds, DATE, seats, 1_700_000_000L);
+    }
+}
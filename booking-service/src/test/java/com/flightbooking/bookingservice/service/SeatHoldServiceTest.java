@@ -0,0 +1,251 @@
+package com.flightbooking.bookingservice.service;
+
+import com.flightbooking.bookingservice.enums.BookingStatus;
+import com.flightbooking.bookingservice.enums.SeatHoldStatus;
+import com.flightbooking.bookingservice.model.Booking;
+import com.flightbooking.bookingservice.model.SeatHold;
+import com.flightbooking.bookingservice.repository.BookingRepository;
+import com.flightbooking.bookingservice.repository.SeatHoldRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SeatHoldServiceTest {
+
+    private static final long NOW = 1_700_000_000L;
+
+    @Mock
+    private SeatHoldRepository seatHoldRepository;
+
+    @Mock
+    private BookingRepository bookingRepository;
+
+    @Mock
+    private SeatAllocator seatAllocator;
+
+    @Mock
+    private BookingStatusNotifier statusNotifier;
+
+    @Mock
+    private AvailabilityCache availabilityCache;
+
+    @Mock
+    private Clock clock;
+
+    @InjectMocks
+    private SeatHoldService seatHoldService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(clock.instant()).thenReturn(Instant.ofEpochSecond(NOW));
+    }
+
+    @Test
+    void testPlaceHold_ExpiresAfterTtl() {
+        // When
+        seatHoldService.placeHold("B001", Arrays.asList("F001", "F002"), "2024-01-15", 2);
+
+        // Then
+        ArgumentCaptor<SeatHold> captor = ArgumentCaptor.forClass(SeatHold.class);
+        verify(seatAllocator).reserve(captor.capture());
+        SeatHold hold = captor.getValue();
+        assertEquals("B001", hold.getHoldId());
+        assertEquals(Arrays.asList("F001", "F002"), hold.getFlightIdsAsList());
+        assertEquals(2, hold.getSeats());
+        assertEquals(SeatHoldStatus.HELD.name(), hold.getStatus());
+        assertEquals(NOW + 900, hold.getExpiresAt());
+        assertEquals(SeatHold.bucketFor(NOW + 900), hold.getExpiryBucket());
+        verify(availabilityCache).record(eq("2024-01-15"), eq(2), any());
+    }
+
+    @Test
+    void testReleaseHold_SettledHoldIsLeftAlone() {
+        // Given
+        SeatHold confirmed = hold("B001", NOW - 10);
+        confirmed.setStatus(SeatHoldStatus.CONFIRMED.name());
+        when(seatHoldRepository.findById("B001")).thenReturn(confirmed);
+
+        // When & Then
+        assertFalse(seatHoldService.releaseHold("B001"));
+        assertFalse(seatHoldService.releaseHold("MISSING"));
+        verify(seatHoldRepository, never()).release(any(SeatHold.class), anyLong());
+    }
+
+    @Test
+    void testSweepExpiredHolds_ReleasesInBatchesAndFailsBookings() {
+        // Given - two pages in the current bucket
+        String bucket = SeatHold.bucketFor(NOW);
+        SeatHold first = hold("B001", NOW - 5);
+        SeatHold second = hold("B002", NOW - 1);
+        // Lenient: every other bucket in the lookback window is queried too
+        lenient().when(seatHoldRepository.findExpired(eq(bucket), eq(NOW), anyInt()))
+            .thenReturn(Collections.singletonList(first))
+            .thenReturn(Collections.singletonList(second))
+            .thenReturn(Collections.emptyList());
+        when(seatHoldRepository.releaseAll(anyList(), anyLong())).thenAnswer(releasingAll());
+        // B002 already succeeded, so the conditional write leaves it alone
+        when(bookingRepository.failUnclaimed("B001")).thenReturn(true);
+        when(bookingRepository.failUnclaimed("B002")).thenReturn(false);
+
+        // When
+        int released = seatHoldService.sweepExpiredHolds();
+
+        // Then
+        assertEquals(2, released);
+        verify(statusNotifier).publish("B001", BookingStatus.FAILED);
+        verify(statusNotifier, never()).publish(eq("B002"), any(BookingStatus.class));
+        verify(bookingRepository, never()).save(any(Booking.class));
+        // Seats came back, so bookings turned away on those legs may fit again
+        verify(availabilityCache, times(2)).invalidate(Arrays.asList("F001"), "2024-01-15");
+        verify(seatHoldRepository, never()).release(any(SeatHold.class), anyLong());
+    }
+
+    @Test
+    void testSweepExpiredHolds_ReleasesAPageInOneCall() {
+        // Given - one page of three holds
+        String bucket = SeatHold.bucketFor(NOW);
+        List<SeatHold> page = Arrays.asList(hold("B001", NOW - 5), hold("B002", NOW - 4), hold("B003", NOW - 3));
+        // Lenient: every other bucket in the lookback window is queried too
+        lenient().when(seatHoldRepository.findExpired(eq(bucket), eq(NOW), anyInt()))
+            .thenReturn(page)
+            .thenReturn(Collections.emptyList());
+        when(seatHoldRepository.releaseAll(anyList(), anyLong())).thenAnswer(releasingAll());
+
+        // When
+        int released = seatHoldService.sweepExpiredHolds();
+
+        // Then - the repository returns the page's seats together
+        assertEquals(3, released);
+        verify(seatHoldRepository, times(1)).releaseAll(eq(page), eq(NOW + 604800));
+    }
+
+    @Test
+    void testSweepExpiredHolds_FailedPageCountsHoldsWrittenBeforeTheFailure() {
+        // Given - B001's batch was written before B002's failed
+        String bucket = SeatHold.bucketFor(NOW);
+        SeatHold written = hold("B001", NOW - 5);
+        SeatHold stuck = hold("B002", NOW - 4);
+        lenient().when(seatHoldRepository.findExpired(eq(bucket), eq(NOW), anyInt()))
+            .thenReturn(Arrays.asList(written, stuck))
+            .thenReturn(Collections.emptyList());
+        when(seatHoldRepository.releaseAll(anyList(), anyLong())).thenThrow(new RuntimeException("Throughput exceeded"));
+        SeatHold settled = hold("B001", NOW - 5);
+        settled.setStatus(SeatHoldStatus.RELEASED.name());
+        when(seatHoldRepository.findById("B001")).thenReturn(settled);
+        when(seatHoldRepository.findById("B002")).thenReturn(stuck);
+        when(bookingRepository.failUnclaimed("B001")).thenReturn(true);
+
+        // When
+        int released = seatHoldService.sweepExpiredHolds();
+
+        // Then
+        assertEquals(1, released);
+        verify(statusNotifier).publish("B001", BookingStatus.FAILED);
+        verify(bookingRepository, never()).failUnclaimed("B002");
+    }
+
+    @Test
+    void testSweepExpiredHolds_BookingClaimedMidSweepIsLeftToItsSaga() {
+        // Given - the saga claimed the payment after the sweep read the hold but before
+        // the booking was failed; its claim makes the conditional write a no-op
+        String bucket = SeatHold.bucketFor(NOW);
+        lenient().when(seatHoldRepository.findExpired(eq(bucket), eq(NOW), anyInt()))
+            .thenReturn(Collections.singletonList(hold("B001", NOW - 5)))
+            .thenReturn(Collections.emptyList());
+        when(seatHoldRepository.releaseAll(anyList(), anyLong())).thenAnswer(releasingAll());
+        when(bookingRepository.failUnclaimed("B001")).thenReturn(false);
+
+        // When
+        seatHoldService.sweepExpiredHolds();
+
+        // Then - nothing is overwritten or announced; the saga finds its hold gone
+        verify(bookingRepository, never()).save(any(Booking.class));
+        verify(bookingRepository, never()).findById(anyString());
+        verify(statusNotifier, never()).publish(anyString(), any(BookingStatus.class));
+    }
+
+    @Test
+    void testSweepExpiredHolds_HoldSettledConcurrentlyKeepsBooking() {
+        // Given - the payment confirmed the hold just before the sweep reached it
+        String bucket = SeatHold.bucketFor(NOW);
+        // Lenient: every other bucket in the lookback window is queried too
+        lenient().when(seatHoldRepository.findExpired(eq(bucket), eq(NOW), anyInt()))
+            .thenReturn(Collections.singletonList(hold("B001", NOW - 5)))
+            .thenReturn(Collections.emptyList());
+        when(seatHoldRepository.releaseAll(anyList(), anyLong())).thenReturn(Collections.emptyList());
+
+        // When
+        int released = seatHoldService.sweepExpiredHolds();
+
+        // Then
+        assertEquals(0, released);
+        verify(bookingRepository, never()).failUnclaimed(anyString());
+    }
+
+    @Test
+    void testSweepExpiredHolds_ResumesFromBucketWithFailedRelease() {
+        // Given - a release in an older bucket fails on the first sweep
+        String olderBucket = SeatHold.bucketFor(NOW - 600);
+        SeatHold stuck = hold("B001", NOW - 600);
+        // Lenient: every other bucket in the lookback window is queried too
+        lenient().when(seatHoldRepository.findExpired(eq(olderBucket), anyLong(), anyInt()))
+            .thenReturn(Collections.singletonList(stuck));
+        when(seatHoldRepository.releaseAll(anyList(), anyLong()))
+            .thenThrow(new RuntimeException("Throughput exceeded"))
+            .thenAnswer(releasingAll());
+
+        // When
+        seatHoldService.sweepExpiredHolds();
+        int releasedOnRetry = seatHoldService.sweepExpiredHolds();
+
+        // Then - the second sweep starts at the older bucket instead of the current one
+        assertEquals(1, releasedOnRetry);
+        verify(seatHoldRepository, times(2)).releaseAll(anyList(), anyLong());
+    }
+
+    @Test
+    void testSweepExpiredHolds_LaterSweepsSkipDrainedBuckets() {
+        // When
+        seatHoldService.sweepExpiredHolds();
+        clearInvocations(seatHoldRepository);
+        seatHoldService.sweepExpiredHolds();
+
+        // Then - only the current bucket is read again
+        verify(seatHoldRepository).findExpired(eq(SeatHold.bucketFor(NOW)), eq(NOW), anyInt());
+        verifyNoMoreInteractions(seatHoldRepository);
+    }
+
+    // Every hold passed in was still held
+    private static Answer<List<String>> releasingAll() {
+        return invocation -> {
+            List<SeatHold> holds = invocation.getArgument(0);
+            return holds.stream().map(SeatHold::getHoldId).collect(Collectors.toList());
+        };
+    }
+
+    private static SeatHold hold(String holdId, long expiresAt) {
+        return new SeatHold(holdId, Arrays.asList("F001"), "2024-01-15", 2, expiresAt);
+    }
+}
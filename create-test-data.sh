@@ -14,7 +14,7 @@ echo "📊 Creating inventory record for flight F001..."
 aws dynamodb put-item \
   --table-name inventory \
   --item '{
-    "inventoryId": {"S": "INV001"},
+    "inventoryId": {"S": "F001#2024-01-15"},
     "flightId": {"S": "F001"},
     "date": {"S": "2024-01-15"},
     "numberOfSeatsLeft": {"N": "50"},
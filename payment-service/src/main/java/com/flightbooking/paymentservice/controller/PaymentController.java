@@ -16,8 +16,18 @@ public class PaymentController {
     private PaymentService paymentService;
 
     @PostMapping("/pay")
-    public ResponseEntity<PaymentResponse> processPayment(@RequestBody PaymentRequest request) {
-        PaymentResponse response = paymentService.processPayment(request);
+    public ResponseEntity<PaymentResponse> processPayment(
+            @RequestBody PaymentRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        PaymentResponse response = paymentService.processPayment(request, idempotencyKey);
         return ResponseEntity.ok(response);
     }
-} 
\ No newline at end of file
+
+    @PostMapping("/refund")
+    public ResponseEntity<PaymentResponse> refundPayment(
+            @RequestBody PaymentRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        PaymentResponse response = paymentService.refundPayment(request, idempotencyKey);
+        return ResponseEntity.ok(response);
+    }
+}
@@ -3,13 +3,42 @@ package com.flightbooking.paymentservice.service;
 import com.flightbooking.paymentservice.dto.PaymentRequest;
 import com.flightbooking.paymentservice.dto.PaymentResponse;
 import com.flightbooking.paymentservice.enums.PaymentStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Service
 public class PaymentService {
 
+    // How long a keyed outcome is remembered; retries arriving later are processed again
+    @Value("${payment.idempotency.ttl-ms:86400000}")
+    private long ttlMs = 86400000;
+
+    private Clock clock = Clock.systemUTC();
+
+    // Outcome of every recent keyed payment, so a retried request is answered without charging again
+    private final Map<String, Outcome> responsesByKey = new ConcurrentHashMap<>();
+
+    // Outcome of every recent keyed refund, kept apart from the payments made under the same key
+    private final Map<String, Outcome> refundsByKey = new ConcurrentHashMap<>();
+
+    /**
+     * Processes the payment once per {@code idempotencyKey}; a repeated key gets the first
+     * outcome back. Requests without a key are always processed.
+     */
+    public PaymentResponse processPayment(PaymentRequest request, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return processPayment(request);
+        }
+        return once(responsesByKey, idempotencyKey, () -> processPayment(request));
+    }
+
     public PaymentResponse processPayment(PaymentRequest request) {
         // For this exercise, hardcoded to return success for all cases
         String transactionId = UUID.randomUUID().toString();
@@ -22,9 +51,50 @@ public class PaymentService {
         );
     }
 
+    /**
+     * Refunds the payment made under {@code idempotencyKey} once; a repeated key gets the
+     * first outcome back.
+     */
+    public PaymentResponse refundPayment(PaymentRequest request, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return new PaymentResponse(null, PaymentStatus.FAILED, "Refunds need the key of the payment", request.getAmount());
+        }
+        // For this exercise, hardcoded to return success for all cases
+        return once(refundsByKey, idempotencyKey, () -> new PaymentResponse(
+            UUID.randomUUID().toString(),
+            PaymentStatus.SUCCESS,
+            "Payment refunded successfully",
+            request.getAmount()
+        ));
+    }
+
+    @Scheduled(fixedDelayString = "${payment.idempotency.eviction-interval-ms:600000}")
+    public void evictExpired() {
+        long now = clock.millis();
+        responsesByKey.values().removeIf(outcome -> outcome.expiresAt <= now);
+        refundsByKey.values().removeIf(outcome -> outcome.expiresAt <= now);
+    }
+
+    // An expired outcome is replaced as if the key had never been seen
+    private PaymentResponse once(Map<String, Outcome> outcomes, String idempotencyKey, Supplier<PaymentResponse> process) {
+        long now = clock.millis();
+        return outcomes.compute(idempotencyKey, (key, existing) -> existing != null && existing.expiresAt > now
+                ? existing : new Outcome(process.get(), now + ttlMs)).response;
+    }
+
     // Method for direct amount processing (used by booking service)
     public String processPayment(double amount) {
         // For this exercise, hardcoded to return success for all cases
         return PaymentStatus.SUCCESS.getValue();
     }
-} 
\ No newline at end of file
+
+    private static final class Outcome {
+        final PaymentResponse response;
+        final long expiresAt;
+
+        Outcome(PaymentResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -117,21 +117,61 @@ aws dynamodb create-table \
     --attribute-definitions AttributeName=flightId,AttributeType=S \
     --key-schema AttributeName=flightId,KeyType=HASH \
     --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5 \
+    --stream-specification StreamEnabled=true,StreamViewType=NEW_AND_OLD_IMAGES \
     --endpoint-url http://localhost:8000 >/dev/null 2>&1
 
 print_status "Creating inventory table..."
 aws dynamodb create-table \
     --table-name inventory \
-    --attribute-definitions AttributeName=inventoryId,AttributeType=S \
+    --attribute-definitions AttributeName=inventoryId,AttributeType=S AttributeName=flightId,AttributeType=S AttributeName=date,AttributeType=S \
     --key-schema AttributeName=inventoryId,KeyType=HASH \
+    --global-secondary-indexes \
+        '[{"IndexName":"flightId-date-index","KeySchema":[{"AttributeName":"flightId","KeyType":"HASH"},{"AttributeName":"date","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}},
+          {"IndexName":"date-index","KeySchema":[{"AttributeName":"date","KeyType":"HASH"}],"Projection":{"ProjectionType":"ALL"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}}]' \
     --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5 \
     --endpoint-url http://localhost:8000 >/dev/null 2>&1
 
 print_status "Creating bookings table..."
 aws dynamodb create-table \
     --table-name bookings \
-    --attribute-definitions AttributeName=bookingId,AttributeType=S \
+    --attribute-definitions AttributeName=bookingId,AttributeType=S AttributeName=paymentQueue,AttributeType=S AttributeName=paymentDueAt,AttributeType=N AttributeName=userId,AttributeType=S AttributeName=date,AttributeType=S AttributeName=status,AttributeType=S AttributeName=createdAt,AttributeType=N \
     --key-schema AttributeName=bookingId,KeyType=HASH \
+    --global-secondary-indexes \
+        '[{"IndexName":"paymentQueue-paymentDueAt-index","KeySchema":[{"AttributeName":"paymentQueue","KeyType":"HASH"},{"AttributeName":"paymentDueAt","KeyType":"RANGE"}],"Projection":{"ProjectionType":"KEYS_ONLY"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}},{"IndexName":"userId-date-index","KeySchema":[{"AttributeName":"userId","KeyType":"HASH"},{"AttributeName":"date","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}},{"IndexName":"status-createdAt-index","KeySchema":[{"AttributeName":"status","KeyType":"HASH"},{"AttributeName":"createdAt","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}}]' \
+    --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5 \
+    --endpoint-url http://localhost:8000 >/dev/null 2>&1
+
+print_status "Creating booking_legs table..."
+aws dynamodb create-table \
+    --table-name booking_legs \
+    --attribute-definitions AttributeName=flightDate,AttributeType=S AttributeName=bookingId,AttributeType=S \
+    --key-schema AttributeName=flightDate,KeyType=HASH AttributeName=bookingId,KeyType=RANGE \
+    --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5 \
+    --endpoint-url http://localhost:8000 >/dev/null 2>&1
+
+print_status "Creating seat_holds table..."
+aws dynamodb create-table \
+    --table-name seat_holds \
+    --attribute-definitions AttributeName=holdId,AttributeType=S AttributeName=expiryBucket,AttributeType=S AttributeName=expiresAt,AttributeType=N \
+    --key-schema AttributeName=holdId,KeyType=HASH \
+    --global-secondary-indexes \
+        '[{"IndexName":"expiryBucket-expiresAt-index","KeySchema":[{"AttributeName":"expiryBucket","KeyType":"HASH"},{"AttributeName":"expiresAt","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}}]' \
+    --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5 \
+    --endpoint-url http://localhost:8000 >/dev/null 2>&1
+
+print_status "Creating inventory_shards table..."
+aws dynamodb create-table \
+    --table-name inventory_shards \
+    --attribute-definitions AttributeName=shardId,AttributeType=S \
+    --key-schema AttributeName=shardId,KeyType=HASH \
+    --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5 \
+    --endpoint-url http://localhost:8000 >/dev/null 2>&1
+
+print_status "Creating idempotency_keys table..."
+aws dynamodb create-table \
+    --table-name idempotency_keys \
+    --attribute-definitions AttributeName=idempotencyKey,AttributeType=S \
+    --key-schema AttributeName=idempotencyKey,KeyType=HASH \
     --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5 \
     --endpoint-url http://localhost:8000 >/dev/null 2>&1
 
@@ -167,17 +207,17 @@ aws dynamodb put-item \
 print_status "Inserting sample inventory..."
 aws dynamodb put-item \
     --table-name inventory \
-    --item '{"inventoryId":{"S":"INV001"},"flightId":{"S":"F001"},"date":{"S":"2024-01-15"},"numberOfSeatsLeft":{"S":"20"},"version":{"S":"1"}}' \
+    --item '{"inventoryId":{"S":"F001#2024-01-15"},"flightId":{"S":"F001"},"date":{"S":"2024-01-15"},"numberOfSeatsLeft":{"N":"20"},"version":{"N":"1"}}' \
     --endpoint-url http://localhost:8000 >/dev/null 2>&1
 
 aws dynamodb put-item \
     --table-name inventory \
-    --item '{"inventoryId":{"S":"INV002"},"flightId":{"S":"F002"},"date":{"S":"2024-01-16"},"numberOfSeatsLeft":{"S":"15"},"version":{"S":"1"}}' \
+    --item '{"inventoryId":{"S":"F002#2024-01-16"},"flightId":{"S":"F002"},"date":{"S":"2024-01-16"},"numberOfSeatsLeft":{"N":"15"},"version":{"N":"1"}}' \
     --endpoint-url http://localhost:8000 >/dev/null 2>&1
 
 aws dynamodb put-item \
     --table-name inventory \
-    --item '{"inventoryId":{"S":"INV003"},"flightId":{"S":"F003"},"date":{"S":"2024-01-17"},"numberOfSeatsLeft":{"S":"25"},"version":{"S":"1"}}' \
+    --item '{"inventoryId":{"S":"F003#2024-01-17"},"flightId":{"S":"F003"},"date":{"S":"2024-01-17"},"numberOfSeatsLeft":{"N":"25"},"version":{"N":"1"}}' \
     --endpoint-url http://localhost:8000 >/dev/null 2>&1
 
 print_success "Sample data inserted successfully"
@@ -4,12 +4,23 @@ import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreamsClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+
+import java.net.URI;
 
 @Configuration
+@Profile("!in-memory")
 public class AWSConfig {
 
     @Value("${aws.access.key.id}")
@@ -47,4 +58,38 @@ public class AWSConfig {
     public DynamoDBMapper dynamoDBMapper() {
         return new DynamoDBMapper(amazonDynamoDB());
     }
-} 
\ No newline at end of file
+
+    @Bean
+    public AmazonDynamoDBStreams amazonDynamoDBStreams() {
+        // Reads the flights table's stream to keep the search graph current
+        AmazonDynamoDBStreamsClientBuilder builder = AmazonDynamoDBStreamsClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(
+                        new BasicAWSCredentials(accessKeyId, secretAccessKey)));
+
+        if (dynamoDBEndpoint != null && !dynamoDBEndpoint.trim().isEmpty()) {
+            builder.withEndpointConfiguration(
+                new com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration(
+                    dynamoDBEndpoint, region));
+        } else {
+            builder.withRegion(region);
+        }
+
+        return builder.build();
+    }
+
+    @Bean
+    public DynamoDbAsyncClient dynamoDbAsyncClient() {
+        // Non-blocking v2 client for the read paths; requests are multiplexed over the
+        // SDK's event loop instead of pinning a request thread per call
+        DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKeyId, secretAccessKey)))
+                .region(Region.of(region));
+
+        if (dynamoDBEndpoint != null && !dynamoDBEndpoint.trim().isEmpty()) {
+            builder.endpointOverride(URI.create(dynamoDBEndpoint));
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,29 @@
+package com.flightbooking.searchservice.config;
+
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("in-memory")
+public class InMemoryConfig {
+
+    @Value("${repository.in-memory.latency.min-ms:0}")
+    private long minLatencyMs;
+
+    @Value("${repository.in-memory.latency.max-ms:0}")
+    private long maxLatencyMs;
+
+    @Value("${repository.in-memory.failure-rate:0.0}")
+    private double failureRate;
+
+    @Value("${repository.in-memory.seed:0}")
+    private long seed;
+
+    @Bean
+    public LatencyInjector latencyInjector() {
+        return new LatencyInjector(minLatencyMs, maxLatencyMs, failureRate, seed);
+    }
+}
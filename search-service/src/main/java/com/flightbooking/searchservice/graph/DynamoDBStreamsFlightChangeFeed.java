@@ -0,0 +1,396 @@
+package com.flightbooking.searchservice.graph;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
+import com.amazonaws.services.dynamodbv2.model.ExpiredIteratorException;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.Shard;
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TrimmedDataAccessException;
+import com.flightbooking.searchservice.model.Flight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Change feed read from the flights table's DynamoDB stream, so writes made by any
+ * instance, seed script or console reach every search graph. The stream has to be
+ * enabled with {@code NEW_AND_OLD_IMAGES}.
+ *
+ * <p>A scheduled reader takes one page of records from each shard per tick and appends
+ * them to a {@link FlightChangeLog}, which numbers them for {@link FlightGraphManager}.
+ * A child shard is read only once its parent is exhausted, so the writes to one flight
+ * are appended in the order they were made. Shards closed before {@link #start} hold
+ * only writes the first table scan already sees; open shards are read from their tip.
+ * Records trimmed from the stream before they were read are reported as a gap.
+ *
+ * <p>After every read the place in each shard is kept against the local sequence number
+ * it covers, so a snapshot of the graph at that number can record it. A later process
+ * given that checkpoint reads each shard from there instead of its tip, which replays the
+ * writes made since the snapshot rather than rescanning the table. Checkpoints older than
+ * {@code search.graph.change-feed.resume-window-ms} are refused: the stream keeps records
+ * for 24 hours, and past that the writes after them may be gone.
+ */
+@Component
+@Profile("!in-memory")
+public class DynamoDBStreamsFlightChangeFeed implements FlightChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynamoDBStreamsFlightChangeFeed.class);
+
+    private static final String TABLE_NAME = Flight.class.getAnnotation(DynamoDBTable.class).tableName();
+
+    // Shard states in a checkpoint besides the sequence number of the last record read
+    private static final String FINISHED = "finished";
+    private static final String UNREAD = "unread";
+
+    @Autowired
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Autowired
+    private AmazonDynamoDBStreams dynamoDBStreams;
+
+    @Autowired
+    private DynamoDBMapper dynamoDBMapper;
+
+    @Value("${search.graph.change-log.retention:10000}")
+    private int retention = 10000;
+
+    @Value("${search.graph.change-feed.records-per-read:1000}")
+    private int recordsPerRead = 1000;
+
+    @Value("${search.graph.change-feed.shard-refresh-ms:60000}")
+    private long shardRefreshMs = 60000;
+
+    @Value("${search.graph.change-feed.resume-window-ms:72000000}")
+    private long resumeWindowMs = 72000000;
+
+    // Set by start(); until then there is nothing to poll
+    private volatile FlightChangeLog buffer;
+    private volatile String streamArn;
+
+    // Guarded by this: the reader's place in every shard of the stream
+    private final Map<String, ShardPosition> shards = new LinkedHashMap<>();
+    private long shardsRefreshedAt;
+
+    // Encoded shard positions by the local sequence number they cover, oldest first
+    private final ConcurrentSkipListMap<Long, String> checkpoints = new ConcurrentSkipListMap<>();
+
+    @Override
+    public synchronized boolean start(String checkpoint) {
+        if (buffer != null) {
+            // Already reading from wherever the first call started
+            return checkpoint == null;
+        }
+        FlightChangeLog log = new FlightChangeLog(retention);
+        TableDescription table = amazonDynamoDB.describeTable(TABLE_NAME).getTable();
+        String arn = table.getLatestStreamArn();
+        boolean resumed = false;
+        if (arn == null) {
+            logger.warn("The {} table has no stream; the search graph will only see writes made outside "
+                    + "this process through search.graph.reconcile-interval-ms", TABLE_NAME);
+        } else {
+            if (table.getStreamSpecification() != null
+                    && !"NEW_AND_OLD_IMAGES".equals(table.getStreamSpecification().getStreamViewType())) {
+                logger.warn("The {} stream has view type {}; NEW_AND_OLD_IMAGES is needed to apply removals",
+                        TABLE_NAME, table.getStreamSpecification().getStreamViewType());
+            }
+            List<Shard> live = describeShards(arn);
+            resumed = checkpoint != null && resume(arn, live, checkpoint);
+            if (!resumed) {
+                shards.clear();
+                for (Shard shard : live) {
+                    ShardPosition position = new ShardPosition(shard.getShardId(), shard.getParentShardId());
+                    if (shard.getSequenceNumberRange().getEndingSequenceNumber() == null) {
+                        position.iterator = iterator(arn, position.shardId, ShardIteratorType.LATEST, null);
+                    } else {
+                        position.finished = true;
+                    }
+                    shards.put(position.shardId, position);
+                }
+            }
+            shardsRefreshedAt = System.currentTimeMillis();
+        }
+        streamArn = arn;
+        buffer = log;
+        recordCheckpoint();
+        return resumed;
+    }
+
+    @Scheduled(fixedDelayString = "${search.graph.change-feed.poll-interval-ms:1000}")
+    public synchronized void readStream() {
+        if (buffer == null || streamArn == null) {
+            return;
+        }
+        try {
+            boolean closed = false;
+            for (ShardPosition shard : new ArrayList<>(shards.values())) {
+                if (!shard.finished && parentFinished(shard)) {
+                    closed |= read(shard);
+                }
+            }
+            // A closed shard has children to pick up; otherwise new shards come from splits
+            if (closed || System.currentTimeMillis() - shardsRefreshedAt >= shardRefreshMs) {
+                refreshShards();
+            }
+        } catch (AmazonClientException e) {
+            logger.warn("Reading the {} stream failed, retrying on the next tick: {}", TABLE_NAME, e.getMessage());
+        } finally {
+            // Positions move record by record with the appends, so they are consistent even
+            // when the tick stopped part way
+            recordCheckpoint();
+        }
+    }
+
+    @Override
+    public List<FlightChangeEvent> poll(long afterSequence, int maxEvents) {
+        FlightChangeLog log = buffer;
+        return log != null ? log.poll(afterSequence, maxEvents) : Collections.emptyList();
+    }
+
+    @Override
+    public long latestSequence() {
+        FlightChangeLog log = buffer;
+        return log != null ? log.latestSequence() : 0L;
+    }
+
+    @Override
+    public boolean hasGapAfter(long afterSequence) {
+        FlightChangeLog log = buffer;
+        return log != null && log.hasGapAfter(afterSequence);
+    }
+
+    @Override
+    public String checkpoint(long sequence) {
+        Map.Entry<Long, String> covered = checkpoints.floorEntry(sequence);
+        return covered != null ? covered.getValue() : null;
+    }
+
+    // The stream outlives this process; without one the buffer's own id keeps snapshots local
+    @Override
+    public String feedId() {
+        if (streamArn != null) {
+            return streamArn;
+        }
+        FlightChangeLog log = buffer;
+        return log != null ? log.feedId() : null;
+    }
+
+    /**
+     * Places every shard as the checkpoint records it. Fails when the checkpoint is from
+     * another stream or too old, when a shard it had not finished is gone, or when the
+     * records after its place in a shard were trimmed.
+     */
+    private boolean resume(String arn, List<Shard> live, String checkpoint) {
+        Map<String, String> saved = decodeCheckpoint(arn, checkpoint);
+        if (saved == null) {
+            return false;
+        }
+        Set<String> liveIds = new HashSet<>();
+        live.forEach(shard -> liveIds.add(shard.getShardId()));
+        for (Map.Entry<String, String> shard : saved.entrySet()) {
+            if (!liveIds.contains(shard.getKey()) && !FINISHED.equals(shard.getValue())) {
+                return false;
+            }
+        }
+
+        for (Shard shard : live) {
+            ShardPosition position = new ShardPosition(shard.getShardId(), shard.getParentShardId());
+            String state = saved.get(position.shardId);
+            if (FINISHED.equals(state)) {
+                position.finished = true;
+            } else if (state != null && !UNREAD.equals(state)) {
+                position.lastSequenceNumber = state;
+                try {
+                    position.iterator = iterator(arn, position.shardId, ShardIteratorType.AFTER_SEQUENCE_NUMBER, state);
+                } catch (TrimmedDataAccessException e) {
+                    logger.info("Records after the checkpoint in {} stream shard {} were trimmed", TABLE_NAME, position.shardId);
+                    shards.clear();
+                    return false;
+                }
+            }
+            // Shards created since the checkpoint, and those it had not read yet, are read
+            // from their oldest record
+            shards.put(position.shardId, position);
+        }
+        return true;
+    }
+
+    // Called with the lock held, after start() and after every read
+    private void recordCheckpoint() {
+        if (streamArn == null) {
+            return;
+        }
+        StringBuilder encoded = new StringBuilder(streamArn).append('\n').append(System.currentTimeMillis());
+        for (ShardPosition shard : shards.values()) {
+            String state = shard.finished ? FINISHED
+                    : shard.lastSequenceNumber != null ? shard.lastSequenceNumber : UNREAD;
+            encoded.append('\n').append(shard.shardId).append(' ').append(state);
+        }
+        long covered = buffer.latestSequence();
+        checkpoints.put(covered, encoded.toString());
+
+        // Readers behind the buffer's oldest event have to rescan anyway
+        Long oldestNeeded = checkpoints.floorKey(buffer.oldestRetainedSequence() - 1);
+        if (oldestNeeded != null) {
+            checkpoints.headMap(oldestNeeded).clear();
+        }
+    }
+
+    private Map<String, String> decodeCheckpoint(String arn, String checkpoint) {
+        String[] lines = checkpoint.split("\n");
+        try {
+            if (lines.length < 2 || !lines[0].equals(arn)) {
+                logger.info("Change feed checkpoint is from another stream than {}", arn);
+                return null;
+            }
+            long age = System.currentTimeMillis() - Long.parseLong(lines[1]);
+            if (age > resumeWindowMs) {
+                logger.info("Change feed checkpoint is {} ms old, past the resume window", age);
+                return null;
+            }
+            Map<String, String> saved = new LinkedHashMap<>();
+            for (int i = 2; i < lines.length; i++) {
+                int separator = lines[i].indexOf(' ');
+                saved.put(lines[i].substring(0, separator), lines[i].substring(separator + 1));
+            }
+            return saved;
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring malformed change feed checkpoint: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Reads one page from the shard; returns true when the shard turned out to be closed. */
+    private boolean read(ShardPosition shard) {
+        if (shard.iterator == null) {
+            try {
+                shard.iterator = shard.lastSequenceNumber != null
+                        ? iterator(streamArn, shard.shardId, ShardIteratorType.AFTER_SEQUENCE_NUMBER, shard.lastSequenceNumber)
+                        : iterator(streamArn, shard.shardId, ShardIteratorType.TRIM_HORIZON, null);
+            } catch (TrimmedDataAccessException e) {
+                lost(shard);
+                return false;
+            }
+        }
+
+        GetRecordsResult result;
+        try {
+            result = dynamoDBStreams.getRecords(new GetRecordsRequest()
+                    .withShardIterator(shard.iterator)
+                    .withLimit(recordsPerRead));
+        } catch (ExpiredIteratorException e) {
+            // Taken again from the last record read on the next tick
+            shard.iterator = null;
+            return false;
+        } catch (TrimmedDataAccessException e) {
+            lost(shard);
+            return false;
+        }
+
+        for (Record record : result.getRecords()) {
+            StreamRecord change = record.getDynamodb();
+            Flight oldImage = image(change.getOldImage());
+            Flight newImage = image(change.getNewImage());
+            if (oldImage != null || newImage != null) {
+                buffer.append(oldImage, newImage);
+            }
+            shard.lastSequenceNumber = change.getSequenceNumber();
+        }
+        shard.iterator = result.getNextShardIterator();
+        if (shard.iterator == null) {
+            shard.finished = true;
+            return true;
+        }
+        return false;
+    }
+
+    // The records after our place were trimmed: readers must rescan, then the shard is read
+    // again from its oldest record, which the rescan already reflects
+    private void lost(ShardPosition shard) {
+        logger.warn("Records of {} stream shard {} were trimmed before they were read", TABLE_NAME, shard.shardId);
+        buffer.markGap();
+        shard.iterator = null;
+        shard.lastSequenceNumber = null;
+    }
+
+    private boolean parentFinished(ShardPosition shard) {
+        ShardPosition parent = shard.parentShardId != null ? shards.get(shard.parentShardId) : null;
+        return parent == null || parent.finished;
+    }
+
+    // Shards found after start() were created since, so all their records are read
+    private void refreshShards() {
+        Set<String> live = new HashSet<>();
+        for (Shard shard : describeShards(streamArn)) {
+            live.add(shard.getShardId());
+            shards.computeIfAbsent(shard.getShardId(), id -> new ShardPosition(id, shard.getParentShardId()));
+        }
+        // Exhausted shards that have aged out of the stream are no longer needed for ordering
+        shards.values().removeIf(shard -> shard.finished && !live.contains(shard.shardId));
+        shardsRefreshedAt = System.currentTimeMillis();
+    }
+
+    private List<Shard> describeShards(String arn) {
+        List<Shard> found = new ArrayList<>();
+        String lastShardId = null;
+        do {
+            StreamDescription description = dynamoDBStreams.describeStream(new DescribeStreamRequest()
+                    .withStreamArn(arn)
+                    .withExclusiveStartShardId(lastShardId))
+                    .getStreamDescription();
+            found.addAll(description.getShards());
+            lastShardId = description.getLastEvaluatedShardId();
+        } while (lastShardId != null);
+        return found;
+    }
+
+    private String iterator(String arn, String shardId, ShardIteratorType type, String sequenceNumber) {
+        return dynamoDBStreams.getShardIterator(new GetShardIteratorRequest()
+                .withStreamArn(arn)
+                .withShardId(shardId)
+                .withShardIteratorType(type)
+                .withSequenceNumber(sequenceNumber))
+                .getShardIterator();
+    }
+
+    private Flight image(Map<String, AttributeValue> image) {
+        return image == null || image.isEmpty() ? null : dynamoDBMapper.marshallIntoObject(Flight.class, image);
+    }
+
+    private static final class ShardPosition {
+        private final String shardId;
+        private final String parentShardId;
+        private String iterator;
+        private String lastSequenceNumber;
+        private boolean finished;
+
+        ShardPosition(String shardId, String parentShardId) {
+            this.shardId = shardId;
+            this.parentShardId = parentShardId;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+
+/**
+ * One write to the flights table, shaped like a DynamoDB Streams record with
+ * NEW_AND_OLD_IMAGES: the image before the write (null for inserts) and after it
+ * (null for removals).
+ */
+public class FlightChangeEvent {
+
+    public enum Type {
+        INSERT,
+        MODIFY,
+        REMOVE
+    }
+
+    private final long sequenceNumber;
+    private final Type type;
+    private final String flightId;
+    private final Flight oldImage;
+    private final Flight newImage;
+
+    public FlightChangeEvent(long sequenceNumber, Type type, String flightId, Flight oldImage, Flight newImage) {
+        this.sequenceNumber = sequenceNumber;
+        this.type = type;
+        this.flightId = flightId;
+        this.oldImage = oldImage;
+        this.newImage = newImage;
+    }
+
+    public long getSequenceNumber() { return sequenceNumber; }
+    public Type getType() { return type; }
+    public String getFlightId() { return flightId; }
+    public Flight getOldImage() { return oldImage; }
+    public Flight getNewImage() { return newImage; }
+
+    @Override
+    public String toString() {
+        return "FlightChangeEvent{" +
+                "sequenceNumber=" + sequenceNumber +
+                ", type=" + type +
+                ", flightId='" + flightId + '\'' +
+                '}';
+    }
+}
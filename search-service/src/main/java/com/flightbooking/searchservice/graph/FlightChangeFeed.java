@@ -0,0 +1,50 @@
+package com.flightbooking.searchservice.graph;
+
+import java.util.List;
+
+/**
+ * Ordered feed of flight table writes. {@link DynamoDBStreamsFlightChangeFeed} reads the
+ * table's stream, so every instance sees every write whoever made it;
+ * {@link FlightChangeLog} serves the writes made through this process for the in-memory
+ * profile.
+ */
+public interface FlightChangeFeed {
+
+    /**
+     * Starts collecting writes made after {@code checkpoint}, or from now on when it is
+     * null. Called once, before the first table scan, so writes that land during the scan
+     * are polled afterwards. Returns false when the checkpoint cannot be resumed, because
+     * it is from another feed or the source no longer holds every write after it; the feed
+     * then starts from now and the caller has to rebuild from the table.
+     */
+    boolean start(String checkpoint);
+
+    /**
+     * Returns up to {@code maxEvents} events with a sequence number greater than
+     * {@code afterSequence}, oldest first.
+     */
+    List<FlightChangeEvent> poll(long afterSequence, int maxEvents);
+
+    /** Sequence number of the newest event, or 0 when nothing has been written yet. */
+    long latestSequence();
+
+    /**
+     * True when some event after {@code afterSequence} can no longer be polled, because
+     * it fell out of retention or the feed lost its place in its source. A reader at that
+     * position has to rebuild from the table.
+     */
+    boolean hasGapAfter(long afterSequence);
+
+    /**
+     * Where the source stands once every event up to {@code sequence} is applied, for
+     * {@link #start} in a later process; null when the feed cannot be resumed elsewhere.
+     * Resuming may replay a few events that {@code sequence} already covers.
+     */
+    String checkpoint(long sequence);
+
+    /**
+     * Identifies the source of the feed, stable across processes that read the same source.
+     * Snapshots record it with their checkpoint.
+     */
+    String feedId();
+}
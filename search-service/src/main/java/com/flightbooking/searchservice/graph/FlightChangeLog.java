@@ -0,0 +1,127 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process change log. The in-memory flight repository records every write in it; the
+ * DynamoDB Streams feed buffers the stream records it reads in one. Keeps the most recent
+ * {@code retention} events; older ones are dropped and readers that fall behind them are
+ * expected to reload.
+ */
+@Component
+@Profile("in-memory")
+public class FlightChangeLog implements FlightChangeFeed {
+
+    private final ConcurrentSkipListMap<Long, FlightChangeEvent> events = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // Sequence numbers restart with the process, so each instance is its own feed and no
+    // snapshot written by another process can be replayed against it
+    private final String feedId = "local-" + UUID.randomUUID();
+
+    @Value("${search.graph.change-log.retention:10000}")
+    private int retention = 10000;
+
+    // Readers at or before this position missed events that never made it into the log
+    private volatile long lostThrough;
+
+    public FlightChangeLog() {
+    }
+
+    public FlightChangeLog(int retention) {
+        this.retention = retention;
+    }
+
+    // Writes are recorded from the first one this process makes, and are gone with it
+    @Override
+    public boolean start(String checkpoint) {
+        return checkpoint == null;
+    }
+
+    /**
+     * Records a write. The images are kept as given, so callers hand over entities nobody
+     * mutates afterwards: the in-memory repository passes its own stored copies, and the
+     * stream feed entities mapped from each record.
+     */
+    public FlightChangeEvent append(Flight oldImage, Flight newImage) {
+        FlightChangeEvent.Type type;
+        if (newImage == null) {
+            type = FlightChangeEvent.Type.REMOVE;
+        } else if (oldImage == null) {
+            type = FlightChangeEvent.Type.INSERT;
+        } else {
+            type = FlightChangeEvent.Type.MODIFY;
+        }
+        String flightId = newImage != null ? newImage.getFlightId() : oldImage.getFlightId();
+
+        FlightChangeEvent event;
+        // Sequence assignment and insertion happen together so readers never observe gaps
+        synchronized (this) {
+            event = new FlightChangeEvent(sequence.incrementAndGet(), type, flightId, oldImage, newImage);
+            events.put(event.getSequenceNumber(), event);
+        }
+
+        while (events.size() > retention) {
+            events.pollFirstEntry();
+        }
+        return event;
+    }
+
+    @Override
+    public List<FlightChangeEvent> poll(long afterSequence, int maxEvents) {
+        ConcurrentNavigableMap<Long, FlightChangeEvent> tail = events.tailMap(afterSequence, false);
+        List<FlightChangeEvent> batch = new ArrayList<>(Math.min(maxEvents, tail.size()));
+        for (FlightChangeEvent event : tail.values()) {
+            if (batch.size() >= maxEvents) {
+                break;
+            }
+            batch.add(event);
+        }
+        return batch;
+    }
+
+    @Override
+    public long latestSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Records that events were lost before reaching the log. Readers at the current
+     * position or earlier see a gap; the sequence moves on, so a reader that rebuilds from
+     * the table afterwards starts past it.
+     */
+    public synchronized void markGap() {
+        lostThrough = sequence.incrementAndGet();
+    }
+
+    @Override
+    public boolean hasGapAfter(long afterSequence) {
+        return afterSequence < lostThrough
+                || (afterSequence < sequence.get() && afterSequence + 1 < oldestRetainedSequence());
+    }
+
+    long oldestRetainedSequence() {
+        Map.Entry<Long, FlightChangeEvent> first = events.firstEntry();
+        return first != null ? first.getKey() : sequence.get() + 1;
+    }
+
+    @Override
+    public String checkpoint(long sequence) {
+        return null;
+    }
+
+    @Override
+    public String feedId() {
+        return feedId;
+    }
+}
@@ -0,0 +1,193 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the flight network as adjacency segments: for every airport, the
+ * list of flights departing from it. Edits never touch an existing snapshot; they return
+ * a new one that shares every segment except those of the airports being changed, so a
+ * schedule change costs the size of the touched segments rather than a full rebuild.
+ */
+public final class FlightGraph {
+
+    private static final FlightGraph EMPTY = new FlightGraph(Collections.emptyMap(), 0, 0L);
+
+    private final Map<String, List<Flight>> outgoing;
+    private final int flightCount;
+    private final long version;
+    private volatile RouteIndex routeIndex;
+
+    private FlightGraph(Map<String, List<Flight>> outgoing, int flightCount, long version) {
+        this.outgoing = outgoing;
+        this.flightCount = flightCount;
+        this.version = version;
+    }
+
+    public static FlightGraph empty() {
+        return EMPTY;
+    }
+
+    public static FlightGraph of(Collection<Flight> flights) {
+        return of(flights, 0L);
+    }
+
+    /**
+     * Builds a snapshot from a full table scan. {@code version} is the change feed
+     * position the scan reflects, so later events can be replayed on top of it.
+     */
+    public static FlightGraph of(Collection<Flight> flights, long version) {
+        Map<String, List<Flight>> segments = new HashMap<>();
+        for (Flight flight : flights) {
+            segments.computeIfAbsent(flight.getSource(), k -> new ArrayList<>()).add(flight);
+        }
+        Map<String, List<Flight>> frozen = new HashMap<>(segments.size() * 2);
+        int count = 0;
+        for (Map.Entry<String, List<Flight>> entry : segments.entrySet()) {
+            frozen.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            count += entry.getValue().size();
+        }
+        return new FlightGraph(Collections.unmodifiableMap(frozen), count, version);
+    }
+
+    /** Flights departing from {@code airport}; empty when the airport has none. */
+    public List<Flight> flightsFrom(String airport) {
+        return outgoing.getOrDefault(airport, Collections.emptyList());
+    }
+
+    /** Airports with at least one departing flight. */
+    public Set<String> departureAirports() {
+        return outgoing.keySet();
+    }
+
+    public int flightCount() {
+        return flightCount;
+    }
+
+    public boolean isEmpty() {
+        return flightCount == 0;
+    }
+
+    /** Position in the change feed this snapshot reflects. */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Direct and one-stop routes for this snapshot, built on first use. Every edit
+     * produces a new snapshot, so the index never needs invalidating.
+     */
+    public RouteIndex routeIndex() {
+        RouteIndex index = routeIndex;
+        if (index == null) {
+            // Racing builders produce equivalent indexes; whichever is published last wins
+            index = new RouteIndex(this);
+            routeIndex = index;
+        }
+        return index;
+    }
+
+    /** Same flights, restamped with another change feed position. */
+    FlightGraph withVersion(long newVersion) {
+        return newVersion == version ? this : new FlightGraph(outgoing, flightCount, newVersion);
+    }
+
+    public FlightGraph withFlightAdded(Flight flight) {
+        return withChange(null, flight, version);
+    }
+
+    public FlightGraph withFlightRemoved(Flight flight) {
+        return withChange(flight, null, version);
+    }
+
+    public FlightGraph withFlightUpdated(Flight oldFlight, Flight newFlight) {
+        return withChange(oldFlight, newFlight, version);
+    }
+
+    /**
+     * Applies a batch of change feed events and returns the resulting snapshot. The
+     * airport index is copied once per batch and only the segments of airports the
+     * batch touches are rebuilt. Replaying an event that is already reflected is a no-op.
+     */
+    public FlightGraph apply(List<FlightChangeEvent> events) {
+        if (events.isEmpty()) {
+            return this;
+        }
+        Editor editor = new Editor();
+        long newVersion = version;
+        for (FlightChangeEvent event : events) {
+            if (event.getSequenceNumber() <= version) {
+                continue;
+            }
+            editor.remove(event.getOldImage());
+            editor.upsert(event.getNewImage());
+            newVersion = event.getSequenceNumber();
+        }
+        return editor.build(newVersion);
+    }
+
+    private FlightGraph withChange(Flight oldFlight, Flight newFlight, long newVersion) {
+        Editor editor = new Editor();
+        editor.remove(oldFlight);
+        editor.upsert(newFlight);
+        return editor.build(newVersion);
+    }
+
+    /**
+     * Collects segment edits for one new snapshot. Each touched segment is copied the
+     * first time it is edited; later edits in the same batch reuse that copy.
+     */
+    private final class Editor {
+        private final Map<String, List<Flight>> touched = new HashMap<>();
+        private int flightCountDelta;
+
+        void remove(Flight flight) {
+            if (flight == null) {
+                return;
+            }
+            List<Flight> segment = segment(flight.getSource());
+            if (segment.removeIf(existing -> existing.getFlightId().equals(flight.getFlightId()))) {
+                flightCountDelta--;
+            }
+        }
+
+        void upsert(Flight flight) {
+            if (flight == null) {
+                return;
+            }
+            List<Flight> segment = segment(flight.getSource());
+            // Replays and updates that keep the source replace the flight in place
+            if (segment.removeIf(existing -> existing.getFlightId().equals(flight.getFlightId()))) {
+                flightCountDelta--;
+            }
+            segment.add(flight);
+            flightCountDelta++;
+        }
+
+        private List<Flight> segment(String airport) {
+            return touched.computeIfAbsent(airport, k -> new ArrayList<>(flightsFrom(k)));
+        }
+
+        FlightGraph build(long newVersion) {
+            if (touched.isEmpty()) {
+                return newVersion == version ? FlightGraph.this : new FlightGraph(outgoing, flightCount, newVersion);
+            }
+            Map<String, List<Flight>> next = new HashMap<>(outgoing);
+            for (Map.Entry<String, List<Flight>> entry : touched.entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    next.remove(entry.getKey());
+                } else {
+                    next.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+                }
+            }
+            return new FlightGraph(Collections.unmodifiableMap(next), flightCount + flightCountDelta, newVersion);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+import com.flightbooking.searchservice.repository.AsyncFlightRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Owns the current {@link FlightGraph} snapshot. Searches read it with a plain volatile
+ * load; a single scheduled poller applies change feed batches and publishes the result
+ * by swapping the reference, so readers never lock and never see a half-applied batch.
+ * The feed carries every write to the flights table, including those made by other
+ * instances, so a schedule change costs the edges it touches. The table is scanned in
+ * full only to build the first graph and when the feed reports a gap; a periodic rescan
+ * can be turned on with {@code search.graph.reconcile-interval-ms} and is off by default.
+ * When a snapshot file is configured the first graph comes from it rather than a table
+ * scan, and the feed is started from the checkpoint saved with it, so the writes made
+ * since the snapshot are replayed. A snapshot the feed cannot resume from is served as is
+ * and rebuilt from the table on the next poll.
+ */
+@Component
+public class FlightGraphManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightGraphManager.class);
+
+    @Autowired
+    private AsyncFlightRepository flightRepository;
+
+    @Autowired
+    private FlightChangeFeed changeFeed;
+
+    @Autowired
+    private FlightGraphSnapshotStore snapshotStore;
+
+    @Value("${search.graph.change-feed.batch-size:500}")
+    private int batchSize = 500;
+
+    // Zero or less: the table is only rescanned when the feed reports a gap
+    @Value("${search.graph.reconcile-interval-ms:0}")
+    private long reconcileIntervalMs = 0;
+
+    private final AtomicReference<FlightGraph> current = new AtomicReference<>();
+
+    // Set when the serving graph came from a snapshot the feed could not resume from
+    private volatile boolean reconcilePending;
+    private volatile FlightGraph lastSnapshotGraph;
+    private volatile long loadedAt;
+
+    public FlightGraph currentGraph() {
+        FlightGraph graph = current.get();
+        return graph != null ? graph : loadInitialGraph();
+    }
+
+    /**
+     * Loads the graph before the first search arrives, from the snapshot file when one is
+     * available, so searches are not held up by the first table scan.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            currentGraph();
+        } catch (Exception e) {
+            logger.warn("Flight graph warm-up failed, will load on first search: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot from a full table scan: on startup, when the change feed
+     * reports a gap, and on every reconcile.
+     */
+    public synchronized FlightGraph reload() {
+        // Read the feed position first: writes that land during the scan are replayed
+        // afterwards, and replaying a write the scan already saw is harmless
+        long position = changeFeed.latestSequence();
+        // Segments are scanned in parallel on the async client; only this thread waits
+        List<Flight> flights = flightRepository.findAll().join();
+        FlightGraph graph = FlightGraph.of(flights, position);
+        current.set(graph);
+        reconcilePending = false;
+        loadedAt = System.currentTimeMillis();
+        logger.info("Flight graph loaded with {} flights at change feed position {}", graph.flightCount(), position);
+        return graph;
+    }
+
+    private synchronized FlightGraph loadInitialGraph() {
+        FlightGraph graph = current.get();
+        if (graph != null) {
+            return graph;
+        }
+
+        FlightGraphSnapshot snapshot = snapshotStore.load().orElse(null);
+        String checkpoint = snapshot != null ? snapshot.getCheckpoint() : null;
+        boolean resumed = changeFeed.start(checkpoint) && checkpoint != null
+                && Objects.equals(snapshot.getFeedId(), changeFeed.feedId());
+        if (snapshot == null) {
+            return reload();
+        }
+        // Everything the feed delivers from here on is after the checkpoint
+        graph = snapshot.getGraph().withVersion(changeFeed.latestSequence());
+        if (resumed) {
+            logger.info("Flight graph snapshot resumed on feed {}", snapshot.getFeedId());
+            lastSnapshotGraph = graph;
+        } else {
+            // Serve the snapshot now and rescan on the next poll rather than on startup
+            logger.info("Flight graph snapshot from feed {} cannot be resumed, serving it until reloaded",
+                    snapshot.getFeedId());
+            reconcilePending = true;
+        }
+        current.set(graph);
+        return graph;
+    }
+
+    @Scheduled(fixedDelayString = "${search.graph.change-feed.poll-interval-ms:1000}")
+    public void pollChanges() {
+        FlightGraph graph = current.get();
+        if (graph == null) {
+            return;
+        }
+
+        if (reconcilePending || changeFeed.hasGapAfter(graph.getVersion())) {
+            logger.warn("Flight graph at position {} missed changes, reloading", graph.getVersion());
+            reconcile();
+            return;
+        }
+        if (reconcileIntervalMs > 0 && System.currentTimeMillis() - loadedAt >= reconcileIntervalMs) {
+            reconcile();
+            return;
+        }
+
+        List<FlightChangeEvent> events;
+        while (!(events = changeFeed.poll(graph.getVersion(), batchSize)).isEmpty()) {
+            FlightGraph next = graph.apply(events);
+            if (!current.compareAndSet(graph, next)) {
+                // A reload won the race; its snapshot already covers these events
+                return;
+            }
+            logger.debug("Applied {} flight changes, graph now at position {}", events.size(), next.getVersion());
+            graph = next;
+        }
+    }
+
+    /**
+     * Rebuilds the graph from a table scan, keeping the current one if the scan fails.
+     * Skipped until the first graph is loaded.
+     */
+    public void reconcile() {
+        if (current.get() == null) {
+            return;
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.warn("Flight graph reconcile failed, keeping the current graph: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Persists the current graph for instances that start later. Skipped while nothing
+     * has changed since the last write.
+     */
+    @Scheduled(fixedDelayString = "${search.graph.snapshot.write-interval-ms:60000}")
+    public void writeSnapshot() {
+        FlightGraph graph = current.get();
+        if (graph == null || !snapshotStore.isEnabled() || reconcilePending
+                || graph == lastSnapshotGraph) {
+            return;
+        }
+        snapshotStore.save(graph, changeFeed.feedId(), changeFeed.checkpoint(graph.getVersion()));
+        lastSnapshotGraph = graph;
+    }
+}
@@ -0,0 +1,270 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Binary, versioned image of a {@link FlightGraph} together with the change feed
+ * checkpoint it reflects. The layout is compressed sparse row: an interned airport
+ * dictionary, one offset per departure airport into the edge arrays, then per-flight
+ * destination indices and metadata. Files are written to a temporary sibling and moved
+ * into place.
+ *
+ * <p>Loading decodes the whole file into {@link Flight} objects up front rather than
+ * serving from the arrays: the graph indexes every flight by route when it is built, and
+ * searches return the flights themselves, so every edge is materialised either way. The
+ * file is read in one call; the compact layout keeps that read and the decode short.
+ *
+ * <pre>
+ * int    magic            "FGSN"
+ * int    formatVersion
+ * string feedId
+ * string checkpoint       where the feed resumes, see FlightChangeFeed#checkpoint
+ * int    airportCount
+ * int    flightCount
+ * string airports[airportCount]
+ * int    rowOffsets[airportCount + 1]
+ * int    destinations[flightCount]
+ * int    metadataOffsets[flightCount]
+ * int    metadataLength
+ * byte   metadata[metadataLength]      flightId, daysOfWeek, cost per flight
+ * long   crc32                         over every preceding byte
+ * </pre>
+ *
+ * Strings are a length-prefixed UTF-8 sequence; a length of -1 encodes null.
+ */
+public final class FlightGraphSnapshot {
+
+    static final int MAGIC = 0x4647534E;
+    static final int FORMAT_VERSION = 2;
+
+    private final FlightGraph graph;
+    private final String feedId;
+    private final String checkpoint;
+
+    public FlightGraphSnapshot(FlightGraph graph, String feedId, String checkpoint) {
+        this.graph = graph;
+        this.feedId = feedId;
+        this.checkpoint = checkpoint;
+    }
+
+    public FlightGraph getGraph() {
+        return graph;
+    }
+
+    public String getFeedId() {
+        return feedId;
+    }
+
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /** Writes the snapshot to {@code path}, replacing any previous file atomically. */
+    public void writeTo(Path path) throws IOException {
+        byte[] bytes = encode();
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads {@code path} and decodes it. Throws {@link IOException} when the file is
+     * truncated, fails its checksum or was written in an unknown format.
+     */
+    public static FlightGraphSnapshot readFrom(Path path) throws IOException {
+        long size = Files.size(path);
+        if (size < Long.BYTES + 2 * Integer.BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException("Flight graph snapshot has invalid size " + size);
+        }
+        return decode(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    byte[] encode() throws IOException {
+        List<String> airports = new ArrayList<>(new TreeSet<>(collectAirports()));
+        Map<String, Integer> airportIndex = new HashMap<>(airports.size() * 2);
+        for (int i = 0; i < airports.size(); i++) {
+            airportIndex.put(airports.get(i), i);
+        }
+
+        int flightCount = graph.flightCount();
+        int[] rowOffsets = new int[airports.size() + 1];
+        int[] destinations = new int[flightCount];
+        int[] metadataOffsets = new int[flightCount];
+        ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream(flightCount * 32);
+        DataOutputStream metadata = new DataOutputStream(metadataBytes);
+
+        int edge = 0;
+        for (int row = 0; row < airports.size(); row++) {
+            rowOffsets[row] = edge;
+            for (Flight flight : graph.flightsFrom(airports.get(row))) {
+                destinations[edge] = airportIndex.get(flight.getDestination());
+                metadataOffsets[edge] = metadata.size();
+                writeString(metadata, flight.getFlightId());
+                writeString(metadata, flight.getDaysOfWeek());
+                writeString(metadata, flight.getCost());
+                edge++;
+            }
+        }
+        rowOffsets[airports.size()] = edge;
+        metadata.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + flightCount * 40);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, feedId);
+        writeString(out, checkpoint);
+        out.writeInt(airports.size());
+        out.writeInt(flightCount);
+        for (String airport : airports) {
+            writeString(out, airport);
+        }
+        for (int offset : rowOffsets) {
+            out.writeInt(offset);
+        }
+        for (int destination : destinations) {
+            out.writeInt(destination);
+        }
+        for (int offset : metadataOffsets) {
+            out.writeInt(offset);
+        }
+        out.writeInt(metadataBytes.size());
+        metadataBytes.writeTo(out);
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static FlightGraphSnapshot decode(ByteBuffer buffer) throws IOException {
+        int bodyLength = buffer.limit() - Long.BYTES;
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(0).limit(bodyLength);
+        crc.update(body);
+        if (crc.getValue() != buffer.getLong(bodyLength)) {
+            throw new IOException("Flight graph snapshot failed its checksum");
+        }
+
+        try {
+            ByteBuffer in = buffer.duplicate();
+            in.position(0).limit(bodyLength);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a flight graph snapshot");
+            }
+            int formatVersion = in.getInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported flight graph snapshot format " + formatVersion);
+            }
+            String feedId = readString(in);
+            String checkpoint = readString(in);
+            int airportCount = in.getInt();
+            int flightCount = in.getInt();
+
+            // Interned: every flight touching an airport shares the same String instance
+            String[] airports = new String[airportCount];
+            for (int i = 0; i < airportCount; i++) {
+                airports[i] = readString(in);
+            }
+            int[] rowOffsets = readInts(in, airportCount + 1);
+            int[] destinations = readInts(in, flightCount);
+            int[] metadataOffsets = readInts(in, flightCount);
+            int metadataLength = in.getInt();
+            ByteBuffer metadata = in.slice();
+            metadata.limit(metadataLength);
+
+            List<Flight> flights = new ArrayList<>(flightCount);
+            for (int row = 0; row < airportCount; row++) {
+                for (int edge = rowOffsets[row]; edge < rowOffsets[row + 1]; edge++) {
+                    metadata.position(metadataOffsets[edge]);
+                    Flight flight = new Flight();
+                    flight.setFlightId(readString(metadata));
+                    flight.setDaysOfWeek(readString(metadata));
+                    flight.setCost(readString(metadata));
+                    flight.setSource(airports[row]);
+                    flight.setDestination(airports[destinations[edge]]);
+                    flights.add(flight);
+                }
+            }
+            // Positioned on the resuming feed by the caller
+            return new FlightGraphSnapshot(FlightGraph.of(flights, 0L), feedId, checkpoint);
+        } catch (RuntimeException e) {
+            // Index and underflow errors from a file that passed its checksum but is malformed
+            throw new IOException("Corrupt flight graph snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    private List<String> collectAirports() {
+        List<String> airports = new ArrayList<>();
+        for (String source : graph.departureAirports()) {
+            airports.add(source);
+            for (Flight flight : graph.flightsFrom(source)) {
+                airports.add(flight.getDestination());
+            }
+        }
+        return airports;
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
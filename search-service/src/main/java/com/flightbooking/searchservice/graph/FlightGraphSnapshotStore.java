@@ -0,0 +1,67 @@
+package com.flightbooking.searchservice.graph;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Location of the shared flight graph snapshot file. New instances load it instead of
+ * scanning the flights table; running instances refresh it periodically. A missing or
+ * unreadable file is never fatal, the caller falls back to a table scan.
+ */
+@Component
+public class FlightGraphSnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightGraphSnapshotStore.class);
+
+    @Value("${search.graph.snapshot.enabled:false}")
+    private boolean enabled;
+
+    @Value("${search.graph.snapshot.path:flight-graph.snapshot}")
+    private String path = "flight-graph.snapshot";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<FlightGraphSnapshot> load() {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Path file = Paths.get(path);
+        if (!Files.exists(file)) {
+            logger.info("No flight graph snapshot at {}", file);
+            return Optional.empty();
+        }
+        try {
+            long start = System.nanoTime();
+            FlightGraphSnapshot snapshot = FlightGraphSnapshot.readFrom(file);
+            logger.info("Loaded flight graph snapshot with {} flights from feed {} in {} ms",
+                snapshot.getGraph().flightCount(), snapshot.getFeedId(),
+                (System.nanoTime() - start) / 1_000_000);
+            return Optional.of(snapshot);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable flight graph snapshot {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void save(FlightGraph graph, String feedId, String checkpoint) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            new FlightGraphSnapshot(graph, feedId, checkpoint).writeTo(Paths.get(path));
+            logger.debug("Wrote flight graph snapshot with {} flights at position {}", graph.flightCount(), graph.getVersion());
+        } catch (IOException e) {
+            logger.warn("Failed to write flight graph snapshot {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Materialized direct and one-stop routes for one {@link FlightGraph} snapshot. Per
+ * (origin, destination) pair it holds every route of at most two legs, sorted by cost,
+ * and answers the cheapest and fastest searches with a lookup whenever it can prove the
+ * deep search would return the same flights. It returns {@code null} when routes with
+ * more legs could make the cut, and callers fall through to the full search.
+ *
+ * <p>Pairs are materialized on first lookup and kept for the life of the snapshot; the
+ * next snapshot starts with a fresh index.
+ */
+public final class RouteIndex {
+
+    /**
+     * The deep search collects routes once per stop limit from 1 to this value, so a route
+     * with {@code n} legs appears {@code MAX_LEGS - n + 1} times before ranking.
+     */
+    static final int MAX_LEGS = 5;
+
+    private static final Comparator<Occurrence> BY_COST = Comparator
+            .<Occurrence>comparingDouble(occurrence -> occurrence.route.cost)
+            .thenComparingInt(occurrence -> occurrence.pass)
+            .thenComparingInt(occurrence -> occurrence.route.searchOrder);
+
+    private static final Comparator<Occurrence> BY_LEGS_THEN_COST = Comparator
+            .<Occurrence>comparingInt(occurrence -> occurrence.route.flights.size())
+            .thenComparing(BY_COST);
+
+    private final FlightGraph graph;
+    private final Map<String, Double> cheapestInbound;
+    // Longer routes only have a cost floor when every fare is a non-negative number
+    private final boolean costsBounded;
+    private final double cheapestFare;
+    private final Map<String, List<Route>> routesByPair = new ConcurrentHashMap<>();
+
+    RouteIndex(FlightGraph graph) {
+        this.graph = graph;
+        Map<String, Double> inbound = new HashMap<>();
+        boolean bounded = true;
+        double cheapest = Double.POSITIVE_INFINITY;
+        for (String airport : graph.departureAirports()) {
+            for (Flight flight : graph.flightsFrom(airport)) {
+                double cost = flight.getCost() != null ? flight.getCostAsDouble() : Double.NaN;
+                if (!(cost >= 0) || Double.isInfinite(cost)) {
+                    bounded = false;
+                }
+                cheapest = Math.min(cheapest, cost);
+                inbound.merge(flight.getDestination(), cost, Math::min);
+            }
+        }
+        this.cheapestInbound = inbound;
+        this.costsBounded = bounded;
+        this.cheapestFare = cheapest;
+    }
+
+    /** Direct flights from {@code source} to {@code destination}, cheapest first. */
+    public List<Flight> directFlights(String source, String destination) {
+        List<Flight> direct = new ArrayList<>();
+        for (Route route : routes(source, destination)) {
+            if (route.flights.size() == 1) {
+                direct.add(route.flights.get(0));
+            }
+        }
+        return direct;
+    }
+
+    /** Routes of at most two legs from {@code source} to {@code destination}, cheapest first. */
+    public List<List<Flight>> routesWithinOneStop(String source, String destination) {
+        List<List<Flight>> result = new ArrayList<>();
+        for (Route route : routes(source, destination)) {
+            result.add(route.flights);
+        }
+        return result;
+    }
+
+    /**
+     * Flights of the {@code limit} cheapest routes, matching the deep search, or
+     * {@code null} when a route with three or more legs might rank among them.
+     */
+    public List<Flight> cheapest(String source, String destination, int limit) {
+        if (limit <= 0) {
+            return null;
+        }
+        if (!costsBounded) {
+            return null;
+        }
+        List<Occurrence> ranked = rank(routes(source, destination), limit, BY_COST);
+        if (ranked.size() < limit) {
+            return null;
+        }
+        // Ties with a longer route depend on the deep search's visiting order, so the
+        // limit-th route must be strictly cheaper than anything with three legs
+        double cutoff = ranked.get(limit - 1).route.cost;
+        if (cutoff >= longRouteFloor(source, destination)) {
+            return null;
+        }
+        return flatten(ranked, limit);
+    }
+
+    /**
+     * Flights of the {@code limit} routes with the fewest legs, matching the deep search,
+     * or {@code null} when direct and one-stop routes do not fill the limit.
+     */
+    public List<Flight> fastest(String source, String destination, int limit) {
+        if (limit <= 0) {
+            return null;
+        }
+        List<Occurrence> ranked = rank(routes(source, destination), Integer.MAX_VALUE, BY_LEGS_THEN_COST);
+        if (ranked.size() < limit) {
+            return null;
+        }
+        return flatten(ranked, limit);
+    }
+
+    private List<Route> routes(String source, String destination) {
+        if (source.equals(destination)) {
+            return Collections.emptyList();
+        }
+        return routesByPair.computeIfAbsent(source + "->" + destination, key -> materialize(source, destination));
+    }
+
+    /**
+     * Enumerates direct and one-stop routes in the order the deep search visits them,
+     * then sorts by cost. A stable sort keeps visiting order among equal costs.
+     */
+    private List<Route> materialize(String source, String destination) {
+        List<Route> routes = new ArrayList<>();
+        for (Flight first : graph.flightsFrom(source)) {
+            String via = first.getDestination();
+            if (destination.equals(via)) {
+                routes.add(new Route(Collections.singletonList(first), routes.size()));
+            } else if (!source.equals(via)) {
+                for (Flight second : graph.flightsFrom(via)) {
+                    if (destination.equals(second.getDestination())) {
+                        routes.add(new Route(List.of(first, second), routes.size()));
+                    }
+                }
+            }
+        }
+        routes.sort(Comparator.comparingDouble(route -> route.cost));
+        return Collections.unmodifiableList(routes);
+    }
+
+    /**
+     * Expands each route into one entry per deep search pass it appears in and ranks the
+     * entries. With costs sorted, only routes no dearer than the {@code limit}-th can
+     * contribute to the first {@code limit} entries.
+     */
+    private static List<Occurrence> rank(List<Route> routes, int limit, Comparator<Occurrence> order) {
+        int candidates = routes.size();
+        if (limit < routes.size()) {
+            double limitCost = routes.get(limit - 1).cost;
+            candidates = limit;
+            while (candidates < routes.size() && Double.compare(routes.get(candidates).cost, limitCost) <= 0) {
+                candidates++;
+            }
+        }
+        List<Occurrence> occurrences = new ArrayList<>();
+        for (Route route : routes.subList(0, candidates)) {
+            for (int pass = route.flights.size(); pass <= MAX_LEGS; pass++) {
+                occurrences.add(new Occurrence(route, pass));
+            }
+        }
+        occurrences.sort(order);
+        return occurrences;
+    }
+
+    private static List<Flight> flatten(List<Occurrence> ranked, int limit) {
+        List<Flight> flights = new ArrayList<>();
+        for (Occurrence occurrence : ranked.subList(0, Math.min(limit, ranked.size()))) {
+            for (Flight flight : occurrence.route.flights) {
+                if (!flights.contains(flight)) {
+                    flights.add(flight);
+                }
+            }
+        }
+        return flights;
+    }
+
+    // Any route of three or more legs leaves the source, arrives at the destination and
+    // takes at least one more flight in between
+    private double longRouteFloor(String source, String destination) {
+        double cheapestOutbound = Double.POSITIVE_INFINITY;
+        for (Flight flight : graph.flightsFrom(source)) {
+            cheapestOutbound = Math.min(cheapestOutbound, flight.getCostAsDouble());
+        }
+        Double inbound = cheapestInbound.get(destination);
+        if (inbound == null || Double.isInfinite(cheapestOutbound)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double floor = cheapestOutbound + cheapestFare + inbound;
+        // Leave room for the deep search summing in a different rounding order
+        return floor - 4 * Math.ulp(floor);
+    }
+
+    private static final class Route {
+        final List<Flight> flights;
+        final double cost;
+        // Position in the deep search's visiting order, which breaks ties between equal costs
+        final int searchOrder;
+
+        Route(List<Flight> flights, int searchOrder) {
+            this.flights = flights;
+            // Summed the same way as the deep search so equal routes compare equal
+            this.cost = flights.stream().mapToDouble(Flight::getCostAsDouble).sum();
+            this.searchOrder = searchOrder;
+        }
+    }
+
+    private static final class Occurrence {
+        final Route route;
+        final int pass;
+
+        Occurrence(Route route, int pass) {
+            this.route = route;
+            this.pass = pass;
+        }
+    }
+}
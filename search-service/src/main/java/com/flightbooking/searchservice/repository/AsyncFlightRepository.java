@@ -0,0 +1,17 @@
+package com.flightbooking.searchservice.repository;
+
+import com.flightbooking.searchservice.model.Flight;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of the read side of {@link FlightRepository}, backed by the
+ * v2 async client. Used where the whole table is read, so the scan does not hold a
+ * thread for each page it waits on.
+ */
+public interface AsyncFlightRepository {
+
+    /** Every flight in the table, read as parallel scan segments. */
+    CompletableFuture<List<Flight>> findAll();
+}
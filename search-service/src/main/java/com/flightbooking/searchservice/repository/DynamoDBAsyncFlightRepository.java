@@ -0,0 +1,76 @@
+package com.flightbooking.searchservice.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.flightbooking.searchservice.model.Flight;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.flightbooking.shared.repository.AttributeValues.toV1;
+
+/**
+ * Scans the flights table with the v2 async client. Items are mapped by the v1 mapper,
+ * so the annotations and converters on {@link Flight} remain the one description of the
+ * item format.
+ */
+@Repository
+@Profile("!in-memory")
+public class DynamoDBAsyncFlightRepository implements AsyncFlightRepository {
+
+    private static final String TABLE_NAME = Flight.class.getAnnotation(DynamoDBTable.class).tableName();
+
+    @Autowired
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Autowired
+    private DynamoDBMapper dynamoDBMapper;
+
+    @Value("${search.graph.scan-segments:4}")
+    private int scanSegments = 4;
+
+    @Override
+    public CompletableFuture<List<Flight>> findAll() {
+        int segments = Math.max(1, scanSegments);
+        List<CompletableFuture<List<Flight>>> scans = new ArrayList<>(segments);
+        for (int segment = 0; segment < segments; segment++) {
+            scans.add(scanSegment(segment, segments, null, new ArrayList<>()));
+        }
+        return CompletableFuture.allOf(scans.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> {
+                    List<Flight> flights = new ArrayList<>();
+                    scans.forEach(scan -> flights.addAll(scan.join()));
+                    return flights;
+                });
+    }
+
+    // Pages of one segment are read one after another, each request sent when the last completes
+    private CompletableFuture<List<Flight>> scanSegment(int segment, int segments,
+                                                        Map<String, AttributeValue> startKey, List<Flight> flights) {
+        ScanRequest.Builder request = ScanRequest.builder().tableName(TABLE_NAME);
+        if (segments > 1) {
+            request.segment(segment).totalSegments(segments);
+        }
+        if (startKey != null) {
+            request.exclusiveStartKey(startKey);
+        }
+        return dynamoDbAsyncClient.scan(request.build()).thenCompose(response -> {
+            for (Map<String, AttributeValue> item : response.items()) {
+                flights.add(dynamoDBMapper.marshallIntoObject(Flight.class, toV1(item)));
+            }
+            if (response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()) {
+                return scanSegment(segment, segments, response.lastEvaluatedKey(), flights);
+            }
+            return CompletableFuture.completedFuture(flights);
+        });
+    }
+}
@@ -5,6 +5,7 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.flightbooking.searchservice.model.Flight;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
 import java.util.HashMap;
@@ -12,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 
 @Repository
+@Profile("!in-memory")
 public class DynamoDBFlightRepository implements FlightRepository {
 
     @Autowired
@@ -40,6 +42,7 @@ public class DynamoDBFlightRepository implements FlightRepository {
         return dynamoDBMapper.scan(Flight.class, scanExpression);
     }
 
+    // Writes reach the search graphs of every instance through the table's stream
     @Override
     public Flight save(Flight flight) {
         dynamoDBMapper.save(flight);
@@ -52,4 +55,4 @@ public class DynamoDBFlightRepository implements FlightRepository {
         flight.setFlightId(flightId);
         dynamoDBMapper.delete(flight);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,29 @@
+package com.flightbooking.searchservice.repository;
+
+import com.flightbooking.searchservice.model.Flight;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking view over {@link InMemoryFlightRepository}; both see the same records.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryAsyncFlightRepository implements AsyncFlightRepository {
+
+    @Autowired
+    private InMemoryFlightRepository store;
+
+    @Autowired
+    private LatencyInjector latencyInjector;
+
+    @Override
+    public CompletableFuture<List<Flight>> findAll() {
+        return latencyInjector.async("findAll", store::doFindAll);
+    }
+}
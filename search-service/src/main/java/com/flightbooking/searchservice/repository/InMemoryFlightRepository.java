@@ -0,0 +1,114 @@
+package com.flightbooking.searchservice.repository;
+
+import com.flightbooking.searchservice.graph.FlightChangeLog;
+import com.flightbooking.searchservice.model.Flight;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Process-local flight store for benchmarks and load tests. Entities are copied on the
+ * way in and out, and every write is recorded in the change log just like the DynamoDB
+ * repository, so the search graph is kept current the same way.
+ */
+@Repository
+@Profile("in-memory")
+public class InMemoryFlightRepository implements FlightRepository {
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    @Autowired
+    private LatencyInjector latencyInjector;
+
+    @Autowired(required = false)
+    private FlightChangeLog changeLog;
+
+    @Override
+    public List<Flight> findAll() {
+        latencyInjector.pause("findAll");
+        return doFindAll();
+    }
+
+    @Override
+    public Flight findByFlightId(String flightId) {
+        latencyInjector.pause("findByFlightId");
+        return doFindByFlightId(flightId);
+    }
+
+    @Override
+    public List<Flight> findBySourceAndDestination(String source, String destination) {
+        latencyInjector.pause("findBySourceAndDestination");
+        return filter(flight -> source.equals(flight.getSource()) && destination.equals(flight.getDestination()));
+    }
+
+    @Override
+    public Flight save(Flight flight) {
+        latencyInjector.pause("save");
+        return doSave(flight);
+    }
+
+    @Override
+    public void delete(String flightId) {
+        latencyInjector.pause("delete");
+        doDelete(flightId);
+    }
+
+    // Unpaced operations, so a call that touches several records pauses only once; the
+    // async view paces its own calls
+
+    List<Flight> doFindAll() {
+        return filter(flight -> true);
+    }
+
+    private Flight doFindByFlightId(String flightId) {
+        return copyOf(flights.get(flightId));
+    }
+
+    private Flight doSave(Flight flight) {
+        Flight stored = copyOf(flight);
+        // Appending inside compute keeps change log order consistent with write order per flight
+        flights.compute(flight.getFlightId(), (id, existing) -> {
+            if (changeLog != null) {
+                changeLog.append(existing, stored);
+            }
+            return stored;
+        });
+        return flight;
+    }
+
+    private void doDelete(String flightId) {
+        flights.computeIfPresent(flightId, (id, existing) -> {
+            if (changeLog != null) {
+                changeLog.append(existing, null);
+            }
+            return null;
+        });
+    }
+
+    private List<Flight> filter(Predicate<Flight> predicate) {
+        return flights.values().stream()
+                .filter(predicate)
+                .map(InMemoryFlightRepository::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    static Flight copyOf(Flight flight) {
+        if (flight == null) {
+            return null;
+        }
+        Flight copy = new Flight();
+        copy.setFlightId(flight.getFlightId());
+        copy.setDaysOfWeek(flight.getDaysOfWeek());
+        copy.setSource(flight.getSource());
+        copy.setDestination(flight.getDestination());
+        copy.setCost(flight.getCost());
+        return copy;
+    }
+}
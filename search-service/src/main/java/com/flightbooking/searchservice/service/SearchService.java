@@ -3,8 +3,9 @@ package com.flightbooking.searchservice.service;
 import com.flightbooking.searchservice.dto.SearchRequest;
 import com.flightbooking.searchservice.dto.SearchResponse;
 import com.flightbooking.searchservice.enums.SearchPreference;
+import com.flightbooking.searchservice.graph.FlightGraph;
+import com.flightbooking.searchservice.graph.FlightGraphManager;
 import com.flightbooking.searchservice.model.Flight;
-import com.flightbooking.searchservice.repository.FlightRepository;
 import com.flightbooking.searchservice.util.FlightFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +23,7 @@ public class SearchService {
     private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
 
     @Autowired
-    private FlightRepository flightRepository;
+    private FlightGraphManager flightGraphManager;
 
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
@@ -49,30 +50,24 @@ public class SearchService {
                 logger.warn("Redis cache operation failed, continuing without cache: {}", e.getMessage());
             }
 
-            logger.debug("Cache miss, fetching from database");
+            logger.debug("Cache miss, searching current flight graph");
             
-            // Get flights from database and apply search logic
-            List<Flight> allFlights;
+            // Searches run against the in-memory snapshot, which is kept current by the change feed
+            FlightGraph graph;
             try {
-                allFlights = flightRepository.findAll();
-                logger.info("Retrieved {} flights from database", allFlights.size());
+                graph = flightGraphManager.currentGraph();
+                logger.info("Searching flight graph with {} flights at version {}", graph.flightCount(), graph.getVersion());
             } catch (Exception e) {
                 logger.error("Failed to retrieve flights from database: {}", e.getMessage(), e);
                 throw new RuntimeException("Database operation failed: " + e.getMessage(), e);
             }
 
-            if (allFlights == null || allFlights.isEmpty()) {
+            if (graph.isEmpty()) {
                 logger.warn("No flights found in database");
                 return createEmptyResponse(request, "No flights available");
             }
 
-            FlightFinder flightFinder = new FlightFinder();
-            
-            // Build flight graph for efficient route finding
-            for (Flight flight : allFlights) {
-                flightFinder.addFlight(flight);
-            }
-            logger.debug("Flight graph built with {} flights", allFlights.size());
+            FlightFinder flightFinder = new FlightFinder(graph);
 
             List<Flight> searchResults;
             try {
@@ -1,29 +1,30 @@
 package com.flightbooking.searchservice.util;
 
+import com.flightbooking.searchservice.graph.FlightGraph;
 import com.flightbooking.searchservice.model.Flight;
 import java.util.*;
 
 public class FlightFinder {
-    private List<Flight> flights;
-    private Map<String, Set<String>> flightGraph;
-    private Map<String, List<Flight>> flightMap;
+    private FlightGraph graph;
+    private final boolean useRouteIndex;
     
     public FlightFinder() {
-        this.flights = new ArrayList<>();
-        this.flightGraph = new HashMap<>();
-        this.flightMap = new HashMap<>();
+        this(FlightGraph.empty());
+    }
+    
+    // Searches an existing snapshot directly, without rebuilding the graph
+    public FlightFinder(FlightGraph graph) {
+        this(graph, true);
+    }
+    
+    // Disabling the route index forces every search through the deep search
+    FlightFinder(FlightGraph graph, boolean useRouteIndex) {
+        this.graph = graph;
+        this.useRouteIndex = useRouteIndex;
     }
     
     public void addFlight(Flight flight) {
-        flights.add(flight);
-        
-        // Build adjacency list for graph representation
-        flightGraph.computeIfAbsent(flight.getSource(), k -> new HashSet<>())
-                  .add(flight.getDestination());
-        
-        // Build direct mapping for quick lookups
-        String key = flight.getSource() + "->" + flight.getDestination();
-        flightMap.computeIfAbsent(key, k -> new ArrayList<>()).add(flight);
+        graph = graph.withFlightAdded(flight);
     }
     
     public List<Flight> findTopCheapestRoutes(String source, String destination, int limit) {
@@ -31,6 +32,14 @@ public class FlightFinder {
             return new ArrayList<>();
         }
         
+        // Most searches are answered by direct and one-stop routes alone
+        if (useRouteIndex) {
+            List<Flight> indexed = graph.routeIndex().cheapest(source, destination, limit);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+        
         List<RouteResult> allRoutes = new ArrayList<RouteResult>();
         
         // Find all routes with different numbers of stops
@@ -57,6 +66,13 @@ public class FlightFinder {
             return new ArrayList<>();
         }
         
+        if (useRouteIndex) {
+            List<Flight> indexed = graph.routeIndex().fastest(source, destination, limit);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+        
         List<RouteResult> allRoutes = new ArrayList<RouteResult>();
         
         // Find all routes with different numbers of stops
@@ -110,18 +126,12 @@ public class FlightFinder {
         
         visited.add(current);
         
-        Set<String> destinations = flightGraph.getOrDefault(current, new HashSet<>());
-        for (String nextDest : destinations) {
+        for (Flight flight : graph.flightsFrom(current)) {
+            String nextDest = flight.getDestination();
             if (!visited.contains(nextDest)) {
-                String key = current + "->" + nextDest;
-                List<Flight> flights = flightMap.get(key);
-                if (flights != null) {
-                    for (Flight flight : flights) {
-                        path.add(flight);
-                        dfs(nextDest, destination, path, routes, visited, stops + 1, maxStops);
-                        path.remove(path.size() - 1);
-                    }
-                }
+                path.add(flight);
+                dfs(nextDest, destination, path, routes, visited, stops + 1, maxStops);
+                path.remove(path.size() - 1);
             }
         }
         
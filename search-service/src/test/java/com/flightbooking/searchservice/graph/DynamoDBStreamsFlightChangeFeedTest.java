@@ -0,0 +1,260 @@
+package com.flightbooking.searchservice.graph;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorResult;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.SequenceNumberRange;
+import com.amazonaws.services.dynamodbv2.model.Shard;
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TrimmedDataAccessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DynamoDBStreamsFlightChangeFeedTest {
+
+    private static final String STREAM_ARN = "arn:aws:dynamodb:us-east-1:000000000000:table/flights/stream/2024-01-01T00:00:00.000";
+
+    @Mock
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Mock
+    private AmazonDynamoDBStreams dynamoDBStreams;
+
+    @Spy
+    private DynamoDBMapper dynamoDBMapper = new DynamoDBMapper(mock(AmazonDynamoDB.class));
+
+    @InjectMocks
+    private DynamoDBStreamsFlightChangeFeed changeFeed;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(amazonDynamoDB.describeTable("flights")).thenReturn(new DescribeTableResult()
+            .withTable(new TableDescription().withLatestStreamArn(STREAM_ARN)));
+        lenient().when(dynamoDBStreams.getShardIterator(any(GetShardIteratorRequest.class))).thenAnswer(invocation -> {
+            GetShardIteratorRequest request = invocation.getArgument(0);
+            return new GetShardIteratorResult().withShardIterator(request.getShardId() + "@" + request.getShardIteratorType());
+        });
+    }
+
+    @Test
+    void testReadStream_AppendsWritesFromTheTipOfOpenShards() {
+        // Given - one shard closed before start, one open
+        shards(closed("shard-0", null), open("shard-1", "shard-0"));
+        changeFeed.start(null);
+        records("shard-1@LATEST", "shard-1@2",
+            record("101", null, item("F001", "DEL", "BOM")),
+            record("102", item("F001", "DEL", "BOM"), item("F001", "DEL", "BLR")),
+            record("103", item("F002", "BOM", "HYD"), null));
+
+        // When
+        changeFeed.readStream();
+
+        // Then
+        List<FlightChangeEvent> events = changeFeed.poll(0L, 10);
+        assertEquals(3, events.size());
+        assertEquals(FlightChangeEvent.Type.INSERT, events.get(0).getType());
+        assertEquals(FlightChangeEvent.Type.MODIFY, events.get(1).getType());
+        assertEquals("BLR", events.get(1).getNewImage().getDestination());
+        assertEquals(FlightChangeEvent.Type.REMOVE, events.get(2).getType());
+        assertEquals("F002", events.get(2).getFlightId());
+        assertEquals(3L, changeFeed.latestSequence());
+        assertFalse(changeFeed.hasGapAfter(0L));
+        verify(dynamoDBStreams, never()).getShardIterator(argThat(request -> "shard-0".equals(request.getShardId())));
+    }
+
+    @Test
+    void testReadStream_ReadsAChildShardOnlyAfterItsParentCloses() {
+        // Given - shard-1 splits into shard-2 after start
+        shards(open("shard-1", null));
+        changeFeed.start(null);
+        records("shard-1@LATEST", null, record("101", null, item("F001", "DEL", "BOM")));
+        shards(closed("shard-1", null), open("shard-2", "shard-1"));
+        records("shard-2@TRIM_HORIZON", "shard-2@2", record("201", item("F001", "DEL", "BOM"), item("F001", "DEL", "GOI")));
+
+        // When
+        changeFeed.readStream();
+        changeFeed.readStream();
+
+        // Then - the parent's write comes first, the child is read from its first record
+        List<FlightChangeEvent> events = changeFeed.poll(0L, 10);
+        assertEquals(2, events.size());
+        assertEquals("BOM", events.get(0).getNewImage().getDestination());
+        assertEquals("GOI", events.get(1).getNewImage().getDestination());
+        ArgumentCaptor<GetRecordsRequest> reads = ArgumentCaptor.forClass(GetRecordsRequest.class);
+        verify(dynamoDBStreams, times(2)).getRecords(reads.capture());
+        assertEquals(Arrays.asList("shard-1@LATEST", "shard-2@TRIM_HORIZON"),
+            Arrays.asList(reads.getAllValues().get(0).getShardIterator(), reads.getAllValues().get(1).getShardIterator()));
+    }
+
+    @Test
+    void testReadStream_TrimmedRecordsAreReportedAsAGap() {
+        // Given
+        shards(open("shard-1", null));
+        changeFeed.start(null);
+        when(dynamoDBStreams.getRecords(any(GetRecordsRequest.class)))
+            .thenThrow(new TrimmedDataAccessException("trimmed"));
+
+        // When
+        changeFeed.readStream();
+
+        // Then - a reader at the old position rebuilds; one positioned after it does not
+        assertTrue(changeFeed.hasGapAfter(0L));
+        assertFalse(changeFeed.hasGapAfter(changeFeed.latestSequence()));
+        verify(dynamoDBStreams).getShardIterator(argThat(request -> "shard-1".equals(request.getShardId())
+            && ShardIteratorType.LATEST.toString().equals(request.getShardIteratorType())));
+    }
+
+    @Test
+    void testStart_WithoutAStreamNothingIsRead() {
+        // Given
+        when(amazonDynamoDB.describeTable("flights")).thenReturn(new DescribeTableResult().withTable(new TableDescription()));
+
+        // When
+        changeFeed.start(null);
+        changeFeed.readStream();
+
+        // Then
+        assertTrue(changeFeed.poll(0L, 10).isEmpty());
+        verifyNoInteractions(dynamoDBStreams);
+    }
+
+    @Test
+    void testStart_ResumesEachShardAfterTheCheckpoint() {
+        // Given - a checkpoint taken after the first two writes
+        shards(open("shard-1", null));
+        changeFeed.start(null);
+        records("shard-1@LATEST", "shard-1@2",
+            record("101", null, item("F001", "DEL", "BOM")),
+            record("102", item("F001", "DEL", "BOM"), item("F001", "DEL", "BLR")));
+        changeFeed.readStream();
+        String checkpoint = changeFeed.checkpoint(2L);
+        DynamoDBStreamsFlightChangeFeed restarted = restartedFeed();
+        records("shard-1@AFTER_SEQUENCE_NUMBER", "shard-1@3", record("103", item("F001", "DEL", "BLR"), item("F001", "DEL", "GOI")));
+
+        // When
+        boolean resumed = restarted.start(checkpoint);
+        restarted.readStream();
+
+        // Then - only the write made after the checkpoint is replayed
+        assertTrue(resumed);
+        assertEquals(STREAM_ARN, restarted.feedId());
+        List<FlightChangeEvent> events = restarted.poll(0L, 10);
+        assertEquals(1, events.size());
+        assertEquals("GOI", events.get(0).getNewImage().getDestination());
+        verify(dynamoDBStreams).getShardIterator(argThat(request -> "shard-1".equals(request.getShardId())
+            && ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString().equals(request.getShardIteratorType())
+            && "102".equals(request.getSequenceNumber())));
+    }
+
+    @Test
+    void testStart_TrimmedCheckpointStartsFromTheTip() {
+        // Given
+        shards(open("shard-1", null));
+        changeFeed.start(null);
+        records("shard-1@LATEST", "shard-1@2", record("101", null, item("F001", "DEL", "BOM")));
+        changeFeed.readStream();
+        String checkpoint = changeFeed.checkpoint(1L);
+        doThrow(new TrimmedDataAccessException("trimmed")).when(dynamoDBStreams).getShardIterator(argThat(request ->
+            request != null && ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString().equals(request.getShardIteratorType())));
+        DynamoDBStreamsFlightChangeFeed restarted = restartedFeed();
+
+        // When
+        boolean resumed = restarted.start(checkpoint);
+
+        // Then
+        assertFalse(resumed);
+        verify(dynamoDBStreams, times(2)).getShardIterator(argThat(request -> request != null
+            && ShardIteratorType.LATEST.toString().equals(request.getShardIteratorType())));
+    }
+
+    @Test
+    void testStart_CheckpointFromAnotherStreamIsRefused() {
+        // Given
+        shards(open("shard-1", null));
+
+        // When
+        boolean resumed = changeFeed.start("arn:other-stream\n" + System.currentTimeMillis() + "\nshard-1 102");
+
+        // Then
+        assertFalse(resumed);
+        verify(dynamoDBStreams, never()).getShardIterator(argThat(request -> request != null
+            && ShardIteratorType.AFTER_SEQUENCE_NUMBER.toString().equals(request.getShardIteratorType())));
+    }
+
+    private DynamoDBStreamsFlightChangeFeed restartedFeed() {
+        DynamoDBStreamsFlightChangeFeed restarted = new DynamoDBStreamsFlightChangeFeed();
+        ReflectionTestUtils.setField(restarted, "amazonDynamoDB", amazonDynamoDB);
+        ReflectionTestUtils.setField(restarted, "dynamoDBStreams", dynamoDBStreams);
+        ReflectionTestUtils.setField(restarted, "dynamoDBMapper", dynamoDBMapper);
+        return restarted;
+    }
+
+    private void shards(Shard... shards) {
+        when(dynamoDBStreams.describeStream(any(DescribeStreamRequest.class))).thenReturn(new DescribeStreamResult()
+            .withStreamDescription(new StreamDescription().withStreamArn(STREAM_ARN).withShards(shards)));
+    }
+
+    private void records(String iterator, String nextIterator, Record... records) {
+        when(dynamoDBStreams.getRecords(argThat(request -> request != null && iterator.equals(request.getShardIterator()))))
+            .thenReturn(new GetRecordsResult().withRecords(records).withNextShardIterator(nextIterator));
+    }
+
+    private static Shard open(String shardId, String parentShardId) {
+        return new Shard().withShardId(shardId).withParentShardId(parentShardId)
+            .withSequenceNumberRange(new SequenceNumberRange().withStartingSequenceNumber("100"));
+    }
+
+    private static Shard closed(String shardId, String parentShardId) {
+        return new Shard().withShardId(shardId).withParentShardId(parentShardId)
+            .withSequenceNumberRange(new SequenceNumberRange().withStartingSequenceNumber("1").withEndingSequenceNumber("99"));
+    }
+
+    private static Record record(String sequenceNumber, Map<String, AttributeValue> oldImage, Map<String, AttributeValue> newImage) {
+        return new Record().withDynamodb(new StreamRecord()
+            .withSequenceNumber(sequenceNumber)
+            .withKeys(Collections.singletonMap("flightId", (newImage != null ? newImage : oldImage).get("flightId")))
+            .withOldImage(oldImage)
+            .withNewImage(newImage));
+    }
+
+    private static Map<String, AttributeValue> item(String flightId, String source, String destination) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("flightId", new AttributeValue().withS(flightId));
+        item.put("daysOfWeek", new AttributeValue().withS("Monday"));
+        item.put("source", new AttributeValue().withS(source));
+        item.put("destination", new AttributeValue().withS(destination));
+        item.put("cost", new AttributeValue().withS("100.0"));
+        return item;
+    }
+}
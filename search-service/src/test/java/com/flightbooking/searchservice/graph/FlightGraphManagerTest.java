@@ -0,0 +1,193 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+import com.flightbooking.searchservice.repository.AsyncFlightRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FlightGraphManagerTest {
+
+    @Mock
+    private AsyncFlightRepository flightRepository;
+
+    @Spy
+    private FlightChangeLog changeFeed = new FlightChangeLog();
+
+    @Mock
+    private FlightGraphSnapshotStore snapshotStore;
+
+    @InjectMocks
+    private FlightGraphManager flightGraphManager;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(snapshotStore.isEnabled()).thenReturn(true);
+        lenient().when(snapshotStore.load()).thenReturn(Optional.empty());
+        lenient().when(flightRepository.findAll()).thenReturn(CompletableFuture.completedFuture(new ArrayList<>(Arrays.asList(
+            new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 100.00),
+            new Flight("F002", Arrays.asList("Tuesday"), "BOM", "BLR", 150.00)
+        ))));
+    }
+
+    @Test
+    void testCurrentGraph_LoadsOnceAndReusesSnapshot() {
+        // When
+        FlightGraph first = flightGraphManager.currentGraph();
+        FlightGraph second = flightGraphManager.currentGraph();
+
+        // Then
+        assertSame(first, second);
+        assertEquals(2, first.flightCount());
+        verify(flightRepository, times(1)).findAll();
+    }
+
+    @Test
+    void testPollChanges_AppliesWritesWithoutRescanning() {
+        // Given
+        FlightGraph before = flightGraphManager.currentGraph();
+        changeFeed.append(null, new Flight("F003", Arrays.asList("Friday"), "DEL", "HYD", 80.00));
+
+        // When
+        flightGraphManager.pollChanges();
+
+        // Then
+        FlightGraph after = flightGraphManager.currentGraph();
+        assertNotSame(before, after);
+        assertEquals(3, after.flightCount());
+        assertEquals(2, before.flightCount());
+        assertEquals(changeFeed.latestSequence(), after.getVersion());
+        verify(flightRepository, times(1)).findAll();
+    }
+
+    @Test
+    void testPollChanges_BeforeFirstLoadIsNoOp() {
+        // When
+        flightGraphManager.pollChanges();
+
+        // Then
+        verify(flightRepository, never()).findAll();
+    }
+
+    @Test
+    void testCurrentGraph_ResumableSnapshotReplaysWithoutScanning() {
+        // Given - a feed that resumes from the snapshot's checkpoint
+        FlightGraph snapshotGraph = FlightGraph.of(Arrays.asList(
+            new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 100.00)), 0L);
+        when(snapshotStore.load()).thenReturn(Optional.of(new FlightGraphSnapshot(snapshotGraph, "stream-1", "checkpoint-1")));
+        doReturn(true).when(changeFeed).start("checkpoint-1");
+        doReturn("stream-1").when(changeFeed).feedId();
+
+        // When - a write made since the snapshot arrives through the feed
+        FlightGraph loaded = flightGraphManager.currentGraph();
+        changeFeed.append(null, new Flight("F003", Arrays.asList("Friday"), "DEL", "HYD", 80.00));
+        flightGraphManager.pollChanges();
+
+        // Then
+        assertEquals(1, loaded.flightCount());
+        assertEquals(2, flightGraphManager.currentGraph().flightCount());
+        verify(flightRepository, never()).findAll();
+    }
+
+    @Test
+    void testCurrentGraph_UnresumableSnapshotIsServedThenReloaded() {
+        // Given - the local log cannot resume a checkpoint from another process
+        FlightGraph snapshotGraph = FlightGraph.of(Arrays.asList(
+            new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 100.00)), 900L);
+        when(snapshotStore.load()).thenReturn(Optional.of(new FlightGraphSnapshot(snapshotGraph, "other-feed", "checkpoint-9")));
+
+        // When
+        FlightGraph served = flightGraphManager.currentGraph();
+
+        // Then - served immediately, restamped to this feed's position
+        assertEquals(1, served.flightCount());
+        assertEquals(0L, served.getVersion());
+        verify(flightRepository, never()).findAll();
+
+        // When - the first poll rebuilds it from the table
+        flightGraphManager.pollChanges();
+
+        // Then
+        assertEquals(2, flightGraphManager.currentGraph().flightCount());
+        verify(flightRepository, times(1)).findAll();
+        flightGraphManager.pollChanges();
+        verify(flightRepository, times(1)).findAll();
+    }
+
+    @Test
+    void testPollChanges_RescansOnlyAfterAFeedGap() {
+        // Given - the feed is followed, then loses events it could not read
+        flightGraphManager.currentGraph();
+        changeFeed.append(null, new Flight("F003", Arrays.asList("Friday"), "DEL", "HYD", 80.00));
+        flightGraphManager.pollChanges();
+        verify(flightRepository, times(1)).findAll();
+        when(flightRepository.findAll()).thenReturn(CompletableFuture.completedFuture(new ArrayList<>(Arrays.asList(
+            new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 100.00),
+            new Flight("F002", Arrays.asList("Tuesday"), "BOM", "BLR", 150.00),
+            new Flight("F003", Arrays.asList("Friday"), "DEL", "HYD", 80.00),
+            new Flight("F004", Arrays.asList("Sunday"), "BLR", "HYD", 60.00)
+        ))));
+        changeFeed.markGap();
+
+        // When
+        flightGraphManager.pollChanges();
+        flightGraphManager.pollChanges();
+
+        // Then - one rescan, positioned past the gap
+        assertEquals(4, flightGraphManager.currentGraph().flightCount());
+        assertEquals(changeFeed.latestSequence(), flightGraphManager.currentGraph().getVersion());
+        verify(flightRepository, times(2)).findAll();
+    }
+
+    @Test
+    void testPollChanges_PeriodicRescanOnlyWhenConfigured() throws InterruptedException {
+        // Given
+        flightGraphManager.currentGraph();
+        flightGraphManager.pollChanges();
+        verify(flightRepository, times(1)).findAll();
+        ReflectionTestUtils.setField(flightGraphManager, "reconcileIntervalMs", 1L);
+        Thread.sleep(5);
+
+        // When
+        flightGraphManager.pollChanges();
+
+        // Then
+        verify(flightRepository, times(2)).findAll();
+    }
+
+    @Test
+    void testReconcile_BeforeFirstLoadIsNoOp() {
+        // When
+        flightGraphManager.reconcile();
+
+        // Then
+        verify(flightRepository, never()).findAll();
+    }
+
+    @Test
+    void testWriteSnapshot_SkipsUnchangedGraph() {
+        // Given
+        FlightGraph graph = flightGraphManager.currentGraph();
+
+        // When
+        flightGraphManager.writeSnapshot();
+        flightGraphManager.writeSnapshot();
+
+        // Then
+        verify(snapshotStore, times(1)).save(graph, changeFeed.feedId(), null);
+    }
+}
@@ -0,0 +1,119 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightGraphSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FlightGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        graph = FlightGraph.of(Arrays.asList(
+            new Flight("F001", Arrays.asList("Monday", "Friday"), "DEL", "BOM", 100.00),
+            new Flight("F002", Arrays.asList("Tuesday"), "DEL", "BLR", 150.00),
+            new Flight("F003", Arrays.asList("Monday"), "BOM", "HYD", 200.00)
+        ), 42L);
+    }
+
+    @Test
+    void testRoundTrip_PreservesFlightsFeedAndCheckpoint() throws IOException {
+        // Given
+        Path file = tempDir.resolve("graph.snapshot");
+
+        // When
+        new FlightGraphSnapshot(graph, "feed-1", "checkpoint-1").writeTo(file);
+        FlightGraphSnapshot loaded = FlightGraphSnapshot.readFrom(file);
+
+        // Then
+        assertEquals("feed-1", loaded.getFeedId());
+        assertEquals("checkpoint-1", loaded.getCheckpoint());
+        assertEquals(3, loaded.getGraph().flightCount());
+
+        List<Flight> fromDel = loaded.getGraph().flightsFrom("DEL");
+        assertEquals(2, fromDel.size());
+        assertEquals("F001", fromDel.get(0).getFlightId());
+        assertEquals("Monday,Friday", fromDel.get(0).getDaysOfWeek());
+        assertEquals("BOM", fromDel.get(0).getDestination());
+        assertEquals(100.00, fromDel.get(0).getCostAsDouble());
+        assertEquals("F002", fromDel.get(1).getFlightId());
+        assertEquals("HYD", loaded.getGraph().flightsFrom("BOM").get(0).getDestination());
+    }
+
+    @Test
+    void testRoundTrip_InternsAirportNames() throws IOException {
+        // Given
+        Path file = tempDir.resolve("graph.snapshot");
+        new FlightGraphSnapshot(graph, "feed-1", "checkpoint-1").writeTo(file);
+
+        // When
+        FlightGraph loaded = FlightGraphSnapshot.readFrom(file).getGraph();
+
+        // Then - BOM is F001's destination and F003's source
+        assertSame(loaded.flightsFrom("DEL").get(0).getDestination(), loaded.flightsFrom("BOM").get(0).getSource());
+    }
+
+    @Test
+    void testRoundTrip_EmptyGraph() throws IOException {
+        // Given
+        Path file = tempDir.resolve("graph.snapshot");
+
+        // When
+        new FlightGraphSnapshot(FlightGraph.empty(), "feed-1", "checkpoint-1").writeTo(file);
+        FlightGraphSnapshot loaded = FlightGraphSnapshot.readFrom(file);
+
+        // Then
+        assertTrue(loaded.getGraph().isEmpty());
+    }
+
+    @Test
+    void testWriteTo_ReplacesExistingFileWithoutLeavingTemp() throws IOException {
+        // Given
+        Path file = tempDir.resolve("graph.snapshot");
+        new FlightGraphSnapshot(graph, "feed-1", "checkpoint-1").writeTo(file);
+
+        // When
+        new FlightGraphSnapshot(graph.withFlightRemoved(graph.flightsFrom("BOM").get(0)), "feed-1", "checkpoint-1").writeTo(file);
+
+        // Then
+        assertEquals(2, FlightGraphSnapshot.readFrom(file).getGraph().flightCount());
+        assertFalse(Files.exists(tempDir.resolve("graph.snapshot.tmp")));
+    }
+
+    @Test
+    void testReadFrom_CorruptedFileFailsChecksum() throws IOException {
+        // Given
+        Path file = tempDir.resolve("graph.snapshot");
+        new FlightGraphSnapshot(graph, "feed-1", "checkpoint-1").writeTo(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(file, bytes);
+
+        // When & Then
+        IOException exception = assertThrows(IOException.class, () -> FlightGraphSnapshot.readFrom(file));
+        assertTrue(exception.getMessage().contains("checksum"));
+    }
+
+    @Test
+    void testReadFrom_TruncatedFileIsRejected() throws IOException {
+        // Given
+        Path file = tempDir.resolve("graph.snapshot");
+        Files.write(file, new byte[] {1, 2, 3});
+
+        // When & Then
+        assertThrows(IOException.class, () -> FlightGraphSnapshot.readFrom(file));
+    }
+}
@@ -0,0 +1,121 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightGraphTest {
+
+    private FlightGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        graph = FlightGraph.of(Arrays.asList(
+            new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 100.00),
+            new Flight("F002", Arrays.asList("Tuesday"), "DEL", "BLR", 150.00),
+            new Flight("F003", Arrays.asList("Monday"), "BOM", "HYD", 200.00)
+        ), 5L);
+    }
+
+    @Test
+    void testOf_BuildsSegmentsPerDepartureAirport() {
+        assertEquals(3, graph.flightCount());
+        assertEquals(5L, graph.getVersion());
+        assertEquals(2, graph.flightsFrom("DEL").size());
+        assertEquals(1, graph.flightsFrom("BOM").size());
+        assertTrue(graph.flightsFrom("HYD").isEmpty());
+    }
+
+    @Test
+    void testWithFlightAdded_LeavesOriginalUntouched() {
+        // When
+        FlightGraph next = graph.withFlightAdded(new Flight("F004", Arrays.asList("Friday"), "DEL", "HYD", 300.00));
+
+        // Then
+        assertEquals(3, graph.flightsFrom("DEL").size() + graph.flightsFrom("BOM").size());
+        assertEquals(3, next.flightsFrom("DEL").size());
+        assertEquals(4, next.flightCount());
+    }
+
+    @Test
+    void testWithFlightAdded_SharesUntouchedSegments() {
+        // When
+        FlightGraph next = graph.withFlightAdded(new Flight("F004", Arrays.asList("Friday"), "DEL", "HYD", 300.00));
+
+        // Then - only the DEL segment was copied
+        assertSame(graph.flightsFrom("BOM"), next.flightsFrom("BOM"));
+        assertNotSame(graph.flightsFrom("DEL"), next.flightsFrom("DEL"));
+    }
+
+    @Test
+    void testWithFlightRemoved_DropsEmptySegment() {
+        // When
+        FlightGraph next = graph.withFlightRemoved(new Flight("F003", Arrays.asList("Monday"), "BOM", "HYD", 200.00));
+
+        // Then
+        assertEquals(2, next.flightCount());
+        assertFalse(next.departureAirports().contains("BOM"));
+    }
+
+    @Test
+    void testWithFlightUpdated_MovesFlightBetweenSegments() {
+        // Given
+        Flight oldImage = graph.flightsFrom("DEL").get(1);
+        Flight newImage = new Flight("F002", Arrays.asList("Tuesday"), "BOM", "BLR", 120.00);
+
+        // When
+        FlightGraph next = graph.withFlightUpdated(oldImage, newImage);
+
+        // Then
+        assertEquals(3, next.flightCount());
+        assertEquals(1, next.flightsFrom("DEL").size());
+        assertEquals(2, next.flightsFrom("BOM").size());
+    }
+
+    @Test
+    void testApply_AdvancesVersionAndSkipsAppliedEvents() {
+        // Given
+        Flight f004 = new Flight("F004", Arrays.asList("Friday"), "HYD", "DEL", 250.00);
+        List<FlightChangeEvent> events = Arrays.asList(
+            new FlightChangeEvent(5L, FlightChangeEvent.Type.INSERT, "F999", null,
+                new Flight("F999", Arrays.asList("Friday"), "DEL", "BOM", 1.00)),
+            new FlightChangeEvent(6L, FlightChangeEvent.Type.INSERT, "F004", null, f004),
+            new FlightChangeEvent(7L, FlightChangeEvent.Type.REMOVE, "F001", graph.flightsFrom("DEL").get(0), null)
+        );
+
+        // When
+        FlightGraph next = graph.apply(events);
+
+        // Then - event 5 is already reflected in the snapshot and is ignored
+        assertEquals(7L, next.getVersion());
+        assertEquals(3, next.flightCount());
+        assertEquals(1, next.flightsFrom("HYD").size());
+        assertTrue(next.flightsFrom("DEL").stream().noneMatch(f -> f.getFlightId().equals("F999")));
+        assertTrue(next.flightsFrom("DEL").stream().noneMatch(f -> f.getFlightId().equals("F001")));
+    }
+
+    @Test
+    void testApply_ReplayedInsertDoesNotDuplicate() {
+        // Given
+        Flight f001 = new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 90.00);
+
+        // When
+        FlightGraph next = graph.apply(Arrays.asList(
+            new FlightChangeEvent(6L, FlightChangeEvent.Type.INSERT, "F001", null, f001)));
+
+        // Then
+        assertEquals(3, next.flightCount());
+        assertEquals(2, next.flightsFrom("DEL").size());
+    }
+
+    @Test
+    void testSegmentsAreImmutable() {
+        assertThrows(UnsupportedOperationException.class, () ->
+            graph.flightsFrom("DEL").add(new Flight()));
+    }
+}
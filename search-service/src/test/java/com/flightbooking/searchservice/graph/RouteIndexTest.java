@@ -0,0 +1,92 @@
+package com.flightbooking.searchservice.graph;
+
+import com.flightbooking.searchservice.model.Flight;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteIndexTest {
+
+    private final Flight delBomExpensive = new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 300.00);
+    private final Flight delBomCheap = new Flight("F002", Arrays.asList("Monday"), "DEL", "BOM", 100.00);
+    private final Flight delBlr = new Flight("F003", Arrays.asList("Monday"), "DEL", "BLR", 50.00);
+    private final Flight blrBom = new Flight("F004", Arrays.asList("Monday"), "BLR", "BOM", 60.00);
+    private final Flight blrHyd = new Flight("F005", Arrays.asList("Monday"), "BLR", "HYD", 10.00);
+    private final Flight hydBom = new Flight("F006", Arrays.asList("Monday"), "HYD", "BOM", 10.00);
+
+    @Test
+    void testDirectFlights_SortedByCost() {
+        // Given
+        RouteIndex index = FlightGraph.of(Arrays.asList(delBomExpensive, delBomCheap, delBlr, blrBom)).routeIndex();
+
+        // When
+        List<Flight> direct = index.directFlights("DEL", "BOM");
+
+        // Then
+        assertEquals(Arrays.asList(delBomCheap, delBomExpensive), direct);
+    }
+
+    @Test
+    void testRoutesWithinOneStop_IncludesConnections() {
+        // Given
+        RouteIndex index = FlightGraph.of(Arrays.asList(delBomExpensive, delBomCheap, delBlr, blrBom)).routeIndex();
+
+        // When
+        List<List<Flight>> routes = index.routesWithinOneStop("DEL", "BOM");
+
+        // Then
+        assertEquals(3, routes.size());
+        assertEquals(Arrays.asList(delBomCheap), routes.get(0));
+        assertEquals(Arrays.asList(delBlr, blrBom), routes.get(1));
+        assertEquals(Arrays.asList(delBomExpensive), routes.get(2));
+    }
+
+    @Test
+    void testCheapest_AnsweredWhenNoLongerRouteExists() {
+        // Given
+        RouteIndex index = FlightGraph.of(Arrays.asList(delBomExpensive, delBomCheap, delBlr, blrBom)).routeIndex();
+
+        // When
+        List<Flight> cheapest = index.cheapest("DEL", "BOM", 3);
+
+        // Then - the cheapest direct flight fills every slot after repetition
+        assertEquals(Arrays.asList(delBomCheap), cheapest);
+    }
+
+    @Test
+    void testCheapest_FallsThroughWhenLongerRouteMightRank() {
+        // Given - DEL-BLR-HYD-BOM costs 70, below the direct fare
+        RouteIndex index = FlightGraph.of(Arrays.asList(delBomCheap, delBlr, blrBom, blrHyd, hydBom)).routeIndex();
+
+        // When & Then
+        assertNull(index.cheapest("DEL", "BOM", 10));
+    }
+
+    @Test
+    void testFastest_FallsThroughWhenDirectAndOneStopCannotFillLimit() {
+        // Given
+        RouteIndex index = FlightGraph.of(Arrays.asList(delBomCheap, delBlr, blrBom)).routeIndex();
+
+        // When & Then - one direct (5 passes) and one connection (4 passes)
+        assertNotNull(index.fastest("DEL", "BOM", 9));
+        assertNull(index.fastest("DEL", "BOM", 10));
+    }
+
+    @Test
+    void testIndex_IsPerSnapshot() {
+        // Given
+        FlightGraph graph = FlightGraph.of(Arrays.asList(delBomCheap));
+        RouteIndex index = graph.routeIndex();
+
+        // When
+        FlightGraph next = graph.withFlightAdded(delBomExpensive);
+
+        // Then
+        assertSame(index, graph.routeIndex());
+        assertNotSame(index, next.routeIndex());
+        assertEquals(2, next.routeIndex().directFlights("DEL", "BOM").size());
+    }
+}
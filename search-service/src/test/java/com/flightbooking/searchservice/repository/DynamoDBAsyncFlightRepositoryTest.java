@@ -0,0 +1,104 @@
+package com.flightbooking.searchservice.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.flightbooking.searchservice.model.Flight;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DynamoDBAsyncFlightRepositoryTest {
+
+    @Mock
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+
+    @Spy
+    private DynamoDBMapper dynamoDBMapper = new DynamoDBMapper(mock(AmazonDynamoDB.class));
+
+    @InjectMocks
+    private DynamoDBAsyncFlightRepository flightRepository;
+
+    @Test
+    void testFindAll_ScansEverySegmentToItsLastPage() {
+        // Given - segment 0 has two pages, the other segments one flight or none
+        Map<String, AttributeValue> lastKey = Collections.singletonMap("flightId", s("F001"));
+        when(dynamoDbAsyncClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            ScanRequest request = invocation.getArgument(0);
+            ScanResponse.Builder response = ScanResponse.builder();
+            if (request.segment() == 0 && !request.hasExclusiveStartKey()) {
+                response.items(item("F001", "DEL", "BOM")).lastEvaluatedKey(lastKey);
+            } else if (request.segment() == 0) {
+                response.items(item("F002", "BOM", "BLR"));
+            } else if (request.segment() == 2) {
+                response.items(item("F003", "DEL", "HYD"));
+            } else {
+                response.items(Collections.emptyList());
+            }
+            return CompletableFuture.completedFuture(response.build());
+        });
+
+        // When
+        List<Flight> flights = flightRepository.findAll().join();
+
+        // Then
+        assertEquals(Arrays.asList("F001", "F002", "F003"),
+            flights.stream().map(Flight::getFlightId).sorted().collect(Collectors.toList()));
+        Flight first = flights.stream().filter(f -> "F001".equals(f.getFlightId())).findFirst().get();
+        assertEquals("DEL", first.getSource());
+        assertEquals(Arrays.asList("Monday", "Tuesday"), first.getDaysOfWeekAsList());
+        assertEquals(299.99, first.getCostAsDouble());
+
+        ArgumentCaptor<ScanRequest> requests = ArgumentCaptor.forClass(ScanRequest.class);
+        verify(dynamoDbAsyncClient, times(5)).scan(requests.capture());
+        assertTrue(requests.getAllValues().stream().allMatch(r -> r.totalSegments() == 4));
+        assertEquals(lastKey, requests.getAllValues().stream()
+            .filter(ScanRequest::hasExclusiveStartKey).findFirst().get().exclusiveStartKey());
+    }
+
+    @Test
+    void testFindAll_FailsWhenASegmentFails() {
+        // Given
+        when(dynamoDbAsyncClient.scan(any(ScanRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(ScanResponse.builder().items(Collections.emptyList()).build()))
+            .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("throttled")));
+
+        // When / Then - a partial table must not become the search graph
+        CompletableFuture<List<Flight>> flights = flightRepository.findAll();
+        assertTrue(flights.isCompletedExceptionally());
+    }
+
+    private static Map<String, AttributeValue> item(String flightId, String source, String destination) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("flightId", s(flightId));
+        item.put("daysOfWeek", AttributeValue.builder().l(s("Monday"), s("Tuesday")).build());
+        item.put("source", s(source));
+        item.put("destination", s(destination));
+        item.put("cost", AttributeValue.builder().n("299.99").build());
+        return item;
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+}
@@ -0,0 +1,79 @@
+package com.flightbooking.searchservice.repository;
+
+import com.flightbooking.searchservice.graph.FlightChangeEvent;
+import com.flightbooking.searchservice.graph.FlightChangeLog;
+import com.flightbooking.searchservice.model.Flight;
+import com.flightbooking.shared.repository.LatencyInjector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryFlightRepositoryTest {
+
+    @Spy
+    private LatencyInjector latencyInjector = new LatencyInjector(0, 0, 0.0, 0);
+
+    @Spy
+    private FlightChangeLog changeLog = new FlightChangeLog();
+
+    @InjectMocks
+    private InMemoryFlightRepository flightRepository;
+
+    @Test
+    void testSaveAndFind_ReturnsCopies() {
+        // Given
+        Flight flight = new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 299.99);
+        flightRepository.save(flight);
+        flight.setCost("1.0");
+
+        // When
+        Flight found = flightRepository.findByFlightId("F001");
+
+        // Then
+        assertEquals("299.99", found.getCost());
+        assertNotSame(found, flightRepository.findByFlightId("F001"));
+    }
+
+    @Test
+    void testFindBySourceAndDestination() {
+        // Given
+        flightRepository.save(new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 299.99));
+        flightRepository.save(new Flight("F002", Arrays.asList("Monday"), "DEL", "BLR", 199.99));
+
+        // When
+        List<Flight> result = flightRepository.findBySourceAndDestination("DEL", "BOM");
+
+        // Then
+        assertEquals(1, result.size());
+        assertEquals("F001", result.get(0).getFlightId());
+        assertEquals(2, flightRepository.findAll().size());
+    }
+
+    @Test
+    void testWrites_AreRecordedInChangeLog() {
+        // Given
+        flightRepository.save(new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 299.99));
+        flightRepository.save(new Flight("F001", Arrays.asList("Monday"), "DEL", "BOM", 249.99));
+
+        // When
+        flightRepository.delete("F001");
+        flightRepository.delete("F404");
+
+        // Then
+        List<FlightChangeEvent> events = changeLog.poll(0, 10);
+        assertEquals(3, events.size());
+        assertEquals(FlightChangeEvent.Type.INSERT, events.get(0).getType());
+        assertEquals(FlightChangeEvent.Type.MODIFY, events.get(1).getType());
+        assertEquals("299.99", events.get(1).getOldImage().getCost());
+        assertEquals(FlightChangeEvent.Type.REMOVE, events.get(2).getType());
+        assertNull(flightRepository.findByFlightId("F001"));
+    }
+}
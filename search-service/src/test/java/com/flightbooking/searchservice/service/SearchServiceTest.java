@@ -3,8 +3,9 @@ package com.flightbooking.searchservice.service;
 import com.flightbooking.searchservice.dto.SearchRequest;
 import com.flightbooking.searchservice.dto.SearchResponse;
 import com.flightbooking.searchservice.enums.SearchPreference;
+import com.flightbooking.searchservice.graph.FlightGraph;
+import com.flightbooking.searchservice.graph.FlightGraphManager;
 import com.flightbooking.searchservice.model.Flight;
-import com.flightbooking.searchservice.repository.FlightRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -25,7 +26,7 @@ import static org.mockito.Mockito.*;
 class SearchServiceTest {
 
     @Mock
-    private FlightRepository flightRepository;
+    private FlightGraphManager flightGraphManager;
 
     @Mock
     private RedisTemplate<String, Object> redisTemplate;
@@ -42,14 +43,14 @@ class SearchServiceTest {
     @BeforeEach
     void setUp() {
         // Create sample flights
-        List<Flight> sampleFlights = Arrays.asList(
+        sampleFlights = Arrays.asList(
             new Flight("F001", Arrays.asList("Monday", "Tuesday"), "DEL", "BOM", 299.99),
             new Flight("F002", Arrays.asList("Wednesday", "Thursday"), "DEL", "BOM", 349.99),
             new Flight("F003", Arrays.asList("Monday", "Friday"), "DEL", "BLR", 199.99)
         );
 
-        // Mock repository to return sample flights
-        when(flightRepository.findAll()).thenReturn(sampleFlights);
+        // Mock graph manager to serve a snapshot of the sample flights
+        lenient().when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
 
         // Create search request
         searchRequest = new SearchRequest("U001", "DEL", "BOM", SearchPreference.CHEAPEST);
@@ -60,7 +61,7 @@ class SearchServiceTest {
         // Given
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(sampleFlights);
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
 
         // When
         SearchResponse response = searchService.searchFlights(searchRequest);
@@ -81,7 +82,7 @@ class SearchServiceTest {
         searchRequest = new SearchRequest("U001", "DEL", "BOM", SearchPreference.FASTEST);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(sampleFlights);
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
 
         // When
         SearchResponse response = searchService.searchFlights(searchRequest);
@@ -98,7 +99,7 @@ class SearchServiceTest {
         searchRequest = new SearchRequest("U001", "DEL", "BOM", SearchPreference.NONE);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(sampleFlights);
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
 
         // When
         SearchResponse response = searchService.searchFlights(searchRequest);
@@ -123,7 +124,7 @@ class SearchServiceTest {
         // Then
         assertNotNull(response);
         assertEquals("Cached response", response.getMessage());
-        verify(flightRepository, never()).findAll();
+        verify(flightGraphManager, never()).currentGraph();
         verify(redisTemplate.opsForValue(), never()).set(anyString(), any(SearchResponse.class), eq(300L), any());
     }
 
@@ -132,7 +133,7 @@ class SearchServiceTest {
         // Given
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(Arrays.asList());
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.empty());
 
         // When
         SearchResponse response = searchService.searchFlights(searchRequest);
@@ -148,7 +149,7 @@ class SearchServiceTest {
         // Given
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(sampleFlights);
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
 
         // When
         searchService.searchFlights(searchRequest);
@@ -163,7 +164,7 @@ class SearchServiceTest {
         SearchRequest chicagoRequest = new SearchRequest("U001", "BLR", "DEL", SearchPreference.CHEAPEST);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(sampleFlights);
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
 
         // When
         SearchResponse response = searchService.searchFlights(chicagoRequest);
@@ -181,7 +182,7 @@ class SearchServiceTest {
         SearchRequest userRequest = new SearchRequest("U002", "DEL", "BOM", SearchPreference.CHEAPEST);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(sampleFlights);
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
 
         // When
         SearchResponse response = searchService.searchFlights(userRequest);
@@ -198,7 +199,7 @@ class SearchServiceTest {
         SearchRequest emptyRequest = new SearchRequest("", "", "", SearchPreference.NONE);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(Arrays.asList());
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.empty());
 
         // When
         SearchResponse response = searchService.searchFlights(emptyRequest);
@@ -216,13 +217,13 @@ class SearchServiceTest {
         // Given
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenThrow(new RuntimeException("Database error"));
+        when(flightGraphManager.currentGraph()).thenThrow(new RuntimeException("Database error"));
 
         // When & Then
         assertThrows(RuntimeException.class, () -> 
             searchService.searchFlights(searchRequest));
         
-        verify(flightRepository).findAll();
+        verify(flightGraphManager).currentGraph();
     }
 
     @Test
@@ -235,7 +236,7 @@ class SearchServiceTest {
             SearchRequest preferenceRequest = new SearchRequest("U001", "DEL", "BOM", preference);
             when(redisTemplate.opsForValue()).thenReturn(valueOperations);
             when(valueOperations.get(anyString())).thenReturn(null);
-            when(flightRepository.findAll()).thenReturn(sampleFlights);
+            when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
             
             SearchResponse response = searchService.searchFlights(preferenceRequest);
             
@@ -243,7 +244,7 @@ class SearchServiceTest {
             assertEquals(preference, response.getPreference());
         }
         
-        verify(flightRepository, times(3)).findAll();
+        verify(flightGraphManager, times(3)).currentGraph();
     }
 
     @Test
@@ -251,7 +252,7 @@ class SearchServiceTest {
         // Given
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         when(valueOperations.get(anyString())).thenReturn(null);
-        when(flightRepository.findAll()).thenReturn(sampleFlights);
+        when(flightGraphManager.currentGraph()).thenReturn(FlightGraph.of(sampleFlights));
 
         // When
         SearchResponse response = searchService.searchFlights(searchRequest);
@@ -1,11 +1,14 @@
 package com.flightbooking.searchservice.util;
 
+import com.flightbooking.searchservice.graph.FlightGraph;
 import com.flightbooking.searchservice.model.Flight;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -206,4 +209,40 @@ class FlightFinderTest {
         assertTrue(shortestRoutes.isEmpty());
         assertTrue(allRoutes.isEmpty());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testRouteIndex_MatchesDeepSearchOnRandomNetworks() {
+        // Given - small networks with few distinct fares, so cost ties are common
+        Random random = new Random(20240115L);
+        String[] airports = {"DEL", "BOM", "BLR", "HYD", "MAA", "CCU", "GOI"};
+        double[] fares = {50.0, 100.0, 100.0, 150.0, 200.0, 299.99};
+
+        for (int network = 0; network < 40; network++) {
+            List<Flight> flights = new ArrayList<>();
+            int flightCount = 8 + random.nextInt(25);
+            for (int i = 0; i < flightCount; i++) {
+                String source = airports[random.nextInt(airports.length)];
+                String destination = airports[random.nextInt(airports.length)];
+                flights.add(new Flight("F" + network + "-" + i, Arrays.asList("Monday"), source, destination,
+                        fares[random.nextInt(fares.length)]));
+            }
+            FlightGraph graph = FlightGraph.of(flights);
+            FlightFinder indexed = new FlightFinder(graph);
+            FlightFinder deep = new FlightFinder(graph, false);
+
+            // When & Then
+            for (String source : airports) {
+                for (String destination : airports) {
+                    for (int limit : new int[] {1, 3, 10}) {
+                        assertEquals(deep.findTopCheapestRoutes(source, destination, limit),
+                                indexed.findTopCheapestRoutes(source, destination, limit),
+                                "cheapest " + source + "->" + destination + " limit " + limit + " in network " + network);
+                        assertEquals(deep.findTopShortestRoutes(source, destination, limit),
+                                indexed.findTopShortestRoutes(source, destination, limit),
+                                "shortest " + source + "->" + destination + " limit " + limit + " in network " + network);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -29,12 +29,18 @@ export AWS_SECRET_ACCESS_KEY=local
 
 echo "🔧 Creating DynamoDB tables..."
 
-# Create Inventory table
+# Create Inventory table, keyed by "<flightId>#<date>"
 echo "📊 Creating inventory table..."
 aws dynamodb create-table \
   --table-name inventory \
-  --attribute-definitions AttributeName=inventoryId,AttributeType=S \
+  --attribute-definitions \
+    AttributeName=inventoryId,AttributeType=S \
+    AttributeName=flightId,AttributeType=S \
+    AttributeName=date,AttributeType=S \
   --key-schema AttributeName=inventoryId,KeyType=HASH \
+  --global-secondary-indexes \
+    '[{"IndexName":"flightId-date-index","KeySchema":[{"AttributeName":"flightId","KeyType":"HASH"},{"AttributeName":"date","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"}},
+      {"IndexName":"date-index","KeySchema":[{"AttributeName":"date","KeyType":"HASH"}],"Projection":{"ProjectionType":"ALL"}}]' \
   --billing-mode PAY_PER_REQUEST \
   --endpoint-url $AWS_ENDPOINT_URL \
   --region $AWS_DEFAULT_REGION
@@ -46,11 +52,22 @@ else
 fi
 
 # Create Bookings table
+# paymentQueue-paymentDueAt-index only holds bookings whose payment is pending;
+# userId-date-index serves booking history and status-createdAt-index status sweeps
 echo "📋 Creating bookings table..."
 aws dynamodb create-table \
   --table-name bookings \
-  --attribute-definitions AttributeName=bookingId,AttributeType=S \
+  --attribute-definitions \
+    AttributeName=bookingId,AttributeType=S \
+    AttributeName=paymentQueue,AttributeType=S \
+    AttributeName=paymentDueAt,AttributeType=N \
+    AttributeName=userId,AttributeType=S \
+    AttributeName=date,AttributeType=S \
+    AttributeName=status,AttributeType=S \
+    AttributeName=createdAt,AttributeType=N \
   --key-schema AttributeName=bookingId,KeyType=HASH \
+  --global-secondary-indexes \
+    '[{"IndexName":"paymentQueue-paymentDueAt-index","KeySchema":[{"AttributeName":"paymentQueue","KeyType":"HASH"},{"AttributeName":"paymentDueAt","KeyType":"RANGE"}],"Projection":{"ProjectionType":"KEYS_ONLY"}},{"IndexName":"userId-date-index","KeySchema":[{"AttributeName":"userId","KeyType":"HASH"},{"AttributeName":"date","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"}},{"IndexName":"status-createdAt-index","KeySchema":[{"AttributeName":"status","KeyType":"HASH"},{"AttributeName":"createdAt","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"}}]' \
   --billing-mode PAY_PER_REQUEST \
   --endpoint-url $AWS_ENDPOINT_URL \
   --region $AWS_DEFAULT_REGION
@@ -61,6 +78,89 @@ else
     echo "⚠️  Bookings table might already exist or creation failed"
 fi
 
+# Create Booking legs table; one item per flight of a booking, so a flight's bookings
+# can be read without scanning them all
+echo "🧾 Creating booking_legs table..."
+aws dynamodb create-table \
+  --table-name booking_legs \
+  --attribute-definitions \
+    AttributeName=flightDate,AttributeType=S \
+    AttributeName=bookingId,AttributeType=S \
+  --key-schema AttributeName=flightDate,KeyType=HASH AttributeName=bookingId,KeyType=RANGE \
+  --billing-mode PAY_PER_REQUEST \
+  --endpoint-url $AWS_ENDPOINT_URL \
+  --region $AWS_DEFAULT_REGION
+
+if [ $? -eq 0 ]; then
+    echo "✅ Booking legs table created successfully"
+else
+    echo "⚠️  Booking legs table might already exist or creation failed"
+fi
+
+# Create Seat holds table; expiryBucket-expiresAt-index only holds unsettled holds
+echo "⏱️  Creating seat_holds table..."
+aws dynamodb create-table \
+  --table-name seat_holds \
+  --attribute-definitions \
+    AttributeName=holdId,AttributeType=S \
+    AttributeName=expiryBucket,AttributeType=S \
+    AttributeName=expiresAt,AttributeType=N \
+  --key-schema AttributeName=holdId,KeyType=HASH \
+  --global-secondary-indexes \
+    '[{"IndexName":"expiryBucket-expiresAt-index","KeySchema":[{"AttributeName":"expiryBucket","KeyType":"HASH"},{"AttributeName":"expiresAt","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"}}]' \
+  --billing-mode PAY_PER_REQUEST \
+  --endpoint-url $AWS_ENDPOINT_URL \
+  --region $AWS_DEFAULT_REGION
+
+if [ $? -eq 0 ]; then
+    echo "✅ Seat holds table created successfully"
+    # Settled holds are deleted once their purgeAt passes
+    aws dynamodb update-time-to-live \
+      --table-name seat_holds \
+      --time-to-live-specification Enabled=true,AttributeName=purgeAt \
+      --endpoint-url $AWS_ENDPOINT_URL \
+      --region $AWS_DEFAULT_REGION >/dev/null
+else
+    echo "⚠️  Seat holds table might already exist or creation failed"
+fi
+
+# Create Idempotency keys table; responses to booking requests sent with an Idempotency-Key
+echo "🔑 Creating idempotency_keys table..."
+aws dynamodb create-table \
+  --table-name idempotency_keys \
+  --attribute-definitions AttributeName=idempotencyKey,AttributeType=S \
+  --key-schema AttributeName=idempotencyKey,KeyType=HASH \
+  --billing-mode PAY_PER_REQUEST \
+  --endpoint-url $AWS_ENDPOINT_URL \
+  --region $AWS_DEFAULT_REGION
+
+if [ $? -eq 0 ]; then
+    echo "✅ Idempotency keys table created successfully"
+    aws dynamodb update-time-to-live \
+      --table-name idempotency_keys \
+      --time-to-live-specification Enabled=true,AttributeName=purgeAt \
+      --endpoint-url $AWS_ENDPOINT_URL \
+      --region $AWS_DEFAULT_REGION >/dev/null
+else
+    echo "⚠️  Idempotency keys table might already exist or creation failed"
+fi
+
+# Create Inventory shards table; extra seat counters for hot flight-dates
+echo "🧩 Creating inventory_shards table..."
+aws dynamodb create-table \
+  --table-name inventory_shards \
+  --attribute-definitions AttributeName=shardId,AttributeType=S \
+  --key-schema AttributeName=shardId,KeyType=HASH \
+  --billing-mode PAY_PER_REQUEST \
+  --endpoint-url $AWS_ENDPOINT_URL \
+  --region $AWS_DEFAULT_REGION
+
+if [ $? -eq 0 ]; then
+    echo "✅ Inventory shards table created successfully"
+else
+    echo "⚠️  Inventory shards table might already exist or creation failed"
+fi
+
 # Create Flights table
 echo "✈️  Creating flights table..."
 aws dynamodb create-table \
@@ -68,6 +168,7 @@ aws dynamodb create-table \
   --attribute-definitions AttributeName=flightId,AttributeType=S \
   --key-schema AttributeName=flightId,KeyType=HASH \
   --billing-mode PAY_PER_REQUEST \
+  --stream-specification StreamEnabled=true,StreamViewType=NEW_AND_OLD_IMAGES \
   --endpoint-url $AWS_ENDPOINT_URL \
   --region $AWS_DEFAULT_REGION
 
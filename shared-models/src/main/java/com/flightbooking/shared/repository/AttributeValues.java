@@ -0,0 +1,99 @@
+package com.flightbooking.shared.repository;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts items between the v2 async client and the v1 mapper. The async repositories
+ * read with the v2 client and hand the items to {@code DynamoDBMapper.marshallIntoObject},
+ * so the mapper annotations on the models stay the only description of the item format.
+ */
+public final class AttributeValues {
+
+    private AttributeValues() {
+    }
+
+    public static Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> toV1(Map<String, AttributeValue> item) {
+        if (item == null) {
+            return null;
+        }
+        Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> converted = new LinkedHashMap<>();
+        item.forEach((name, value) -> converted.put(name, toV1(value)));
+        return converted;
+    }
+
+    public static Map<String, AttributeValue> toV2(Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> item) {
+        if (item == null) {
+            return null;
+        }
+        Map<String, AttributeValue> converted = new LinkedHashMap<>();
+        item.forEach((name, value) -> converted.put(name, toV2(value)));
+        return converted;
+    }
+
+    public static com.amazonaws.services.dynamodbv2.model.AttributeValue toV1(AttributeValue value) {
+        com.amazonaws.services.dynamodbv2.model.AttributeValue converted = new com.amazonaws.services.dynamodbv2.model.AttributeValue();
+        if (value.s() != null) {
+            converted.setS(value.s());
+        } else if (value.n() != null) {
+            converted.setN(value.n());
+        } else if (value.b() != null) {
+            converted.setB(value.b().asByteBuffer());
+        } else if (value.bool() != null) {
+            converted.setBOOL(value.bool());
+        } else if (Boolean.TRUE.equals(value.nul())) {
+            converted.setNULL(true);
+        } else if (value.hasSs()) {
+            converted.setSS(value.ss());
+        } else if (value.hasNs()) {
+            converted.setNS(value.ns());
+        } else if (value.hasBs()) {
+            List<ByteBuffer> bytes = new ArrayList<>();
+            value.bs().forEach(b -> bytes.add(b.asByteBuffer()));
+            converted.setBS(bytes);
+        } else if (value.hasL()) {
+            List<com.amazonaws.services.dynamodbv2.model.AttributeValue> list = new ArrayList<>();
+            value.l().forEach(element -> list.add(toV1(element)));
+            converted.setL(list);
+        } else if (value.hasM()) {
+            converted.setM(toV1(value.m()));
+        }
+        return converted;
+    }
+
+    public static AttributeValue toV2(com.amazonaws.services.dynamodbv2.model.AttributeValue value) {
+        AttributeValue.Builder converted = AttributeValue.builder();
+        if (value.getS() != null) {
+            converted.s(value.getS());
+        } else if (value.getN() != null) {
+            converted.n(value.getN());
+        } else if (value.getB() != null) {
+            converted.b(SdkBytes.fromByteBuffer(value.getB()));
+        } else if (value.getBOOL() != null) {
+            converted.bool(value.getBOOL());
+        } else if (Boolean.TRUE.equals(value.getNULL())) {
+            converted.nul(true);
+        } else if (value.getSS() != null) {
+            converted.ss(value.getSS());
+        } else if (value.getNS() != null) {
+            converted.ns(value.getNS());
+        } else if (value.getBS() != null) {
+            List<SdkBytes> bytes = new ArrayList<>();
+            value.getBS().forEach(b -> bytes.add(SdkBytes.fromByteBuffer(b)));
+            converted.bs(bytes);
+        } else if (value.getL() != null) {
+            List<AttributeValue> list = new ArrayList<>();
+            value.getL().forEach(element -> list.add(toV2(element)));
+            converted.l(list);
+        } else if (value.getM() != null) {
+            converted.m(toV2(value.getM()));
+        }
+        return converted.build();
+    }
+}
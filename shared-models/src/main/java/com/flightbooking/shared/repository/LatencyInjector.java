@@ -0,0 +1,88 @@
+package com.flightbooking.shared.repository;
+
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Simulated store latency and failures for the in-memory repositories. Each call waits a
+ * uniformly random time between the configured bounds and then fails with the configured
+ * probability, raising the same throttling exception DynamoDB would. A fixed seed makes
+ * the sequence of delays and failures repeatable across runs. Each service registers one
+ * under its {@code in-memory} profile from the {@code repository.in-memory.*} properties.
+ */
+public class LatencyInjector {
+
+    private final long minLatencyMs;
+    private final long maxLatencyMs;
+    private final double failureRate;
+    private final long seed;
+
+    private volatile Random random;
+
+    public LatencyInjector(long minLatencyMs, long maxLatencyMs, double failureRate, long seed) {
+        this.minLatencyMs = minLatencyMs;
+        this.maxLatencyMs = maxLatencyMs;
+        this.failureRate = failureRate;
+        this.seed = seed;
+    }
+
+    /** Blocks the calling thread for one simulated round trip. */
+    public void pause(String operation) {
+        long delay = nextDelayMs();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during " + operation, e);
+            }
+        }
+        maybeFail(operation);
+    }
+
+    /**
+     * Runs {@code supplier} after one simulated round trip without blocking the caller,
+     * the way the async client completes its futures on another thread.
+     */
+    public <T> CompletableFuture<T> async(String operation, Supplier<T> supplier) {
+        long delay = nextDelayMs();
+        return CompletableFuture.supplyAsync(() -> {
+            maybeFail(operation);
+            return supplier.get();
+        }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+
+    private long nextDelayMs() {
+        if (maxLatencyMs <= minLatencyMs) {
+            return Math.max(0, minLatencyMs);
+        }
+        return minLatencyMs + (long) (random().nextDouble() * (maxLatencyMs - minLatencyMs + 1));
+    }
+
+    private void maybeFail(String operation) {
+        if (failureRate > 0 && random().nextDouble() < failureRate) {
+            throw new ProvisionedThroughputExceededException("Injected failure during " + operation);
+        }
+    }
+
+    private Random random() {
+        if (seed == 0) {
+            return ThreadLocalRandom.current();
+        }
+        Random seeded = random;
+        if (seeded == null) {
+            synchronized (this) {
+                if (random == null) {
+                    random = new Random(seed);
+                }
+                seeded = random;
+            }
+        }
+        return seeded;
+    }
+}